@@ -6,7 +6,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.models.dto.*;
 import org.example.models.entity.Dataset;
 import org.example.models.entity.DatasetField;
-import org.example.models.entity.RawEvent;
 import org.example.models.entity.TransformRun;
 import org.example.models.entity.UnifiedRow;
 import org.example.models.dto.MappingEditorDataResponse;
@@ -14,16 +13,18 @@ import org.example.models.dto.MappingEditorSaveRequest;
 import org.example.models.dto.PipelineStatusResponse;
 import org.example.models.entity.IngestionRun;
 import org.example.models.enums.RunStatus;
+import org.example.models.enums.TransformMode;
 import org.example.repository.RawEventRepository;
 import org.example.repository.UnifiedRowRepository;
 import org.example.service.DatasetService;
 import org.example.service.TransformService;
-import org.springframework.data.domain.PageRequest;
+import org.example.service.export.ExportFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.Instant;
 import java.util.*;
@@ -252,19 +253,44 @@ public class DatasetController {
 
     @PostMapping("/{datasetId}/transform")
     public ResponseEntity<Map<String, Object>> triggerTransform(@PathVariable Long datasetId,
+                                                                @RequestParam(defaultValue = "FULL") TransformMode mode,
+                                                                @RequestParam(defaultValue = "false") boolean distributed,
                                                                 Authentication authentication) {
         Dataset dataset = datasetService.getDatasetForUser(datasetId, requireUserEmail(authentication));
-        TransformRun run = transformService.startTransform(dataset.getId());
+        if (distributed) {
+            if (mode != TransformMode.FULL) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Distributed transforms only support FULL mode");
+            }
+            TransformRun run = transformService.startDistributedTransform(dataset.getId());
+            return ResponseEntity.accepted().body(Map.of(
+                    "status", run.getRunStatus(),
+                    "mode", run.getTransformMode(),
+                    "componentsTotal", run.getComponentsTotal(),
+                    "runUid", run.getTransformRunUid()
+            ));
+        }
+        TransformRun run = transformService.startTransform(dataset.getId(), mode);
 
         Map<String, Object> response = Map.of(
                 "status", run.getRunStatus(),
+                "mode", run.getTransformMode(),
                 "rowsIn", run.getRowsIn(),
                 "rowsOut", run.getRowsOut(),
                 "endedAt", run.getEndedAt(),
                 "runUid", run.getTransformRunUid()
         );
 
-        return run.getRunStatus() == RunStatus.SUCCESS ? ResponseEntity.ok(response) : ResponseEntity.badRequest().body(response);
+        return run.getRunStatus() == RunStatus.FAILED ? ResponseEntity.badRequest().body(response) : ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/{datasetId}/transform-runs/{runUid}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelTransform(@PathVariable Long datasetId,
+                                                               @PathVariable String runUid,
+                                                               Authentication authentication) {
+        if (!datasetService.requestTransformCancel(datasetId, runUid, requireUserEmail(authentication))) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Transform run is not running");
+        }
+        return ResponseEntity.accepted().body(Map.of("runUid", runUid, "cancelRequested", true));
     }
 
     @PostMapping("/{datasetId}/ingest-transform")
@@ -281,15 +307,33 @@ public class DatasetController {
         return run.getRunStatus() == RunStatus.SUCCESS ? ResponseEntity.ok(response) : ResponseEntity.badRequest().body(response);
     }
 
+    @GetMapping("/{datasetId}/raw")
+    public RawDataPage rawData(@PathVariable Long datasetId,
+                               @RequestParam(required = false) String cursor,
+                               @RequestParam(defaultValue = "50") int size,
+                               Authentication authentication) {
+        return datasetService.getRawData(datasetId, cursor, size, requireUserEmail(authentication));
+    }
+
+    @GetMapping("/{datasetId}/unified")
+    public UnifiedRowPage unifiedRows(@PathVariable Long datasetId,
+                                      @RequestParam(required = false) String cursor,
+                                      @RequestParam(defaultValue = "50") int size,
+                                      @RequestParam(defaultValue = "false") boolean includeExcluded,
+                                      Authentication authentication) {
+        return datasetService.getUnifiedRows(datasetId, includeExcluded, cursor, size, requireUserEmail(authentication));
+    }
+
     @GetMapping("/{datasetId}/raw/preview")
     public Map<String, Object> rawPreview(@PathVariable Long datasetId,
                                           @RequestParam(defaultValue = "100") int limit,
+                                          @RequestParam(required = false) String cursor,
                                           Authentication authentication) {
         Dataset dataset = datasetService.getDatasetForUser(datasetId, requireUserEmail(authentication));
-        List<RawEvent> events = rawEventRepository.findByDataset_Id(dataset.getId(), PageRequest.of(0, Math.max(limit, 1))).getContent();
+        RawDataPage page = datasetService.previewRawData(datasetId, cursor, limit, requireUserEmail(authentication));
         Map<String, List<Map<String, Object>>> byTable = new LinkedHashMap<>();
-        for (RawEvent event : events) {
-            Map<String, Object> payload = event.getPayload();
+        for (RawDataRecordDTO event : page.content()) {
+            Map<String, Object> payload = event.payload();
             if (payload == null) continue;
             String tableName = Optional.ofNullable(payload.get("__table__")).map(Object::toString).orElse("Unknown");
             Map<String, Object> sanitized = new LinkedHashMap<>();
@@ -311,19 +355,20 @@ public class DatasetController {
                     "rows", rows
             ));
         });
-        return Map.of(
-                "datasetName", dataset.getName(),
-                "tables", tables
-        );
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("datasetName", dataset.getName());
+        response.put("tables", tables);
+        response.put("nextCursor", page.nextCursor());
+        return response;
     }
 
     @GetMapping("/{datasetId}/unified/preview")
     public Map<String, Object> unifiedPreview(@PathVariable Long datasetId,
                                               @RequestParam(defaultValue = "20") int limit,
+                                              @RequestParam(required = false) String cursor,
                                               Authentication authentication) {
-        Dataset dataset = datasetService.getDatasetForUser(datasetId, requireUserEmail(authentication));
         List<DatasetField> fields = datasetService.listFieldEntities(datasetId, requireUserEmail(authentication));
-        List<UnifiedRow> rows = unifiedRowRepository.findByDatasetAndIsExcludedFalse(dataset, PageRequest.of(0, Math.max(limit, 1))).getContent();
+        UnifiedRowPage page = datasetService.previewUnifiedRows(datasetId, cursor, limit, requireUserEmail(authentication));
         List<Map<String, Object>> fieldDtos = fields.stream()
                 .sorted(Comparator.comparing(DatasetField::getPosition, Comparator.nullsLast(Integer::compareTo)))
                 .map(f -> {
@@ -336,17 +381,18 @@ public class DatasetController {
                     return dto;
                 })
                 .toList();
-        List<Map<String, Object>> rowDtos = rows.stream().map(r -> {
+        List<Map<String, Object>> rowDtos = page.content().stream().map(r -> {
             Map<String, Object> dto = new LinkedHashMap<>();
-            dto.put("id", r.getId());
-            dto.put("isExcluded", Boolean.TRUE.equals(r.getIsExcluded()));
-            dto.put("values", Optional.ofNullable(r.getData()).orElse(Map.of()));
+            dto.put("id", r.id());
+            dto.put("isExcluded", r.isExcluded());
+            dto.put("values", r.values());
             return dto;
         }).toList();
-        return Map.of(
-                "fields", fieldDtos,
-                "rows", rowDtos
-        );
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("fields", fieldDtos);
+        response.put("rows", rowDtos);
+        response.put("nextCursor", page.nextCursor());
+        return response;
     }
 
     @PatchMapping("/{datasetId}/unified/{rowId}/exclude")
@@ -375,11 +421,28 @@ public class DatasetController {
         return datasetService.exportUnified(datasetId, requireUserEmail(authentication));
     }
 
+    @GetMapping("/{datasetId}/export/deliveries")
+    public ExportResultDTO exportDeliveries(@PathVariable Long datasetId, Authentication authentication) {
+        return datasetService.deliveryStatus(datasetId, requireUserEmail(authentication));
+    }
+
+    /**
+     * Downloads the unified rows as {@code format} ({@code csv}, {@code ndjson} or {@code parquet});
+     * {@code gzip} defaults to the format's default and does not apply to Parquet.
+     */
     @GetMapping("/{datasetId}/export/download")
-    public ResponseEntity<byte[]> downloadUnified(@PathVariable Long datasetId,
-                                                  Authentication authentication) {
+    public ResponseEntity<StreamingResponseBody> downloadUnified(@PathVariable Long datasetId,
+                                                                 @RequestParam(value = "format", defaultValue = "csv") String format,
+                                                                 @RequestParam(value = "gzip", required = false) Boolean gzip,
+                                                                 Authentication authentication) {
         String userEmail = requireUserEmail(authentication);
-        return datasetService.exportUnifiedAsCsv(datasetId, userEmail);
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.of(format);
+        } catch (IllegalArgumentException exception) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exception.getMessage());
+        }
+        return datasetService.exportUnifiedFile(datasetId, userEmail, exportFormat, gzip);
     }
 
     private String requireUserEmail(Authentication authentication) {
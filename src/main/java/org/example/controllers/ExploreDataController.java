@@ -2,26 +2,28 @@ package org.example.controllers;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVPrinter;
 import org.example.models.entity.Dataset;
-import org.example.models.entity.UnifiedRow;
 import org.example.service.DatasetService;
-import org.example.repository.UnifiedRowRepository;
-import org.springframework.http.HttpHeaders;
+import org.example.service.explore.ExploreFilter;
+import org.example.service.explore.ExplorePage;
+import org.example.service.explore.ExploreQueryService;
+import org.example.service.export.ExportStreams;
+import org.example.service.export.UnifiedRowReader;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
@@ -31,86 +33,89 @@ public class ExploreDataController {
 
     private static final int MAX_RESULTS = 500;
 
-    private final DatasetService datasetService;
-    private final UnifiedRowRepository unifiedRowRepository;
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
+    private final DatasetService datasetService;
+    private final ExploreQueryService exploreQueryService;
+    private final UnifiedRowReader unifiedRowReader;
+
+    /**
+     * A page of the dataset's rows matching every {@code filter} (see {@link ExploreFilter}), ordered by
+     * {@code sort} ({@code field} or {@code -field}) or else by row id. When more rows follow, the
+     * {@value #NEXT_CURSOR_HEADER} header carries the {@code cursor} for the next page.
+     */
     @GetMapping("/{datasetId}")
-    public List<Map<String, Object>> loadDataset(@PathVariable Long datasetId,
-                                                 @RequestParam(value = "filter", required = false) String filter,
-                                                 Authentication authentication) {
+    public ResponseEntity<List<Map<String, Object>>> loadDataset(@PathVariable Long datasetId,
+                                                                 @RequestParam MultiValueMap<String, String> parameters,
+                                                                 @RequestParam(value = "sort", required = false) String sort,
+                                                                 @RequestParam(value = "limit", defaultValue = "" + MAX_RESULTS) int limit,
+                                                                 @RequestParam(value = "cursor", required = false) String cursor,
+                                                                 Authentication authentication) {
         Dataset dataset = datasetService.getDatasetForUser(datasetId, requireUserEmail(authentication));
-        List<UnifiedRow> rows = unifiedRowRepository.findByDataset(dataset);
+        ExplorePage page;
+        try {
+            page = exploreQueryService.page(dataset.getId(), filter(parameters), sort,
+                    Math.max(1, Math.min(limit, MAX_RESULTS)), cursor);
+        } catch (IllegalArgumentException exception) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exception.getMessage());
+        }
 
-        return applyFilter(rows, filter).stream()
-                .limit(MAX_RESULTS)
-                .map(UnifiedRow::getData)
-                .collect(Collectors.toList());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.rows());
     }
 
+    /**
+     * Streams the dataset's rows matching every {@code filter} as CSV with one column per data key,
+     * optionally gzipped.
+     */
     @GetMapping("/export")
-    public ResponseEntity<byte[]> exportDataset(@RequestParam("dataset") Long datasetId,
-                                                @RequestParam(value = "filter", required = false) String filter,
-                                                Authentication authentication) {
+    public ResponseEntity<StreamingResponseBody> exportDataset(@RequestParam("dataset") Long datasetId,
+                                                               @RequestParam MultiValueMap<String, String> parameters,
+                                                               @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+                                                               Authentication authentication) {
         Dataset dataset = datasetService.getDatasetForUser(datasetId, requireUserEmail(authentication));
-        List<UnifiedRow> rows = unifiedRowRepository.findByDataset(dataset);
-        List<UnifiedRow> filtered = applyFilter(rows, filter);
-
-        return exportCsv(dataset.getName(), filtered);
-    }
-
-    private List<UnifiedRow> applyFilter(List<UnifiedRow> rows, String filter) {
-        if (filter == null || filter.isBlank()) {
-            return rows;
-        }
-        int equalsIndex = filter.indexOf('=');
-        if (equalsIndex <= 0) {
-            return rows;
-        }
-        String field = filter.substring(0, equalsIndex);
-        String value = filter.substring(equalsIndex + 1);
-        return rows.stream()
-                .filter(row -> {
-                    Object fieldValue = row.getData().get(field);
-                    return fieldValue != null && fieldValue.toString().equalsIgnoreCase(value);
-                })
-                .collect(Collectors.toList());
-    }
-
-    private ResponseEntity<byte[]> exportCsv(String datasetName, List<UnifiedRow> rows) {
-        if (rows.isEmpty()) {
-            return buildDownload(datasetName, "csv", new byte[0], MediaType.TEXT_PLAIN);
-        }
-
-        Set<String> headers = new LinkedHashSet<>();
-        rows.stream().map(UnifiedRow::getData).forEach(map -> headers.addAll(map.keySet()));
-
-        StringBuilder builder = new StringBuilder();
-        builder.append(String.join(",", headers)).append('\n');
-
-        for (UnifiedRow row : rows) {
-            Map<String, Object> data = row.getData();
-            List<String> values = new ArrayList<>();
-            for (String header : headers) {
-                Object value = data.get(header);
-                String sanitized = value == null ? "" : value.toString().replace("\"", "\"\"");
-                if (sanitized.contains(",")) {
-                    sanitized = '"' + sanitized + '"';
+        ExploreFilter filter = filter(parameters);
+
+        StreamingResponseBody body = out -> {
+            // columns are the keys of the matching rows in order of first appearance
+            List<String> headers = unifiedRowReader.keys(dataset.getId(), true, filter);
+            try (CSVPrinter printer = ExportStreams.csv(out, gzip)) {
+                if (headers.isEmpty()) {
+                    return;
                 }
-                values.add(sanitized);
+                printer.printRecord(headers);
+                String[] values = new String[headers.size()];
+                unifiedRowReader.stream(dataset.getId(), true, filter, data -> {
+                    for (int i = 0; i < values.length; i++) {
+                        Object value = data.get(headers.get(i));
+                        values[i] = value == null ? "" : value.toString();
+                    }
+                    try {
+                        printer.printRecord((Object[]) values);
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
             }
-            builder.append(String.join(",", values)).append('\n');
-        }
+        };
+        return buildDownload(dataset.getName(), "csv", gzip, body);
+    }
 
-        byte[] payload = builder.toString().getBytes(StandardCharsets.UTF_8);
-        return buildDownload(datasetName, "csv", payload, MediaType.TEXT_PLAIN);
+    /**
+     * Filters are read from the raw parameters: binding them to a list would split a single filter at its
+     * commas.
+     */
+    private ExploreFilter filter(MultiValueMap<String, String> parameters) {
+        return ExploreFilter.parse(parameters.get("filter"));
     }
 
-    private ResponseEntity<byte[]> buildDownload(String datasetName, String extension, byte[] payload, MediaType mediaType) {
+    private ResponseEntity<StreamingResponseBody> buildDownload(String datasetName, String extension, boolean gzip,
+                                                                StreamingResponseBody body) {
         String filename = datasetName + "-" + DateTimeFormatter.ISO_INSTANT.format(java.time.Instant.now()) + "." + extension;
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
-                .header(HttpHeaders.CONTENT_TYPE, mediaType.toString())
-                .body(payload);
+        return ExportStreams.download(filename, MediaType.TEXT_PLAIN, gzip, body);
     }
 
     private String requireUserEmail(Authentication authentication) {
@@ -2,11 +2,13 @@ package org.example.models.dto;
 
 import java.util.List;
 
+/**
+ * A page of raw events, newest first; {@code nextCursor} fetches the following page and is {@code null} on the
+ * last.
+ */
 public record RawDataPage(
         List<RawDataRecordDTO> content,
-        long totalElements,
-        int totalPages,
-        int page,
-        int size
+        int size,
+        String nextCursor
 ) {
 }
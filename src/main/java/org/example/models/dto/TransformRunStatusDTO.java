@@ -10,6 +10,10 @@ public record TransformRunStatusDTO(
         Integer rowsOut,
         String errorMessage,
         Instant startedAt,
-        Instant endedAt
+        Instant endedAt,
+        Integer componentsTotal,
+        Integer componentsDone,
+        Long etaSeconds,
+        boolean cancelRequested
 ) {
 }
@@ -0,0 +1,14 @@
+package org.example.models.dto;
+
+import java.util.List;
+
+/**
+ * A page of unified rows, most recently ingested first; {@code nextCursor} fetches the following page and is
+ * {@code null} on the last.
+ */
+public record UnifiedRowPage(
+        List<UnifiedRowRecordDTO> content,
+        int size,
+        String nextCursor
+) {
+}
@@ -0,0 +1,12 @@
+package org.example.models.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+public record UnifiedRowRecordDTO(
+        Long id,
+        boolean isExcluded,
+        Map<String, Object> values,
+        Instant ingestedAt
+) {
+}
@@ -12,6 +12,7 @@ import org.hibernate.annotations.OnDeleteAction;
 import org.hibernate.type.SqlTypes;
 
 import java.time.Instant;
+import java.util.Map;
 
 @Setter
 @Getter
@@ -61,4 +62,8 @@ public class IngestionRun {
 
     @Column(name = "error_message", length = Integer.MAX_VALUE)
     private String errorMessage;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "join_key_stats")
+    private Map<String, Object> joinKeyStats;
 }
@@ -0,0 +1,53 @@
+package org.example.models.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@Entity
+@Table(name = "join_key_index", schema = "integration")
+public class JoinKeyEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "join_key_id", nullable = false)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JoinColumn(name = "dataset_id", nullable = false)
+    private Dataset dataset;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JoinColumn(name = "source_id", nullable = false)
+    private Source source;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JoinColumn(name = "raw_event_id")
+    private RawEvent rawEvent;
+
+    @Column(name = "field_name", nullable = false)
+    private String fieldName;
+
+    @Column(name = "join_key", nullable = false, length = Integer.MAX_VALUE)
+    private String joinKey;
+
+    @Column(name = "record_identity", nullable = false, length = Integer.MAX_VALUE)
+    private String recordIdentity;
+
+    @Column(name = "record_type", nullable = false)
+    private String recordType;
+
+    @ColumnDefault("now()")
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 import org.example.models.enums.RunStatus;
+import org.example.models.enums.TransformMode;
 import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.annotations.OnDelete;
@@ -44,6 +45,10 @@ public class TransformRun {
     @ColumnDefault("'RUNNING'")
     private RunStatus runStatus;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "transform_mode", length = 20)
+    private TransformMode transformMode;
+
     @ColumnDefault("0")
     @Column(name = "rows_in")
     private Integer rowsIn;
@@ -52,6 +57,37 @@ public class TransformRun {
     @Column(name = "rows_out")
     private Integer rowsOut;
 
+    @Column(name = "components_total")
+    private Integer componentsTotal;
+
+    @ColumnDefault("0")
+    @Column(name = "components_done")
+    private Integer componentsDone;
+
+    @Column(name = "progress_at")
+    private Instant progressAt;
+
+    /**
+     * Only ever set through {@link org.example.repository.TransformRunRepository#requestCancel}, so saving a
+     * run that is still in progress never clears a pending request.
+     */
+    @ColumnDefault("false")
+    @Column(name = "cancel_requested", insertable = false, updatable = false)
+    private Boolean cancelRequested;
+
+    /**
+     * Staging table of a distributed run, shared by the workers that load it.
+     */
+    @Column(name = "stage_table", length = 63)
+    private String stageTable;
+
+    /**
+     * Fingerprint of the input a distributed run was planned with; workers refuse to build units from any
+     * other input.
+     */
+    @Column(name = "input_fingerprint", length = 100)
+    private String inputFingerprint;
+
     @Column(name = "error_message", length = Integer.MAX_VALUE)
     private String errorMessage;
 }
@@ -38,6 +38,15 @@ public class UnifiedRow {
     @Column(name = "record_key", length = Integer.MAX_VALUE)
     private String recordKey;
 
+    @Column(name = "component_key", length = Integer.MAX_VALUE)
+    private String componentKey;
+
+    /**
+     * SHA-256 of the serialized {@code data}; upserts skip rows whose hash is unchanged.
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @Column(name = "data", nullable = false)
     @JdbcTypeCode(SqlTypes.JSON)
     private Map<String, Object> data;
@@ -0,0 +1,8 @@
+package org.example.models.enums;
+
+public enum DeliveryStatus {
+    QUEUED,
+    RUNNING,
+    DELIVERED,
+    FAILED
+}
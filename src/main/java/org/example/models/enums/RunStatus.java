@@ -4,6 +4,7 @@ public enum RunStatus {
     QUEUED,
     RUNNING,
     SUCCESS,
-    FAILED
+    FAILED,
+    CANCELLED
 }
 
@@ -0,0 +1,6 @@
+package org.example.models.enums;
+
+public enum TransformMode {
+    FULL,
+    INCREMENTAL
+}
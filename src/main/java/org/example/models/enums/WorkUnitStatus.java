@@ -0,0 +1,9 @@
+package org.example.models.enums;
+
+public enum WorkUnitStatus {
+    PENDING,
+    LEASED,
+    DONE,
+    FAILED,
+    CANCELLED
+}
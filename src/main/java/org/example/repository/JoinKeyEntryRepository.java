@@ -0,0 +1,16 @@
+package org.example.repository;
+
+import org.example.models.entity.JoinKeyEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface JoinKeyEntryRepository extends JpaRepository<JoinKeyEntry, Long> {
+
+    @Query("select j from JoinKeyEntry j join fetch j.source where j.dataset.id = :datasetId and j.joinKey in :joinKeys")
+    List<JoinKeyEntry> findByDatasetIdAndJoinKeyIn(Long datasetId, Collection<String> joinKeys);
+}
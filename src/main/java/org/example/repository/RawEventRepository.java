@@ -6,6 +6,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
@@ -29,6 +30,20 @@ public interface RawEventRepository extends JpaRepository<RawEvent, Long> {
 
     boolean existsBySourceAndPayloadHash(Source source, String payloadHash);
 
+    /**
+     * The source's events in {@code (afterId, upToId]} without join keys indexed for the dataset, in id order.
+     */
+    @Query(value = """
+            select * from integration.raw_event e
+            where e.source_id = :sourceId and e.raw_event_id > :afterId and e.raw_event_id <= :upToId
+              and not exists (select 1 from integration.join_key_index j
+                              where j.raw_event_id = e.raw_event_id and j.dataset_id = :datasetId)
+            order by e.raw_event_id
+            limit :limit
+            """, nativeQuery = true)
+    List<RawEvent> findUnindexed(@Param("datasetId") Long datasetId, @Param("sourceId") Long sourceId,
+                                 @Param("afterId") long afterId, @Param("upToId") long upToId, @Param("limit") int limit);
+
     @Query("select r.payloadHash from RawEvent r where r.source = :source and r.payloadHash in :hashes")
     Set<String> findExistingPayloadHashes(Source source, Collection<String> hashes);
 }
@@ -6,6 +6,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -15,4 +17,13 @@ public interface RelationshipRepository extends JpaRepository<Relationship, Long
 
     @Query("select r from Relationship r where r.source.dataset.id = :datasetId")
     List<Relationship> findByDatasetId(Long datasetId);
+
+    @Query("select count(r) > 0 from Relationship r where r.source.dataset.id = :datasetId")
+    boolean existsByDatasetId(Long datasetId);
+
+    @Query("select r from Relationship r where r.source.dataset.id = :datasetId and r.ingestedAt >= :since")
+    List<Relationship> findByDatasetIdIngestedSince(Long datasetId, Instant since);
+
+    @Query("select r from Relationship r where r.source.dataset.id = :datasetId and (r.fromId in :ids or r.toId in :ids)")
+    List<Relationship> findByDatasetIdAndEndpointIn(Long datasetId, Collection<String> ids);
 }
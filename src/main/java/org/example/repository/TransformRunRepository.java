@@ -2,13 +2,48 @@ package org.example.repository;
 
 import org.example.models.entity.Dataset;
 import org.example.models.entity.TransformRun;
+import org.example.models.enums.RunStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface TransformRunRepository extends JpaRepository<TransformRun, Long> {
 
     List<TransformRun> findAllByDatasetOrderByStartedAtDesc(Dataset dataset);
+
+    Optional<TransformRun> findFirstByDataset_IdAndRunStatusOrderByStartedAtDesc(Long datasetId, RunStatus runStatus);
+
+    Optional<TransformRun> findByTransformRunUidAndDataset_Id(String transformRunUid, Long datasetId);
+
+    @Modifying
+    @Transactional
+    @Query("""
+            update TransformRun r
+            set r.componentsTotal = :componentsTotal, r.componentsDone = :componentsDone,
+                r.rowsIn = :rowsIn, r.rowsOut = :rowsOut, r.progressAt = :progressAt
+            where r.id = :id
+            """)
+    int updateProgress(@Param("id") Long id,
+                       @Param("componentsTotal") Integer componentsTotal,
+                       @Param("componentsDone") Integer componentsDone,
+                       @Param("rowsIn") Integer rowsIn,
+                       @Param("rowsOut") Integer rowsOut,
+                       @Param("progressAt") Instant progressAt);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update integration.transform_run set cancel_requested = true where transform_run_id = :id and run_status = 'RUNNING'",
+            nativeQuery = true)
+    int requestCancel(@Param("id") Long id);
+
+    @Query(value = "select cancel_requested from integration.transform_run where transform_run_id = :id", nativeQuery = true)
+    boolean isCancelRequested(@Param("id") Long id);
 }
@@ -12,8 +12,9 @@ import org.example.models.entity.Source;
 import org.example.models.entity.UnifiedRow;
 import org.example.repository.DatasetRepository;
 import org.example.repository.SourceRepository;
-import org.example.repository.UnifiedRowRepository;
 import org.example.repository.UserRepository;
+import org.example.service.transform.UnifiedRowPartitions;
+import org.example.service.transform.UnifiedRowSink;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
@@ -29,8 +30,9 @@ public class DataIntegrationService {
     private final List<DataSourceAdapter> adapters;
     private final SourceRepository sourceRepository;
     private final DatasetRepository datasetRepository;
-    private final UnifiedRowRepository unifiedRowRepository;
     private final UserRepository userRepository;
+    private final UnifiedRowSink unifiedRowSink;
+    private final UnifiedRowPartitions unifiedRowPartitions;
 
     @Transactional
     public Map<String, Object> runIntegration(IntegrationConfigDTO config, String userEmail) {
@@ -159,26 +161,21 @@ public class DataIntegrationService {
     public int load(List<UnifiedRecord> records, Dataset dataset, Source source) {
         log.info("Loading {} records into dataset: {}", records.size(), dataset.getName());
 
-        int loadedCount = 0;
-
+        unifiedRowPartitions.ensurePartition(dataset.getId());
+        UnifiedRowSink.Writer writer = unifiedRowSink.open(false);
         for (UnifiedRecord record : records) {
-            try {
-                UnifiedRow row = new UnifiedRow();
-                row.setUnifiedRowUid(UUID.randomUUID().toString());
-                row.setDataset(dataset);
-                row.setSource(source);
-                row.setRecordKey(record.getRecordKey());
-                row.setData(record.getFields());
-                row.setIngestedAt(Instant.now());
-
-                unifiedRowRepository.save(row);
-                loadedCount++;
-
-            } catch (Exception e) {
-                log.error("Error saving record {}: {}", record.getRecordKey(), e.getMessage());
-            }
+            UnifiedRow row = new UnifiedRow();
+            row.setUnifiedRowUid(UUID.randomUUID().toString());
+            row.setDataset(dataset);
+            row.setSource(source);
+            row.setRecordKey(record.getRecordKey());
+            row.setData(record.getFields());
+            row.setIngestedAt(Instant.now());
+            writer.add(row);
         }
+        writer.flush();
 
+        int loadedCount = (int) writer.written();
         log.info("Successfully loaded {} out of {} records", loadedCount, records.size());
         return loadedCount;
     }
@@ -1,5 +1,6 @@
 package org.example.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.example.models.entity.*;
 import org.slf4j.Logger;
@@ -10,7 +11,7 @@ import org.example.models.dto.DatasetFieldDTO;
 import org.example.models.dto.DatasetMappingDTO;
 import org.example.models.dto.DatasetMappingView;
 import org.example.models.dto.RawDataPage;
-import org.example.models.dto.RawDataRecordDTO;
+import org.example.models.dto.UnifiedRowPage;
 import org.example.models.dto.TableSelectionDTO;
 import org.example.models.dto.TransformRunStatusDTO;
 import org.example.models.dto.PipelineStatusResponse;
@@ -22,6 +23,7 @@ import org.example.models.dto.MappingEditorDataResponse;
 import org.example.models.dto.MappingEditorSaveRequest;
 import org.example.models.enums.DataType;
 import org.example.models.enums.DatasetStatus;
+import org.example.models.enums.RunStatus;
 import org.example.models.enums.TransformType;
 import org.example.repository.DatasetFieldRepository;
 import org.example.repository.DatasetMappingRepository;
@@ -35,21 +37,30 @@ import org.example.repository.UserRepository;
 import org.example.repository.RelationshipRepository;
 import org.example.utils.AppUtils;
 import org.example.service.ingestion.IngestionService;
-import org.example.service.ingestion.DestinationOutputService;
-import org.springframework.http.HttpHeaders;
+import org.example.service.delivery.DestinationDeliveries;
+import org.example.service.delivery.DestinationDeliveryService;
+import org.example.service.export.ExportColumn;
+import org.example.service.export.ExportFormat;
+import org.example.service.export.ExportRowWriter;
+import org.example.service.export.ExportStreams;
+import org.example.service.export.UnifiedRowReader;
+import org.example.service.explore.DatasetRowPager;
+import org.example.service.transform.UnifiedRowPartitions;
+import org.example.service.transform.expression.ExpressionCompiler;
+import org.example.service.transform.expression.ExpressionException;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.Instant;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -78,10 +89,14 @@ public class DatasetService {
     private final UnifiedRowRepository unifiedRowRepository;
     private final TransformRunRepository transformRunRepository;
     private final SourceService sourceService;
-    private final DestinationOutputService destinationOutputService;
+    private final DestinationDeliveryService destinationDeliveryService;
     private final RelationshipRepository relationshipRepository;
     private final IngestionService ingestionService;
     private final TransformService transformService;
+    private final UnifiedRowPartitions unifiedRowPartitions;
+    private final UnifiedRowReader unifiedRowReader;
+    private final DatasetRowPager datasetRowPager;
+    private final ObjectMapper objectMapper;
 
     public Dataset createDataset(DatasetDTO dto, Long userId) {
         ApplicationUser owner = userRepository.findById(userId)
@@ -98,6 +113,7 @@ public class DatasetService {
     public DatasetField addField(Long datasetId, DatasetFieldDTO fieldDTO, String userEmail) {
         Dataset dataset = getDatasetForUser(datasetId, requireUser(userEmail).getEmail());
         DataType dataType = parseDataType(fieldDTO.dtype());
+        validateExpression(fieldDTO.defaultExpr(), "default expression");
 
         DatasetField field = new DatasetField();
         field.setDatasetFieldUid(AppUtils.generateUUID());
@@ -136,13 +152,14 @@ public class DatasetService {
 
         String resolvedPath = StringUtils.hasText(dto.srcPath()) ? dto.srcPath() : dto.srcJsonPath();
         TransformType transformType = parseTransformType(dto.transformType());
+        validateExpression(dto.transformSql(), "transform expression");
 
         DatasetMapping datasetMapping = DatasetMapping.builder()
                 .datasetMappingUid(AppUtils.generateUUID())
                 .dataset(dataset)
                 .source(source)
                 .datasetField(datasetField)
-                .srcJsonPath(StringUtils.hasText(dto.srcJsonPath()) ? dto.srcJsonPath() : resolvedPath)
+                .srcJsonPath(StringUtils.hasText(dto.srcJsonPath()) ? dto.srcJsonPath() : (resolvedPath != null ? resolvedPath : ""))
                 .srcPath(resolvedPath != null ? resolvedPath : "")
                 .transformType(transformType)
                 .transformSql(dto.transformSql())
@@ -209,8 +226,9 @@ public class DatasetService {
 
         String resolvedPath = StringUtils.hasText(dto.srcPath()) ? dto.srcPath() : dto.srcJsonPath();
         TransformType transformType = parseTransformType(dto.transformType());
+        validateExpression(dto.transformSql(), "transform expression");
 
-        mapping.setSrcJsonPath(StringUtils.hasText(dto.srcJsonPath()) ? dto.srcJsonPath() : resolvedPath);
+        mapping.setSrcJsonPath(StringUtils.hasText(dto.srcJsonPath()) ? dto.srcJsonPath() : (resolvedPath != null ? resolvedPath : ""));
         mapping.setSrcPath(resolvedPath != null ? resolvedPath : "");
         mapping.setTransformType(transformType);
         mapping.setTransformSql(dto.transformSql());
@@ -219,6 +237,18 @@ public class DatasetService {
         return datasetMappingRepository.save(mapping);
     }
 
+    /**
+     * Rejects an expression that would not compile, so it fails when saved instead of being skipped by
+     * every transform.
+     */
+    private void validateExpression(String expression, String description) {
+        try {
+            ExpressionCompiler.compile(expression);
+        } catch (ExpressionException exception) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + description + ": " + exception.getMessage());
+        }
+    }
+
     private TransformType parseTransformType(String raw) {
         if (!StringUtils.hasText(raw)) {
             return TransformType.NONE;
@@ -490,6 +520,7 @@ public class DatasetService {
         if (!field.getDataset().getId().equals(dataset.getId())) {
             throw new IllegalArgumentException("Field does not belong to dataset");
         }
+        validateExpression(request.defaultExpr(), "default expression");
         field.setName(request.name());
         field.setDtype(parseDataType(request.dtype()));
         field.setIsNullable(request.isNullable());
@@ -595,6 +626,7 @@ public class DatasetService {
             integrationConnectionRepository.saveAll(connections);
         }
 
+        unifiedRowPartitions.drop(datasetId);
         datasetRepository.delete(dataset);
     }
 
@@ -624,23 +656,54 @@ public class DatasetService {
                 .collect(Collectors.toList());
     }
 
-    public RawDataPage getRawData(Long datasetId, int page, int size, String userEmail) {
+    /**
+     * A page of up to 100 of the dataset's raw events, newest first; pass the returned cursor to continue.
+     */
+    public RawDataPage getRawData(Long datasetId, String cursor, int size, String userEmail) {
+        return rawData(datasetId, cursor, Math.min(Math.max(size, 1), 100), userEmail);
+    }
+
+    /**
+     * Like {@link #getRawData}, but returns as many events as the preview asks for, as it always has.
+     */
+    public RawDataPage previewRawData(Long datasetId, String cursor, int limit, String userEmail) {
+        return rawData(datasetId, cursor, Math.max(limit, 1), userEmail);
+    }
+
+    private RawDataPage rawData(Long datasetId, String cursor, int size, String userEmail) {
         Dataset dataset = getDatasetForUser(datasetId, userEmail);
-        int safePage = Math.max(page, 0);
-        int safeSize = Math.min(Math.max(size, 1), 100);
-        Pageable pageable = PageRequest.of(safePage, safeSize);
-        Page<RawEvent> events = rawEventRepository.findByDataset_Id(dataset.getId(), pageable);
-
-        List<RawDataRecordDTO> records = events.getContent().stream()
-                .map(event -> new RawDataRecordDTO(
-                        event.getRawEventUid(),
-                        event.getSource() != null ? event.getSource().getName() : null,
-                        event.getPayload(),
-                        event.getCreatedAt()
-                ))
-                .toList();
+        try {
+            return datasetRowPager.rawEvents(dataset.getId(), cursor, size);
+        } catch (IllegalArgumentException exception) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exception.getMessage());
+        }
+    }
+
+    /**
+     * A page of up to 500 of the dataset's unified rows, most recently ingested first; pass the returned
+     * cursor to continue.
+     */
+    public UnifiedRowPage getUnifiedRows(Long datasetId, boolean includeExcluded, String cursor, int size,
+                                         String userEmail) {
+        return unifiedRows(datasetId, includeExcluded, cursor, Math.min(Math.max(size, 1), 500), userEmail);
+    }
 
-        return new RawDataPage(records, events.getTotalElements(), events.getTotalPages(), events.getNumber(), events.getSize());
+    /**
+     * Like {@link #getUnifiedRows} for non-excluded rows, but returns as many as the preview asks for, as it
+     * always has.
+     */
+    public UnifiedRowPage previewUnifiedRows(Long datasetId, String cursor, int limit, String userEmail) {
+        return unifiedRows(datasetId, false, cursor, Math.max(limit, 1), userEmail);
+    }
+
+    private UnifiedRowPage unifiedRows(Long datasetId, boolean includeExcluded, String cursor, int size,
+                                       String userEmail) {
+        Dataset dataset = getDatasetForUser(datasetId, userEmail);
+        try {
+            return datasetRowPager.unifiedRows(dataset.getId(), includeExcluded, cursor, size);
+        } catch (IllegalArgumentException exception) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exception.getMessage());
+        }
     }
 
     public List<DatasetField> getFields(Long datasetId) {
@@ -658,124 +721,105 @@ public class DatasetService {
                         run.getRowsOut(),
                         run.getErrorMessage(),
                         run.getStartedAt(),
-                        run.getEndedAt()
+                        run.getEndedAt(),
+                        run.getComponentsTotal(),
+                        run.getComponentsDone(),
+                        estimateRemainingSeconds(run),
+                        Boolean.TRUE.equals(run.getCancelRequested())
                 ))
                 .orElse(null);
     }
 
-    @Transactional(readOnly = true)
-    public ExportResultDTO exportUnified(Long datasetId, String userEmail) {
+    /**
+     * Flags a running transform for cancellation; it stops at its next chunk boundary. Returns false when
+     * the run has already finished.
+     */
+    public boolean requestTransformCancel(Long datasetId, String runUid, String userEmail) {
         Dataset dataset = getDatasetForUser(datasetId, requireUser(userEmail).getEmail());
-        List<DatasetField> fields = orderedFields(datasetId);
-        List<UnifiedRow> sortedRows = unifiedRowRepository.findOrderedNonExcluded(dataset.getId());
-        sortedRows = sortedRows.stream().sorted(unifiedRowOrdering(fields)).toList();
-        List<Map<String, Object>> rows = sortedRows.stream()
-                .map(UnifiedRow::getData)
-                .filter(Objects::nonNull)
-                .toList();
+        TransformRun run = transformRunRepository.findByTransformRunUidAndDataset_Id(runUid, dataset.getId())
+                .orElseThrow(() -> new IllegalArgumentException("Transform run not found: " + runUid));
+        return transformRunRepository.requestCancel(run.getId()) > 0;
+    }
 
-        Map<String, Object> destinationResults = integrationConnectionRepository.findAllByDataset_Id(dataset.getId()).stream()
-                .filter(conn -> conn.getDestination() != null)
-                .collect(Collectors.toMap(
-                        conn -> conn.getDestination().getName(),
-                        conn -> Map.of(
-                                "destinationType", conn.getDestination().getType().name(),
-                                "status", "PENDING"
-                        ),
-                        (a, b) -> a,
-                        LinkedHashMap::new
-                ));
+    private Long estimateRemainingSeconds(TransformRun run) {
+        Integer total = run.getComponentsTotal();
+        Integer done = run.getComponentsDone();
+        if (run.getRunStatus() != RunStatus.RUNNING || run.getStartedAt() == null || run.getProgressAt() == null
+                || total == null || done == null || done <= 0 || done >= total) {
+            return null;
+        }
+        long elapsedMillis = Duration.between(run.getStartedAt(), run.getProgressAt()).toMillis();
+        return elapsedMillis * (total - done) / done / 1000;
+    }
+
+    /**
+     * Queues a delivery of the dataset's non-excluded unified rows to each of its destinations and reports
+     * their state; the rows are delivered in the background, see {@link #deliveryStatus}.
+     */
+    public ExportResultDTO exportUnified(Long datasetId, String userEmail) {
+        Dataset dataset = getDatasetForUser(datasetId, requireUser(userEmail).getEmail());
+        List<ExportColumn> columns = ExportColumn.of(datasetFieldRepository.findAllByDataset_Id(datasetId));
+        boolean hasRows = unifiedRowReader.hasRows(dataset.getId(), false);
 
+        Map<String, Object> destinationResults = new LinkedHashMap<>();
         long totalSent = 0;
         for (IntegrationConnection connection : integrationConnectionRepository.findAllByDataset_Id(dataset.getId())) {
-            if (connection.getDestination() == null) {
+            Source destination = connection.getDestination();
+            if (destination == null || destinationResults.containsKey(destination.getName())) {
                 continue;
             }
-            Source destination = connection.getDestination();
-            destinationResults.putIfAbsent(destination.getName(), new LinkedHashMap<>());
-            if (rows.isEmpty()) {
+            if (!hasRows) {
                 destinationResults.put(destination.getName(), Map.of("status", "NO_ROWS", "destinationType", destination.getType().name()));
                 continue;
             }
-            try {
-                // reuse ingestion output writer for unified rows
-                destinationOutputService.write(destination, rows);
-                destinationResults.put(destination.getName(), Map.of(
-                        "status", "WRITTEN",
-                        "destinationType", destination.getType().name(),
-                        "rows", rows.size()
-                ));
-                totalSent += rows.size();
-            } catch (Exception exception) {
-                destinationResults.put(destination.getName(), Map.of(
-                        "status", "FAILED",
-                        "destinationType", destination.getType().name(),
-                        "error", exception.getMessage()
-                ));
-            }
+            DestinationDeliveries.Delivery delivery = destinationDeliveryService.deliverDataset(dataset, destination, columns);
+            destinationResults.put(destination.getName(), destinationDeliveryService.describe(delivery));
+            totalSent += delivery.rowsDelivered();
         }
 
         return new ExportResultDTO(totalSent, destinationResults);
     }
 
-    public ResponseEntity<byte[]> exportUnifiedAsCsv(Long datasetId, String userEmail) {
+    /**
+     * The latest delivery of the dataset's unified rows to each destination.
+     */
+    public ExportResultDTO deliveryStatus(Long datasetId, String userEmail) {
+        Dataset dataset = getDatasetForUser(datasetId, requireUser(userEmail).getEmail());
+        return destinationDeliveryService.status(dataset.getId());
+    }
+
+    /**
+     * Streams the dataset's non-excluded unified rows in {@code format}, in row id order, from a database
+     * cursor into the response; one column per dataset field, typed by the field's type.
+     *
+     * @param gzip whether to gzip the file; {@code null} for the format's default
+     */
+    public ResponseEntity<StreamingResponseBody> exportUnifiedFile(Long datasetId, String userEmail,
+                                                                   ExportFormat format, Boolean gzip) {
         Dataset dataset = getDatasetForUser(datasetId, requireUser(userEmail).getEmail());
-        List<DatasetField> fields = orderedFields(datasetId);
-        List<UnifiedRow> rows = unifiedRowRepository.findOrderedNonExcluded(dataset.getId());
-        rows = rows.stream().sorted(unifiedRowOrdering(fields)).toList();
-        log.info("[export-csv] Dataset {} SQL: select * from integration.unified_row where dataset_id = {} and (is_excluded = false or is_excluded is null) order by ingested_at asc, unified_row_id asc", datasetId, datasetId);
-        log.info("[export-csv] About to write {} unified rows to CSV for dataset {}", rows.size(), datasetId);
-        rows.stream().findFirst().ifPresent(sample -> log.info("[export-csv] Sample unified row: {}", sample.getData()));
-
-        if (rows.isEmpty()) {
+        List<ExportColumn> columns = ExportColumn.of(datasetFieldRepository.findAllByDataset_Id(datasetId));
+        if (!unifiedRowReader.hasRows(dataset.getId(), false)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No unified rows available to export. Run a transform first.");
         }
 
-        StringBuilder builder = new StringBuilder();
-        List<String> headers = fields.stream().map(DatasetField::getName).toList();
-        builder.append(String.join(",", headers)).append('\n');
-
-        for (UnifiedRow row : rows) {
-            Map<String, Object> data = row.getData();
-            List<String> values = new ArrayList<>();
-            for (DatasetField field : fields) {
-                Object raw = null;
-                if (data != null) {
-                    raw = data.get(String.valueOf(field.getId()));
-                    if (raw == null) {
-                        raw = data.get(field.getName());
+        boolean compress = format.gzip(gzip);
+        StreamingResponseBody body = out -> {
+            try (ExportRowWriter writer = format.open(out, compress, columns, objectMapper)) {
+                Object[] values = new Object[columns.size()];
+                long written = unifiedRowReader.stream(dataset.getId(), false, data -> {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = columns.get(i).read(data);
                     }
-                }
-                String text = raw == null ? "" : raw.toString();
-                String sanitized = text.replace("\"", "\"\"");
-                if (sanitized.contains(",")) {
-                    sanitized = '"' + sanitized + '"';
-                }
-                values.add(sanitized);
+                    try {
+                        writer.write(values);
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+                log.info("[export-{}] Streamed {} unified rows of dataset {}", format.extension(), written, datasetId);
             }
-            builder.append(String.join(",", values)).append('\n');
-        }
-
-        byte[] payload = builder.toString().getBytes(StandardCharsets.UTF_8);
-        String filename = buildFilename(dataset.getName(), "csv");
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
-                .contentType(MediaType.TEXT_PLAIN)
-                .body(payload);
-    }
-
-    private List<DatasetField> orderedFields(Long datasetId) {
-        return datasetFieldRepository.findAllByDataset_Id(datasetId).stream()
-                .sorted(Comparator
-                        .comparing((DatasetField field) -> Optional.ofNullable(field.getPosition()).orElse(Integer.MAX_VALUE))
-                        .thenComparing(DatasetField::getId))
-                .toList();
-    }
-
-    private Comparator<UnifiedRow> unifiedRowOrdering(List<DatasetField> fields) {
-        return Comparator
-                .comparing((UnifiedRow row) -> Optional.ofNullable(row.getId()).orElse(0L))
-                .thenComparing(row -> Optional.ofNullable(row.getRecordKey()).orElse(""));
+        };
+        return ExportStreams.download(buildFilename(dataset.getName(), format.extension()), format.mediaType(), compress, body);
     }
 
     private Long findFieldId(List<DatasetField> fields, String targetName) {
@@ -879,7 +923,9 @@ public class DatasetService {
         dataset.setCreatedAt(Instant.now());
         dataset.setUpdatedAt(Instant.now());
 
-        return datasetRepository.save(dataset);
+        Dataset saved = datasetRepository.save(dataset);
+        unifiedRowPartitions.ensurePartition(saved.getId());
+        return saved;
     }
 
     private ApplicationUser requireUser(String userEmail) {
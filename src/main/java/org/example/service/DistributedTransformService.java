@@ -0,0 +1,182 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.models.entity.Dataset;
+import org.example.models.entity.TransformRun;
+import org.example.models.enums.DatasetStatus;
+import org.example.models.enums.RunStatus;
+import org.example.repository.DatasetRepository;
+import org.example.repository.TransformRunRepository;
+import org.example.service.transform.TransformWorkQueue;
+import org.example.service.transform.UnifiedRowPartitions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Worker and coordinator of distributed transforms, active on every application node. The worker leases
+ * work units planned by {@link TransformService#startDistributedTransform(Long)} and builds their rows; the
+ * coordinator rolls unit progress up into the {@link TransformRun} and, once every unit is done, publishes
+ * the shared staging table. Several workers against one database, on one node or many, split a run
+ * between them.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DistributedTransformService {
+
+    private final TransformService transformService;
+    private final TransformWorkQueue transformWorkQueue;
+    private final TransformRunRepository transformRunRepository;
+    private final DatasetRepository datasetRepository;
+    private final UnifiedRowPartitions unifiedRowPartitions;
+    private final PlatformTransactionManager transactionManager;
+
+    private final String workerId = workerId();
+
+    @Value("${transform.worker.enabled:true}")
+    private boolean workerEnabled;
+
+    @Value("${transform.worker.lease-seconds:60}")
+    private int leaseSeconds;
+
+    @Value("${transform.worker.max-attempts:3}")
+    private int maxAttempts;
+
+    /**
+     * Releases the cached plan of a run that has finished, then works through the queue until no unit is
+     * available. The plan of the next unit's run is prepared before the unit is leased, since preparing a
+     * large dataset can outlast the lease; a unit whose plan could not be prepared is released with the
+     * error so its attempts still run out.
+     */
+    @Scheduled(fixedDelayString = "${transform.worker.poll-interval-ms:2000}")
+    public void work() {
+        transformService.evictFinishedPlan();
+        if (!workerEnabled) {
+            return;
+        }
+        Optional<Long> nextRun;
+        while ((nextRun = transformWorkQueue.nextRunId(maxAttempts)).isPresent()) {
+            Long runId = nextRun.get();
+            String prepareError = null;
+            try {
+                transformService.preparePlan(runId);
+            } catch (RuntimeException exception) {
+                log.error("[transform-worker] Could not prepare the plan of run {}", runId, exception);
+                prepareError = exception.getMessage();
+            }
+            Optional<TransformWorkQueue.WorkUnit> next = transformWorkQueue.lease(runId, workerId, leaseSeconds, maxAttempts);
+            if (next.isEmpty()) {
+                continue;
+            }
+            TransformWorkQueue.WorkUnit unit = next.get();
+            if (prepareError != null) {
+                transformWorkQueue.release(unit, workerId, prepareError, maxAttempts);
+                continue;
+            }
+            log.info("[transform-worker] {} leased unit {} of run {} (attempt {})",
+                    workerId, unit.unitIndex(), unit.runId(), unit.attempts());
+            try {
+                transformService.runWorkUnit(unit, workerId,
+                        () -> transformWorkQueue.heartbeat(unit, workerId, leaseSeconds));
+            } catch (CancellationException cancelled) {
+                log.info("[transform-worker] Stopped unit {} of run {}: {}", unit.unitIndex(), unit.runId(), cancelled.getMessage());
+                transformWorkQueue.release(unit, workerId, cancelled.getMessage(), maxAttempts);
+            } catch (RuntimeException exception) {
+                log.error("[transform-worker] Unit {} of run {} failed", unit.unitIndex(), unit.runId(), exception);
+                transformWorkQueue.release(unit, workerId, exception.getMessage(), maxAttempts);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${transform.coordinator.poll-interval-ms:5000}")
+    public void coordinate() {
+        if (!workerEnabled) {
+            return;
+        }
+        transformWorkQueue.failExpired(maxAttempts);
+        for (Long runId : transformWorkQueue.activeRunIds()) {
+            try {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> advance(runId));
+            } catch (RuntimeException exception) {
+                log.error("[transform-coordinator] Could not advance transform run {}", runId, exception);
+            }
+        }
+    }
+
+    /**
+     * Runs under the run's row lock: records progress and finishes the run once it is cancelled, has a
+     * failed unit, or has every unit done.
+     */
+    private void advance(Long runId) {
+        if (!transformWorkQueue.lockRun(runId)) {
+            return;
+        }
+        TransformRun run = transformRunRepository.findById(runId).orElse(null);
+        if (run == null) {
+            return;
+        }
+        TransformWorkQueue.RunSummary summary = transformWorkQueue.summarize(runId);
+        UnifiedRowPartitions.Stage stage = new UnifiedRowPartitions.Stage(run.getDataset().getId(), run.getStageTable());
+
+        run.setComponentsDone(summary.componentsDone());
+        run.setRowsIn(summary.rowsIn());
+        run.setRowsOut(summary.rowsOut());
+        run.setProgressAt(Instant.now());
+
+        if (Boolean.TRUE.equals(run.getCancelRequested())) {
+            transformWorkQueue.cancelRemaining(runId);
+            unifiedRowPartitions.dropStage(stage);
+            run.setRunStatus(RunStatus.CANCELLED);
+            run.setEndedAt(Instant.now());
+            run.setErrorMessage("Transform run " + run.getTransformRunUid() + " was cancelled");
+            log.info("[transform-coordinator] Cancelled run {} after {} of {} units", run.getTransformRunUid(),
+                    summary.done(), summary.units());
+        } else if (summary.failed() > 0) {
+            transformWorkQueue.cancelRemaining(runId);
+            unifiedRowPartitions.dropStage(stage);
+            run.setRunStatus(RunStatus.FAILED);
+            run.setEndedAt(Instant.now());
+            run.setErrorMessage(summary.errorMessage());
+            log.warn("[transform-coordinator] Run {} failed: {} of {} units failed", run.getTransformRunUid(),
+                    summary.failed(), summary.units());
+        } else if (summary.complete()) {
+            unifiedRowPartitions.publish(stage);
+            run.setRunStatus(RunStatus.SUCCESS);
+            run.setEndedAt(Instant.now());
+            run.setErrorMessage(null);
+            Dataset dataset = datasetRepository.findById(stage.datasetId()).orElse(null);
+            if (dataset != null) {
+                dataset.setStatus(DatasetStatus.FINISHED);
+                dataset.setUpdatedAt(Instant.now());
+                datasetRepository.save(dataset);
+            }
+            log.info("[transform-coordinator] Published run {} with rowsIn={} rowsOut={}", run.getTransformRunUid(),
+                    summary.rowsIn(), summary.rowsOut());
+        }
+        transformRunRepository.save(run);
+        if (run.getRunStatus() != RunStatus.RUNNING) {
+            transformService.evictPlan(runId);
+        }
+    }
+
+    private static String workerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException exception) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
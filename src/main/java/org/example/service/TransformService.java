@@ -4,34 +4,41 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.models.entity.Dataset;
 import org.example.models.entity.DatasetField;
-import org.example.models.entity.DatasetMapping;
-import org.example.models.entity.RawEvent;
 import org.example.models.entity.Relationship;
 import org.example.models.entity.Source;
 import org.example.models.entity.TransformRun;
 import org.example.models.entity.UnifiedRow;
 import org.example.models.enums.RunStatus;
 import org.example.models.enums.DatasetStatus;
-import org.example.models.enums.TransformType;
+import org.example.models.enums.TransformMode;
 import org.example.repository.DatasetFieldRepository;
 import org.example.repository.DatasetMappingRepository;
 import org.example.repository.DatasetRepository;
 import org.example.repository.RelationshipRepository;
-import org.example.repository.RawEventRepository;
+import org.example.repository.SourceRepository;
 import org.example.repository.TransformRunRepository;
-import org.example.repository.UnifiedRowRepository;
 import org.example.utils.AppUtils;
+import org.example.service.transform.AffectedComponents;
+import org.example.service.transform.FieldMappingPlan;
 import org.example.service.transform.GraphBuilder;
+import org.example.service.transform.RecordIndex;
 import org.example.service.transform.RecordMerger;
-import org.example.service.transform.TimestampNormalizer;
+import org.example.service.transform.TransformInputReader;
+import org.example.service.transform.TransformWorkQueue;
+import org.example.service.transform.UnifiedRowPartitions;
+import org.example.service.transform.UnifiedRowSink;
 import org.example.service.transform.UnifiedPayloadNormalizer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -41,8 +48,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Queue;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -50,454 +66,771 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class TransformService {
 
+    private static final int PAYLOAD_CHUNK_SIZE = 500;
+    private static final String PRIMARY_COMPONENT_PREFIX = "primary:";
+    private static final String RECORD_COMPONENT_PREFIX = "record:";
+    private static final String PUBLISH_MODE_SWAP = "swap";
+
     private final DatasetRepository datasetRepository;
     private final DatasetMappingRepository datasetMappingRepository;
     private final DatasetFieldRepository datasetFieldRepository;
     private final RelationshipRepository relationshipRepository;
-    private final RawEventRepository rawEventRepository;
-    private final UnifiedRowRepository unifiedRowRepository;
+    private final SourceRepository sourceRepository;
     private final TransformRunRepository transformRunRepository;
+    private final TransformInputReader transformInputReader;
+    private final UnifiedRowSink unifiedRowSink;
+    private final UnifiedRowPartitions unifiedRowPartitions;
+    private final TransformWorkQueue transformWorkQueue;
+    private final AffectedComponents affectedComponents;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Object planCacheLock = new Object();
+    private CachedPlan cachedPlan;
+
+    /**
+     * Threads used to merge components; 1 keeps the sequential path, 0 or less uses every core.
+     */
+    @Value("${transform.parallelism:1}")
+    private int transformParallelism;
+
+    @Value("${transform.parallel-chunk-size:512}")
+    private int parallelChunkSize;
+
+    /**
+     * Maps the records of datasets without relationships a page at a time, column by column (see
+     * {@link FieldMappingPlan#applyColumns}); false maps them one record at a time.
+     */
+    @Value("${transform.columnar.enabled:true}")
+    private boolean columnarMapping;
+
+    /**
+     * How a full transform publishes: {@code swap} (staging table and partition swap) or {@code upsert} (by
+     * component key, in place). Only a swap leaves the published rows untouched when a full run fails or is
+     * cancelled; an upsert run committing chunk by chunk leaves the chunks it already committed.
+     */
+    @Value("${transform.publish-mode:swap}")
+    private String publishMode;
+
+    /**
+     * Components per work unit of a distributed transform.
+     */
+    @Value("${transform.distributed.unit-size:2048}")
+    private int distributedUnitSize;
 
-    @Transactional
     public TransformRun startTransform(Long datasetId) {
+        return startTransform(datasetId, TransformMode.FULL);
+    }
+
+    /**
+     * Rebuilds the dataset's unified rows. {@link TransformMode#INCREMENTAL} only replaces the rows of
+     * components touched by raw events or relationships created since the last successful run, reading just
+     * those components' records and relationships (see {@link #prepareIncremental}), and falls back to a
+     * full rebuild when there is no such run or the existing rows cannot be replaced per component. Mapping
+     * edits are not detected; run a full transform after changing mappings.
+     * <p>
+     * A full run loads a staging table that replaces the dataset's partition once it finishes, so a failed or
+     * cancelled run leaves the published rows untouched. Incremental runs, and full runs in {@code upsert}
+     * publish mode, upsert rows by component key, so unchanged rows are not rewritten and exclusions
+     * survive; a full upsert run then removes the rows of components it no longer produced. A full upsert
+     * run that does not finish keeps the chunks it committed, which its error message says.
+     * <p>
+     * Progress is recorded on the run at every chunk boundary, where a pending cancel request stops the
+     * run as {@link RunStatus#CANCELLED}. Called outside a transaction, each chunk of rows is committed on
+     * its own and a swap-mode run that does not finish discards its staging table; called inside one, the whole
+     * run shares the caller's transaction as before.
+     */
+    public TransformRun startTransform(Long datasetId, TransformMode mode) {
         Dataset dataset = datasetRepository.findById(datasetId)
                 .orElseThrow(() -> new IllegalArgumentException("Dataset not found: " + datasetId));
 
-        List<RawEvent> events = rawEventRepository.findByDataset_Id(datasetId);
-        Map<String, List<RecordContext>> recordsById = indexRecords(events);
-        List<Relationship> relationships = relationshipRepository.findByDatasetId(datasetId);
-
-        log.info("[transform] Loaded {} raw events and {} relationships for dataset {}", events.size(), relationships.size(), datasetId);
-
-        String primaryRecordType = Optional.ofNullable(dataset.getPrimaryRecordType())
-                .filter(StringUtils::hasText)
-                .map(this::normalizeType)
-                .orElse(null);
-
-        if (!StringUtils.hasText(primaryRecordType)) {
-            primaryRecordType = determinePrimaryType(relationships, recordsById, events)
-                    .map(this::normalizeType)
-                    .orElseGet(() -> fallbackPrimaryType(events));
-        }
-
-        if (!StringUtils.hasText(primaryRecordType)) {
-            primaryRecordType = "default";
-            log.warn("[transform] Falling back to default primary record type for dataset {} because none could be detected",
-                    datasetId);
-        }
+        Instant since = mode == TransformMode.INCREMENTAL
+                ? transformRunRepository.findFirstByDataset_IdAndRunStatusOrderByStartedAtDesc(datasetId, RunStatus.SUCCESS)
+                        .map(TransformRun::getStartedAt)
+                        .orElse(null)
+                : null;
 
-        dataset.setPrimaryRecordType(primaryRecordType.trim());
-        dataset.setUpdatedAt(Instant.now());
-        datasetRepository.save(dataset);
+        TransformRun run = newRun(dataset, mode);
 
-        log.info("[transform] Using primaryRecordType='{}' for dataset {}", dataset.getPrimaryRecordType(), datasetId);
-
-        TransformRun run = new TransformRun();
-        run.setTransformRunUid(AppUtils.generateUUID());
-        run.setDataset(dataset);
-        run.setRunStatus(RunStatus.RUNNING);
-        run.setStartedAt(Instant.now());
-        run = transformRunRepository.save(run);
-
-        int rowsIn = 0;
-        int rowsOut = 0;
+        RunProgress progress = new RunProgress();
+        boolean commitChunks = !TransactionSynchronizationManager.isActualTransactionActive();
+        UnifiedRowPartitions.Stage stage = null;
+        UnifiedRowSink.Writer writer = null;
         try {
-            unifiedRowRepository.deleteByDataset(dataset);
-            List<DatasetField> fields = datasetFieldRepository.findAllByDataset_Id(datasetId)
-                    .stream()
-                    .sorted(Comparator.comparing(DatasetField::getPosition, Comparator.nullsLast(Integer::compareTo)))
-                    .toList();
-
-            List<DatasetMapping> mappingList = datasetMappingRepository.findAllByDataset(dataset);
-            Map<Long, Map<Long, List<DatasetMapping>>> mappingsBySource = mappingList
-                    .stream()
-                    .collect(Collectors.groupingBy(mapping -> mapping.getSource().getId(),
-                            Collectors.groupingBy(mapping -> mapping.getDatasetField().getId())));
-            Map<Long, List<DatasetMapping>> mappingsByField = mappingList.stream()
-                    .collect(Collectors.groupingBy(mapping -> mapping.getDatasetField().getId()));
-
-            String normalizedPrimary = normalizeType(primaryRecordType);
-
-            List<Relationship> relevantRelations = relationships.stream()
-                    .sorted(Comparator
-                            .comparing((Relationship rel) -> primaryKey(rel, normalizedPrimary), Comparator.nullsLast(String::compareTo))
-                            .thenComparing(Relationship::getIngestedAt, Comparator.nullsLast(Comparator.naturalOrder())))
-                    .toList();
-
-            if (relevantRelations.isEmpty()) {
+            unifiedRowPartitions.ensurePartition(datasetId);
+            boolean graph = relationshipRepository.existsByDatasetId(datasetId);
+            String componentPrefix = graph ? PRIMARY_COMPONENT_PREFIX : RECORD_COMPONENT_PREFIX;
+            if (since != null && unifiedRowSink.hasRowsOutside(datasetId, componentPrefix)) {
+                log.info("[transform] Existing rows of dataset {} cannot be replaced per component; running a full transform",
+                        datasetId);
+                since = null;
+            } else if (mode == TransformMode.INCREMENTAL && since == null) {
+                log.info("[transform] No successful transform of dataset {} yet; running a full transform", datasetId);
+            }
+            TransformPlan plan = since == null ? null : prepareIncremental(dataset, since, graph).orElse(null);
+            if (since != null && plan == null) {
+                log.info("[transform] Dataset {} has no primary record type yet; running a full transform", datasetId);
+                since = null;
+            }
+            if (plan == null) {
+                plan = prepare(dataset);
+            }
+            final Instant watermark = since;
+            run.setTransformMode(watermark != null ? TransformMode.INCREMENTAL : TransformMode.FULL);
+            // Upserts keep row ids and exclusions and skip unchanged rows. In swap mode a full run instead
+            // loads a staging table that replaces the dataset's partition at the end.
+            if (watermark == null && PUBLISH_MODE_SWAP.equalsIgnoreCase(publishMode) && unifiedRowPartitions.isPartitioned()) {
+                stage = unifiedRowPartitions.createStage(datasetId);
+                writer = unifiedRowSink.open(stage.qualifiedName(), commitChunks);
+            } else {
+                writer = unifiedRowSink.openUpsert(commitChunks);
+            }
+            List<String> replacedKeys = List.of();
+            UnifiedRowSink.Writer runWriter = writer;
+            Runnable checkpoint = () -> checkpoint(run, runWriter, progress);
+
+            if (plan.graphPass() == null) {
                 log.warn("No relationships found for dataset {}. Generating unified rows directly from raw events.", datasetId);
-                for (List<RecordContext> contexts : recordsById.values()) {
-                    for (RecordContext ctx : contexts) {
-                        rowsIn++;
-                        Map<Long, Map<String, Object>> payloadBySource = new LinkedHashMap<>();
-                        Map<String, Object> unifiedPayload = new LinkedHashMap<>();
-                        mergePayload(payloadBySource, unifiedPayload, ctx);
-                        Map<String, Object> unified = applyMappings(fields, mappingsBySource, mappingsByField, payloadBySource, unifiedPayload);
-                        UnifiedRow row = new UnifiedRow();
-                        row.setUnifiedRowUid(AppUtils.generateUUID());
-                        row.setDataset(dataset);
-                        row.setSource(ctx.source());
-                        row.setRecordKey(ctx.recordKey());
-                        row.setObservedAt(ctx.createdAt());
-                        row.setIngestedAt(Instant.now());
-                        row.setIsExcluded(false);
-                        row.setData(unified);
-                        unifiedRowRepository.save(row);
-                        rowsOut++;
-                        if (rowsOut <= 2) {
-                            log.info("[transform] Sample unified row (no-rel): {}", unified);
-                        }
-                    }
+                // Incremental plans only hold the records created since the watermark. Events created while the
+                // previous run was streaming may already have rows; the upsert replaces them.
+                emitRecords(plan, plan.input().contexts(), writer, progress, checkpoint);
+            } else {
+                // Incremental plans only hold the affected components.
+                List<GraphBuilder.NodeRef> primaryNodes = plan.primaryNodes();
+                if (watermark != null) {
+                    replacedKeys = primaryNodes.stream().map(this::componentKey).toList();
                 }
+                emitComponents(plan, primaryNodes, writer, progress, checkpoint);
             }
 
-            GraphBuilder.Graph graph = GraphBuilder.build(relevantRelations);
-            Map<GraphBuilder.NodeRef, List<RecordContext>> contextsByNode = mapContextsByNode(recordsById);
+            writer.flush();
+            int removed = 0;
+            if (stage != null) {
+                unifiedRowPartitions.publish(stage);
+            } else if (watermark == null) {
+                removed = unifiedRowSink.deleteStale(datasetId, writer);
+            } else {
+                // Affected components that no longer produce a row.
+                removed = unifiedRowSink.deleteUnwritten(datasetId, replacedKeys, writer);
+            }
+            progress.rowsOut = (int) writer.written();
+            log.info("[transform] Completed dataset {} transform with rowsIn={} rowsOut={} ({} changed, {} removed) in {} chunks",
+                    datasetId, progress.rowsIn, progress.rowsOut, writer.changed(), removed, writer.chunks());
 
-            log.info("[CTX DEBUG] contextsByNode keys={}", contextsByNode.keySet());
-            log.info("[GRAPH DEBUG] graph nodes={}", graph.nodes());
-            for (GraphBuilder.NodeRef node : graph.nodes()) {
-                log.info("[GRAPH DEBUG] neighbors of {} = {}", node, graph.neighbors(node));
+            run.setRowsIn(progress.rowsIn);
+            run.setRowsOut(progress.rowsOut);
+            run.setRunStatus(RunStatus.SUCCESS);
+            run.setEndedAt(Instant.now());
+            run.setErrorMessage(null);
+            dataset.setStatus(DatasetStatus.FINISHED);
+            dataset.setUpdatedAt(Instant.now());
+            datasetRepository.save(dataset);
+        } catch (CancellationException cancelled) {
+            log.info("[transform] Transform of dataset {} cancelled after {} of {} components",
+                    datasetId, progress.componentsDone, progress.componentsTotal);
+            if (stage != null) {
+                unifiedRowPartitions.dropStage(stage);
+            }
+            run.setRowsIn(progress.rowsIn);
+            run.setRowsOut(progress.rowsOut);
+            run.setRunStatus(RunStatus.CANCELLED);
+            run.setEndedAt(Instant.now());
+            run.setErrorMessage(withPartialNote(cancelled.getMessage(), writer, stage, commitChunks));
+        } catch (Exception exception) {
+            log.error("Transformation failed for dataset {}", datasetId, exception);
+            // Inside a caller's transaction the rollback removes the stage; a failed statement would also
+            // have aborted that transaction, so the drop could not run there anyway.
+            if (stage != null && commitChunks) {
+                unifiedRowPartitions.dropStage(stage);
+            }
+            run.setRowsIn(progress.rowsIn);
+            run.setRowsOut(progress.rowsOut);
+            run.setRunStatus(RunStatus.FAILED);
+            run.setEndedAt(Instant.now());
+            run.setErrorMessage(withPartialNote(exception.getMessage(), writer, stage, commitChunks));
+            throw exception;
+        } finally {
+            if (writer != null) {
+                releaseKeys(writer);
             }
+            run.setComponentsTotal(progress.componentsTotal);
+            run.setComponentsDone(progress.componentsDone);
+            run.setProgressAt(Instant.now());
+            transformRunRepository.save(run);
+        }
 
-            List<GraphBuilder.NodeRef> primaryNodes = contextsByNode.keySet().stream()
-                    .filter(node -> normalizedPrimary == null || normalizedPrimary.equals(node.type()))
-                    .toList();
+        return run;
+    }
 
-            Set<String> processedPrimaryIds = new HashSet<>();
+    /**
+     * Plans a full transform that the workers of every node execute (see {@link DistributedTransformService}).
+     * The input is prepared once here to settle the primary record type and count the components; the
+     * components are then split into work units of {@code transform.distributed.unit-size} that load one
+     * shared staging table. The run records a fingerprint of the input (see
+     * {@link TransformInputReader#fingerprint}), so workers can tell that they prepared the same input. The
+     * returned run stays RUNNING until the last unit is done and the stage is published.
+     */
+    public TransformRun startDistributedTransform(Long datasetId) {
+        if (!unifiedRowPartitions.isPartitioned()) {
+            throw new IllegalStateException("Distributed transforms need the partitioned unified_row table");
+        }
+        Dataset dataset = datasetRepository.findById(datasetId)
+                .orElseThrow(() -> new IllegalArgumentException("Dataset not found: " + datasetId));
 
-            for (GraphBuilder.NodeRef primaryNode : primaryNodes) {
-                String primaryId = primaryNode.id();
-                if (!StringUtils.hasText(primaryId)) {
-                    continue;
-                }
+        TransformRun run = newRun(dataset, TransformMode.FULL);
+        UnifiedRowPartitions.Stage stage = null;
+        try {
+            unifiedRowPartitions.ensurePartition(datasetId);
+            String fingerprint = transformInputReader.fingerprint(datasetId);
+            TransformPlan plan = prepare(dataset);
+            stage = unifiedRowPartitions.createStage(datasetId);
+            run.setStageTable(stage.name());
+            run.setInputFingerprint(fingerprint);
+            run.setComponentsTotal(plan.componentCount());
+            run.setComponentsDone(0);
+            run.setProgressAt(Instant.now());
+            run = transformRunRepository.save(run);
+
+            int units = transformWorkQueue.enqueue(run.getId(), plan.componentCount(), Math.max(1, distributedUnitSize));
+            cachePlan(run.getId(), plan);
+            log.info("[transform] Planned distributed transform {} of dataset {}: {} components in {} work units",
+                    run.getTransformRunUid(), datasetId, plan.componentCount(), units);
+            return run;
+        } catch (RuntimeException exception) {
+            log.error("Planning the distributed transform of dataset {} failed", datasetId, exception);
+            if (stage != null) {
+                unifiedRowPartitions.dropStage(stage);
+            }
+            run.setRunStatus(RunStatus.FAILED);
+            run.setEndedAt(Instant.now());
+            run.setErrorMessage(exception.getMessage());
+            transformRunRepository.save(run);
+            throw exception;
+        }
+    }
 
-                if (!processedPrimaryIds.add(primaryId)) {
-                    continue;
+    /**
+     * Prepares and caches the plan of a distributed run unless this node already has it, so a worker can
+     * read the input before it leases one of the run's units.
+     */
+    public void preparePlan(Long runId) {
+        TransformRun run = transformRunRepository.findById(runId)
+                .orElseThrow(() -> new IllegalStateException("Transform run not found: " + runId));
+        planFor(run);
+    }
+
+    /**
+     * Builds components {@code [rangeStart, rangeEnd)} of a distributed run into its staging table. The rows
+     * and the unit's completion are committed in one transaction, so a unit whose worker dies or loses its
+     * lease leaves nothing behind for the next attempt. {@code heartbeat} renews the lease at every chunk
+     * boundary and returns false once it has been lost.
+     */
+    public void runWorkUnit(TransformWorkQueue.WorkUnit unit, String owner, BooleanSupplier heartbeat) {
+        TransformRun run = transformRunRepository.findById(unit.runId())
+                .orElseThrow(() -> new IllegalStateException("Transform run not found: " + unit.runId()));
+        TransformPlan plan = planFor(run);
+        UnifiedRowPartitions.Stage stage = new UnifiedRowPartitions.Stage(plan.dataset().getId(), run.getStageTable());
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            UnifiedRowSink.Writer writer = unifiedRowSink.open(stage.qualifiedName(), false);
+            RunProgress progress = new RunProgress();
+            Runnable checkpoint = () -> {
+                writer.flush();
+                if (!heartbeat.getAsBoolean()) {
+                    throw new IllegalStateException("Lost the lease on work unit " + unit.id());
                 }
+                if (transformRunRepository.isCancelRequested(run.getId())) {
+                    throw new CancellationException("Transform run " + run.getTransformRunUid() + " was cancelled");
+                }
+            };
+            if (plan.graphPass() == null) {
+                emitRecords(plan, plan.input().contexts().subList(unit.rangeStart(), unit.rangeEnd()), writer, progress, checkpoint);
+            } else {
+                emitComponents(plan, plan.primaryNodes().subList(unit.rangeStart(), unit.rangeEnd()), writer, progress, checkpoint);
+            }
+            writer.flush();
+            if (!transformWorkQueue.complete(unit, owner, progress.rowsIn, (int) writer.written())) {
+                throw new IllegalStateException("Lost the lease on work unit " + unit.id());
+            }
+            log.info("[transform] Work unit {} of run {} wrote {} rows for components [{}, {})",
+                    unit.unitIndex(), run.getTransformRunUid(), writer.written(), unit.rangeStart(), unit.rangeEnd());
+        });
+    }
 
-                Queue<GraphBuilder.NodeRef> queue = new ArrayDeque<>();
-                Set<GraphBuilder.NodeRef> localVisited = new HashSet<>();
+    /**
+     * Notes on the message of a run that did not finish that its upserted chunks were already committed, so
+     * the dataset holds a mix of new and old rows until the next successful run.
+     */
+    private static String withPartialNote(String message, UnifiedRowSink.Writer writer,
+                                          UnifiedRowPartitions.Stage stage, boolean commitChunks) {
+        if (stage != null || !commitChunks || writer == null || writer.written() == 0) {
+            return message;
+        }
+        return message + " (" + writer.written() + " rows in " + writer.chunks()
+                + " chunks were already published; the dataset mixes new and old rows until the next successful run)";
+    }
 
-                queue.add(primaryNode);
-                localVisited.add(primaryNode);
+    /**
+     * Inside a caller's transaction that a failed statement aborted, the rollback removes the keys instead.
+     */
+    private void releaseKeys(UnifiedRowSink.Writer writer) {
+        try {
+            writer.releaseKeys();
+        } catch (RuntimeException exception) {
+            log.warn("[transform] Could not release the component keys of a unified row writer: {}", exception.getMessage());
+        }
+    }
 
-                List<RecordContext> primaryContexts = new ArrayList<>(contextsByNode.getOrDefault(primaryNode, List.of()));
-                List<RecordContext> relatedContexts = new ArrayList<>();
-                List<Map<String, Object>> relationPayloads = new ArrayList<>();
+    private TransformRun newRun(Dataset dataset, TransformMode mode) {
+        TransformRun run = new TransformRun();
+        run.setTransformRunUid(AppUtils.generateUUID());
+        run.setDataset(dataset);
+        run.setRunStatus(RunStatus.RUNNING);
+        run.setTransformMode(mode);
+        run.setStartedAt(Instant.now());
+        return transformRunRepository.save(run);
+    }
 
-                while (!queue.isEmpty()) {
-                    GraphBuilder.NodeRef current = queue.poll();
-                    log.info("[BFS DEBUG] dequeue node={}", current);
-                    log.info("[BFS DEBUG] neighbors={} for current={} ", graph.neighbors(current), current);
-                    for (GraphBuilder.Edge edge : graph.neighbors(current)) {
-                        GraphBuilder.NodeRef target = edge.target();
+    /**
+     * Reads the dataset's records and relationships, settles its primary record type, compiles the mappings
+     * and, when there are relationships, builds the graph and its components. Component positions only
+     * depend on the raw events, so every node preparing the same input sees the same components in the
+     * same order.
+     */
+    private TransformPlan prepare(Dataset dataset) {
+        Long datasetId = dataset.getId();
+        TransformInputReader.PayloadStore payloads = transformInputReader.openPayloadStore();
+        TransformInput input = indexRecords(consumer -> transformInputReader.stream(datasetId, consumer), payloads);
+        RecordIndex<RecordContext> recordIndex = input.recordIndex();
+        List<Relationship> relationships = relationshipRepository.findByDatasetId(datasetId);
 
-                        if (edge.relation().getPayload() != null) {
-                            relationPayloads.add(UnifiedPayloadNormalizer.normalizePayload(edge.relation().getPayload()));
-                        }
+        log.info("[transform] Indexed {} raw events and loaded {} relationships for dataset {}",
+                input.eventCount(), relationships.size(), datasetId);
 
-                        if (isOtherPrimary(normalizedPrimary, primaryNode, target)) {
-                            // Skip merging other primary records into this row so each order stays isolated.
-                            log.info("[BFS DEBUG] SKIPPED neighbor {} because isOtherPrimary", target);
-                            continue;
-                        }
+        String primaryRecordType = Optional.ofNullable(dataset.getPrimaryRecordType())
+                .filter(StringUtils::hasText)
+                .map(this::normalizeType)
+                .orElse(null);
 
-                        if (!localVisited.add(target)) {
-                            continue;
-                        }
+        if (!StringUtils.hasText(primaryRecordType)) {
+            primaryRecordType = determinePrimaryType(relationships, recordIndex, input.rawTypeCounts())
+                    .map(this::normalizeType)
+                    .orElse(input.firstRecordType());
+        }
 
-                        log.info("[BFS DEBUG] enqueue target={} from edge={} ", target, edge.relation().getRelationshipUid());
+        if (!StringUtils.hasText(primaryRecordType)) {
+            primaryRecordType = "default";
+            log.warn("[transform] Falling back to default primary record type for dataset {} because none could be detected",
+                    datasetId);
+        }
 
-                        queue.add(target);
+        if (!primaryRecordType.trim().equals(dataset.getPrimaryRecordType())) {
+            dataset.setPrimaryRecordType(primaryRecordType.trim());
+            dataset.setUpdatedAt(Instant.now());
+            datasetRepository.save(dataset);
+        }
 
-                        List<RecordContext> contexts = contextsByNode.get(target);
-                        if (contexts == null || contexts.isEmpty()) {
-                            contexts = ensureRecords(recordsById, target.id(), target.type(), edge.relation(), false);
-                            if (contexts != null && !contexts.isEmpty()) {
-                                contextsByNode.put(target, contexts);
-                            }
-                        }
+        log.info("[transform] Using primaryRecordType='{}' for dataset {}", dataset.getPrimaryRecordType(), datasetId);
+        return buildPlan(dataset, input, payloads, relationships, !relationships.isEmpty(), null);
+    }
 
-                        if (contexts != null && !contexts.isEmpty() && !target.equals(primaryNode)) {
-                            relatedContexts.addAll(contexts);
-                        }
-                    }
-                }
+    /**
+     * Prepares an incremental run from what changed since {@code since} instead of the whole dataset: the
+     * raw events created since then are the changed records, and with relationships the changed nodes are
+     * expanded through the relationship graph to the components they affect (see {@link AffectedComponents}).
+     * Only those components' records are read, found through the join-key index by the identities the
+     * relationships refer to. Empty when the dataset's primary record type has not been settled by a full
+     * run.
+     */
+    private Optional<TransformPlan> prepareIncremental(Dataset dataset, Instant since, boolean graph) {
+        String primaryRecordType = normalizeType(dataset.getPrimaryRecordType());
+        if (!StringUtils.hasText(primaryRecordType)) {
+            return Optional.empty();
+        }
+        Long datasetId = dataset.getId();
+        TransformInputReader.PayloadStore payloads = transformInputReader.openPayloadStore();
+        TransformInput delta = indexRecords(
+                consumer -> transformInputReader.streamChanged(datasetId, since, List.of(), consumer), payloads);
+        if (!graph) {
+            log.info("[transform] Incremental transform of dataset {}: {} new records since {}",
+                    datasetId, delta.contexts().size(), since);
+            return Optional.of(buildPlan(dataset, delta, payloads, List.of(), false, null));
+        }
+
+        Set<GraphBuilder.NodeRef> changed = new LinkedHashSet<>();
+        for (RecordContext context : delta.contexts()) {
+            GraphBuilder.NodeRef node = toNodeRef(context.recordType(), context.recordId());
+            if (node != null) {
+                changed.add(node);
+            }
+        }
+        for (Relationship relation : relationshipRepository.findByDatasetIdIngestedSince(datasetId, since)) {
+            changed.addAll(GraphBuilder.endpoints(relation));
+        }
+        AffectedComponents.Result affected = affectedComponents.find(datasetId, changed,
+                node -> primaryRecordType.equals(node.type()));
 
-                if (primaryContexts.isEmpty() && relatedContexts.isEmpty()) {
-                    continue;
-                }
+        Set<String> identities = new HashSet<>();
+        for (Relationship relation : affected.relations()) {
+            identities.add(relation.getFromId());
+            identities.add(relation.getToId());
+        }
+        for (GraphBuilder.NodeRef primary : affected.primaries()) {
+            identities.add(primary.id());
+        }
+        TransformInput input = indexRecords(
+                consumer -> transformInputReader.streamChanged(datasetId, since, identities, consumer), payloads);
+        log.info("[transform] Incremental transform of dataset {}: {} changed nodes affect {} components since {}; "
+                        + "read {} raw events and {} relationships",
+                datasetId, changed.size(), affected.primaries().size(), since, input.eventCount(), affected.relations().size());
+        return Optional.of(buildPlan(dataset, input, payloads, affected.relations(), true, affected.primaries()));
+    }
 
-                rowsIn += primaryContexts.size() + relatedContexts.size();
+    /**
+     * Compiles the mappings and, for a dataset with relationships, builds the graph over
+     * {@code relationships} and its components.
+     *
+     * @param primaries the only primaries to emit, or {@code null} for every primary record of {@code input}
+     */
+    private TransformPlan buildPlan(Dataset dataset,
+                                    TransformInput input,
+                                    TransformInputReader.PayloadStore payloads,
+                                    List<Relationship> relationships,
+                                    boolean graphMode,
+                                    Set<GraphBuilder.NodeRef> primaries) {
+        Long datasetId = dataset.getId();
+        String primaryRecordType = dataset.getPrimaryRecordType();
+        RecordIndex<RecordContext> recordIndex = input.recordIndex();
+
+        List<DatasetField> fields = datasetFieldRepository.findAllByDataset_Id(datasetId)
+                .stream()
+                .sorted(Comparator.comparing(DatasetField::getPosition, Comparator.nullsLast(Integer::compareTo)))
+                .toList();
 
-                Map<Long, Map<String, Object>> payloadBySource = new LinkedHashMap<>();
-                Map<String, Object> unifiedPayload = new LinkedHashMap<>();
+        FieldMappingPlan mappingPlan = FieldMappingPlan.compile(fields, datasetMappingRepository.findAllByDataset(dataset));
 
-                RecordMerger.merge(payloadBySource, unifiedPayload, primaryContexts, relationPayloads, relatedContexts);
+        if (!graphMode) {
+            return new TransformPlan(dataset, input, payloads, mappingPlan, null, List.of());
+        }
 
-                log.info("[transform] Component nodes for primary {}: {}", primaryId, localVisited);
-                log.debug("[transform] Unified payload before mapping for {}: {}", primaryId, unifiedPayload);
+        String normalizedPrimary = normalizeType(primaryRecordType);
+        List<Relationship> relevantRelations = relationships.stream()
+                .sorted(Comparator
+                        .comparing((Relationship rel) -> primaryKey(rel, normalizedPrimary), Comparator.nullsLast(String::compareTo))
+                        .thenComparing(Relationship::getIngestedAt, Comparator.nullsLast(Comparator.naturalOrder())))
+                .toList();
+        Predicate<GraphBuilder.NodeRef> isPrimary = node -> normalizedPrimary != null && normalizedPrimary.equals(node.type());
+
+        GraphBuilder.Graph graph = GraphBuilder.build(relevantRelations);
+        Map<GraphBuilder.NodeRef, List<RecordContext>> contextsByNode = mapContextsByNode(input.contexts());
+        // Nodes without records of their own are looked up by payload value when their component is merged.
+        recordIndex.expectValues(graph.nodes().stream()
+                .filter(node -> !contextsByNode.containsKey(node))
+                .map(node -> normalizeId(node.id()))
+                .filter(Objects::nonNull)
+                .toList());
 
-                RecordContext primaryCtx = primaryContexts.stream().findFirst().orElse(null);
-                RecordContext relatedCtx = relatedContexts.stream().findFirst().orElse(null);
+        Set<String> processedPrimaryIds = new HashSet<>();
+        List<GraphBuilder.NodeRef> primaryNodes = contextsByNode.keySet().stream()
+                .filter(node -> normalizedPrimary == null || normalizedPrimary.equals(node.type()))
+                .filter(node -> primaries == null || primaries.contains(node))
+                .filter(node -> StringUtils.hasText(node.id()) && processedPrimaryIds.add(node.id()))
+                .toList();
 
-                String primaryRecordId = primaryCtx != null ? primaryCtx.recordId() : primaryId;
-                String relatedRecordId = relatedCtx != null ? relatedCtx.recordId() : null;
+        GraphBuilder.Components components = GraphBuilder.components(graph, isPrimary);
+        GraphPass pass = new GraphPass(dataset, graph, components, new ConcurrentHashMap<>(contextsByNode), recordIndex,
+                payloads, mappingPlan);
+        return new TransformPlan(dataset, input, payloads, mappingPlan, pass, primaryNodes);
+    }
 
-                Map<String, Object> unified = applyMappings(fields, mappingsBySource, mappingsByField, payloadBySource, unifiedPayload);
-                UnifiedRow row = new UnifiedRow();
-                row.setUnifiedRowUid(AppUtils.generateUUID());
-                row.setDataset(dataset);
-                row.setSource(primaryCtx != null ? primaryCtx.source() : (relatedCtx != null ? relatedCtx.source() : null));
-                row.setRecordKey(buildRecordKey(primaryRecordId, relatedRecordId,
-                        primaryCtx != null ? primaryCtx.recordKey() : null,
-                        relatedCtx != null ? relatedCtx.recordKey() : null));
-
-                Instant observedAt = primaryCtx != null && primaryCtx.createdAt() != null
-                        ? primaryCtx.createdAt()
-                        : (relatedCtx != null ? relatedCtx.createdAt() : null);
-                row.setObservedAt(observedAt);
-                row.setIngestedAt(Instant.now());
-                row.setIsExcluded(false);
-                row.setData(unified);
-                unifiedRowRepository.save(row);
-                rowsOut++;
-                if (rowsOut <= 2) {
-                    log.info("[transform] Sample unified row (relation-primary): {}", unified);
-                }
+    /**
+     * The run's plan, prepared again unless this node still has it. The input must have the fingerprint
+     * the run was planned with both before and after it is read; otherwise component positions may differ
+     * from the other nodes' and the unit fails.
+     */
+    private TransformPlan planFor(TransformRun run) {
+        synchronized (planCacheLock) {
+            if (cachedPlan != null && cachedPlan.runId().equals(run.getId())) {
+                return cachedPlan.plan();
             }
+        }
+        Dataset dataset = datasetRepository.findById(run.getDataset().getId())
+                .orElseThrow(() -> new IllegalStateException("Dataset not found for transform run " + run.getTransformRunUid()));
+        checkFingerprint(run);
+        TransformPlan plan = prepare(dataset);
+        checkFingerprint(run);
+        cachePlan(run.getId(), plan);
+        return plan;
+    }
 
-            log.info("[transform] Completed dataset {} transform with rowsIn={} rowsOut={}", datasetId, rowsIn, rowsOut);
-
-            run.setRowsIn(rowsIn);
-            run.setRowsOut(rowsOut);
-            run.setRunStatus(RunStatus.SUCCESS);
-            run.setEndedAt(Instant.now());
-            run.setErrorMessage(null);
-            dataset.setStatus(DatasetStatus.FINISHED);
-            dataset.setUpdatedAt(Instant.now());
-            datasetRepository.save(dataset);
-        } catch (Exception exception) {
-            log.error("Transformation failed for dataset {}", datasetId, exception);
-            run.setRowsIn(rowsIn);
-            run.setRowsOut(rowsOut);
-            run.setRunStatus(RunStatus.FAILED);
-            run.setEndedAt(Instant.now());
-            run.setErrorMessage(exception.getMessage());
-            throw exception;
-        } finally {
-            transformRunRepository.save(run);
+    private void checkFingerprint(TransformRun run) {
+        String fingerprint = transformInputReader.fingerprint(run.getDataset().getId());
+        if (!Objects.equals(fingerprint, run.getInputFingerprint())) {
+            throw new IllegalStateException("Input of dataset " + run.getDataset().getId()
+                    + " changed since transform run " + run.getTransformRunUid() + " was planned");
         }
+    }
 
-        return run;
+    /**
+     * Keeps the plan of the most recent distributed run, so a node working through several of its units
+     * reads the input only once. It is dropped once the run is no longer RUNNING (see {@link #evictPlan}).
+     */
+    private void cachePlan(Long runId, TransformPlan plan) {
+        synchronized (planCacheLock) {
+            cachedPlan = new CachedPlan(runId, plan);
+        }
     }
 
-    private Map<String, Object> applyMappings(List<DatasetField> fields,
-                                              Map<Long, Map<Long, List<DatasetMapping>>> mappingsBySource,
-                                              Map<Long, List<DatasetMapping>> mappingsByField,
-                                              Map<Long, Map<String, Object>> payloadBySource,
-                                              Map<String, Object> unifiedPayload) {
-        Map<String, Object> result = new LinkedHashMap<>();
-        Map<String, Object> flattenedUnified = flattenPayload(unifiedPayload);
-
-        for (DatasetField field : fields) {
-            Object value = null;
-            List<MappingCandidate> candidates = new ArrayList<>();
-
-            for (Map.Entry<Long, Map<String, Object>> entry : payloadBySource.entrySet()) {
-                Map<Long, List<DatasetMapping>> byField = mappingsBySource.getOrDefault(entry.getKey(), Map.of());
-                List<DatasetMapping> mappings = byField.getOrDefault(field.getId(), List.of())
-                        .stream()
-                        .sorted(Comparator.comparing(DatasetMapping::getPriority, Comparator.nullsLast(Integer::compareTo)))
-                        .toList();
-                for (DatasetMapping mapping : mappings) {
-                    candidates.add(new MappingCandidate(mapping, entry.getValue()));
-                }
+    /**
+     * Drops the cached plan if it belongs to {@code runId}.
+     */
+    public void evictPlan(Long runId) {
+        synchronized (planCacheLock) {
+            if (cachedPlan != null && cachedPlan.runId().equals(runId)) {
+                cachedPlan = null;
             }
+        }
+    }
 
-            for (MappingCandidate candidate : candidates) {
-                DatasetMapping mapping = candidate.mapping();
-                String path = StringUtils.hasText(mapping.getSrcPath()) ? mapping.getSrcPath() : mapping.getSrcJsonPath();
-                TransformType transformType = Optional.ofNullable(mapping.getTransformType()).orElse(TransformType.NONE);
-                value = applyTransform(extractValue(candidate.payload(), path), transformType);
-                if (value != null || Boolean.TRUE.equals(mapping.getRequired())) {
-                    break;
-                }
+    /**
+     * Drops the cached plan once its run has finished, failed or been cancelled, wherever that happened.
+     */
+    public void evictFinishedPlan() {
+        Long runId;
+        synchronized (planCacheLock) {
+            if (cachedPlan == null) {
+                return;
             }
+            runId = cachedPlan.runId();
+        }
+        boolean running = transformRunRepository.findById(runId)
+                .map(run -> run.getRunStatus() == RunStatus.RUNNING)
+                .orElse(false);
+        if (!running) {
+            evictPlan(runId);
+        }
+    }
 
-            if (value == null && mappingsByField != null) {
-                List<DatasetMapping> fallbackMappings = mappingsByField.getOrDefault(field.getId(), List.of())
-                        .stream()
-                        .sorted(Comparator.comparing(DatasetMapping::getPriority, Comparator.nullsLast(Integer::compareTo)))
-                        .toList();
-                for (DatasetMapping mapping : fallbackMappings) {
-                    String path = StringUtils.hasText(mapping.getSrcPath()) ? mapping.getSrcPath() : mapping.getSrcJsonPath();
-                    TransformType transformType = Optional.ofNullable(mapping.getTransformType()).orElse(TransformType.NONE);
-                    value = applyTransform(extractValue(unifiedPayload, path), transformType);
-                    if (value != null || Boolean.TRUE.equals(mapping.getRequired())) {
-                        break;
-                    }
+    /**
+     * Writes one unified row per record, reaching {@code checkpoint} after every payload chunk. Each chunk
+     * is mapped as one columnar batch unless {@code transform.columnar.enabled} is off.
+     */
+    private void emitRecords(TransformPlan plan, List<RecordContext> contexts, UnifiedRowSink.Writer writer,
+                             RunProgress progress, Runnable checkpoint) {
+        progress.componentsTotal = contexts.size();
+        checkpoint.run();
+        for (int start = 0; start < contexts.size(); start += PAYLOAD_CHUNK_SIZE) {
+            List<RecordContext> chunk = contexts.subList(start, Math.min(start + PAYLOAD_CHUNK_SIZE, contexts.size()));
+            prefetchPayloads(plan.payloads(), chunk);
+            List<Map<String, Object>> mapped = columnarMapping
+                    ? mapColumns(plan.mappingPlan(), chunk)
+                    : chunk.stream().map(ctx -> mapRecord(plan.mappingPlan(), ctx)).toList();
+            for (int i = 0; i < chunk.size(); i++) {
+                RecordContext ctx = chunk.get(i);
+                Map<String, Object> unified = mapped.get(i);
+                progress.rowsIn++;
+                UnifiedRow row = new UnifiedRow();
+                String componentKey = RECORD_COMPONENT_PREFIX + ctx.recordKey();
+                row.setUnifiedRowUid(rowUid(plan.dataset().getId(), componentKey));
+                row.setDataset(plan.dataset());
+                row.setSource(ctx.source());
+                row.setRecordKey(ctx.recordKey());
+                row.setComponentKey(componentKey);
+                row.setObservedAt(ctx.createdAt());
+                row.setIngestedAt(Instant.now());
+                row.setIsExcluded(false);
+                row.setData(unified);
+                writer.add(row);
+                progress.rowsOut++;
+                if (progress.rowsOut <= 2) {
+                    log.info("[transform] Sample unified row (no-rel): {}", unified);
                 }
             }
+            progress.componentsDone += chunk.size();
+            checkpoint.run();
+        }
+    }
 
-            if (value == null && unifiedPayload != null) {
-                Object fallback = unifiedPayload.getOrDefault(field.getName(), extractValue(unifiedPayload, field.getName()));
-                value = fallback;
-            }
-
-            if (value == null && unifiedPayload != null) {
-                String caseInsensitiveKey = findCaseInsensitiveKey(unifiedPayload, field.getName());
-                if (caseInsensitiveKey != null) {
-                    value = unifiedPayload.get(caseInsensitiveKey);
-                }
-            }
+    private List<Map<String, Object>> mapColumns(FieldMappingPlan mappingPlan, List<RecordContext> chunk) {
+        List<Long> sourceIds = new ArrayList<>(chunk.size());
+        List<Map<String, Object>> payloads = new ArrayList<>(chunk.size());
+        for (RecordContext ctx : chunk) {
+            sourceIds.add(ctx.source() != null ? ctx.source().getId() : null);
+            payloads.add(ctx.payload());
+        }
+        return mappingPlan.applyColumns(sourceIds, payloads);
+    }
 
-            if (value == null) {
-                value = fuzzyLookup(unifiedPayload, field.getName());
-            }
+    private Map<String, Object> mapRecord(FieldMappingPlan mappingPlan, RecordContext ctx) {
+        Map<Long, Map<String, Object>> payloadBySource = new LinkedHashMap<>();
+        Map<String, Object> unifiedPayload = new LinkedHashMap<>();
+        mergePayload(payloadBySource, unifiedPayload, ctx);
+        return mappingPlan.apply(payloadBySource, unifiedPayload);
+    }
 
-            if (value == null && !flattenedUnified.isEmpty()) {
-                List<String> targets = new ArrayList<>();
-                targets.add(field.getName());
-                if (mappingsByField != null) {
-                    List<DatasetMapping> allMappings = mappingsByField.getOrDefault(field.getId(), List.of());
-                    for (DatasetMapping mapping : allMappings) {
-                        if (StringUtils.hasText(mapping.getSrcPath())) {
-                            targets.add(mapping.getSrcPath());
-                        }
-                        if (StringUtils.hasText(mapping.getSrcJsonPath())) {
-                            targets.add(mapping.getSrcJsonPath());
-                        }
+    /**
+     * Merges one unified row per primary node, {@code transform.parallel-chunk-size} primaries at a time and
+     * on {@code transform.parallelism} threads, reaching {@code checkpoint} after every chunk.
+     */
+    private void emitComponents(TransformPlan plan, List<GraphBuilder.NodeRef> primaryNodes, UnifiedRowSink.Writer writer,
+                                RunProgress progress, Runnable checkpoint) {
+        Long datasetId = plan.dataset().getId();
+        GraphPass pass = plan.graphPass();
+        int parallelism = transformParallelism > 0 ? transformParallelism : Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(1, parallelChunkSize);
+        progress.componentsTotal = primaryNodes.size();
+        checkpoint.run();
+
+        if (parallelism > 1) {
+            log.info("[transform] Merging {} components for dataset {} with parallelism {}",
+                    primaryNodes.size(), datasetId, parallelism);
+        }
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            for (int start = 0; start < primaryNodes.size(); start += chunkSize) {
+                List<GraphBuilder.NodeRef> chunk = primaryNodes.subList(start, Math.min(start + chunkSize, primaryNodes.size()));
+                // toList() on a parallel stream keeps encounter order, so rows reach the sink in primary order.
+                List<ComponentRow> built = pool == null
+                        ? chunk.stream().map(primaryNode -> buildComponentRow(pass, primaryNode)).toList()
+                        : pool.submit(() -> chunk.parallelStream()
+                                .map(primaryNode -> buildComponentRow(pass, primaryNode))
+                                .toList()).get();
+                for (ComponentRow component : built) {
+                    if (component == null) {
+                        continue;
                     }
-                }
-                for (String target : targets) {
-                    String normalized = normalizeKey(target);
-                    if (flattenedUnified.containsKey(normalized)) {
-                        value = flattenedUnified.get(normalized);
-                        break;
+                    progress.rowsIn += component.rowsIn();
+                    writer.add(component.row());
+                    progress.rowsOut++;
+                    if (progress.rowsOut <= 2) {
+                        log.info("[transform] Sample unified row (relation-primary): {}", component.row().getData());
                     }
                 }
+                progress.componentsDone += chunk.size();
+                checkpoint.run();
             }
-
-            if (value == null && payloadBySource != null) {
-                for (Map<String, Object> payload : payloadBySource.values()) {
-                    value = fuzzyLookup(payload, field.getName());
-                    if (value != null) {
-                        break;
-                    }
-                }
-            }
-
-            result.put(String.valueOf(field.getId()), value);
-        }
-
-        boolean allNull = result.values().stream().allMatch(Objects::isNull);
-        if (allNull && unifiedPayload != null) {
-            for (DatasetField field : fields) {
-                if (result.get(String.valueOf(field.getId())) != null) {
-                    continue;
-                }
-                String key = findCaseInsensitiveKey(unifiedPayload, field.getName());
-                if (key != null) {
-                    result.put(String.valueOf(field.getId()), unifiedPayload.get(key));
-                }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Transform interrupted for dataset " + datasetId, interrupted);
+        } catch (ExecutionException failure) {
+            throw new IllegalStateException("Component merge failed for dataset " + datasetId, failure.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
         }
-
-        return result;
     }
 
-    private Map<String, Object> flattenPayload(Object payload) {
-        Map<String, Object> flat = new LinkedHashMap<>();
-        flattenRecursive(payload, flat);
-        return flat;
+    private String componentKey(GraphBuilder.NodeRef primaryNode) {
+        return PRIMARY_COMPONENT_PREFIX + primaryNode.type() + ":" + primaryNode.id();
     }
 
-    @SuppressWarnings("unchecked")
-    private void flattenRecursive(Object current, Map<String, Object> flat) {
-        if (current == null) {
-            return;
-        }
-        if (current instanceof Map<?, ?> map) {
-            for (Map.Entry<?, ?> entry : map.entrySet()) {
-                if (entry.getKey() == null) {
-                    continue;
-                }
-                String normalizedKey = normalizeKey(entry.getKey().toString());
-                Object value = TimestampNormalizer.normalizeValue(entry.getValue());
-                if (value instanceof Map<?, ?> || value instanceof List<?>) {
-                    flattenRecursive(value, flat);
-                } else if (!flat.containsKey(normalizedKey)) {
-                    flat.put(normalizedKey, value);
-                }
-            }
-        } else if (current instanceof List<?> list) {
-            for (Object item : list) {
-                flattenRecursive(TimestampNormalizer.normalizeValue(item), flat);
-            }
-        }
+    /**
+     * Name-based UUID of the row's component, so a component keeps its uid across runs.
+     */
+    private static String rowUid(Long datasetId, String componentKey) {
+        return UUID.nameUUIDFromBytes((datasetId + ":" + componentKey).getBytes(StandardCharsets.UTF_8))
+                .toString()
+                .replace("-", "");
     }
 
-    private String findCaseInsensitiveKey(Map<String, Object> source, String targetName) {
-        if (source == null || !StringUtils.hasText(targetName)) {
-            return null;
-        }
-        String normalized = targetName.trim().toLowerCase();
-        for (String key : source.keySet()) {
-            if (key != null && key.trim().toLowerCase().equals(normalized)) {
-                return key;
-            }
+    /**
+     * Chunk boundary of a local run: writes the buffered rows, records progress on the run and stops the
+     * transform with a {@link CancellationException} if a cancel was requested.
+     */
+    private void checkpoint(TransformRun run, UnifiedRowSink.Writer writer, RunProgress progress) {
+        writer.flush();
+        transformRunRepository.updateProgress(run.getId(), progress.componentsTotal, progress.componentsDone,
+                progress.rowsIn, progress.rowsOut, Instant.now());
+        if (transformRunRepository.isCancelRequested(run.getId())) {
+            throw new CancellationException("Transform run " + run.getTransformRunUid() + " was cancelled");
         }
-        return null;
     }
 
-    private Object fuzzyLookup(Object payload, String targetName) {
-        if (payload == null || !StringUtils.hasText(targetName)) {
-            return null;
-        }
-        String normalizedTarget = normalizeKey(targetName);
-
-        if (payload instanceof Map<?, ?> map) {
-            for (Map.Entry<?, ?> entry : map.entrySet()) {
-                if (entry.getKey() == null) {
-                    continue;
+    /**
+     * Merges the component around one primary node (from the precomputed union-find clusters) into a
+     * unified row. Safe to call from several threads for different primaries: shared lookups are
+     * concurrent maps or guarded by the index.
+     */
+    private ComponentRow buildComponentRow(GraphPass pass, GraphBuilder.NodeRef primaryNode) {
+        String primaryId = primaryNode.id();
+        List<GraphBuilder.NodeRef> componentNodes = pass.components().componentOf(primaryNode);
+
+        List<RecordContext> primaryContexts = new ArrayList<>(pass.contextsByNode().getOrDefault(primaryNode, List.of()));
+        List<RecordContext> relatedContexts = new ArrayList<>();
+        List<Map<String, Object>> relationPayloads = new ArrayList<>();
+
+        for (GraphBuilder.NodeRef node : componentNodes) {
+            List<GraphBuilder.Edge> edges = pass.graph().neighbors(node);
+            for (GraphBuilder.Edge edge : edges) {
+                if (edge.relation().getPayload() != null) {
+                    relationPayloads.add(UnifiedPayloadNormalizer.normalizePayload(edge.relation().getPayload()));
                 }
-                String key = entry.getKey().toString();
-                Object normalizedValue = TimestampNormalizer.normalizeValue(entry.getValue());
-                if (normalizeKey(key).equals(normalizedTarget)) {
-                    return normalizedValue;
+            }
+            if (node.equals(primaryNode)) {
+                continue;
+            }
+
+            List<RecordContext> contexts = pass.contextsByNode().get(node);
+            if ((contexts == null || contexts.isEmpty()) && !edges.isEmpty()) {
+                // The fallbacks read and extend the shared record index, so they run one at a time.
+                synchronized (pass.recordIndex()) {
+                    contexts = ensureRecords(pass.recordIndex(), node.id(), node.type(), edges.get(0).relation(), false);
                 }
-                Object nested = normalizedValue;
-                if (nested instanceof Map<?, ?> || nested instanceof List<?>) {
-                    Object nestedResult = fuzzyLookup(nested, targetName);
-                    if (nestedResult != null) {
-                        return nestedResult;
-                    }
+                if (contexts != null && !contexts.isEmpty()) {
+                    pass.contextsByNode().put(node, contexts);
                 }
             }
-        } else if (payload instanceof List<?> list) {
-            for (Object item : list) {
-                Object nestedResult = fuzzyLookup(item, targetName);
-                if (nestedResult != null) {
-                    return nestedResult;
-                }
+
+            if (contexts != null && !contexts.isEmpty()) {
+                relatedContexts.addAll(contexts);
             }
         }
 
-        return null;
-    }
-
-    private String normalizeKey(String key) {
-        if (!StringUtils.hasText(key)) {
-            return "";
+        if (primaryContexts.isEmpty() && relatedContexts.isEmpty()) {
+            return null;
         }
-        return key.trim().toLowerCase().replaceAll("[^a-z0-9]", "");
+
+        Map<Long, Map<String, Object>> payloadBySource = new LinkedHashMap<>();
+        Map<String, Object> unifiedPayload = new LinkedHashMap<>();
+
+        prefetchPayloads(pass.payloads(), primaryContexts);
+        prefetchPayloads(pass.payloads(), relatedContexts);
+        RecordMerger.merge(payloadBySource, unifiedPayload, primaryContexts, relationPayloads, relatedContexts);
+
+        log.info("[transform] Component nodes for primary {}: {}", primaryId, componentNodes);
+        log.debug("[transform] Unified payload before mapping for {}: {}", primaryId, unifiedPayload);
+
+        RecordContext primaryCtx = primaryContexts.stream().findFirst().orElse(null);
+        RecordContext relatedCtx = relatedContexts.stream().findFirst().orElse(null);
+
+        String primaryRecordId = primaryCtx != null ? primaryCtx.recordId() : primaryId;
+        String relatedRecordId = relatedCtx != null ? relatedCtx.recordId() : null;
+
+        Map<String, Object> unified = pass.mappingPlan().apply(payloadBySource, unifiedPayload);
+        UnifiedRow row = new UnifiedRow();
+        String componentKey = componentKey(primaryNode);
+        row.setUnifiedRowUid(rowUid(pass.dataset().getId(), componentKey));
+        row.setDataset(pass.dataset());
+        row.setSource(primaryCtx != null ? primaryCtx.source() : (relatedCtx != null ? relatedCtx.source() : null));
+        row.setComponentKey(componentKey);
+        row.setRecordKey(buildRecordKey(primaryRecordId, relatedRecordId,
+                primaryCtx != null ? primaryCtx.recordKey() : null,
+                relatedCtx != null ? relatedCtx.recordKey() : null));
+
+        Instant observedAt = primaryCtx != null && primaryCtx.createdAt() != null
+                ? primaryCtx.createdAt()
+                : (relatedCtx != null ? relatedCtx.createdAt() : null);
+        row.setObservedAt(observedAt);
+        row.setIngestedAt(Instant.now());
+        row.setIsExcluded(false);
+        row.setData(unified);
+        return new ComponentRow(row, primaryContexts.size() + relatedContexts.size());
     }
 
     private Optional<String> determinePrimaryType(List<Relationship> relationships,
-                                                  Map<String, List<RecordContext>> recordsById,
-                                                  List<RawEvent> events) {
+                                                  RecordIndex<RecordContext> recordIndex,
+                                                  Map<String, Long> rawTypeCounts) {
         Map<String, TypeStats> stats = new HashMap<>();
 
         for (Relationship relation : relationships) {
@@ -516,21 +849,9 @@ public class TransformService {
             return bestByRelations;
         }
 
-        Map<String, Long> typeCounts = new HashMap<>();
-        for (List<RecordContext> contexts : recordsById.values()) {
-            for (RecordContext ctx : contexts) {
-                if (StringUtils.hasText(ctx.recordType())) {
-                    typeCounts.merge(ctx.recordType(), 1L, Long::sum);
-                }
-            }
-        }
+        Map<String, Long> typeCounts = new HashMap<>(recordIndex.typeCounts());
         if (typeCounts.isEmpty()) {
-            for (RawEvent event : events) {
-                String type = resolveRecordType(event.getPayload());
-                if (StringUtils.hasText(type)) {
-                    typeCounts.merge(type, 1L, Long::sum);
-                }
-            }
+            typeCounts.putAll(rawTypeCounts);
         }
 
         return typeCounts.entrySet().stream()
@@ -539,16 +860,6 @@ public class TransformService {
                 .map(Map.Entry::getKey);
     }
 
-    private String fallbackPrimaryType(List<RawEvent> events) {
-        for (RawEvent event : events) {
-            String type = normalizeType(resolveRecordType(event.getPayload()));
-            if (StringUtils.hasText(type)) {
-                return type;
-            }
-        }
-        return null;
-    }
-
     private void accumulateType(Map<String, TypeStats> stats, String type, String id) {
         String normalizedId = normalizeId(id);
         if (!StringUtils.hasText(type) || !StringUtils.hasText(normalizedId)) {
@@ -559,17 +870,34 @@ public class TransformService {
         current.increment();
     }
 
-    private Map<String, List<RecordContext>> indexRecords(List<RawEvent> events) {
-        Map<String, List<RecordContext>> index = new HashMap<>();
-        for (RawEvent event : events) {
-            Map<String, Object> payload = Optional.ofNullable(event.getPayload()).orElse(Map.of());
-            payload = UnifiedPayloadNormalizer.normalizePayload(payload);
-            String recordType = normalizeType(resolveRecordType(payload));
+    /**
+     * Streams the raw events {@code events} hands out once and keeps only a compact header per record,
+     * indexed by id variant, type and payload value; payloads are loaded from {@code payloads} when a record
+     * is actually merged.
+     */
+    private TransformInput indexRecords(ToLongFunction<Consumer<TransformInputReader.RawEventRow>> events,
+                                        TransformInputReader.PayloadStore payloads) {
+        RecordIndex<RecordContext> index = new RecordIndex<>((batch, wanted) -> payloadValues(payloads, batch, wanted));
+        List<RecordContext> contexts = new ArrayList<>();
+        Map<String, Long> rawTypeCounts = new HashMap<>();
+        Map<Long, Source> sourcesById = new HashMap<>();
+        String[] firstRecordType = {null};
+
+        long eventCount = events.applyAsLong(event -> {
+            Map<String, Object> payload = event.payload();
+            String rawType = resolveRecordType(payload);
+            if (StringUtils.hasText(rawType)) {
+                rawTypeCounts.merge(rawType, 1L, Long::sum);
+            }
+            String recordType = normalizeType(rawType);
+            if (firstRecordType[0] == null && StringUtils.hasText(recordType)) {
+                firstRecordType[0] = recordType;
+            }
 
-            LinkedHashSet<String> candidateIds = collectCandidateIds(payload,
-                    Optional.ofNullable(event.getRawEventUid()).orElseGet(() -> String.valueOf(event.getId())));
+            String recordKey = Optional.ofNullable(event.rawEventUid()).orElseGet(() -> String.valueOf(event.rawEventId()));
+            LinkedHashSet<String> candidateIds = collectCandidateIds(payload, recordKey);
             if (!StringUtils.hasText(recordType) || candidateIds.isEmpty()) {
-                continue;
+                return;
             }
 
             String primaryId = candidateIds.iterator().next();
@@ -577,25 +905,64 @@ public class TransformService {
                     recordType, candidateIds, primaryId, payload.keySet());
             log.info("[IDX DEBUG] meta __table__={}, __schema__={}, __record_uid__={}",
                     payload.get("__table__"), payload.get("__schema__"), payload.get("__record_uid__"));
+            Long rawEventId = event.rawEventId();
+            Source source = event.sourceId() == null ? null
+                    : sourcesById.computeIfAbsent(event.sourceId(), sourceRepository::getReferenceById);
             RecordContext context = new RecordContext(
-                    event.getSource(),
-                    payload,
-                    event.getCreatedAt(),
+                    source,
+                    rawEventId,
+                    () -> payloads.get(rawEventId),
+                    event.createdAt(),
                     recordType,
                     primaryId,
-                    Optional.ofNullable(event.getRawEventUid()).orElseGet(() -> String.valueOf(event.getId()))
+                    recordKey
             );
+            contexts.add(context);
 
+            int ordinal = index.add(context);
             for (String candidate : candidateIds) {
                 for (String key : canonicalIds(candidate)) {
-                    List<RecordContext> list = index.computeIfAbsent(key, k -> new ArrayList<>());
-                    if (!list.contains(context)) {
-                        list.add(context);
+                    index.indexId(key, ordinal);
+                }
+            }
+            index.indexType(recordType, ordinal);
+        });
+        return new TransformInput(index, contexts, rawTypeCounts, firstRecordType[0], eventCount);
+    }
+
+    /**
+     * The scalar values among {@code wanted} in the records' payloads, which make a record findable the way
+     * relationships sometimes refer to records by a non-id column.
+     */
+    private List<Collection<String>> payloadValues(TransformInputReader.PayloadStore payloads,
+                                                   List<RecordContext> contexts,
+                                                   Set<String> wanted) {
+        prefetchPayloads(payloads, contexts);
+        List<Collection<String>> values = new ArrayList<>(contexts.size());
+        for (RecordContext context : contexts) {
+            Map<String, Object> payload = context.payload();
+            Set<String> normalized = new HashSet<>();
+            if (payload != null) {
+                for (Object value : FieldMappingPlan.flatten(payload).values()) {
+                    String candidate = value == null ? null : normalizeId(String.valueOf(value));
+                    if (candidate != null && wanted.contains(candidate)) {
+                        normalized.add(candidate);
                     }
                 }
             }
+            values.add(normalized);
+        }
+        return values;
+    }
+
+    private void prefetchPayloads(TransformInputReader.PayloadStore payloads, List<RecordContext> contexts) {
+        List<Long> ids = new ArrayList<>();
+        for (RecordContext context : contexts) {
+            if (context.rawEventId() != null) {
+                ids.add(context.rawEventId());
+            }
         }
-        return index;
+        payloads.prefetch(ids);
     }
 
     private LinkedHashSet<String> collectCandidateIds(Map<String, Object> payload, String fallbackId) {
@@ -640,7 +1007,7 @@ public class TransformService {
                 .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
-    private List<RecordContext> ensureRecords(Map<String, List<RecordContext>> index,
+    private List<RecordContext> ensureRecords(RecordIndex<RecordContext> index,
                                               String recordId,
                                               String recordType,
                                               Relationship relation,
@@ -658,7 +1025,7 @@ public class TransformService {
         String normalizedType = normalizeType(recordType);
 
         if (StringUtils.hasText(normalizedType)) {
-            List<RecordContext> byType = findByType(index, normalizedType);
+            List<RecordContext> byType = index.findByType(normalizedType);
             if (!byType.isEmpty()) {
                 return byType;
             }
@@ -666,21 +1033,9 @@ public class TransformService {
 
         // As a last-resort, try any available contexts before synthesizing an empty placeholder so we retain
         // real payloads even when relationship ids/types do not line up perfectly (common with CSV-only datasets).
-        final String normalizedTypeFinal = normalizedType;
-        List<RecordContext> anyContexts = index.values().stream()
-                .flatMap(List::stream)
-                .distinct()
-                .collect(Collectors.toList());
-        if (!anyContexts.isEmpty()) {
-            if (StringUtils.hasText(normalizedType)) {
-                List<RecordContext> matchingType = anyContexts.stream()
-                        .filter(ctx -> normalizedTypeFinal.equals(ctx.recordType()))
-                        .toList();
-                if (!matchingType.isEmpty()) {
-                    return matchingType;
-                }
-            }
-            return anyContexts;
+        // Contexts of the requested type were already tried above.
+        if (!index.isEmpty()) {
+            return index.all();
         }
 
         String normalizedId = normalizeId(recordId);
@@ -715,19 +1070,18 @@ public class TransformService {
 
         RecordContext placeholder = new RecordContext(
                 relation.getSource(),
-                syntheticPayload,
+                UnifiedPayloadNormalizer.normalizePayload(syntheticPayload),
                 relation.getIngestedAt(),
                 normalizedType,
                 normalizedId,
                 relation.getRelationshipUid()
         );
 
+        int ordinal = index.add(placeholder);
         for (String variant : canonicalIds(normalizedId)) {
-            List<RecordContext> list = index.computeIfAbsent(variant, k -> new ArrayList<>());
-            if (!list.contains(placeholder)) {
-                list.add(placeholder);
-            }
+            index.indexId(variant, ordinal);
         }
+        index.indexType(normalizedType, ordinal);
 
         return List.of(placeholder);
     }
@@ -744,16 +1098,12 @@ public class TransformService {
         return contexts.stream().min(comparator).orElse(contexts.get(0));
     }
 
-    private List<RecordContext> findRecords(Map<String, List<RecordContext>> index, String recordId, String recordType) {
+    private List<RecordContext> findRecords(RecordIndex<RecordContext> index, String recordId, String recordType) {
         if (!StringUtils.hasText(recordId)) {
             return List.of();
         }
 
-        List<RecordContext> aggregate = new ArrayList<>();
-        for (String variant : canonicalIds(recordId)) {
-            List<RecordContext> contexts = index.getOrDefault(variant, List.of());
-            aggregate.addAll(contexts);
-        }
+        List<RecordContext> aggregate = index.findByIds(canonicalIds(recordId));
 
         if (aggregate.isEmpty()) {
             return List.of();
@@ -769,27 +1119,12 @@ public class TransformService {
         return matched.isEmpty() ? aggregate : matched;
     }
 
-    private List<RecordContext> findByType(Map<String, List<RecordContext>> index, String normalizedType) {
-        if (!StringUtils.hasText(normalizedType)) {
-            return List.of();
-        }
-        List<RecordContext> results = new ArrayList<>();
-        for (List<RecordContext> contexts : index.values()) {
-            for (RecordContext ctx : contexts) {
-                if (normalizedType.equals(ctx.recordType()) && !results.contains(ctx)) {
-                    results.add(ctx);
-                }
-            }
-        }
-        return results;
-    }
-
-    private boolean isRelationLinkedToPrimary(Relationship relation, String normalizedPrimary, Map<String, List<RecordContext>> index) {
+    private boolean isRelationLinkedToPrimary(Relationship relation, String normalizedPrimary, RecordIndex<RecordContext> index) {
         ResolvedSides sides = resolveRelationSides(relation, normalizedPrimary, index);
         return normalizedPrimary.equals(sides.primaryType()) || normalizedPrimary.equals(sides.relatedType());
     }
 
-    private ResolvedSides resolveRelationSides(Relationship relation, String normalizedPrimary, Map<String, List<RecordContext>> index) {
+    private ResolvedSides resolveRelationSides(Relationship relation, String normalizedPrimary, RecordIndex<RecordContext> index) {
         String fromType = resolveRelationType(relation.getFromType(), relation.getPayload(), relation.getFromId(), index);
         String toType = resolveRelationType(relation.getToType(), relation.getPayload(), relation.getToId(), index);
 
@@ -808,7 +1143,7 @@ public class TransformService {
     }
 
     private String resolveRelationType(String explicitType, Map<String, Object> relationPayload, String recordId,
-                                       Map<String, List<RecordContext>> index) {
+                                       RecordIndex<RecordContext> index) {
         if (StringUtils.hasText(explicitType)) {
             return explicitType;
         }
@@ -826,7 +1161,7 @@ public class TransformService {
                 .orElse(explicitType);
     }
 
-    private boolean isPrimarySide(String type, String id, String normalizedPrimary, Map<String, List<RecordContext>> index) {
+    private boolean isPrimarySide(String type, String id, String normalizedPrimary, RecordIndex<RecordContext> index) {
         String normalizedType = normalizeType(type);
         if (normalizedType != null && normalizedType.equals(normalizedPrimary)) {
             return true;
@@ -874,17 +1209,15 @@ public class TransformService {
         return trimmed.replace("\"", "").replace("`", "");
     }
 
-    private Map<GraphBuilder.NodeRef, List<RecordContext>> mapContextsByNode(Map<String, List<RecordContext>> recordsById) {
+    private Map<GraphBuilder.NodeRef, List<RecordContext>> mapContextsByNode(List<RecordContext> contexts) {
         Map<GraphBuilder.NodeRef, List<RecordContext>> byNode = new LinkedHashMap<>();
-        for (List<RecordContext> contexts : recordsById.values()) {
-            for (RecordContext context : contexts) {
-                GraphBuilder.NodeRef node = toNodeRef(context.recordType(), context.recordId());
-                if (node == null) {
-                    continue;
-                }
-                log.info("[CTX DEBUG] context key type={}, id={} (after TransformService normalize)", node.type(), node.id());
-                byNode.computeIfAbsent(node, key -> new ArrayList<>()).add(context);
+        for (RecordContext context : contexts) {
+            GraphBuilder.NodeRef node = toNodeRef(context.recordType(), context.recordId());
+            if (node == null) {
+                continue;
             }
+            log.info("[CTX DEBUG] context key type={}, id={} (after TransformService normalize)", node.type(), node.id());
+            byNode.computeIfAbsent(node, key -> new ArrayList<>()).add(context);
         }
         return byNode;
     }
@@ -898,13 +1231,6 @@ public class TransformService {
         return node.type().equals(normalizedFromType) && node.id().equals(normalizedFromId);
     }
 
-    private boolean isOtherPrimary(String normalizedPrimary, GraphBuilder.NodeRef primaryNode, GraphBuilder.NodeRef candidate) {
-        if (normalizedPrimary == null || primaryNode == null || candidate == null) {
-            return false;
-        }
-        return normalizedPrimary.equals(candidate.type()) && !primaryNode.id().equals(candidate.id());
-    }
-
     private GraphBuilder.NodeRef toNodeRef(String recordType, String recordId) {
         String normalizedType = normalizeType(recordType);
         String normalizedId = normalizeId(recordId);
@@ -944,7 +1270,7 @@ public class TransformService {
         if (context == null) {
             return;
         }
-        Map<String, Object> normalized = UnifiedPayloadNormalizer.normalizePayload(context.payload());
+        Map<String, Object> normalized = context.payload();
         if (context.source() != null) {
             Map<String, Object> merged = new LinkedHashMap<>(target.getOrDefault(context.source().getId(), Map.of()));
             for (Map.Entry<String, Object> entry : normalized.entrySet()) {
@@ -961,11 +1287,10 @@ public class TransformService {
         if (target == null || key == null) {
             return;
         }
-        Object normalizedValue = TimestampNormalizer.normalizeValue(value);
-        if (normalizedValue == null) {
+        if (value == null) {
             return;
         }
-        target.put(key, normalizedValue);
+        target.put(key, value);
     }
 
     private String buildRecordKey(String primaryId, String relatedId, String primaryKey, String relatedKey) {
@@ -996,27 +1321,12 @@ public class TransformService {
         );
     }
 
-    private List<RecordContext> findByPayloadValue(Map<String, List<RecordContext>> index, String recordId) {
+    private List<RecordContext> findByPayloadValue(RecordIndex<RecordContext> index, String recordId) {
         String normalized = normalizeId(recordId);
         if (!StringUtils.hasText(normalized)) {
             return List.of();
         }
-
-        List<RecordContext> matches = new ArrayList<>();
-        for (List<RecordContext> contexts : index.values()) {
-            for (RecordContext ctx : contexts) {
-                if (ctx.payload() == null) {
-                    continue;
-                }
-                Map<String, Object> flattened = flattenPayload(ctx.payload());
-                if (flattened.values().stream().anyMatch(val -> normalized.equals(normalizeId(String.valueOf(val))))) {
-                    if (!matches.contains(ctx)) {
-                        matches.add(ctx);
-                    }
-                }
-            }
-        }
-        return matches;
+        return index.findByValue(normalized);
     }
 
     private String resolveRecordId(Map<String, Object> payload) {
@@ -1074,11 +1384,66 @@ public class TransformService {
         return normalized;
     }
 
-    public record MappingCandidate(DatasetMapping mapping, Map<String, Object> payload) {
+    /**
+     * Compact header of one record. Payloads of raw events are resolved through {@code payloadLoader} so
+     * they only need to be resident while the record's component is merged; they are always canonical.
+     */
+    public record RecordContext(Source source, Long rawEventId, Supplier<Map<String, Object>> payloadLoader, Instant createdAt,
+                                String recordType, String recordId, String recordKey) {
+
+        public RecordContext(Source source, Map<String, Object> payload, Instant createdAt, String recordType, String recordId,
+                             String recordKey) {
+            this(source, null, () -> payload, createdAt, recordType, recordId, recordKey);
+        }
+
+        public Map<String, Object> payload() {
+            return payloadLoader.get();
+        }
     }
 
-    public record RecordContext(Source source, Map<String, Object> payload, Instant createdAt, String recordType, String recordId,
-                                 String recordKey) {
+    private record GraphPass(Dataset dataset,
+                             GraphBuilder.Graph graph,
+                             GraphBuilder.Components components,
+                             Map<GraphBuilder.NodeRef, List<RecordContext>> contextsByNode,
+                             RecordIndex<RecordContext> recordIndex,
+                             TransformInputReader.PayloadStore payloads,
+                             FieldMappingPlan mappingPlan) {
+    }
+
+    private record ComponentRow(UnifiedRow row, int rowsIn) {
+    }
+
+    /**
+     * Everything a run needs to emit rows. {@code graphPass} is null when the dataset has no relationships;
+     * components are then the records of {@code input}, otherwise {@code primaryNodes}.
+     */
+    private record TransformPlan(Dataset dataset,
+                                 TransformInput input,
+                                 TransformInputReader.PayloadStore payloads,
+                                 FieldMappingPlan mappingPlan,
+                                 GraphPass graphPass,
+                                 List<GraphBuilder.NodeRef> primaryNodes) {
+
+        int componentCount() {
+            return graphPass == null ? input.contexts().size() : primaryNodes.size();
+        }
+    }
+
+    private record CachedPlan(Long runId, TransformPlan plan) {
+    }
+
+    private static final class RunProgress {
+        private int componentsTotal;
+        private int componentsDone;
+        private int rowsIn;
+        private int rowsOut;
+    }
+
+    private record TransformInput(RecordIndex<RecordContext> recordIndex,
+                                  List<RecordContext> contexts,
+                                  Map<String, Long> rawTypeCounts,
+                                  String firstRecordType,
+                                  long eventCount) {
     }
 
     private record ResolvedSides(String primaryId, String relatedId, String primaryType, String relatedType) {
@@ -1105,78 +1470,4 @@ public class TransformService {
             this.relationCount++;
         }
     }
-
-    private Object extractValue(Object current, String path) {
-        if (current == null || !StringUtils.hasText(path)) {
-            return null;
-        }
-
-        String[] segments = path.split("\\.");
-        Object value = current;
-
-        for (String rawSegment : segments) {
-            if (value == null) {
-                return null;
-            }
-
-            String segment = rawSegment;
-            Integer index = null;
-            if (rawSegment.contains("[")) {
-                int start = rawSegment.indexOf('[');
-                int end = rawSegment.indexOf(']', start);
-                if (end > start) {
-                    segment = rawSegment.substring(0, start);
-                    String indexStr = rawSegment.substring(start + 1, end);
-                    try {
-                        index = Integer.parseInt(indexStr);
-                    } catch (NumberFormatException ignored) {
-                        index = null;
-                    }
-                }
-            }
-
-            if (value instanceof Map<?, ?> mapValue) {
-                value = mapValue.get(segment);
-            } else {
-                return null;
-            }
-
-            if (index != null && value instanceof List<?> listValue) {
-                value = index >= 0 && index < listValue.size() ? listValue.get(index) : null;
-            }
-        }
-
-        return TimestampNormalizer.normalizeValue(value);
-    }
-
-    private Object applyTransform(Object value, TransformType transformType) {
-        if (value == null) {
-            return null;
-        }
-        try {
-            return switch (transformType) {
-                case LOWERCASE -> value.toString().toLowerCase();
-                case UPPERCASE -> value.toString().toUpperCase();
-                case TRIM -> value.toString().trim();
-                case INT -> {
-                    try {
-                        yield Integer.parseInt(value.toString());
-                    } catch (NumberFormatException ex) {
-                        yield value;
-                    }
-                }
-                case FLOAT -> {
-                    try {
-                        yield Double.parseDouble(value.toString());
-                    } catch (NumberFormatException ex) {
-                        yield value;
-                    }
-                }
-                case NONE -> value;
-            };
-        } catch (Exception exception) {
-            log.warn("Failed to apply transform '{}' on value {}", transformType, value, exception);
-            return value;
-        }
-    }
 }
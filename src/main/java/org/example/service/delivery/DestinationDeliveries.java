@@ -0,0 +1,214 @@
+package org.example.service.delivery;
+
+import lombok.RequiredArgsConstructor;
+import org.example.models.enums.DeliveryStatus;
+import org.example.utils.AppUtils;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Delivery state in {@code integration.destination_delivery}. A worker claims a queued delivery, which
+ * counts an attempt, and every later update is conditional on that attempt: once a stalled delivery is
+ * queued and claimed again, the worker that stalled can no longer advance or finish it.
+ */
+@Component
+@RequiredArgsConstructor
+public class DestinationDeliveries {
+
+    private static final String COLUMNS = """
+            d.delivery_id, d.delivery_uid, d.destination_id, s.name AS destination_name, s.type AS destination_type,
+            d.dataset_id, d.ingestion_run_id, d.transform_run_id, d.delivery_status, d.rows_total, d.rows_delivered,
+            d.chunks_delivered, d.checkpoint_row_id, d.checkpoint_offset, d.attempts, d.error_message, d.updated_at
+            """;
+
+    private static final RowMapper<Delivery> DELIVERY = (resultSet, rowNum) -> new Delivery(
+            resultSet.getLong("delivery_id"),
+            resultSet.getString("delivery_uid"),
+            resultSet.getLong("destination_id"),
+            resultSet.getString("destination_name"),
+            resultSet.getString("destination_type"),
+            resultSet.getObject("dataset_id", Long.class),
+            resultSet.getObject("ingestion_run_id", Long.class),
+            resultSet.getObject("transform_run_id", Long.class),
+            DeliveryStatus.valueOf(resultSet.getString("delivery_status")),
+            resultSet.getObject("rows_total", Long.class),
+            resultSet.getLong("rows_delivered"),
+            resultSet.getInt("chunks_delivered"),
+            resultSet.getObject("checkpoint_row_id", Long.class),
+            resultSet.getLong("checkpoint_offset"),
+            resultSet.getInt("attempts"),
+            resultSet.getString("error_message"),
+            instant(resultSet.getTimestamp("updated_at")));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Delivery create(Long destinationId, Long datasetId, Long ingestionRunId, Long transformRunId, long rowsTotal) {
+        Long id = jdbcTemplate.queryForObject("""
+                INSERT INTO integration.destination_delivery
+                    (delivery_uid, destination_id, dataset_id, ingestion_run_id, transform_run_id, delivery_status, rows_total)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                RETURNING delivery_id
+                """, Long.class, AppUtils.generateUUID(), destinationId, datasetId, ingestionRunId, transformRunId,
+                DeliveryStatus.QUEUED.name(), rowsTotal);
+        return find(id).orElseThrow();
+    }
+
+    public Optional<Delivery> find(Long deliveryId) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + """
+                FROM integration.destination_delivery d
+                JOIN integration.source s ON s.source_id = d.destination_id
+                WHERE d.delivery_id = ?
+                """, DELIVERY, deliveryId).stream().findFirst();
+    }
+
+    /**
+     * The most recent delivery of the dataset's unified rows to the destination.
+     */
+    public Optional<Delivery> latest(Long datasetId, Long destinationId) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + """
+                FROM integration.destination_delivery d
+                JOIN integration.source s ON s.source_id = d.destination_id
+                WHERE d.dataset_id = ? AND d.destination_id = ? AND d.ingestion_run_id IS NULL
+                ORDER BY d.delivery_id DESC
+                LIMIT 1
+                """, DELIVERY, datasetId, destinationId).stream().findFirst();
+    }
+
+    /**
+     * The most recent delivery of the dataset's unified rows to each destination.
+     */
+    public List<Delivery> latestPerDestination(Long datasetId) {
+        return jdbcTemplate.query("SELECT DISTINCT ON (d.destination_id) " + COLUMNS + """
+                FROM integration.destination_delivery d
+                JOIN integration.source s ON s.source_id = d.destination_id
+                WHERE d.dataset_id = ? AND d.ingestion_run_id IS NULL
+                ORDER BY d.destination_id, d.delivery_id DESC
+                """, DELIVERY, datasetId);
+    }
+
+    /**
+     * Deliveries that will not finish on their own, oldest first: failed ones with fewer than
+     * {@code maxAttempts} attempts that failed at least {@code retryAfterSeconds} ago, and queued or running
+     * ones without progress for {@code staleSeconds}, such as those whose worker queue was lost in a restart.
+     * Of the deliveries of a dataset's unified rows only the latest to each destination is considered. The
+     * literal status lets the planner use {@code ix_destination_delivery_pending}.
+     */
+    public List<Delivery> resumable(int staleSeconds, int retryAfterSeconds, int maxAttempts, int limit) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + """
+                FROM integration.destination_delivery d
+                JOIN integration.source s ON s.source_id = d.destination_id
+                WHERE d.delivery_status <> 'DELIVERED'
+                  AND ((d.delivery_status = ? AND d.attempts < ? AND d.updated_at < now() - make_interval(secs => ?))
+                       OR (d.delivery_status IN (?, ?) AND d.updated_at < now() - make_interval(secs => ?)))
+                  AND (d.ingestion_run_id IS NOT NULL OR NOT EXISTS (
+                      SELECT 1 FROM integration.destination_delivery newer
+                      WHERE newer.dataset_id = d.dataset_id AND newer.destination_id = d.destination_id
+                        AND newer.ingestion_run_id IS NULL AND newer.delivery_id > d.delivery_id))
+                ORDER BY d.delivery_id
+                LIMIT ?
+                """, DELIVERY, DeliveryStatus.FAILED.name(), maxAttempts,
+                retryAfterSeconds, DeliveryStatus.QUEUED.name(), DeliveryStatus.RUNNING.name(), staleSeconds, limit);
+    }
+
+    /**
+     * Queues a failed delivery again, or one that has been queued or running without progress for
+     * {@code staleSeconds}; it resumes after its checkpoint. False if the delivery is neither.
+     */
+    public boolean requeue(Long deliveryId, int staleSeconds) {
+        return jdbcTemplate.update("""
+                UPDATE integration.destination_delivery
+                SET delivery_status = ?, error_message = NULL, ended_at = NULL, updated_at = now()
+                WHERE delivery_id = ?
+                  AND (delivery_status = ?
+                       OR (delivery_status IN (?, ?) AND updated_at < now() - make_interval(secs => ?)))
+                """, DeliveryStatus.QUEUED.name(), deliveryId, DeliveryStatus.FAILED.name(),
+                DeliveryStatus.QUEUED.name(), DeliveryStatus.RUNNING.name(), staleSeconds) > 0;
+    }
+
+    /**
+     * Starts a queued delivery; the attempt it returns authorizes the worker's later updates. Empty if the
+     * delivery is no longer queued, for instance because another worker claimed it.
+     */
+    public Optional<Integer> claim(Long deliveryId) {
+        return jdbcTemplate.queryForList("""
+                UPDATE integration.destination_delivery
+                SET delivery_status = ?, attempts = attempts + 1, updated_at = now()
+                WHERE delivery_id = ? AND delivery_status = ?
+                RETURNING attempts
+                """, Integer.class, DeliveryStatus.RUNNING.name(), deliveryId, DeliveryStatus.QUEUED.name())
+                .stream().findFirst();
+    }
+
+    /**
+     * Records a delivered chunk; false if the attempt was superseded, in which case the worker must stop.
+     */
+    public boolean checkpoint(Long deliveryId, int attempt, long lastRowId, long offset, int rows) {
+        return jdbcTemplate.update("""
+                UPDATE integration.destination_delivery
+                SET checkpoint_row_id = ?, checkpoint_offset = ?, rows_delivered = rows_delivered + ?,
+                    chunks_delivered = chunks_delivered + 1, updated_at = now()
+                WHERE delivery_id = ? AND attempts = ? AND delivery_status = ?
+                """, lastRowId, offset, rows, deliveryId, attempt, DeliveryStatus.RUNNING.name()) > 0;
+    }
+
+    public void complete(Long deliveryId, int attempt) {
+        finish(deliveryId, attempt, DeliveryStatus.DELIVERED, null);
+    }
+
+    /**
+     * @param restart whether the delivered output is discarded, so a retry starts from the first row instead
+     *                of after the checkpoint
+     * @return false if the attempt was superseded
+     */
+    public boolean fail(Long deliveryId, int attempt, String errorMessage, boolean restart) {
+        if (!restart) {
+            return finish(deliveryId, attempt, DeliveryStatus.FAILED, errorMessage);
+        }
+        return jdbcTemplate.update("""
+                UPDATE integration.destination_delivery
+                SET delivery_status = ?, error_message = ?, checkpoint_row_id = NULL, checkpoint_offset = 0,
+                    rows_delivered = 0, chunks_delivered = 0, ended_at = now(), updated_at = now()
+                WHERE delivery_id = ? AND attempts = ? AND delivery_status = ?
+                """, DeliveryStatus.FAILED.name(), errorMessage, deliveryId, attempt, DeliveryStatus.RUNNING.name()) > 0;
+    }
+
+    /**
+     * Fails a delivery that could not be handed to a worker.
+     */
+    public void reject(Long deliveryId, String errorMessage) {
+        jdbcTemplate.update("""
+                UPDATE integration.destination_delivery
+                SET delivery_status = ?, error_message = ?, ended_at = now(), updated_at = now()
+                WHERE delivery_id = ? AND delivery_status = ?
+                """, DeliveryStatus.FAILED.name(), errorMessage, deliveryId, DeliveryStatus.QUEUED.name());
+    }
+
+    private boolean finish(Long deliveryId, int attempt, DeliveryStatus status, String errorMessage) {
+        return jdbcTemplate.update("""
+                UPDATE integration.destination_delivery
+                SET delivery_status = ?, error_message = ?, ended_at = now(), updated_at = now()
+                WHERE delivery_id = ? AND attempts = ? AND delivery_status = ?
+                """, status.name(), errorMessage, deliveryId, attempt, DeliveryStatus.RUNNING.name()) > 0;
+    }
+
+    private static Instant instant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    /**
+     * @param checkpointRowId the last delivered row, {@code null} before the first chunk
+     * @param checkpointOffset the length of a destination file, or the rows written to a database
+     *                         destination, after the last delivered chunk
+     */
+    public record Delivery(Long id, String uid, Long destinationId, String destinationName, String destinationType,
+                           Long datasetId, Long ingestionRunId, Long transformRunId, DeliveryStatus status,
+                           Long rowsTotal, long rowsDelivered, int chunksDelivered, Long checkpointRowId,
+                           long checkpointOffset, int attempts, String errorMessage, Instant updatedAt) {
+    }
+}
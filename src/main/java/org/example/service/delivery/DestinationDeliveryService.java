@@ -0,0 +1,320 @@
+package org.example.service.delivery;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.models.dto.ExportResultDTO;
+import org.example.models.entity.Dataset;
+import org.example.models.entity.IngestionRun;
+import org.example.models.entity.Source;
+import org.example.models.enums.DeliveryStatus;
+import org.example.repository.DatasetFieldRepository;
+import org.example.repository.DatasetRepository;
+import org.example.repository.SourceRepository;
+import org.example.service.delivery.DestinationDeliveries.Delivery;
+import org.example.service.export.ExportColumn;
+import org.example.service.ingestion.DestinationOutputService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans rows out to destinations. Every destination has its own worker and bounded queue, so a slow or
+ * failing destination delays only its own deliveries. Workers read the rows in chunks by id and checkpoint
+ * each delivered chunk (see {@link DestinationDeliveries}); a failed delivery that is started again resumes
+ * after its checkpoint instead of sending everything again. Worker queues live in memory, so a sweep
+ * ({@link #resumeStalled}) starts failed deliveries again, and those a restart or a lost worker left behind.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DestinationDeliveryService {
+
+    private static final TypeReference<Map<String, Object>> RECORD_TYPE = new TypeReference<>() {
+    };
+
+    private static final String UNIFIED_ROWS = """
+            SELECT unified_row_id AS row_id, data::text AS record
+            FROM integration.unified_row
+            WHERE dataset_id = ? AND is_excluded = false AND unified_row_id > ?
+            ORDER BY unified_row_id
+            LIMIT ?
+            """;
+
+    private static final String RUN_RECORDS = """
+            SELECT raw_event_id AS row_id, payload::text AS record
+            FROM integration.raw_event
+            WHERE ingestion_run_id = ? AND raw_event_id > ?
+            ORDER BY raw_event_id
+            LIMIT ?
+            """;
+
+    private final DestinationDeliveries deliveries;
+    private final DestinationOutputService destinationOutputService;
+    private final SourceRepository sourceRepository;
+    private final DatasetRepository datasetRepository;
+    private final DatasetFieldRepository datasetFieldRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Map<Long, ThreadPoolExecutor> workers = new ConcurrentHashMap<>();
+
+    @Value("${delivery.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${delivery.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${delivery.stale-after-seconds:900}")
+    private int staleAfterSeconds;
+
+    @Value("${delivery.retry-after-seconds:60}")
+    private int retryAfterSeconds;
+
+    @Value("${delivery.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${delivery.sweep-batch-size:100}")
+    private int sweepBatchSize;
+
+    /**
+     * Delivers the dataset's non-excluded unified rows to the destination. A delivery of the same transform
+     * run that is still under way is left to finish, and one that failed or stalled resumes after its
+     * checkpoint; otherwise a new delivery starts from the first row. {@code uq_destination_delivery_active}
+     * allows one queued or running delivery per dataset and destination, so a request that loses the race to
+     * create it, or that finds an earlier run's delivery under way, gets that delivery instead.
+     */
+    public Delivery deliverDataset(Dataset dataset, Source destination, List<ExportColumn> columns) {
+        Long transformRunId = latestTransformRun(dataset.getId());
+        Optional<Delivery> latest = deliveries.latest(dataset.getId(), destination.getId())
+                .filter(delivery -> delivery.status() != DeliveryStatus.DELIVERED)
+                .filter(delivery -> Objects.equals(delivery.transformRunId(), transformRunId));
+        if (latest.isPresent()) {
+            Delivery delivery = latest.get();
+            if (!deliveries.requeue(delivery.id(), staleAfterSeconds)) {
+                return delivery;
+            }
+            log.info("Resuming delivery {} to {} after row {}", delivery.uid(), destination.getName(), delivery.checkpointRowId());
+            return submit(delivery.id(), destination, new Rows(UNIFIED_ROWS, dataset.getId(), columns));
+        }
+        Long rowsTotal = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM integration.unified_row WHERE dataset_id = ? AND is_excluded = false",
+                Long.class, dataset.getId());
+        Delivery delivery;
+        try {
+            delivery = deliveries.create(destination.getId(), dataset.getId(), null, transformRunId,
+                    rowsTotal == null ? 0 : rowsTotal);
+        } catch (DuplicateKeyException active) {
+            return deliveries.latest(dataset.getId(), destination.getId()).orElseThrow(() -> active);
+        }
+        return submit(delivery.id(), destination, new Rows(UNIFIED_ROWS, dataset.getId(), columns));
+    }
+
+    /**
+     * Delivers the records the ingestion run stored to the destination, with the records' keys as columns.
+     */
+    public Delivery deliverIngestion(IngestionRun run, Source destination) {
+        Long rowsTotal = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM integration.raw_event WHERE ingestion_run_id = ?", Long.class, run.getId());
+        Delivery delivery = deliveries.create(destination.getId(),
+                run.getDataset() == null ? null : run.getDataset().getId(), run.getId(), null,
+                rowsTotal == null ? 0 : rowsTotal);
+        return submit(delivery.id(), destination, new Rows(RUN_RECORDS, run.getId(), ExportColumn.untyped(runKeys(run.getId()))));
+    }
+
+    /**
+     * Starts again the deliveries that would otherwise never finish (see {@link DestinationDeliveries#resumable}).
+     * A dataset delivery goes through {@link #deliverDataset}, so one of a superseded transform run starts over
+     * with the current rows; an ingestion delivery resumes after its checkpoint. Deliveries another instance
+     * has just requeued are left to it.
+     */
+    @Scheduled(fixedDelayString = "${delivery.sweep-interval-ms:60000}")
+    public void resumeStalled() {
+        List<Delivery> stalled = deliveries.resumable(staleAfterSeconds, retryAfterSeconds, maxAttempts, sweepBatchSize);
+        for (Delivery delivery : stalled) {
+            try {
+                resume(delivery);
+            } catch (RuntimeException exception) {
+                log.error("Could not resume delivery {} to {}", delivery.uid(), delivery.destinationName(), exception);
+            }
+        }
+    }
+
+    private void resume(Delivery delivery) {
+        Source destination = sourceRepository.findById(delivery.destinationId()).orElse(null);
+        if (destination == null) {
+            return;
+        }
+        if (delivery.ingestionRunId() == null) {
+            Dataset dataset = datasetRepository.findById(delivery.datasetId()).orElse(null);
+            if (dataset != null) {
+                List<ExportColumn> columns = ExportColumn.of(datasetFieldRepository.findAllByDataset_Id(dataset.getId()));
+                deliverDataset(dataset, destination, columns);
+            }
+            return;
+        }
+        if (!deliveries.requeue(delivery.id(), staleAfterSeconds)) {
+            return;
+        }
+        log.info("Resuming delivery {} to {} after row {}", delivery.uid(), destination.getName(), delivery.checkpointRowId());
+        Long runId = delivery.ingestionRunId();
+        submit(delivery.id(), destination, new Rows(RUN_RECORDS, runId, ExportColumn.untyped(runKeys(runId))));
+    }
+
+    /**
+     * The latest delivery of the dataset's unified rows to each destination, keyed by destination name.
+     */
+    public ExportResultDTO status(Long datasetId) {
+        Map<String, Object> destinations = new LinkedHashMap<>();
+        long rowsSent = 0;
+        for (Delivery delivery : deliveries.latestPerDestination(datasetId)) {
+            destinations.put(delivery.destinationName(), describe(delivery));
+            rowsSent += delivery.rowsDelivered();
+        }
+        return new ExportResultDTO(rowsSent, destinations);
+    }
+
+    public Map<String, Object> describe(Delivery delivery) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("deliveryUid", delivery.uid());
+        result.put("destinationType", delivery.destinationType());
+        result.put("status", delivery.status().name());
+        result.put("rowsDelivered", delivery.rowsDelivered());
+        result.put("rowsTotal", delivery.rowsTotal());
+        result.put("chunksDelivered", delivery.chunksDelivered());
+        result.put("attempts", delivery.attempts());
+        if (delivery.errorMessage() != null) {
+            result.put("error", delivery.errorMessage());
+        }
+        return result;
+    }
+
+    private Delivery submit(Long deliveryId, Source destination, Rows rows) {
+        try {
+            worker(destination.getId()).execute(() -> run(deliveryId, destination, rows));
+        } catch (RejectedExecutionException exception) {
+            log.warn("Delivery queue of destination {} is full", destination.getName());
+            deliveries.reject(deliveryId, "Delivery queue of the destination is full");
+        }
+        return deliveries.find(deliveryId).orElseThrow();
+    }
+
+    private ThreadPoolExecutor worker(Long destinationId) {
+        return workers.computeIfAbsent(destinationId, id -> {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "delivery-" + id);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        });
+    }
+
+    private void run(Long deliveryId, Source destination, Rows rows) {
+        Optional<Integer> claimed = deliveries.claim(deliveryId);
+        if (claimed.isEmpty()) {
+            return;
+        }
+        int attempt = claimed.get();
+        Delivery delivery = deliveries.find(deliveryId).orElseThrow();
+        long afterId = Optional.ofNullable(delivery.checkpointRowId()).orElse(0L);
+        long offset = delivery.checkpointOffset();
+        try {
+            while (true) {
+                Chunk chunk = read(rows, afterId);
+                if (chunk.records().isEmpty()) {
+                    break;
+                }
+                offset = destinationOutputService.writeChunk(destination, chunk.records(), rows.columns(), offset);
+                afterId = chunk.lastRowId();
+                if (!deliveries.checkpoint(deliveryId, attempt, afterId, offset, chunk.records().size())) {
+                    log.warn("Delivery {} was taken over; attempt {} stops", delivery.uid(), attempt);
+                    return;
+                }
+            }
+            destinationOutputService.finish(destination, offset);
+            deliveries.complete(deliveryId, attempt);
+            log.info("Delivery {} to {} finished", delivery.uid(), destination.getName());
+        } catch (Exception exception) {
+            log.error("Delivery {} to {} failed after row {}", delivery.uid(), destination.getName(), afterId, exception);
+            boolean restart = destinationOutputService.restartsAfterFailure(destination);
+            // Only the attempt that still owns the delivery may drop its output.
+            if (deliveries.fail(deliveryId, attempt, exception.getMessage(), restart) && restart) {
+                destinationOutputService.discard(destination);
+            }
+        }
+    }
+
+    private Chunk read(Rows rows, long afterId) {
+        List<Map<String, Object>> records = new ArrayList<>(chunkSize);
+        long[] lastRowId = {afterId};
+        jdbcTemplate.query(rows.query(), resultSet -> {
+            lastRowId[0] = resultSet.getLong("row_id");
+            records.add(parse(resultSet.getString("record")));
+        }, rows.key(), afterId, chunkSize);
+        return new Chunk(records, lastRowId[0]);
+    }
+
+    /**
+     * The keys of the run's records, in the order they first appear.
+     */
+    private List<String> runKeys(Long runId) {
+        return jdbcTemplate.queryForList("""
+                SELECT k.key
+                FROM integration.raw_event e
+                CROSS JOIN LATERAL jsonb_object_keys(e.payload) WITH ORDINALITY AS k(key, position)
+                WHERE e.ingestion_run_id = ?
+                GROUP BY k.key
+                ORDER BY min(e.raw_event_id), min(k.position)
+                """, String.class, runId);
+    }
+
+    private Long latestTransformRun(Long datasetId) {
+        return jdbcTemplate.queryForObject("""
+                SELECT max(transform_run_id) FROM integration.transform_run
+                WHERE dataset_id = ? AND run_status = 'SUCCESS'
+                """, Long.class, datasetId);
+    }
+
+    private Map<String, Object> parse(String json) {
+        try {
+            return objectMapper.readValue(json, RECORD_TYPE);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Failed to parse delivered record", exception);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    /**
+     * Where a delivery reads its rows: {@code query} takes {@code key}, the last delivered id and a limit.
+     */
+    private record Rows(String query, Long key, List<ExportColumn> columns) {
+    }
+
+    private record Chunk(List<Map<String, Object>> records, long lastRowId) {
+    }
+}
@@ -0,0 +1,177 @@
+package org.example.service.explore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.example.models.dto.RawDataPage;
+import org.example.models.dto.RawDataRecordDTO;
+import org.example.models.dto.UnifiedRowPage;
+import org.example.models.dto.UnifiedRowRecordDTO;
+import org.example.utils.KeysetCursor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pages through a dataset's raw events and unified rows, newest first, with keyset pagination: a page's
+ * cursor holds the {@code (created_at, id)} or {@code (ingested_at, id)} of its last row, and the next page
+ * seeks past it on {@code ix_raw_event_dataset_time} or {@code ix_unified_row_dataset_time}. Unlike an
+ * offset, earlier pages are never scanned, so every page costs the same.
+ * <p>
+ * Timestamps are carried in the cursor as the column's own {@code timestamp} value, so the comparison is exact
+ * whatever the JVM or session time zone.
+ */
+@Component
+@RequiredArgsConstructor
+public class DatasetRowPager {
+
+    private static final TypeReference<Map<String, Object>> DATA_TYPE = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @throws IllegalArgumentException if the cursor is invalid or was issued for another listing
+     */
+    public RawDataPage rawEvents(Long datasetId, String cursor, int size) {
+        String scope = "raw:" + datasetId;
+        KeysetCursor after = decode(cursor, scope);
+
+        StringBuilder sql = new StringBuilder("""
+                SELECT e.raw_event_id, e.raw_event_uid, s.name AS source_name, e.payload::text AS payload, e.created_at
+                FROM integration.raw_event e
+                LEFT JOIN integration.source s ON s.source_id = e.source_id
+                WHERE e.dataset_id = ?""");
+        List<Object> args = new ArrayList<>();
+        args.add(datasetId);
+        if (after != null) {
+            sql.append(" AND (e.created_at, e.raw_event_id) < (?, ?)");
+            args.add(timestamp(after));
+            args.add(id(after));
+        }
+        sql.append(" ORDER BY e.created_at DESC, e.raw_event_id DESC LIMIT ?");
+        args.add(size + 1);
+
+        List<Keyed<RawDataRecordDTO>> rows = jdbcTemplate.query(sql.toString(), (resultSet, rowNum) -> new Keyed<>(
+                new RawDataRecordDTO(
+                        resultSet.getString("raw_event_uid"),
+                        resultSet.getString("source_name"),
+                        parse(resultSet.getString("payload")),
+                        instant(resultSet, "created_at")),
+                resultSet.getObject("created_at", LocalDateTime.class),
+                resultSet.getLong("raw_event_id")), args.toArray());
+
+        String nextCursor = nextCursor(rows, size, scope);
+        return new RawDataPage(records(rows, size), size, nextCursor);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor is invalid or was issued for another listing
+     */
+    public UnifiedRowPage unifiedRows(Long datasetId, boolean includeExcluded, String cursor, int size) {
+        String scope = "unified:" + datasetId + (includeExcluded ? ":all" : "");
+        KeysetCursor after = decode(cursor, scope);
+
+        StringBuilder sql = new StringBuilder("""
+                SELECT r.unified_row_id, r.is_excluded, r.data::text AS data, r.ingested_at
+                FROM integration.unified_row r
+                WHERE r.dataset_id = ?""");
+        List<Object> args = new ArrayList<>();
+        args.add(datasetId);
+        if (!includeExcluded) {
+            sql.append(" AND r.is_excluded = false");
+        }
+        if (after != null) {
+            sql.append(" AND (r.ingested_at, r.unified_row_id) < (?, ?)");
+            args.add(timestamp(after));
+            args.add(id(after));
+        }
+        sql.append(" ORDER BY r.ingested_at DESC, r.unified_row_id DESC LIMIT ?");
+        args.add(size + 1);
+
+        List<Keyed<UnifiedRowRecordDTO>> rows = jdbcTemplate.query(sql.toString(), (resultSet, rowNum) -> new Keyed<>(
+                new UnifiedRowRecordDTO(
+                        resultSet.getLong("unified_row_id"),
+                        resultSet.getBoolean("is_excluded"),
+                        parse(resultSet.getString("data")),
+                        instant(resultSet, "ingested_at")),
+                resultSet.getObject("ingested_at", LocalDateTime.class),
+                resultSet.getLong("unified_row_id")), args.toArray());
+
+        String nextCursor = nextCursor(rows, size, scope);
+        return new UnifiedRowPage(records(rows, size), size, nextCursor);
+    }
+
+    /**
+     * The cursor after the last row of the page, if the query found a row beyond it.
+     */
+    private static String nextCursor(List<? extends Keyed<?>> rows, int size, String scope) {
+        if (rows.size() <= size) {
+            return null;
+        }
+        Keyed<?> last = rows.get(size - 1);
+        return KeysetCursor.of(last.time().toString(), Long.toString(last.id())).encode(scope);
+    }
+
+    private static <T> List<T> records(List<Keyed<T>> rows, int size) {
+        List<T> records = new ArrayList<>(Math.min(rows.size(), size));
+        for (int i = 0; i < rows.size() && i < size; i++) {
+            records.add(rows.get(i).record());
+        }
+        return records;
+    }
+
+    private static KeysetCursor decode(String cursor, String scope) {
+        KeysetCursor decoded = cursor == null || cursor.isBlank() ? null : KeysetCursor.decode(cursor, scope);
+        if (decoded != null && decoded.values().size() != 2) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return decoded;
+    }
+
+    private static LocalDateTime timestamp(KeysetCursor cursor) {
+        try {
+            return LocalDateTime.parse(cursor.value(0));
+        } catch (DateTimeParseException exception) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static long id(KeysetCursor cursor) {
+        try {
+            return Long.parseLong(cursor.value(1));
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static Instant instant(ResultSet resultSet, String column) throws SQLException {
+        Timestamp timestamp = resultSet.getTimestamp(column);
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    private Map<String, Object> parse(String json) {
+        if (json == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(json, DATA_TYPE);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Failed to parse row data", exception);
+        }
+    }
+
+    private record Keyed<T>(T record, LocalDateTime time, long id) {
+    }
+}
@@ -0,0 +1,174 @@
+package org.example.service.explore;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Explore filters on top-level fields of unified row data, translated into SQL predicates on
+ * {@code integration.unified_row.data} (aliased {@code r}). Filters are ANDed; each is {@code field}, an
+ * operator and a value:
+ * <ul>
+ *   <li>{@code field==value}: exact JSON match with {@code @>}, answered by {@code gin_unified_row_data}.
+ *   Numbers, {@code true}, {@code false} and {@code null} match JSON values of that type, anything else
+ *   (optionally double-quoted) a string.</li>
+ *   <li>{@code field=value} and {@code field!=value}: text equality ignoring case, as explore has always
+ *   matched. {@code =} also requires the key, which the GIN index can answer.</li>
+ *   <li>{@code field>value}, {@code >=}, {@code <} and {@code <=}: a numeric range when the value is a
+ *   number (fields that are not numbers never match), otherwise a text range, which orders ISO dates and
+ *   timestamps correctly.</li>
+ *   <li>{@code field~text}: the field contains {@code text}, ignoring case.</li>
+ * </ul>
+ * Filters without a field or operator are ignored, as they always were.
+ */
+public final class ExploreFilter {
+
+    public static final ExploreFilter NONE = new ExploreFilter(List.of());
+
+    private static final Pattern JSON_NUMBER = Pattern.compile("-?(0|[1-9]\\d*)(\\.\\d+)?([eE][+-]?\\d+)?");
+
+    private final String sql;
+    private final Object[] args;
+
+    private ExploreFilter(List<Condition> conditions) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        for (Condition condition : conditions) {
+            sql.append(" AND ");
+            condition.appendTo(sql, args);
+        }
+        this.sql = sql.toString();
+        this.args = args.toArray();
+    }
+
+    public static ExploreFilter parse(Collection<String> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return NONE;
+        }
+        List<Condition> conditions = new ArrayList<>();
+        for (String filter : filters) {
+            Condition condition = Condition.parse(filter);
+            if (condition != null) {
+                conditions.add(condition);
+            }
+        }
+        return conditions.isEmpty() ? NONE : new ExploreFilter(conditions);
+    }
+
+    /**
+     * The predicates as {@code " AND ..."}, to append to a {@code WHERE} clause; empty without conditions.
+     */
+    public String sql() {
+        return sql;
+    }
+
+    /**
+     * Bind values for the placeholders of {@link #sql()}, in order.
+     */
+    public Object[] args() {
+        return args.clone();
+    }
+
+    public enum Operator {
+        // two-character operators first, so "a>=1" is not read as "a>" "=1"
+        EXACT("=="),
+        NOT_EQUAL("!="),
+        GREATER_OR_EQUAL(">="),
+        LESS_OR_EQUAL("<="),
+        EQUAL("="),
+        GREATER(">"),
+        LESS("<"),
+        CONTAINS("~");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String symbol() {
+            return symbol;
+        }
+    }
+
+    public record Condition(String field, Operator operator, String value) {
+
+        /**
+         * Splits {@code filter} at its first operator; {@code null} if it has no field or operator.
+         */
+        static Condition parse(String filter) {
+            if (filter == null || filter.isBlank()) {
+                return null;
+            }
+            for (int i = 1; i < filter.length(); i++) {
+                for (Operator operator : Operator.values()) {
+                    if (filter.startsWith(operator.symbol, i)) {
+                        return new Condition(filter.substring(0, i), operator,
+                                filter.substring(i + operator.symbol.length()));
+                    }
+                }
+            }
+            return null;
+        }
+
+        void appendTo(StringBuilder sql, List<Object> args) {
+            switch (operator) {
+                case EXACT -> {
+                    if (isJsonScalar(value)) {
+                        sql.append("r.data @> jsonb_build_object(CAST(? AS text), CAST(? AS jsonb))");
+                        args.add(field);
+                        args.add(value);
+                    } else {
+                        sql.append("r.data @> jsonb_build_object(CAST(? AS text), CAST(? AS text))");
+                        args.add(field);
+                        args.add(unquote(value));
+                    }
+                }
+                case EQUAL -> {
+                    // "??" is the JDBC escape for the jsonb key-exists operator
+                    sql.append("r.data ?? CAST(? AS text) AND lower(r.data ->> CAST(? AS text)) = lower(?)");
+                    args.add(field);
+                    args.add(field);
+                    args.add(value);
+                }
+                case NOT_EQUAL -> {
+                    sql.append("lower(r.data ->> CAST(? AS text)) IS DISTINCT FROM lower(?)");
+                    args.add(field);
+                    args.add(value);
+                }
+                case GREATER, GREATER_OR_EQUAL, LESS, LESS_OR_EQUAL -> {
+                    if (JSON_NUMBER.matcher(value).matches()) {
+                        sql.append("CASE WHEN jsonb_typeof(r.data -> CAST(? AS text)) = 'number'"
+                                + " THEN CAST(r.data ->> CAST(? AS text) AS numeric) END ")
+                                .append(operator.symbol).append(" ?");
+                        args.add(field);
+                        args.add(field);
+                        args.add(new BigDecimal(value));
+                    } else {
+                        sql.append("r.data ->> CAST(? AS text) ").append(operator.symbol).append(" ?");
+                        args.add(field);
+                        args.add(unquote(value));
+                    }
+                }
+                case CONTAINS -> {
+                    sql.append("r.data ->> CAST(? AS text) ILIKE ?");
+                    args.add(field);
+                    args.add("%" + value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+                }
+            }
+        }
+
+        private static boolean isJsonScalar(String value) {
+            return "true".equals(value) || "false".equals(value) || "null".equals(value)
+                    || JSON_NUMBER.matcher(value).matches();
+        }
+
+        private static String unquote(String value) {
+            return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                    ? value.substring(1, value.length() - 1)
+                    : value;
+        }
+    }
+}
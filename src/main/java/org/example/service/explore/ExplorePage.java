@@ -0,0 +1,10 @@
+package org.example.service.explore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of explore results; {@code nextCursor} fetches the following page and is {@code null} on the last.
+ */
+public record ExplorePage(List<Map<String, Object>> rows, String nextCursor) {
+}
@@ -0,0 +1,148 @@
+package org.example.service.explore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.example.utils.KeysetCursor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers explore queries in the database: filters become JSONB predicates on the dataset's partition of
+ * {@code integration.unified_row}, and ordering, the page size and keyset pagination are applied in SQL, so
+ * only a page of rows leaves the database and later pages start after the cursor instead of skipping the
+ * rows before it.
+ * <p>
+ * That does not make a page's cost independent of the dataset's size. Row id order walks the primary key
+ * and stops after a page, but only while enough rows match; no index covers a data field, so ordering by
+ * one, and range or contains filters, read every row of the dataset that the indexed filters (see
+ * {@link ExploreFilter}) leave, and sort them for each page.
+ * <p>
+ * Rows are ordered by row id, or by a top-level data field and then row id. Fields compare as JSONB values
+ * (numbers numerically, strings as text) and rows without the field sort as JSON {@code null}, first in
+ * ascending order. A page's cursor holds its last row's sort key, and the next page starts after it.
+ */
+@Service
+@RequiredArgsConstructor
+public class ExploreQueryService {
+
+    private static final TypeReference<Map<String, Object>> DATA_TYPE = new TypeReference<>() {
+    };
+
+    private static final String SORT_VALUE = "COALESCE(r.data -> CAST(? AS text), 'null'::jsonb)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Up to {@code limit} rows of the dataset matching {@code filter}, after {@code cursor} if given.
+     *
+     * @param sort the field to order by, prefixed with {@code -} for descending order; {@code null} or blank
+     *             for row id order
+     * @throws IllegalArgumentException if the cursor is invalid or was issued for another dataset or ordering
+     */
+    public ExplorePage page(Long datasetId, ExploreFilter filter, String sort, int limit, String cursor) {
+        boolean descending = sort != null && sort.startsWith("-");
+        String sortField = sort == null || sort.isBlank() ? null : descending ? sort.substring(1) : sort;
+        if (sortField != null && sortField.isBlank()) {
+            throw new IllegalArgumentException("Sort field must not be blank");
+        }
+        String scope = "explore:" + datasetId + ":" + (sortField == null ? "" : (descending ? "-" : "+") + sortField);
+        KeysetCursor after = cursor == null || cursor.isBlank() ? null : KeysetCursor.decode(cursor, scope);
+
+        StringBuilder sql = new StringBuilder("SELECT r.unified_row_id, r.data::text AS data");
+        List<Object> args = new ArrayList<>();
+        if (sortField != null) {
+            sql.append(", ").append(SORT_VALUE).append(" AS sort_value");
+            args.add(sortField);
+        }
+        sql.append(" FROM integration.unified_row r WHERE r.dataset_id = ?").append(filter.sql());
+        args.add(datasetId);
+        args.addAll(Arrays.asList(filter.args()));
+
+        String comparison = descending ? " < " : " > ";
+        if (after != null) {
+            if (sortField == null) {
+                sql.append(" AND r.unified_row_id").append(comparison).append("?");
+                args.add(parseId(after, 0));
+            } else {
+                long afterId = parseId(after, 1);
+                sql.append(" AND (").append(SORT_VALUE).append(", r.unified_row_id)").append(comparison)
+                        .append("(CAST(? AS jsonb), ?)");
+                args.add(sortField);
+                args.add(sortValue(after));
+                args.add(afterId);
+            }
+        }
+
+        String direction = descending ? " DESC" : "";
+        sql.append(" ORDER BY ");
+        if (sortField != null) {
+            sql.append("sort_value").append(direction).append(", ");
+        }
+        sql.append("r.unified_row_id").append(direction).append(" LIMIT ?");
+        // one row beyond the page tells whether there is a next one
+        args.add(limit + 1);
+
+        List<Row> rows = jdbcTemplate.query(sql.toString(), (resultSet, rowNum) -> new Row(
+                resultSet.getLong("unified_row_id"),
+                sortField == null ? null : resultSet.getString("sort_value"),
+                resultSet.getString("data")), args.toArray());
+
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            Row last = rows.get(limit - 1);
+            KeysetCursor next = sortField == null
+                    ? KeysetCursor.of(Long.toString(last.id()))
+                    : KeysetCursor.of(last.sortValue(), Long.toString(last.id()));
+            nextCursor = next.encode(scope);
+        }
+        List<Map<String, Object>> data = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            data.add(parse(row.data()));
+        }
+        return new ExplorePage(data, nextCursor);
+    }
+
+    private static long parseId(KeysetCursor cursor, int index) {
+        if (cursor.values().size() <= index) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        try {
+            return Long.parseLong(cursor.value(index));
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private String sortValue(KeysetCursor cursor) {
+        String value = cursor.value(0);
+        try {
+            objectMapper.readTree(value);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return value;
+    }
+
+    private Map<String, Object> parse(String json) {
+        if (json == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(json, DATA_TYPE);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Failed to parse unified row data", exception);
+        }
+    }
+
+    private record Row(long id, String sortValue, String data) {
+    }
+}
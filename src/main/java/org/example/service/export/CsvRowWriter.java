@@ -0,0 +1,49 @@
+package org.example.service.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+final class CsvRowWriter implements ExportRowWriter {
+
+    private final CSVPrinter printer;
+    private final ObjectMapper objectMapper;
+    private final String[] text;
+
+    CsvRowWriter(Writer out, List<ExportColumn> columns, ObjectMapper objectMapper, boolean header) throws IOException {
+        this.printer = new CSVPrinter(out, ExportStreams.CSV);
+        this.objectMapper = objectMapper;
+        this.text = new String[columns.size()];
+        if (header && !columns.isEmpty()) {
+            printer.printRecord(columns.stream().map(ExportColumn::name).toList());
+        }
+    }
+
+    @Override
+    public void write(Object[] values) throws IOException {
+        for (int i = 0; i < text.length; i++) {
+            text[i] = text(values[i]);
+        }
+        printer.printRecord((Object[]) text);
+    }
+
+    private String text(Object value) throws IOException {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Map || value instanceof List) {
+            return objectMapper.writeValueAsString(value);
+        }
+        return value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        printer.close();
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.service.export;
+
+import org.example.models.entity.DatasetField;
+import org.example.models.enums.DataType;
+import org.example.service.transform.TimestampNormalizer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A column of an export: the key its value is read from in unified row data and the type it is written as,
+ * taken from the field's {@link DataType}. A value that cannot be read as the column's type is written as
+ * {@code null}, so all values of a column share one type.
+ *
+ * @param idKey key tried before {@code name}, as rows may be keyed by field id; {@code null} if there is none
+ */
+public record ExportColumn(String name, String idKey, DataType type) {
+
+    /**
+     * One column per field, ordered by position, then id; fields without a position come last.
+     */
+    public static List<ExportColumn> of(List<DatasetField> fields) {
+        List<DatasetField> ordered = fields.stream()
+                .sorted(Comparator
+                        .comparing((DatasetField field) -> Optional.ofNullable(field.getPosition()).orElse(Integer.MAX_VALUE))
+                        .thenComparing(DatasetField::getId))
+                .toList();
+        List<ExportColumn> columns = new ArrayList<>(ordered.size());
+        for (DatasetField field : ordered) {
+            columns.add(new ExportColumn(field.getName(), String.valueOf(field.getId()),
+                    field.getDtype() != null ? field.getDtype() : DataType.TEXT));
+        }
+        return columns;
+    }
+
+    /**
+     * Columns for plain keys, whose values are written as they are.
+     */
+    public static List<ExportColumn> untyped(Collection<String> keys) {
+        List<ExportColumn> columns = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            columns.add(new ExportColumn(key, null, DataType.JSON));
+        }
+        return columns;
+    }
+
+    public Object read(Map<String, Object> data) {
+        Object value = idKey == null ? null : data.get(idKey);
+        if (value == null) {
+            value = data.get(name);
+        }
+        return typed(value);
+    }
+
+    /**
+     * {@code value} as the column's type: {@link String} for text and timestamps (ISO-8601), a {@link Long} or
+     * {@link BigDecimal} for numbers and {@link Boolean} for booleans; JSON values are kept as they are.
+     */
+    public Object typed(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return switch (type) {
+            case TEXT -> value instanceof Map || value instanceof List ? value : text(value);
+            case NUMERIC -> number(value);
+            case BOOLEAN -> bool(value);
+            case TIMESTAMP -> text(TimestampNormalizer.normalizeValue(value));
+            case JSON -> value;
+        };
+    }
+
+    private static String text(Object value) {
+        return value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+    }
+
+    private static Object number(Object value) {
+        if (value instanceof Number) {
+            return value;
+        }
+        if (!(value instanceof String string) || string.isBlank()) {
+            return null;
+        }
+        String trimmed = string.trim();
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException notIntegral) {
+            try {
+                return new BigDecimal(trimmed);
+            } catch (NumberFormatException notNumeric) {
+                return null;
+            }
+        }
+    }
+
+    private static Boolean bool(Object value) {
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        if (value instanceof Number number) {
+            return number.doubleValue() != 0;
+        }
+        if (value instanceof String string) {
+            return switch (string.trim().toLowerCase(Locale.ROOT)) {
+                case "true", "t", "yes", "y", "1" -> Boolean.TRUE;
+                case "false", "f", "no", "n", "0" -> Boolean.FALSE;
+                default -> null;
+            };
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.service.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * File formats of unified row exports.
+ */
+public enum ExportFormat {
+
+    /**
+     * Comma-separated values with a header row; structured values are written as JSON text.
+     */
+    CSV("csv", MediaType.TEXT_PLAIN, false, true),
+
+    /**
+     * One JSON object per line, keyed by column name, with values typed per column; gzipped unless asked
+     * otherwise.
+     */
+    NDJSON("ndjson", MediaType.parseMediaType("application/x-ndjson"), true, true),
+
+    /**
+     * A Parquet file with a typed column per export column (see {@link ParquetRowWriter}). It is never
+     * gzipped, as readers need to seek to its footer, and it cannot be appended to.
+     */
+    PARQUET("parquet", MediaType.parseMediaType("application/vnd.apache.parquet"), false, false);
+
+    private final String extension;
+    private final MediaType mediaType;
+    private final boolean gzipByDefault;
+    private final boolean appendable;
+
+    ExportFormat(String extension, MediaType mediaType, boolean gzipByDefault, boolean appendable) {
+        this.extension = extension;
+        this.mediaType = mediaType;
+        this.gzipByDefault = gzipByDefault;
+        this.appendable = appendable;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public MediaType mediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Whether output is gzipped when {@code requested}, or by default if that is {@code null}; never for
+     * Parquet.
+     */
+    public boolean gzip(Boolean requested) {
+        return appendable && (requested != null ? requested : gzipByDefault);
+    }
+
+    /**
+     * Whether rows can be appended to output of this format after it was closed, as chunked deliveries do
+     * with destination files.
+     */
+    public boolean appendable() {
+        return appendable;
+    }
+
+    /**
+     * The format called {@code name}, ignoring case; {@link #CSV} if blank.
+     *
+     * @throws IllegalArgumentException if there is no such format
+     */
+    public static ExportFormat of(String name) {
+        if (name == null || name.isBlank()) {
+            return CSV;
+        }
+        String normalized = name.trim().toLowerCase(Locale.ROOT);
+        for (ExportFormat format : values()) {
+            if (format.extension.equals(normalized) || format.name().equalsIgnoreCase(normalized)) {
+                return format;
+            }
+        }
+        if ("jsonl".equals(normalized)) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Unsupported export format: " + name + " (supported: csv, ndjson, parquet)");
+    }
+
+    public ExportRowWriter open(OutputStream out, boolean gzip, List<ExportColumn> columns, ObjectMapper objectMapper)
+            throws IOException {
+        return open(out, gzip, columns, objectMapper, true);
+    }
+
+    /**
+     * A writer over {@code out}; closing it finishes the output but leaves {@code out} open.
+     *
+     * @param gzip   whether to gzip the output; see {@link #gzip(Boolean)}
+     * @param header whether to start with a header row, where the format has one; false when appending to
+     *               output that already starts with it
+     */
+    public ExportRowWriter open(OutputStream out, boolean gzip, List<ExportColumn> columns, ObjectMapper objectMapper,
+                                boolean header) throws IOException {
+        return switch (this) {
+            case CSV -> new CsvRowWriter(ExportStreams.writer(out, gzip), columns, objectMapper, header);
+            case NDJSON -> new NdjsonRowWriter(ExportStreams.writer(out, gzip), columns, objectMapper);
+            case PARQUET -> new ParquetRowWriter(StreamUtils.nonClosing(out), columns, objectMapper);
+        };
+    }
+}
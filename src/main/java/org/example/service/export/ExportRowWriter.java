@@ -0,0 +1,13 @@
+package org.example.service.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes the rows of an export in one {@link ExportFormat}, one value per column as read by
+ * {@link ExportColumn#read}. Closing the writer finishes the output.
+ */
+public interface ExportRowWriter extends Closeable {
+
+    void write(Object[] values) throws IOException;
+}
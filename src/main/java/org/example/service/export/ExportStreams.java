@@ -0,0 +1,66 @@
+package org.example.service.export;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Helpers for exports streamed into the response: output is buffered and optionally gzipped on its way
+ * to the client, so memory use does not grow with the export.
+ */
+public final class ExportStreams {
+
+    public static final MediaType GZIP = MediaType.parseMediaType("application/gzip");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Quotes values that need it; records end with {@code \n} as the exports always have.
+     */
+    public static final CSVFormat CSV = CSVFormat.DEFAULT.builder()
+            .setRecordSeparator('\n')
+            .build();
+
+    private ExportStreams() {
+    }
+
+    /**
+     * A buffered UTF-8 writer over the response; closing it finishes the gzip stream but leaves the
+     * response stream to the container.
+     */
+    public static Writer writer(OutputStream out, boolean gzip) throws IOException {
+        OutputStream target = StreamUtils.nonClosing(out);
+        if (gzip) {
+            target = new GZIPOutputStream(target, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    public static CSVPrinter csv(OutputStream out, boolean gzip) throws IOException {
+        return new CSVPrinter(writer(out, gzip), CSV);
+    }
+
+    /**
+     * An attachment response for {@code body}; gzipped exports get a {@code .gz} filename and are served as
+     * {@code application/gzip}.
+     */
+    public static ResponseEntity<StreamingResponseBody> download(String filename, MediaType mediaType, boolean gzip,
+                                                                 StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename + (gzip ? ".gz" : ""))
+                .contentType(gzip ? GZIP : mediaType)
+                .body(body);
+    }
+}
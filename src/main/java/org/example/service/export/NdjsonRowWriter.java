@@ -0,0 +1,37 @@
+package org.example.service.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+final class NdjsonRowWriter implements ExportRowWriter {
+
+    private final JsonGenerator generator;
+    private final String[] names;
+
+    NdjsonRowWriter(Writer out, List<ExportColumn> columns, ObjectMapper objectMapper) throws IOException {
+        this.generator = objectMapper.createGenerator(out);
+        // rows are separated by the newline written after each one, not by the default space
+        generator.setRootValueSeparator(null);
+        this.names = columns.stream().map(ExportColumn::name).toArray(String[]::new);
+    }
+
+    @Override
+    public void write(Object[] values) throws IOException {
+        generator.writeStartObject();
+        for (int i = 0; i < names.length; i++) {
+            generator.writeFieldName(names[i]);
+            generator.writeObject(values[i]);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
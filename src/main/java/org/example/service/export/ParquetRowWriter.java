@@ -0,0 +1,235 @@
+package org.example.service.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.parquet.conf.PlainParquetConfiguration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows as a Parquet file with one optional column per {@link ExportColumn}: text as UTF-8 strings,
+ * numbers as {@code DECIMAL(38, 18)}, booleans as booleans, timestamps as UTC microseconds and JSON as JSON
+ * text. The decimal holds every {@code long} and 18 fractional digits exactly, where a double would round
+ * ids above 2^53. Values that do not fit their column are written as {@code null}, as the other formats do.
+ * <p>
+ * The file goes straight to the output stream through an {@link OutputFile} of its own, with
+ * {@link PlainParquetConfiguration} instead of a Hadoop configuration. Pages are dictionary encoded but not
+ * compressed, since Parquet's codecs go through Hadoop's codec classes.
+ */
+final class ParquetRowWriter implements ExportRowWriter {
+
+    private static final int DECIMAL_PRECISION = 38;
+    private static final int DECIMAL_SCALE = 18;
+
+    private final ParquetWriter<Group> writer;
+    private final SimpleGroupFactory groups;
+    private final List<ExportColumn> columns;
+    private final ObjectMapper objectMapper;
+
+    ParquetRowWriter(OutputStream out, List<ExportColumn> columns, ObjectMapper objectMapper) throws IOException {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("A Parquet export needs at least one column");
+        }
+        MessageType schema = schema(columns);
+        this.writer = ExampleParquetWriter.builder(new StreamOutputFile(out))
+                .withConf(new PlainParquetConfiguration())
+                .withType(schema)
+                .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                .withCompressionCodec(CompressionCodecName.UNCOMPRESSED)
+                .withDictionaryEncoding(true)
+                .build();
+        this.groups = new SimpleGroupFactory(schema);
+        this.columns = columns;
+        this.objectMapper = objectMapper;
+    }
+
+    private static MessageType schema(List<ExportColumn> columns) {
+        Types.MessageTypeBuilder message = Types.buildMessage();
+        for (ExportColumn column : columns) {
+            switch (column.type()) {
+                case NUMERIC -> message.optional(PrimitiveTypeName.BINARY)
+                        .as(LogicalTypeAnnotation.decimalType(DECIMAL_SCALE, DECIMAL_PRECISION))
+                        .named(column.name());
+                case BOOLEAN -> message.optional(PrimitiveTypeName.BOOLEAN).named(column.name());
+                case TIMESTAMP -> message.optional(PrimitiveTypeName.INT64)
+                        .as(LogicalTypeAnnotation.timestampType(true, LogicalTypeAnnotation.TimeUnit.MICROS))
+                        .named(column.name());
+                case JSON -> message.optional(PrimitiveTypeName.BINARY)
+                        .as(LogicalTypeAnnotation.jsonType())
+                        .named(column.name());
+                case TEXT -> message.optional(PrimitiveTypeName.BINARY)
+                        .as(LogicalTypeAnnotation.stringType())
+                        .named(column.name());
+            }
+        }
+        return message.named("row");
+    }
+
+    @Override
+    public void write(Object[] values) throws IOException {
+        Group row = groups.newGroup();
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            switch (columns.get(i).type()) {
+                case NUMERIC -> {
+                    BigInteger unscaled = value instanceof Number number ? unscaled(number) : null;
+                    if (unscaled != null) {
+                        row.add(i, Binary.fromConstantByteArray(unscaled.toByteArray()));
+                    }
+                }
+                case BOOLEAN -> {
+                    if (value instanceof Boolean bool) {
+                        row.add(i, bool);
+                    }
+                }
+                case TIMESTAMP -> {
+                    Long micros = micros(value.toString());
+                    if (micros != null) {
+                        row.add(i, micros);
+                    }
+                }
+                case JSON -> row.add(i, objectMapper.writeValueAsString(value));
+                case TEXT -> row.add(i, value instanceof Map || value instanceof List
+                        ? objectMapper.writeValueAsString(value)
+                        : value.toString());
+            }
+        }
+        writer.write(row);
+    }
+
+    /**
+     * The unscaled value of {@code number} at the column's scale; {@code null} if that would round it or it
+     * needs more than the column's precision.
+     */
+    private static BigInteger unscaled(Number number) {
+        try {
+            BigDecimal decimal = number instanceof BigDecimal exact ? exact : new BigDecimal(number.toString());
+            BigInteger unscaled = decimal.setScale(DECIMAL_SCALE).unscaledValue();
+            return unscaled.abs().toString().length() <= DECIMAL_PRECISION ? unscaled : null;
+        } catch (ArithmeticException | NumberFormatException notExact) {
+            return null;
+        }
+    }
+
+    /**
+     * Microseconds since the epoch of an ISO date-time, taken as UTC without an offset, or of an ISO date at
+     * midnight UTC; {@code null} for anything else.
+     */
+    private static Long micros(String text) {
+        String trimmed = text.trim();
+        Instant instant;
+        try {
+            TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(trimmed,
+                    OffsetDateTime::from, LocalDateTime::from);
+            instant = parsed instanceof OffsetDateTime offset
+                    ? offset.toInstant()
+                    : ((LocalDateTime) parsed).toInstant(ZoneOffset.UTC);
+        } catch (DateTimeException notDateTime) {
+            try {
+                instant = LocalDate.parse(trimmed).atStartOfDay().toInstant(ZoneOffset.UTC);
+            } catch (DateTimeException notDate) {
+                return null;
+            }
+        }
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1_000L);
+        } catch (ArithmeticException outOfRange) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * A Parquet output file over a stream that is written once from start to end; Parquet only needs the
+     * position, to record where each column chunk starts.
+     */
+    private static final class StreamOutputFile implements OutputFile {
+
+        private final OutputStream out;
+
+        StreamOutputFile(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) {
+            return new PositionOutputStream() {
+                private long position;
+
+                @Override
+                public long getPos() {
+                    return position;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    position++;
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    out.write(bytes, offset, length);
+                    position += length;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+            return create(blockSizeHint);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+    }
+}
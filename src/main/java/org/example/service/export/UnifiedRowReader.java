@@ -0,0 +1,123 @@
+package org.example.service.export;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.example.service.explore.ExploreFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Streams a dataset's unified rows for exports with a forward-only JDBC cursor, in row id order, so an
+ * export keeps one fetch of rows resident instead of the whole dataset. Each stream runs in its own
+ * read-only transaction, since PostgreSQL ignores the fetch size in auto-commit mode; it can therefore be
+ * called from the thread that writes a streamed response.
+ */
+@Component
+@RequiredArgsConstructor
+public class UnifiedRowReader {
+
+    private static final TypeReference<Map<String, Object>> DATA_TYPE = new TypeReference<>() {
+    };
+
+    private static final String NOT_EXCLUDED = " AND r.is_excluded = false";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${export.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Hands the data of every row of the dataset to {@code consumer}; the map is only valid for the
+     * duration of the callback.
+     *
+     * @return the number of rows streamed
+     */
+    public long stream(Long datasetId, boolean includeExcluded, Consumer<Map<String, Object>> consumer) {
+        return stream(datasetId, includeExcluded, ExploreFilter.NONE, consumer);
+    }
+
+    /**
+     * Like {@link #stream(Long, boolean, Consumer)}, limited to the rows matching {@code filter}.
+     */
+    public long stream(Long datasetId, boolean includeExcluded, ExploreFilter filter,
+                       Consumer<Map<String, Object>> consumer) {
+        String sql = "SELECT r.data::text AS data FROM integration.unified_row r WHERE r.dataset_id = ?"
+                + (includeExcluded ? "" : NOT_EXCLUDED) + filter.sql() + " ORDER BY r.unified_row_id";
+        Object[] args = filter.args();
+        long[] count = {0};
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            statement.setLong(1, datasetId);
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 2, args[i]);
+            }
+            return statement;
+        }, (RowCallbackHandler) resultSet -> {
+            consumer.accept(parse(resultSet.getString("data")));
+            count[0]++;
+        }));
+        return count[0];
+    }
+
+    public boolean hasRows(Long datasetId, boolean includeExcluded) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM integration.unified_row r WHERE r.dataset_id = ?"
+                        + (includeExcluded ? "" : NOT_EXCLUDED) + ")", Boolean.class, datasetId));
+    }
+
+    /**
+     * Top-level keys of the rows' data in order of first appearance, as iterating the rows in id order
+     * would collect them; computed by the database so only the keys are transferred.
+     */
+    public List<String> keys(Long datasetId, boolean includeExcluded) {
+        return keys(datasetId, includeExcluded, ExploreFilter.NONE);
+    }
+
+    /**
+     * Like {@link #keys(Long, boolean)}, over the rows matching {@code filter}.
+     */
+    public List<String> keys(Long datasetId, boolean includeExcluded, ExploreFilter filter) {
+        Object[] args = new Object[filter.args().length + 1];
+        args[0] = datasetId;
+        System.arraycopy(filter.args(), 0, args, 1, args.length - 1);
+        return jdbcTemplate.queryForList("""
+                SELECT key FROM (
+                    SELECT DISTINCT ON (k.key) k.key, r.unified_row_id, k.position
+                    FROM integration.unified_row r
+                    CROSS JOIN LATERAL jsonb_each(r.data) WITH ORDINALITY AS k(key, value, position)
+                    WHERE r.dataset_id = ?%s%s
+                    ORDER BY k.key, r.unified_row_id, k.position
+                ) first_seen
+                ORDER BY unified_row_id, position
+                """.formatted(includeExcluded ? "" : NOT_EXCLUDED, filter.sql()), String.class, args);
+    }
+
+    private Map<String, Object> parse(String json) {
+        if (json == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(json, DATA_TYPE);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Failed to parse unified row data", exception);
+        }
+    }
+}
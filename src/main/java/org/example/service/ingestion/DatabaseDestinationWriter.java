@@ -1,22 +1,32 @@
 package org.example.service.ingestion;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.models.entity.Source;
 import org.example.utils.DatabaseConnector;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -24,64 +34,213 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
+/**
+ * Writes records to a table of a database destination. {@code writeMode} picks how:
+ * <ul>
+ *     <li>{@code append} (default): rows are added to the table, with {@code COPY} on PostgreSQL and batched
+ *     inserts elsewhere;</li>
+ *     <li>{@code upsert}: rows are copied into a temporary staging table and merged into the table with
+ *     {@code INSERT ... ON CONFLICT (keyColumns) DO UPDATE}, so writing the same rows again updates them in
+ *     place. {@code keyColumns} defaults to the table's primary key and needs a unique index;</li>
+ *     <li>{@code replace}: rows are copied into a shadow table created like the table, which replaces the
+ *     table in one transaction once all rows are written (see {@link #finish}); views and foreign keys
+ *     referencing the table are not carried over. A failed delivery drops the shadow table and starts over
+ *     (see {@link #discard}).</li>
+ * </ul>
+ * Upsert and replace need a PostgreSQL destination. Rows are committed every {@code chunkSize} rows, so a
+ * failure loses at most the chunk being written.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class DatabaseDestinationWriter {
 
-    private final DatabaseConnector databaseConnector;
+    private static final String STAGING_TABLE = "destination_load_staging";
+    private static final String POSTGRES_QUOTE = "\"";
+    private static final int MAX_IDENTIFIER_LENGTH = 63;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
-    public int write(Source destination,
-                     Map<String, Object> config,
-                     List<Map<String, Object>> records) {
+    private final DatabaseConnector databaseConnector;
+    private final ObjectMapper objectMapper;
+
+    @Value("${destination.db.chunk-size:5000}")
+    private int defaultChunkSize;
+
+    /**
+     * Writes one chunk of a delivery. In replace mode the rows go to the shadow table, which the first
+     * chunk creates afresh; {@link #finish} swaps it in after the last chunk.
+     */
+    public int writeChunk(Source destination,
+                          Map<String, Object> config,
+                          List<Map<String, Object>> records,
+                          boolean first) {
         if (records == null || records.isEmpty()) {
             return 0;
         }
         Map<String, Object> connection = resolveConnection(config);
-        String jdbcUrl = resolveJdbcUrl(config, connection);
-        String username = stringValue(connection.getOrDefault("username", connection.get("user")));
-        String password = stringValue(connection.get("password"));
-
-        if (!StringUtils.hasText(jdbcUrl)) {
-            throw new IllegalStateException("DB destination requires jdbcUrl or connection parameters");
-        }
-
-        DataSource dataSource = databaseConnector.buildDataSource(jdbcUrl, username, password);
+        DataSource dataSource = resolveDataSource(config, connection);
         TableReference tableReference = resolveTableReference(config, connection);
         Map<String, String> columnMapping = resolveColumnMapping(config);
+        Load load = new Load(WriteMode.of(config.get("writeMode")), resolveKeyColumns(config),
+                resolveChunkSize(config), first);
 
         int totalWritten = 0;
         if (StringUtils.hasText(tableReference.table())) {
-            totalWritten += writeToSingleTable(dataSource, tableReference, columnMapping, records);
+            totalWritten += writeToSingleTable(dataSource, tableReference, columnMapping, records, load);
         } else {
+            if (load.mode() == WriteMode.REPLACE) {
+                throw new IllegalStateException("DB destination in replace mode requires a table name");
+            }
             Map<TableReference, List<Map<String, Object>>> grouped = groupRowsByTable(records, config, connection);
             if (grouped.isEmpty()) {
                 throw new IllegalStateException("DB destination requires a table name or per-record destination_table metadata");
             }
             for (Map.Entry<TableReference, List<Map<String, Object>>> entry : grouped.entrySet()) {
-                totalWritten += writeToSingleTable(dataSource, entry.getKey(), columnMapping, entry.getValue());
+                totalWritten += writeToSingleTable(dataSource, entry.getKey(), columnMapping, entry.getValue(), load);
             }
         }
         return totalWritten;
     }
 
+    /**
+     * Ends a delivery: in replace mode the shadow table takes the table's place and the previous table is
+     * dropped. Other modes have nothing left to do.
+     *
+     * @param loaded whether the delivery wrote any rows, so that its first chunk created the shadow table;
+     *               otherwise a shadow table left by an earlier delivery is dropped rather than swapped in
+     */
+    public void finish(Source destination, Map<String, Object> config, boolean loaded) {
+        if (WriteMode.of(config.get("writeMode")) != WriteMode.REPLACE) {
+            return;
+        }
+        if (!loaded) {
+            discard(destination, config);
+            return;
+        }
+        Map<String, Object> connectionConfig = resolveConnection(config);
+        DataSource dataSource = resolveDataSource(config, connectionConfig);
+        TableReference tableReference = resolveTableReference(config, connectionConfig);
+        if (!StringUtils.hasText(tableReference.table())) {
+            throw new IllegalStateException("DB destination in replace mode requires a table name");
+        }
+        TableReference table = resolveDestinationTable(dataSource, tableReference).reference();
+        TableReference shadow = table.suffixed("_load");
+        TableReference previous = table.suffixed("_old");
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                if (!exists(connection, shadow)) {
+                    connection.rollback();
+                    return;
+                }
+                statement.execute("DROP TABLE IF EXISTS " + previous.quoted());
+                statement.execute("ALTER TABLE " + table.quoted() + " RENAME TO " + quote(previous.table()));
+                statement.execute("ALTER TABLE " + shadow.quoted() + " RENAME TO " + quote(table.table()));
+                reownSequences(connection, previous, table);
+                statement.execute("DROP TABLE " + previous.quoted());
+                connection.commit();
+            } catch (SQLException | RuntimeException exception) {
+                connection.rollback();
+                throw exception;
+            }
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Failed to replace destination table " + table.qualified()
+                    + ": " + exception.getMessage(), exception);
+        }
+        log.info("DestinationOutputService: replaced destination DB table {}", table.qualified());
+    }
+
+    /**
+     * Whether the destination is written in replace mode, whose shadow table a failed delivery discards.
+     */
+    public boolean replaces(Map<String, Object> config) {
+        return WriteMode.of(config.get("writeMode")) == WriteMode.REPLACE;
+    }
+
+    /**
+     * Drops the shadow table of a replace-mode delivery that will not finish, so no later delivery swaps in
+     * its rows. Failures are logged rather than thrown so cleanup never hides the error that stopped the
+     * delivery.
+     */
+    public void discard(Source destination, Map<String, Object> config) {
+        if (!replaces(config)) {
+            return;
+        }
+        try {
+            Map<String, Object> connectionConfig = resolveConnection(config);
+            DataSource dataSource = resolveDataSource(config, connectionConfig);
+            TableReference tableReference = resolveTableReference(config, connectionConfig);
+            if (StringUtils.hasText(tableReference.table())) {
+                TableReference shadow = resolveDestinationTable(dataSource, tableReference).reference().suffixed("_load");
+                try (Connection connection = dataSource.getConnection();
+                     Statement statement = connection.createStatement()) {
+                    statement.execute("DROP TABLE IF EXISTS " + shadow.quoted());
+                }
+            }
+        } catch (SQLException | RuntimeException exception) {
+            log.warn("DestinationOutputService: could not drop the shadow table of DB destination {}: {}",
+                    destination.getName(), exception.getMessage());
+        }
+    }
+
+    private boolean exists(Connection connection, TableReference table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            statement.setString(1, table.quoted());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Hands the sequences behind the replaced table's serial columns to the table that replaces it, whose
+     * defaults {@code LIKE ... INCLUDING ALL} copied; otherwise dropping the replaced table would fail on
+     * them.
+     */
+    private void reownSequences(Connection connection, TableReference from, TableReference to) throws SQLException {
+        Map<String, String> owned = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT d.objid::regclass::text AS sequence_name, a.attname AS column_name
+                FROM pg_depend d
+                JOIN pg_class sequence ON sequence.oid = d.objid AND sequence.relkind = 'S'
+                JOIN pg_attribute a ON a.attrelid = d.refobjid AND a.attnum = d.refobjsubid
+                WHERE d.classid = 'pg_class'::regclass AND d.refclassid = 'pg_class'::regclass
+                  AND d.refobjid = ?::regclass AND d.deptype = 'a'
+                """)) {
+            statement.setString(1, from.quoted());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    owned.put(resultSet.getString("sequence_name"), resultSet.getString("column_name"));
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (Map.Entry<String, String> entry : owned.entrySet()) {
+                statement.execute("ALTER SEQUENCE " + entry.getKey() + " OWNED BY " + to.quoted() + "." + quote(entry.getValue()));
+            }
+        }
+    }
+
     private int writeToSingleTable(DataSource dataSource,
                                    TableReference tableReference,
                                    Map<String, String> columnMapping,
-                                   List<Map<String, Object>> rowsForTable) {
+                                   List<Map<String, Object>> rowsForTable,
+                                   Load load) {
         if (rowsForTable == null || rowsForTable.isEmpty()) {
             return 0;
         }
         if (!StringUtils.hasText(tableReference.table())) {
             return 0;
         }
-
-        List<String> availableColumns = resolveDestinationColumns(dataSource, tableReference);
+        DestinationTable destinationTable = resolveDestinationTable(dataSource, tableReference);
+        List<String> availableColumns = destinationTable.columns();
         if (availableColumns.isEmpty()) {
             throw new IllegalStateException("Unable to determine columns for destination table " + tableReference.qualified());
         }
+        TableReference target = destinationTable.reference();
         Map<String, String> destinationColumnLookup = buildColumnLookup(availableColumns);
 
         List<Map<String, Object>> normalizedRows = normalize(rowsForTable, columnMapping, destinationColumnLookup);
@@ -91,19 +250,95 @@ public class DatabaseDestinationWriter {
         }
 
         List<String> orderedColumns = new ArrayList<>(collectColumnOrder(normalizedRows));
-        for (Map<String, Object> row : normalizedRows) {
-            for (String column : orderedColumns) {
-                row.putIfAbsent(column, null);
+        try (Connection connection = dataSource.getConnection()) {
+            PGConnection postgres = connection.isWrapperFor(PGConnection.class) ? connection.unwrap(PGConnection.class) : null;
+            if (postgres == null && load.mode() != WriteMode.APPEND) {
+                throw new IllegalStateException("DB destination in " + load.mode().name().toLowerCase(Locale.ROOT)
+                        + " mode requires PostgreSQL");
+            }
+            connection.setAutoCommit(false);
+            try {
+                String identifierQuote = postgres != null ? POSTGRES_QUOTE : connection.getMetaData().getIdentifierQuoteString();
+                String table = target.quoted(identifierQuote);
+                String merge = null;
+                if (load.mode() == WriteMode.REPLACE) {
+                    table = target.suffixed("_load").quoted();
+                    if (load.first()) {
+                        createShadowTable(connection, target);
+                    }
+                } else if (load.mode() == WriteMode.UPSERT) {
+                    List<String> keys = resolveUpsertKeys(connection, target, load.keyColumns(),
+                            destinationColumnLookup, orderedColumns);
+                    createStagingTable(connection, target, orderedColumns);
+                    merge = mergeStatement(target.quoted(), orderedColumns, keys);
+                    table = quote(STAGING_TABLE);
+                }
+                for (int from = 0; from < normalizedRows.size(); from += load.chunkSize()) {
+                    List<Map<String, Object>> chunk = normalizedRows.subList(from,
+                            Math.min(from + load.chunkSize(), normalizedRows.size()));
+                    if (postgres != null) {
+                        copyRows(postgres, table, orderedColumns, chunk);
+                    } else {
+                        insertRows(connection, table, orderedColumns, chunk, identifierQuote);
+                    }
+                    if (merge != null) {
+                        try (Statement statement = connection.createStatement()) {
+                            statement.executeUpdate(merge);
+                        }
+                    }
+                    connection.commit();
+                }
+            } catch (SQLException | IOException | RuntimeException exception) {
+                connection.rollback();
+                throw exception;
             }
+        } catch (SQLException | IOException exception) {
+            throw new IllegalStateException("Failed to write to destination table " + tableReference.qualified()
+                    + ": " + exception.getMessage(), exception);
         }
-
-        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
-        insertRows(jdbcTemplate, tableReference.qualified(), orderedColumns, normalizedRows);
-        log.info("DestinationOutputService: wrote {} rows to destination DB {}",
-                normalizedRows.size(), tableReference.qualified());
+        log.info("DestinationOutputService: wrote {} rows to destination DB {} ({})",
+                normalizedRows.size(), tableReference.qualified(), load.mode().name().toLowerCase(Locale.ROOT));
         return normalizedRows.size();
     }
 
+    private DataSource resolveDataSource(Map<String, Object> config, Map<String, Object> connection) {
+        String jdbcUrl = resolveJdbcUrl(config, connection);
+        String username = stringValue(connection.getOrDefault("username", connection.get("user")));
+        String password = stringValue(connection.get("password"));
+
+        if (!StringUtils.hasText(jdbcUrl)) {
+            throw new IllegalStateException("DB destination requires jdbcUrl or connection parameters");
+        }
+        return databaseConnector.buildDataSource(jdbcUrl, username, password);
+    }
+
+    private List<String> resolveKeyColumns(Map<String, Object> config) {
+        Object value = config.get("keyColumns");
+        List<String> keys = new ArrayList<>();
+        if (value instanceof Collection<?> collection) {
+            collection.forEach(key -> keys.add(stringValue(key)));
+        } else if (value != null) {
+            keys.addAll(List.of(value.toString().split(",")));
+        }
+        return keys.stream().filter(StringUtils::hasText).map(String::trim).toList();
+    }
+
+    private int resolveChunkSize(Map<String, Object> config) {
+        Object value = config.get("chunkSize");
+        if (value == null) {
+            return defaultChunkSize;
+        }
+        try {
+            int chunkSize = Integer.parseInt(value.toString().trim());
+            if (chunkSize > 0) {
+                return chunkSize;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        throw new IllegalArgumentException("DB destination chunkSize must be a positive number: " + value);
+    }
+
     private Map<String, Object> resolveConnection(Map<String, Object> config) {
         Object maybeConnection = config.get("connection");
         Map<String, Object> connection = new LinkedHashMap<>();
@@ -239,38 +474,46 @@ public class DatabaseDestinationWriter {
         return current;
     }
 
-    private List<String> resolveDestinationColumns(DataSource dataSource, TableReference tableReference) {
-        List<String> columns = new ArrayList<>();
+    /**
+     * The table's columns, and the table as the database names it, so that quoted identifiers match even
+     * when the configuration spells the name in another case.
+     */
+    private DestinationTable resolveDestinationTable(DataSource dataSource, TableReference tableReference) {
         try (Connection connection = dataSource.getConnection()) {
             DatabaseMetaData metaData = connection.getMetaData();
-            try (ResultSet resultSet = metaData.getColumns(connection.getCatalog(), tableReference.schema(), tableReference.table(), null)) {
-                while (resultSet.next()) {
-                    columns.add(resultSet.getString("COLUMN_NAME"));
-                }
-            }
-            if (columns.isEmpty() && StringUtils.hasText(tableReference.table())) {
-                for (String candidate : alternateTableNames(tableReference.table())) {
-                    try (ResultSet resultSet = metaData.getColumns(connection.getCatalog(), tableReference.schema(), candidate, null)) {
-                        while (resultSet.next()) {
-                            columns.add(resultSet.getString("COLUMN_NAME"));
+            for (String candidate : tableNameCandidates(tableReference.table())) {
+                List<String> columns = new ArrayList<>();
+                TableReference found = null;
+                try (ResultSet resultSet = metaData.getColumns(connection.getCatalog(), tableReference.schema(), candidate, null)) {
+                    while (resultSet.next()) {
+                        columns.add(resultSet.getString("COLUMN_NAME"));
+                        if (found == null) {
+                            found = new TableReference(
+                                    StringUtils.hasText(tableReference.schema()) ? resultSet.getString("TABLE_SCHEM") : null,
+                                    resultSet.getString("TABLE_NAME"));
                         }
                     }
-                    if (!columns.isEmpty()) {
-                        break;
-                    }
+                }
+                if (!columns.isEmpty()) {
+                    return new DestinationTable(found, columns);
                 }
             }
-            if (!columns.isEmpty()) {
-                return columns;
-            }
-            try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM " + tableReference.qualified() + " WHERE 1=0");
+            List<String> columns = new ArrayList<>();
+            TableReference found = tableReference;
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT * FROM " + tableReference.quoted(metaData.getIdentifierQuoteString()) + " WHERE 1=0");
                  ResultSet rs = statement.executeQuery()) {
                 ResultSetMetaData metaDataRs = rs.getMetaData();
                 for (int i = 1; i <= metaDataRs.getColumnCount(); i++) {
                     columns.add(metaDataRs.getColumnLabel(i));
                 }
+                if (metaDataRs.getColumnCount() > 0 && StringUtils.hasText(metaDataRs.getTableName(1))) {
+                    found = new TableReference(
+                            StringUtils.hasText(tableReference.schema()) ? metaDataRs.getSchemaName(1) : null,
+                            metaDataRs.getTableName(1));
+                }
             }
-            return columns;
+            return new DestinationTable(found, columns);
         } catch (SQLException exception) {
             throw new IllegalStateException("Failed to inspect destination table metadata: " + exception.getMessage(), exception);
         }
@@ -351,31 +594,170 @@ public class DatabaseDestinationWriter {
         return ordered;
     }
 
-    private void insertRows(JdbcTemplate jdbcTemplate,
-                             String table,
-                             List<String> columns,
-                             List<Map<String, Object>> rows) {
+    /**
+     * Creates the shadow table of replace mode afresh, like the table with its indexes and defaults.
+     */
+    private void createShadowTable(Connection connection, TableReference tableReference) throws SQLException {
+        TableReference shadow = tableReference.suffixed("_load");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + shadow.quoted());
+            statement.execute("CREATE TABLE " + shadow.quoted() + " (LIKE " + tableReference.quoted() + " INCLUDING ALL)");
+        }
+        connection.commit();
+    }
+
+    /**
+     * A session-local staging table with the written columns of the table and none of its constraints,
+     * emptied by every commit.
+     */
+    private void createStagingTable(Connection connection, TableReference tableReference, List<String> columns)
+            throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS pg_temp." + quote(STAGING_TABLE));
+            statement.execute("CREATE TEMP TABLE " + quote(STAGING_TABLE) + " ON COMMIT DELETE ROWS AS SELECT "
+                    + quoteAll(columns, POSTGRES_QUOTE) + " FROM " + tableReference.quoted() + " WITH NO DATA");
+        }
+        connection.commit();
+    }
+
+    /**
+     * Merges the staged rows into the table; of rows with the same key the last one staged wins.
+     */
+    private String mergeStatement(String table, List<String> columns, List<String> keys) {
+        String columnList = quoteAll(columns, POSTGRES_QUOTE);
+        String keyList = quoteAll(keys, POSTGRES_QUOTE);
+        List<String> updates = columns.stream()
+                .filter(column -> !keys.contains(column))
+                .map(column -> quote(column) + " = EXCLUDED." + quote(column))
+                .toList();
+        return "INSERT INTO " + table + " (" + columnList + ")"
+                + " SELECT DISTINCT ON (" + keyList + ") " + columnList + " FROM " + quote(STAGING_TABLE)
+                + " ORDER BY " + keyList + ", ctid DESC"
+                + " ON CONFLICT (" + keyList + ") "
+                + (updates.isEmpty() ? "DO NOTHING" : "DO UPDATE SET " + String.join(", ", updates));
+    }
+
+    /**
+     * The configured key columns as named in the table, or else the table's primary key; every key column
+     * must be written.
+     */
+    private List<String> resolveUpsertKeys(Connection connection,
+                                           TableReference tableReference,
+                                           List<String> configured,
+                                           Map<String, String> destinationLookup,
+                                           List<String> columns) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        if (!configured.isEmpty()) {
+            for (String key : configured) {
+                String resolved = destinationLookup.get(key.toLowerCase(Locale.ROOT));
+                if (resolved == null) {
+                    throw new IllegalStateException("Upsert key column " + key + " is not a column of " + tableReference.qualified());
+                }
+                keys.add(resolved);
+            }
+        } else {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<Integer, String> primaryKey = new TreeMap<>();
+            for (String table : tableNameCandidates(tableReference.table())) {
+                try (ResultSet resultSet = metaData.getPrimaryKeys(connection.getCatalog(), tableReference.schema(), table)) {
+                    while (resultSet.next()) {
+                        primaryKey.put(resultSet.getInt("KEY_SEQ"), resultSet.getString("COLUMN_NAME"));
+                    }
+                }
+                if (!primaryKey.isEmpty()) {
+                    break;
+                }
+            }
+            keys.addAll(primaryKey.values());
+        }
+        if (keys.isEmpty()) {
+            throw new IllegalStateException("DB destination in upsert mode requires keyColumns or a primary key on "
+                    + tableReference.qualified());
+        }
+        for (String key : keys) {
+            if (!columns.contains(key)) {
+                throw new IllegalStateException("Upsert key column " + key + " is missing from the rows written to "
+                        + tableReference.qualified());
+            }
+        }
+        return keys;
+    }
+
+    private List<String> tableNameCandidates(String table) {
+        List<String> candidates = new ArrayList<>();
+        candidates.add(table);
+        candidates.addAll(alternateTableNames(table));
+        return candidates;
+    }
+
+    /**
+     * Streams the rows to the server with {@code COPY ... FROM STDIN} in text format; the server converts
+     * each value to its column's type.
+     */
+    private void copyRows(PGConnection connection,
+                          String table,
+                          List<String> columns,
+                          List<Map<String, Object>> rows) throws SQLException, IOException {
+        String sql = "COPY " + table + " (" + quoteAll(columns, POSTGRES_QUOTE) + ") FROM STDIN";
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new PGCopyOutputStream(connection, sql),
+                StandardCharsets.UTF_8), COPY_BUFFER_SIZE)) {
+            for (Map<String, Object> row : rows) {
+                for (int columnIndex = 0; columnIndex < columns.size(); columnIndex++) {
+                    if (columnIndex > 0) {
+                        out.write('\t');
+                    }
+                    writeCopyValue(out, row.get(columns.get(columnIndex)));
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    private void writeCopyValue(Writer out, Object value) throws IOException {
+        if (value == null) {
+            out.write("\\N");
+            return;
+        }
+        String text;
+        if (value instanceof Map || value instanceof Collection) {
+            text = objectMapper.writeValueAsString(value);
+        } else if (value instanceof BigDecimal decimal) {
+            text = decimal.toPlainString();
+        } else {
+            text = value.toString();
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> out.write("\\\\");
+                case '\t' -> out.write("\\t");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                default -> out.write(c);
+            }
+        }
+    }
+
+    private void insertRows(Connection connection,
+                            String table,
+                            List<String> columns,
+                            List<Map<String, Object>> rows,
+                            String identifierQuote) throws SQLException {
         if (rows.isEmpty()) {
             return;
         }
-        String columnList = String.join(", ", columns);
+        String columnList = quoteAll(columns, identifierQuote);
         String placeholders = columns.stream().map(c -> "?").collect(Collectors.joining(", "));
         String sql = "INSERT INTO " + table + " (" + columnList + ") VALUES (" + placeholders + ")";
-        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                Map<String, Object> row = rows.get(i);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (Map<String, Object> row : rows) {
                 for (int columnIndex = 0; columnIndex < columns.size(); columnIndex++) {
-                    String column = columns.get(columnIndex);
-                    ps.setObject(columnIndex + 1, row.get(column));
+                    ps.setObject(columnIndex + 1, row.get(columns.get(columnIndex)));
                 }
+                ps.addBatch();
             }
-
-            @Override
-            public int getBatchSize() {
-                return rows.size();
-            }
-        });
+            ps.executeBatch();
+        }
     }
 
     private String firstText(Object... values) {
@@ -392,12 +774,73 @@ public class DatabaseDestinationWriter {
         return Objects.toString(value, null);
     }
 
+    private static String quote(String identifier) {
+        return quote(identifier, POSTGRES_QUOTE);
+    }
+
+    /**
+     * Quotes an identifier with the database's quote string; a blank one (quoting unsupported) leaves it
+     * as it is.
+     */
+    private static String quote(String identifier, String identifierQuote) {
+        if (identifierQuote == null || identifierQuote.isBlank()) {
+            return identifier;
+        }
+        return identifierQuote + identifier.replace(identifierQuote, identifierQuote + identifierQuote) + identifierQuote;
+    }
+
+    private static String quoteAll(List<String> identifiers, String identifierQuote) {
+        return identifiers.stream().map(identifier -> quote(identifier, identifierQuote)).collect(Collectors.joining(", "));
+    }
+
+    private enum WriteMode {
+        APPEND, UPSERT, REPLACE;
+
+        static WriteMode of(Object value) {
+            String name = value == null ? "" : value.toString().trim().toLowerCase(Locale.ROOT);
+            return switch (name) {
+                case "", "append", "insert", "copy" -> APPEND;
+                case "upsert", "merge" -> UPSERT;
+                case "replace", "swap" -> REPLACE;
+                default -> throw new IllegalArgumentException("Unsupported DB destination writeMode: " + value
+                        + " (supported: append, upsert, replace)");
+            };
+        }
+    }
+
+    private record DestinationTable(TableReference reference, List<String> columns) {
+    }
+
+    /**
+     * @param first whether this is the first chunk of a delivery
+     */
+    private record Load(WriteMode mode, List<String> keyColumns, int chunkSize, boolean first) {
+    }
+
     private record TableReference(String schema, String table) {
+        TableReference suffixed(String suffix) {
+            String base = table.length() + suffix.length() > MAX_IDENTIFIER_LENGTH
+                    ? table.substring(0, MAX_IDENTIFIER_LENGTH - suffix.length())
+                    : table;
+            return new TableReference(schema, base + suffix);
+        }
+
         String qualified() {
             if (StringUtils.hasText(schema)) {
                 return schema + "." + table;
             }
             return table;
         }
+
+        String quoted() {
+            return quoted(POSTGRES_QUOTE);
+        }
+
+        String quoted(String identifierQuote) {
+            if (StringUtils.hasText(schema)) {
+                return quote(schema, identifierQuote) + "." + quote(table, identifierQuote);
+            }
+            return quote(table, identifierQuote);
+        }
     }
 }
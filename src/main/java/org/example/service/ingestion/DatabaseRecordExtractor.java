@@ -11,8 +11,13 @@ import org.springframework.util.StringUtils;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.Date;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -229,10 +234,11 @@ public class DatabaseRecordExtractor implements RecordExtractor {
         try {
             List<Map<String, Object>> results = jdbcTemplate.query(query, (resultSet, rowNum) -> {
                 Map<String, Object> row = new LinkedHashMap<>();
-                int columnCount = resultSet.getMetaData().getColumnCount();
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int columnCount = metaData.getColumnCount();
                 for (int columnIndex = 1; columnIndex <= columnCount; columnIndex++) {
-                    String columnName = resultSet.getMetaData().getColumnLabel(columnIndex);
-                    row.put(columnName, resultSet.getObject(columnIndex));
+                    String columnName = metaData.getColumnLabel(columnIndex);
+                    row.put(columnName, readColumn(resultSet, columnIndex, metaData.getColumnType(columnIndex)));
                 }
                 return row;
             });
@@ -247,6 +253,34 @@ public class DatabaseRecordExtractor implements RecordExtractor {
         }
     }
 
+    /**
+     * Temporal columns are stored as ISO-8601 text, so they are recognizable as timestamps downstream
+     * instead of being serialized as epoch numbers.
+     */
+    private Object readColumn(ResultSet resultSet, int columnIndex, int sqlType) throws SQLException {
+        switch (sqlType) {
+            case Types.TIMESTAMP -> {
+                Timestamp timestamp = resultSet.getTimestamp(columnIndex);
+                return timestamp != null ? timestamp.toInstant().toString() : null;
+            }
+            case Types.TIMESTAMP_WITH_TIMEZONE -> {
+                OffsetDateTime timestamp = resultSet.getObject(columnIndex, OffsetDateTime.class);
+                return timestamp != null ? timestamp.toInstant().toString() : null;
+            }
+            case Types.DATE -> {
+                Date date = resultSet.getDate(columnIndex);
+                return date != null ? date.toLocalDate().toString() : null;
+            }
+            case Types.TIME, Types.TIME_WITH_TIMEZONE -> {
+                Object time = resultSet.getObject(columnIndex);
+                return time != null ? time.toString() : null;
+            }
+            default -> {
+                return resultSet.getObject(columnIndex);
+            }
+        }
+    }
+
     private String resolveTableLabel(Map<String, Object> config, Map<String, Object> connection) {
         String alias = stringValue(config.get("alias"));
         if (StringUtils.hasText(alias)) {
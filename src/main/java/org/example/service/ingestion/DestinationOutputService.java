@@ -1,109 +1,206 @@
 package org.example.service.ingestion;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.models.entity.Source;
 import org.example.models.enums.SourceType;
+import org.example.service.export.ExportColumn;
+import org.example.service.export.ExportFormat;
+import org.example.service.export.ExportRowWriter;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.DirectoryStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.regex.Pattern;
 
+/**
+ * Writes records to a destination: a database table, or a file for file destinations. Files are CSV by
+ * default; {@code format: "ndjson"} writes newline-delimited JSON, gzipped unless {@code gzip} is
+ * {@code false}, and {@code format: "parquet"} a Parquet file.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class DestinationOutputService {
 
     private final DatabaseDestinationWriter databaseDestinationWriter;
-
-    public void write(Source destination, List<Map<String, Object>> records) {
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Writes one chunk of a delivery. File output is cut back to {@code offset}, the length after the last
+     * delivered chunk, and the chunk appended, so a chunk that failed part-way is rewritten rather than
+     * duplicated; gzipped files get one gzip member per chunk. Formats that cannot be appended to, such as
+     * Parquet, get a numbered file per chunk instead (see {@link #writePart}). Database destinations receive
+     * the rows through {@link DatabaseDestinationWriter}, committed per chunk.
+     *
+     * @param offset the file length, the files written for a format that cannot be appended to, or the rows
+     *               written to a database destination, after the previous chunk; {@code 0} for the first chunk
+     * @return the offset after this chunk
+     * @throws IllegalStateException if the destination has no output configured
+     */
+    public long writeChunk(Source destination, List<Map<String, Object>> records, List<ExportColumn> columns,
+                           long offset) {
         if (destination == null || destination.getConfig() == null) {
-            return;
+            throw new IllegalStateException("Destination has no output configuration");
+        }
+        if (destination.getType() == SourceType.DB) {
+            return offset + databaseDestinationWriter.writeChunk(destination, destination.getConfig(), records, offset == 0);
+        }
+        FileTarget target = fileTarget(destination);
+        if (target == null) {
+            throw new IllegalStateException("Destination " + destination.getName() + " has no usable file path");
+        }
+        if (!target.format().appendable()) {
+            return writePart(target, records, columns, offset);
         }
+        try {
+            createParent(target.path());
+            try (FileChannel channel = FileChannel.open(target.path(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+                channel.position(offset);
+                try (ExportRowWriter writer = target.format().open(Channels.newOutputStream(channel),
+                        target.gzip(), columns, objectMapper, offset == 0)) {
+                    writeRecords(writer, records, columns);
+                }
+                channel.force(false);
+                return channel.size();
+            }
+        } catch (IOException ioException) {
+            throw new IllegalStateException("Failed to write " + target.format().extension() + " destination output", ioException);
+        }
+    }
 
-        SourceType type = destination.getType();
-        Map<String, Object> config = destination.getConfig();
+    /**
+     * Ends a delivery after its last chunk; a database destination in replace mode swaps in the rows.
+     *
+     * @param offset the offset after the last chunk, as {@link #writeChunk} returned it
+     */
+    public void finish(Source destination, long offset) {
+        if (destination.getType() == SourceType.DB && destination.getConfig() != null) {
+            databaseDestinationWriter.finish(destination, destination.getConfig(), offset > 0);
+        }
+    }
 
-        if (type == SourceType.DB) {
-            log.info("DestinationOutputService: writing unified rows to DB destination {}", destination.getName());
-            databaseDestinationWriter.write(destination, config, records);
-            return;
+    /**
+     * Whether a failed delivery to the destination starts over from the first row: a database destination in
+     * replace mode, whose shadow table {@link #discard} drops.
+     */
+    public boolean restartsAfterFailure(Source destination) {
+        return destination.getType() == SourceType.DB && destination.getConfig() != null
+                && databaseDestinationWriter.replaces(destination.getConfig());
+    }
+
+    /**
+     * Discards the output of a failed delivery that cannot be resumed; see {@link #restartsAfterFailure}.
+     */
+    public void discard(Source destination) {
+        if (restartsAfterFailure(destination)) {
+            databaseDestinationWriter.discard(destination, destination.getConfig());
         }
+    }
 
+    /**
+     * The file the destination's records go to; {@code null}, after logging why, if it writes no file.
+     */
+    private FileTarget fileTarget(Source destination) {
+        Map<String, Object> config = destination.getConfig();
+        ExportFormat format = ExportFormat.of(stringValue(config.get("format")));
         String defaultPath = stringValue(config.get("filePath"));
-        String csvPath = stringValue(config.getOrDefault("csvFilePath", defaultPath));
-
-        boolean wrote = false;
-        if (type == SourceType.CSV && StringUtils.hasText(csvPath)) {
-            writeCsv(Path.of(csvPath), records);
-            wrote = true;
-        } else {
-            log.warn("Destination type {} not supported for file output", type);
-        }
+        String path = stringValue(config.getOrDefault(format.extension() + "FilePath", defaultPath));
+        Object gzip = config.get("gzip");
+        boolean compress = format.gzip(gzip == null ? null : Boolean.parseBoolean(gzip.toString()));
 
-        if (!wrote) {
+        if (destination.getType() != SourceType.CSV) {
+            log.warn("Destination type {} not supported for file output", destination.getType());
+            return null;
+        }
+        if (!StringUtils.hasText(path)) {
             log.warn("Destination file path missing or invalid, skipping output generation");
+            return null;
         }
+        return new FileTarget(Path.of(path), format, compress);
     }
 
-    private void writeCsv(Path path, List<Map<String, Object>> records) {
+    /**
+     * Writes chunk {@code part} as a file of its own next to the configured path, numbered from zero:
+     * {@code rows.parquet} gets {@code rows-00000.parquet}, {@code rows-00001.parquet} and so on. The first
+     * chunk removes the files of an earlier delivery, and a chunk written again replaces its file.
+     *
+     * @return the number of files written
+     */
+    private long writePart(FileTarget target, List<Map<String, Object>> records, List<ExportColumn> columns,
+                           long part) {
+        String name = target.path().getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        if (part == 0) {
+            deleteParts(target.path(),
+                    Pattern.compile(Pattern.quote(base + "-") + "\\d{5,}" + Pattern.quote(extension)));
+        }
+        Path file = target.path().resolveSibling(String.format(Locale.ROOT, "%s-%05d%s", base, part, extension));
         try {
-            if (path.getParent() != null) {
-                Files.createDirectories(path.getParent());
-            }
-            try (Writer writer = Files.newBufferedWriter(path,
+            createParent(file);
+            try (OutputStream out = Files.newOutputStream(file,
                     StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING)) {
-
-                Set<String> headers = collectHeaders(records);
-                writer.write(String.join(",", headers));
-                writer.write("\n");
-
-                for (Map<String, Object> record : records) {
-                    boolean first = true;
-                    for (String header : headers) {
-                        if (!first) {
-                            writer.write(',');
-                        }
-                        Object value = record.get(header);
-                        writer.write(escapeCsv(value));
-                        first = false;
-                    }
-                    writer.write("\n");
-                }
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+                 ExportRowWriter writer = target.format().open(out, target.gzip(), columns, objectMapper)) {
+                writeRecords(writer, records, columns);
             }
         } catch (IOException ioException) {
-            throw new IllegalStateException("Failed to write CSV destination output", ioException);
+            throw new IllegalStateException("Failed to write " + target.format().extension() + " destination output", ioException);
         }
+        return part + 1;
     }
 
-    private Set<String> collectHeaders(List<Map<String, Object>> records) {
-        Set<String> headers = new LinkedHashSet<>();
+    private void deleteParts(Path path, Pattern parts) {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                file -> parts.matcher(file.getFileName().toString()).matches())) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException ioException) {
+            throw new IllegalStateException("Failed to remove earlier destination output", ioException);
+        }
+    }
+
+    private void writeRecords(ExportRowWriter writer, List<Map<String, Object>> records, List<ExportColumn> columns)
+            throws IOException {
+        Object[] values = new Object[columns.size()];
         for (Map<String, Object> record : records) {
-            headers.addAll(record.keySet());
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns.get(i).read(record);
+            }
+            writer.write(values);
         }
-        return headers;
     }
 
-    private String escapeCsv(Object value) {
-        if (value == null) {
-            return "";
+    private void createParent(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
         }
-        String text = value.toString();
-        boolean needsQuotes = text.contains(",") || text.contains("\"") || text.contains("\n") || text.contains("\r");
-        String escaped = text.replace("\"", "\"\"");
-        return needsQuotes ? "\"" + escaped + "\"" : escaped;
     }
 
     private String stringValue(Object value) {
         return value == null ? null : value.toString();
     }
+
+    private record FileTarget(Path path, ExportFormat format, boolean gzip) {
+    }
 }
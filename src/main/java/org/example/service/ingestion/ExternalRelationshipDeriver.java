@@ -0,0 +1,397 @@
+package org.example.service.ingestion;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.models.entity.Dataset;
+import org.example.models.entity.Relationship;
+import org.example.models.entity.Source;
+import org.example.service.FileStorageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * External-memory variant of {@link RelationshipService#deriveAcrossSources(Map, JoinKeyStatistics)}.
+ * Join-key tuples are buffered, sorted and spilled to run files under the storage root; the runs are
+ * then merged so that records sharing a key arrive together and can be paired one key at a time. Two
+ * records can share several values of a multi-valued field, so the pairs are spilled and merged a second
+ * time and only the first of each is emitted. Heap use is bounded by the spill buffer and the size of a
+ * single admitted key group.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ExternalRelationshipDeriver {
+
+    private static final String SPILL_BUCKET = "spill";
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {
+    };
+
+    private final FileStorageService fileStorageService;
+    private final JoinKeyExtractor joinKeyExtractor;
+    private final RelationshipService relationshipService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${ingestion.relationships.spill-buffer-records:200000}")
+    private int spillBufferRecords;
+
+    @Value("${ingestion.relationships.emit-chunk-size:1000}")
+    private int emitChunkSize;
+
+    public Session open(Dataset dataset, JoinKeyStatistics statistics) {
+        Path directory = fileStorageService.getRootDirectory()
+                .resolve(SPILL_BUCKET)
+                .resolve("relationships-" + dataset.getId() + "-" + UUID.randomUUID());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ioException) {
+            throw new IllegalStateException("Failed to create spill directory: " + directory, ioException);
+        }
+        return new Session(directory, statistics);
+    }
+
+    public final class Session implements AutoCloseable {
+
+        private final Path directory;
+        private final JoinKeyStatistics statistics;
+        private final Map<Long, Source> sourcesById = new HashMap<>();
+        private final List<Path> runs = new ArrayList<>();
+        private final List<SpillTuple> buffer = new ArrayList<>();
+        private final List<Path> pairRuns = new ArrayList<>();
+        private final List<PairTuple> pairBuffer = new ArrayList<>();
+        private int ordinal;
+        private long pairSequence;
+
+        private Session(Path directory, JoinKeyStatistics statistics) {
+            this.directory = directory;
+            this.statistics = statistics;
+        }
+
+        /**
+         * Adds a source's records; once this returns the caller no longer needs to keep them.
+         */
+        public void add(Source source, List<Map<String, Object>> records) {
+            if (records == null || records.isEmpty()) {
+                return;
+            }
+            sourcesById.putIfAbsent(source.getId(), source);
+            for (Map<String, Object> record : records) {
+                String identity = joinKeyExtractor.resolveIdentity(record);
+                String recordType = joinKeyExtractor.resolveRecordType(record);
+                int recordOrdinal = ordinal++;
+                for (JoinKeyExtractor.JoinKey key : joinKeyExtractor.extract(record)) {
+                    statistics.observe(key.field(), key.key());
+                    buffer.add(new SpillTuple(key.key(), identity, recordType, source.getId(), recordOrdinal));
+                    if (buffer.size() >= spillBufferRecords) {
+                        spill(buffer, SpillTuple.ORDER, runs, "run");
+                    }
+                }
+            }
+        }
+
+        /**
+         * Merges the spilled runs and hands relationships to {@code sink} in chunks.
+         *
+         * @return the number of relationships emitted
+         */
+        public int derive(Consumer<List<Relationship>> sink) {
+            spill(buffer, SpillTuple.ORDER, runs, "run");
+            merge(runs, SpillTuple::read, SpillTuple.ORDER, new Consumer<>() {
+                private String groupKey;
+                private final List<RelationshipService.RecordDescriptor> group = new ArrayList<>();
+                private long groupSize;
+
+                @Override
+                public void accept(SpillTuple tuple) {
+                    if (tuple == null || !tuple.key().equals(groupKey)) {
+                        flushGroup(groupKey, group, groupSize);
+                        groupKey = tuple == null ? null : tuple.key();
+                        group.clear();
+                        groupSize = 0;
+                    }
+                    if (tuple == null) {
+                        return;
+                    }
+                    groupSize++;
+                    // Keys beyond the hot-key limit are dropped anyway, so stop holding their records.
+                    if (groupSize <= statistics.maxKeyFrequency() + 1) {
+                        group.add(new RelationshipService.RecordDescriptor(tuple.identity(), tuple.recordType(),
+                                tuple.ordinal(), sourcesById.get(tuple.sourceId())));
+                    }
+                }
+            });
+
+            spill(pairBuffer, PairTuple.ORDER, pairRuns, "pairs");
+            List<Relationship> chunk = new ArrayList<>();
+            int[] emitted = {0};
+            merge(pairRuns, PairTuple::read, PairTuple.ORDER, new Consumer<>() {
+                private PairTuple previous;
+
+                @Override
+                public void accept(PairTuple pair) {
+                    if (pair == null || (previous != null && previous.samePair(pair))) {
+                        return;
+                    }
+                    previous = pair;
+                    chunk.add(pair.toRelationship(sourcesById.get(pair.sourceId()), objectMapper));
+                    emitted[0]++;
+                    if (chunk.size() >= emitChunkSize) {
+                        sink.accept(List.copyOf(chunk));
+                        chunk.clear();
+                    }
+                }
+            });
+            if (!chunk.isEmpty()) {
+                sink.accept(List.copyOf(chunk));
+            }
+            log.info("Merged {} spill runs into {} relationships from {} pair runs", runs.size(), emitted[0], pairRuns.size());
+            return emitted[0];
+        }
+
+        /**
+         * Streams the runs' tuples to {@code consumer} in {@code order}, followed by {@code null} once they
+         * are exhausted.
+         */
+        private <T> void merge(List<Path> sortedRuns, TupleReader<T> tupleReader, Comparator<T> order, Consumer<T> consumer) {
+            List<RunReader<T>> readers = new ArrayList<>();
+            PriorityQueue<RunReader<T>> heap = new PriorityQueue<>(Comparator.comparing(RunReader::current, order));
+            try {
+                for (Path run : sortedRuns) {
+                    RunReader<T> reader = new RunReader<>(run, tupleReader);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        heap.add(reader);
+                    }
+                }
+                while (!heap.isEmpty()) {
+                    RunReader<T> reader = heap.poll();
+                    consumer.accept(reader.current());
+                    if (reader.advance()) {
+                        heap.add(reader);
+                    }
+                }
+                consumer.accept(null);
+            } catch (IOException ioException) {
+                throw new IllegalStateException("Failed to merge relationship spill runs in " + directory, ioException);
+            } finally {
+                for (RunReader<T> reader : readers) {
+                    reader.close();
+                }
+            }
+        }
+
+        private void flushGroup(String key, List<RelationshipService.RecordDescriptor> group, long groupSize) {
+            if (key == null || group.size() < 2) {
+                return;
+            }
+            String field = joinKeyExtractor.fieldOf(key);
+            if (!statistics.isSelected(field) || !statistics.admitKey(field, groupSize)) {
+                return;
+            }
+            List<Relationship> relationships = new ArrayList<>();
+            relationshipService.emitPairs(field, group, group.size(), new HashSet<>(), relationships);
+            for (Relationship relationship : relationships) {
+                pairBuffer.add(PairTuple.of(relationship, pairSequence++, objectMapper));
+                if (pairBuffer.size() >= spillBufferRecords) {
+                    spill(pairBuffer, PairTuple.ORDER, pairRuns, "pairs");
+                }
+            }
+        }
+
+        private <T extends SpillRecord> void spill(List<T> pending, Comparator<T> order, List<Path> target, String prefix) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            pending.sort(order);
+            Path run = directory.resolve(prefix + "-" + target.size() + ".bin");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                for (T tuple : pending) {
+                    tuple.write(out);
+                }
+            } catch (IOException ioException) {
+                throw new IllegalStateException("Failed to write relationship spill run: " + run, ioException);
+            }
+            target.add(run);
+            pending.clear();
+        }
+
+        @Override
+        public void close() {
+            buffer.clear();
+            pairBuffer.clear();
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException ioException) {
+                        log.warn("Failed to delete spill file {}", path, ioException);
+                    }
+                });
+            } catch (IOException ioException) {
+                log.warn("Failed to clean up spill directory {}", directory, ioException);
+            }
+        }
+    }
+
+    private interface SpillRecord {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface TupleReader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private record SpillTuple(String key, String identity, String recordType, Long sourceId, int ordinal)
+            implements SpillRecord {
+
+        static final Comparator<SpillTuple> ORDER = Comparator.comparing(SpillTuple::key)
+                .thenComparingInt(SpillTuple::ordinal);
+
+        @Override
+        public void write(DataOutputStream out) throws IOException {
+            writeString(out, key);
+            writeString(out, identity);
+            writeString(out, recordType);
+            out.writeLong(sourceId == null ? -1L : sourceId);
+            out.writeInt(ordinal);
+        }
+
+        static SpillTuple read(DataInputStream in) throws IOException {
+            String key = readString(in);
+            String identity = readString(in);
+            String recordType = readString(in);
+            long sourceId = in.readLong();
+            int ordinal = in.readInt();
+            return new SpillTuple(key, identity, recordType, sourceId < 0 ? null : sourceId, ordinal);
+        }
+    }
+
+    /**
+     * An emitted relationship; pairs with the same relation type and identities are duplicates, of which
+     * the first emitted is kept.
+     */
+    private record PairTuple(String relationType, String fromId, String toId, String fromType, String toType,
+                             Long sourceId, String payload, long sequence) implements SpillRecord {
+
+        static final Comparator<PairTuple> ORDER = Comparator.comparing(PairTuple::relationType)
+                .thenComparing(PairTuple::fromId)
+                .thenComparing(PairTuple::toId)
+                .thenComparingLong(PairTuple::sequence);
+
+        static PairTuple of(Relationship relationship, long sequence, ObjectMapper objectMapper) {
+            try {
+                return new PairTuple(relationship.getRelationType(), relationship.getFromId(), relationship.getToId(),
+                        relationship.getFromType(), relationship.getToType(),
+                        relationship.getSource() == null ? null : relationship.getSource().getId(),
+                        objectMapper.writeValueAsString(relationship.getPayload()), sequence);
+            } catch (IOException ioException) {
+                throw new IllegalStateException("Failed to spill relationship payload", ioException);
+            }
+        }
+
+        boolean samePair(PairTuple other) {
+            return relationType.equals(other.relationType) && fromId.equals(other.fromId) && toId.equals(other.toId);
+        }
+
+        Relationship toRelationship(Source source, ObjectMapper objectMapper) {
+            Relationship relationship = new Relationship();
+            relationship.setSource(source);
+            relationship.setFromType(fromType);
+            relationship.setFromId(fromId);
+            relationship.setToType(toType);
+            relationship.setToId(toId);
+            relationship.setRelationType(relationType);
+            try {
+                relationship.setPayload(objectMapper.readValue(payload, PAYLOAD_TYPE));
+            } catch (IOException ioException) {
+                throw new IllegalStateException("Failed to read spilled relationship payload", ioException);
+            }
+            relationship.setIngestedAt(Instant.now());
+            return relationship;
+        }
+
+        @Override
+        public void write(DataOutputStream out) throws IOException {
+            writeString(out, relationType);
+            writeString(out, fromId);
+            writeString(out, toId);
+            writeString(out, fromType);
+            writeString(out, toType);
+            out.writeLong(sourceId == null ? -1L : sourceId);
+            writeString(out, payload);
+            out.writeLong(sequence);
+        }
+
+        static PairTuple read(DataInputStream in) throws IOException {
+            String relationType = readString(in);
+            String fromId = readString(in);
+            String toId = readString(in);
+            String fromType = readString(in);
+            String toType = readString(in);
+            long sourceId = in.readLong();
+            String payload = readString(in);
+            long sequence = in.readLong();
+            return new PairTuple(relationType, fromId, toId, fromType, toType, sourceId < 0 ? null : sourceId,
+                    payload, sequence);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class RunReader<T> implements Closeable {
+
+        private final DataInputStream in;
+        private final TupleReader<T> tupleReader;
+        private T current;
+
+        RunReader(Path run, TupleReader<T> tupleReader) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            this.tupleReader = tupleReader;
+        }
+
+        T current() {
+            return current;
+        }
+
+        boolean advance() throws IOException {
+            try {
+                current = tupleReader.read(in);
+                return true;
+            } catch (EOFException endOfRun) {
+                current = null;
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Spill runs are deleted with the session directory.
+            }
+        }
+    }
+}
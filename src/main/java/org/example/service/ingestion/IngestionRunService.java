@@ -7,6 +7,7 @@ import org.example.repository.IngestionRunRepository;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
+import java.util.Map;
 
 @Component
 @RequiredArgsConstructor
@@ -35,4 +36,9 @@ public class IngestionRunService {
         run.setErrorMessage(message);
         return ingestionRunRepository.save(run);
     }
+
+    public IngestionRun recordJoinKeyStats(IngestionRun run, Map<String, Object> joinKeyStats) {
+        run.setJoinKeyStats(joinKeyStats);
+        return ingestionRunRepository.save(run);
+    }
 }
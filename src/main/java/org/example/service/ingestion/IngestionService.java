@@ -1,9 +1,11 @@
 package org.example.service.ingestion;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.models.entity.IngestionRun;
 import org.example.models.entity.Dataset;
+import org.example.models.entity.RawEvent;
 import org.example.models.entity.Relationship;
 import org.example.models.entity.Source;
 import org.example.models.enums.RunStatus;
@@ -11,6 +13,8 @@ import org.example.models.enums.SourceRole;
 import org.example.repository.IngestionRunRepository;
 import org.example.repository.DatasetRepository;
 import org.example.repository.SourceRepository;
+import org.example.service.delivery.DestinationDeliveryService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
@@ -22,16 +26,43 @@ import java.util.*;
 @RequiredArgsConstructor
 public class IngestionService {
 
+    private static final String RELATIONSHIP_MODE_MEMORY = "memory";
+    private static final String RELATIONSHIP_MODE_INCREMENTAL = "incremental";
+    private static final String RELATIONSHIP_MODE_EXTERNAL = "external";
+
     private final List<RecordExtractor> extractors;
     private final WrapperMappingService wrapperMappingService;
     private final RelationshipService relationshipService;
     private final RawEventService rawEventService;
     private final RelationshipPersistenceService relationshipPersistenceService;
-    private final DestinationOutputService destinationOutputService;
+    private final DestinationDeliveryService destinationDeliveryService;
     private final IngestionRunService ingestionRunService;
     private final IngestionRunRepository ingestionRunRepository;
     private final DatasetRepository datasetRepository;
     private final SourceRepository sourceRepository;
+    private final JoinKeyIndexService joinKeyIndexService;
+    private final ExternalRelationshipDeriver externalRelationshipDeriver;
+
+    /**
+     * {@code incremental} relates only newly stored records through the persistent join-key index;
+     * {@code memory} re-derives across every extracted record of the run; {@code external} does the same
+     * through sorted spill files so the run's records never have to fit in memory together.
+     */
+    @Value("${ingestion.relationships.mode:incremental}")
+    private String relationshipMode;
+
+    /**
+     * Fails startup on a mode that is not one of the above, rather than quietly running another one.
+     */
+    @PostConstruct
+    void checkRelationshipMode() {
+        String mode = relationshipMode == null ? "" : relationshipMode.trim().toLowerCase(Locale.ROOT);
+        if (!Set.of(RELATIONSHIP_MODE_INCREMENTAL, RELATIONSHIP_MODE_MEMORY, RELATIONSHIP_MODE_EXTERNAL).contains(mode)) {
+            throw new IllegalStateException("Unknown ingestion.relationships.mode '" + relationshipMode
+                    + "' (supported: incremental, memory, external)");
+        }
+        relationshipMode = mode;
+    }
 
     @Async
     public void startIngestionAsync(Long ingestionRunId) {
@@ -64,12 +95,14 @@ public class IngestionService {
             List<Map<String, Object>> mapped = rawRecords.stream()
                     .map(record -> wrapperMappingService.applyMapping(record, sourceConfig))
                     .toList();
-            List<Relationship> relationships = relationshipService.derive(source, sourceConfig, mapped);
+            JoinKeyStatistics joinKeyStatistics = relationshipService.newStatistics();
+            List<Relationship> relationships = relationshipService.derive(source, sourceConfig, mapped, joinKeyStatistics);
+            persisted.setJoinKeyStats(joinKeyStatistics.report());
 
             int stored = rawEventService.write(source, persisted, mapped);
             relationshipPersistenceService.persist(source, persisted, relationships);
             if (destination != null) {
-                destinationOutputService.write(destination, mapped);
+                destinationDeliveryService.deliverIngestion(persisted, destination);
             }
 
             ingestionRunService.markSuccess(persisted, mapped.size(), stored);
@@ -106,46 +139,75 @@ public class IngestionService {
             return Map.of();
         }
 
+        String mode = relationshipMode;
+        boolean incremental = RELATIONSHIP_MODE_INCREMENTAL.equals(mode);
+        if (incremental) {
+            joinKeyIndexService.ensureIndexed(dataset);
+        }
+
+        JoinKeyStatistics joinKeyStatistics = relationshipService.newStatistics();
         Map<Source, IngestionRun> runsBySource = new LinkedHashMap<>();
         Map<Source, List<Map<String, Object>>> mappedBySource = new LinkedHashMap<>();
-        for (Source source : sources) {
-            IngestionRun run = new IngestionRun();
-            run.setIngestionUid(UUID.randomUUID().toString());
-            run.setDataset(dataset);
-            run.setSource(source);
-            run.setRunStatus(RunStatus.QUEUED);
-            run.setStartedAt(Instant.now());
-            run = ingestionRunRepository.save(run);
-            IngestionRun persisted = ingestionRunService.markRunning(run);
+        try (ExternalRelationshipDeriver.Session spill = RELATIONSHIP_MODE_EXTERNAL.equals(mode)
+                ? externalRelationshipDeriver.open(dataset, joinKeyStatistics)
+                : null) {
+            for (Source source : sources) {
+                IngestionRun run = new IngestionRun();
+                run.setIngestionUid(UUID.randomUUID().toString());
+                run.setDataset(dataset);
+                run.setSource(source);
+                run.setRunStatus(RunStatus.QUEUED);
+                run.setStartedAt(Instant.now());
+                run = ingestionRunRepository.save(run);
+                IngestionRun persisted = ingestionRunService.markRunning(run);
+                try {
+                    Map<String, Object> sourceConfig = new LinkedHashMap<>(Optional.ofNullable(source.getConfig()).orElse(Map.of()));
+                    sourceConfig.putAll(safeOverrides);
+                    String format = stringValue(sourceConfig.getOrDefault("format", source.getType().name()));
+                    RecordExtractor extractor = resolveExtractor(format);
+                    List<Map<String, Object>> rawRecords = extractor.extract(source, sourceConfig);
+                    List<Map<String, Object>> mapped = rawRecords.stream()
+                            .map(record -> wrapperMappingService.applyMapping(record, sourceConfig))
+                            .toList();
+                    List<RawEvent> storedEvents = rawEventService.writeAll(source, persisted, mapped);
+                    int stored = storedEvents.size();
+                    if (spill != null) {
+                        // Spilled tuples replace the per-source record lists, which are released after each source.
+                        spill.add(source, mapped);
+                    } else {
+                        mappedBySource.put(source, incremental
+                                ? storedEvents.stream().map(RawEvent::getPayload).toList()
+                                : mapped);
+                    }
+                    ingestionRunService.markSuccess(persisted, mapped.size(), stored);
+                    runsBySource.put(source, persisted);
+                    log.info("Ingestion {} succeeded with {} rows for source {}", persisted.getIngestionUid(), stored, source.getName());
+                } catch (Exception exception) {
+                    log.error("Ingestion failed for source {}", source.getName(), exception);
+                    ingestionRunService.markFailure(persisted, exception.getMessage());
+                }
+            }
+
             try {
-                Map<String, Object> sourceConfig = new LinkedHashMap<>(Optional.ofNullable(source.getConfig()).orElse(Map.of()));
-                sourceConfig.putAll(safeOverrides);
-                String format = stringValue(sourceConfig.getOrDefault("format", source.getType().name()));
-                RecordExtractor extractor = resolveExtractor(format);
-                List<Map<String, Object>> rawRecords = extractor.extract(source, sourceConfig);
-                List<Map<String, Object>> mapped = rawRecords.stream()
-                        .map(record -> wrapperMappingService.applyMapping(record, sourceConfig))
-                        .toList();
-                mappedBySource.put(source, mapped);
-
-                int stored = rawEventService.write(source, persisted, mapped);
-                ingestionRunService.markSuccess(persisted, mapped.size(), stored);
-                runsBySource.put(source, persisted);
-                log.info("Ingestion {} succeeded with {} rows for source {}", persisted.getIngestionUid(), stored, source.getName());
+                int derived;
+                if (spill != null) {
+                    derived = spill.derive(chunk -> relationshipPersistenceService.persist(chunk, runsBySource));
+                } else {
+                    List<Relationship> relationships = incremental
+                            ? relationshipService.deriveIncremental(datasetId, mappedBySource, joinKeyStatistics)
+                            : relationshipService.deriveAcrossSources(mappedBySource, joinKeyStatistics);
+                    relationshipPersistenceService.persist(relationships, runsBySource);
+                    derived = relationships.size();
+                }
+                Map<String, Object> report = joinKeyStatistics.report();
+                runsBySource.replaceAll((source, run) -> ingestionRunService.recordJoinKeyStats(run, report));
+                log.info("Join keys for dataset {}: selected {}, rejected {}", datasetId, report.get("selected"), report.get("rejected"));
+                log.info("Derived {} relationships across {} sources for dataset {}", derived, sources.size(), datasetId);
             } catch (Exception exception) {
-                log.error("Ingestion failed for source {}", source.getName(), exception);
-                ingestionRunService.markFailure(persisted, exception.getMessage());
+                log.error("Failed to derive relationships for dataset {}", datasetId, exception);
             }
         }
 
-        try {
-            List<Relationship> relationships = relationshipService.deriveAcrossSources(mappedBySource);
-            relationshipPersistenceService.persist(relationships, runsBySource);
-            log.info("Derived {} relationships across {} sources for dataset {}", relationships.size(), sources.size(), datasetId);
-        } catch (Exception exception) {
-            log.error("Failed to derive relationships for dataset {}", datasetId, exception);
-        }
-
         return runsBySource;
     }
 
@@ -0,0 +1,113 @@
+package org.example.service.ingestion;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Shared rules for turning a mapped record into its join keys, identity and record type so the
+ * in-memory derivation and the persistent join-key index always agree on what a key is.
+ */
+@Component
+@RequiredArgsConstructor
+public class JoinKeyExtractor {
+
+    private final ObjectMapper objectMapper;
+
+    public List<JoinKey> extract(Map<String, Object> record) {
+        List<JoinKey> keys = new ArrayList<>();
+        for (Map.Entry<String, Object> field : record.entrySet()) {
+            if (!isCandidate(field.getKey(), field.getValue())) {
+                continue;
+            }
+            String normalizedField = field.getKey().toLowerCase(Locale.ROOT);
+            String canonical = canonicalValue(field.getValue());
+            keys.add(new JoinKey(normalizedField, canonical, joinKey(normalizedField, canonical)));
+        }
+        return keys;
+    }
+
+    public String joinKey(String normalizedField, String canonical) {
+        return normalizedField + "::" + canonical;
+    }
+
+    public String fieldOf(String joinKey) {
+        return joinKey.split("::", 2)[0];
+    }
+
+    public String resolveIdentity(Map<String, Object> record) {
+        for (String key : List.of("id", "uid", "uuid", "guid", "identifier", "record_id", "global_id")) {
+            Object value = record.get(key);
+            if (value != null && !value.toString().isBlank()) {
+                return value.toString();
+            }
+        }
+        Object meta = record.get("__meta__");
+        if (meta instanceof Map<?, ?> map) {
+            for (String key : List.of("record_uid", "uid", "id")) {
+                Object value = map.get(key);
+                if (value != null && !value.toString().isBlank()) {
+                    return value.toString();
+                }
+            }
+        }
+        return canonicalValue(record);
+    }
+
+    public String resolveRecordType(Map<String, Object> record) {
+        Object meta = record.get("__meta__");
+        if (meta instanceof Map<?, ?> map) {
+            for (String key : List.of("destination_table", "wrapper_name", "record_type")) {
+                Object value = map.get(key);
+                if (value != null) {
+                    return value.toString();
+                }
+            }
+        }
+        Object theme = record.get("__theme__");
+        if (theme != null) {
+            return theme.toString();
+        }
+        Object table = record.get("__table__");
+        if (table != null) {
+            return table.toString();
+        }
+        return "record";
+    }
+
+    private boolean isCandidate(String field, Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof String text && text.isBlank()) {
+            return false;
+        }
+        String lowered = field.toLowerCase(Locale.ROOT);
+        if (List.of("id", "uid", "name", "code", "number").contains(lowered)) {
+            return true;
+        }
+        for (String suffix : List.of("_id", "_uid", "_name", "_code", "_number")) {
+            if (lowered.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String canonicalValue(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            return String.valueOf(value);
+        }
+    }
+
+    public record JoinKey(String field, String canonicalValue, String key) {
+    }
+}
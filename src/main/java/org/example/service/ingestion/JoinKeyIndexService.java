@@ -0,0 +1,187 @@
+package org.example.service.ingestion;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.models.entity.Dataset;
+import org.example.models.entity.JoinKeyEntry;
+import org.example.models.entity.RawEvent;
+import org.example.models.entity.Source;
+import org.example.repository.JoinKeyEntryRepository;
+import org.example.repository.RawEventRepository;
+import org.example.repository.SourceRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the persistent {@code (dataset, field, canonical value) -> record identity} index so a run
+ * can relate its new records to previously ingested ones by looking up only its own keys.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JoinKeyIndexService {
+
+    private static final int LOOKUP_CHUNK_SIZE = 1_000;
+    private static final int BACKFILL_PAGE_SIZE = 1_000;
+    private static final int INSERT_BATCH_SIZE = 1_000;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO integration.join_key_index
+                (dataset_id, source_id, raw_event_id, field_name, join_key, record_identity, record_type, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JoinKeyEntryRepository joinKeyEntryRepository;
+    private final RawEventRepository rawEventRepository;
+    private final SourceRepository sourceRepository;
+    private final JoinKeyExtractor joinKeyExtractor;
+    private final JdbcTemplate jdbcTemplate;
+
+    public int index(Source source, List<RawEvent> events) {
+        return index(source.getDataset(), source, events);
+    }
+
+    /**
+     * Indexes the join keys of stored events, inserted in JDBC batches: the entity's identity ids would make
+     * {@code saveAll} insert one row per statement.
+     */
+    public int index(Dataset dataset, Source source, List<RawEvent> events) {
+        if (dataset == null || events == null || events.isEmpty()) {
+            return 0;
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (RawEvent event : events) {
+            Map<String, Object> payload = event.getPayload();
+            if (payload == null) {
+                continue;
+            }
+            String identity = joinKeyExtractor.resolveIdentity(payload);
+            String recordType = joinKeyExtractor.resolveRecordType(payload);
+            for (JoinKeyExtractor.JoinKey key : joinKeyExtractor.extract(payload)) {
+                entries.add(new Entry(event.getId(), key.field(), key.key(), identity, recordType));
+            }
+        }
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        Timestamp createdAt = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, entries, INSERT_BATCH_SIZE, (statement, entry) -> {
+            statement.setLong(1, dataset.getId());
+            statement.setLong(2, source.getId());
+            statement.setLong(3, entry.rawEventId());
+            statement.setString(4, entry.field());
+            statement.setString(5, entry.key());
+            statement.setString(6, entry.identity());
+            statement.setString(7, entry.recordType());
+            statement.setTimestamp(8, createdAt);
+        });
+        return entries.size();
+    }
+
+    public Map<String, List<JoinKeyEntry>> lookup(Long datasetId, Collection<String> joinKeys) {
+        Map<String, List<JoinKeyEntry>> matches = new LinkedHashMap<>();
+        if (datasetId == null || joinKeys == null || joinKeys.isEmpty()) {
+            return matches;
+        }
+        List<String> keys = new ArrayList<>(joinKeys);
+        for (int start = 0; start < keys.size(); start += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = keys.subList(start, Math.min(start + LOOKUP_CHUNK_SIZE, keys.size()));
+            for (JoinKeyEntry entry : joinKeyEntryRepository.findByDatasetIdAndJoinKeyIn(datasetId, chunk)) {
+                matches.computeIfAbsent(entry.getJoinKey(), key -> new ArrayList<>()).add(entry);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * How many index entries each key has, counting no further than {@code limit}; a key at the limit has
+     * at least that many. Each count stops after {@code limit} index rows, so a hot key costs no more than
+     * a rare one.
+     */
+    public Map<String, Long> countUpTo(Long datasetId, Collection<String> joinKeys, long limit) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        if (datasetId == null || joinKeys == null || joinKeys.isEmpty()) {
+            return counts;
+        }
+        List<String> keys = new ArrayList<>(joinKeys);
+        for (int start = 0; start < keys.size(); start += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = keys.subList(start, Math.min(start + LOOKUP_CHUNK_SIZE, keys.size()));
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement("""
+                        SELECT k.join_key, c.entries
+                        FROM unnest(?) AS k(join_key)
+                        CROSS JOIN LATERAL (
+                            SELECT count(*) AS entries
+                            FROM (SELECT 1 FROM integration.join_key_index e
+                                  WHERE e.dataset_id = ? AND e.join_key = k.join_key
+                                  LIMIT ?) limited
+                        ) c
+                        """);
+                statement.setArray(1, connection.createArrayOf("text", chunk.toArray()));
+                statement.setLong(2, datasetId);
+                statement.setLong(3, limit);
+                return statement;
+            }, (RowCallbackHandler) resultSet -> counts.put(resultSet.getString(1), resultSet.getLong(2)));
+        }
+        return counts;
+    }
+
+    /**
+     * Indexes the stored raw events of the dataset's sources that are not indexed yet: events stored before
+     * the index existed, before their source was attached to the dataset, or while it had none. Each source
+     * keeps a watermark of the events already examined, so every event is looked at once.
+     */
+    public void ensureIndexed(Dataset dataset) {
+        if (dataset == null) {
+            return;
+        }
+        int indexed = 0;
+        for (Source source : sourceRepository.findAllByDataset_Id(dataset.getId())) {
+            indexed += backfill(dataset, source);
+        }
+        if (indexed > 0) {
+            log.info("Backfilled {} join keys for dataset {}", indexed, dataset.getId());
+        }
+    }
+
+    private int backfill(Dataset dataset, Source source) {
+        Long upTo = jdbcTemplate.queryForObject(
+                "SELECT max(raw_event_id) FROM integration.raw_event WHERE source_id = ?", Long.class, source.getId());
+        Long watermark = jdbcTemplate.query("""
+                SELECT last_raw_event_id FROM integration.join_key_backfill WHERE dataset_id = ? AND source_id = ?
+                """, resultSet -> resultSet.next() ? resultSet.getLong(1) : 0L, dataset.getId(), source.getId());
+        long after = watermark == null ? 0L : watermark;
+        if (upTo == null || upTo <= after) {
+            return 0;
+        }
+        int indexed = 0;
+        List<RawEvent> page;
+        do {
+            page = rawEventRepository.findUnindexed(dataset.getId(), source.getId(), after, upTo, BACKFILL_PAGE_SIZE);
+            if (!page.isEmpty()) {
+                indexed += index(dataset, source, page);
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == BACKFILL_PAGE_SIZE);
+        jdbcTemplate.update("""
+                INSERT INTO integration.join_key_backfill (dataset_id, source_id, last_raw_event_id)
+                VALUES (?, ?, ?)
+                ON CONFLICT (dataset_id, source_id)
+                DO UPDATE SET last_raw_event_id = EXCLUDED.last_raw_event_id, updated_at = now()
+                """, dataset.getId(), source.getId(), upTo);
+        return indexed;
+    }
+
+    private record Entry(Long rawEventId, String field, String key, String identity, String recordType) {
+    }
+}
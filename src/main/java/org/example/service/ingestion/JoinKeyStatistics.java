@@ -0,0 +1,180 @@
+package org.example.service.ingestion;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Per-field cardinality (HyperLogLog) and key frequency (count-min) sketches collected while records
+ * are indexed, used to decide which candidate fields are selective enough to relate records on.
+ * <p>
+ * Not thread-safe; one instance covers a single derivation.
+ */
+public class JoinKeyStatistics {
+
+    private static final int HLL_PRECISION = 12;
+    private static final int HLL_REGISTERS = 1 << HLL_PRECISION;
+    private static final int CMS_DEPTH = 4;
+    private static final int CMS_WIDTH = 2048;
+
+    private final double minSelectivity;
+    private final long maxKeyFrequency;
+    private final long minSample;
+    private final Map<String, FieldSketch> fields = new TreeMap<>();
+
+    public JoinKeyStatistics(double minSelectivity, long maxKeyFrequency, long minSample) {
+        this.minSelectivity = minSelectivity;
+        this.maxKeyFrequency = maxKeyFrequency;
+        this.minSample = minSample;
+    }
+
+    public long maxKeyFrequency() {
+        return maxKeyFrequency;
+    }
+
+    /**
+     * Records one occurrence of {@code joinKey} in a record of the current run.
+     */
+    public void observe(String field, String joinKey) {
+        FieldSketch sketch = fields.computeIfAbsent(field, ignored -> new FieldSketch());
+        long hash = hash(joinKey);
+        sketch.occurrences++;
+        sketch.addDistinct(hash);
+        sketch.addFrequency(hash, 1);
+    }
+
+    /**
+     * Records occurrences of {@code joinKey} found outside the current run (e.g. in the persistent
+     * join-key index). They count towards key frequency but not towards the run's selectivity sample.
+     */
+    public void observeExisting(String field, String joinKey, long occurrences) {
+        if (occurrences <= 0) {
+            return;
+        }
+        fields.computeIfAbsent(field, ignored -> new FieldSketch()).addFrequency(hash(joinKey), occurrences);
+    }
+
+    /**
+     * A field is used for relationships unless enough of it has been seen to show that its values repeat
+     * too often (distinct values / occurrences below the configured selectivity).
+     */
+    public boolean isSelected(String field) {
+        FieldSketch sketch = fields.get(field);
+        if (sketch == null || sketch.occurrences < minSample) {
+            return true;
+        }
+        return sketch.selectivity() >= minSelectivity;
+    }
+
+    /**
+     * Decides whether a single key, shared by {@code frequency} records, may be expanded into pairwise
+     * relationships; hot keys are skipped and counted for the report.
+     */
+    public boolean admitKey(String field, long frequency) {
+        if (frequency <= maxKeyFrequency) {
+            return true;
+        }
+        fields.computeIfAbsent(field, ignored -> new FieldSketch()).hotKeysSkipped++;
+        return false;
+    }
+
+    public Map<String, Object> report() {
+        Map<String, Object> thresholds = new LinkedHashMap<>();
+        thresholds.put("min_selectivity", minSelectivity);
+        thresholds.put("max_key_frequency", maxKeyFrequency);
+        thresholds.put("min_sample", minSample);
+
+        Map<String, Object> fieldStats = new LinkedHashMap<>();
+        List<String> selected = new ArrayList<>();
+        List<String> rejected = new ArrayList<>();
+        for (Map.Entry<String, FieldSketch> entry : fields.entrySet()) {
+            FieldSketch sketch = entry.getValue();
+            boolean isSelected = isSelected(entry.getKey());
+            (isSelected ? selected : rejected).add(entry.getKey());
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("occurrences", sketch.occurrences);
+            stats.put("distinct_estimate", sketch.distinctEstimate());
+            stats.put("selectivity", Math.round(sketch.selectivity() * 10_000d) / 10_000d);
+            stats.put("max_key_frequency", sketch.maxFrequency);
+            stats.put("hot_keys_skipped", sketch.hotKeysSkipped);
+            stats.put("selected", isSelected);
+            fieldStats.put(entry.getKey(), stats);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("thresholds", thresholds);
+        report.put("selected", selected);
+        report.put("rejected", rejected);
+        report.put("fields", fieldStats);
+        return report;
+    }
+
+    private static long hash(String value) {
+        // FNV-1a over UTF-8 bytes followed by the MurmurHash3 finalizer for well-mixed high bits.
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class FieldSketch {
+        private final byte[] registers = new byte[HLL_REGISTERS];
+        private final long[][] counters = new long[CMS_DEPTH][CMS_WIDTH];
+        private long occurrences;
+        private long maxFrequency;
+        private long hotKeysSkipped;
+
+        void addDistinct(long hash) {
+            int register = (int) (hash >>> (64 - HLL_PRECISION));
+            long remaining = (hash << HLL_PRECISION) | (1L << (HLL_PRECISION - 1));
+            byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+            if (rank > registers[register]) {
+                registers[register] = rank;
+            }
+        }
+
+        void addFrequency(long hash, long count) {
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < CMS_DEPTH; row++) {
+                int column = column(hash, row);
+                counters[row][column] += count;
+                estimate = Math.min(estimate, counters[row][column]);
+            }
+            maxFrequency = Math.max(maxFrequency, estimate);
+        }
+
+        long distinctEstimate() {
+            double sum = 0;
+            int zeros = 0;
+            for (byte register : registers) {
+                sum += 1d / (1L << register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+            double alpha = 0.7213 / (1 + 1.079 / HLL_REGISTERS);
+            double estimate = alpha * HLL_REGISTERS * HLL_REGISTERS / sum;
+            if (estimate <= 2.5 * HLL_REGISTERS && zeros > 0) {
+                estimate = HLL_REGISTERS * Math.log((double) HLL_REGISTERS / zeros);
+            }
+            return Math.min(Math.round(estimate), occurrences);
+        }
+
+        double selectivity() {
+            return occurrences == 0 ? 1d : (double) distinctEstimate() / occurrences;
+        }
+
+        private static int column(long hash, int row) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            return Math.floorMod(h1 + row * h2, CMS_WIDTH);
+        }
+    }
+}
@@ -27,8 +27,17 @@ public class RawEventService {
 
     private final RawEventRepository rawEventRepository;
     private final ObjectMapper objectMapper;
+    private final JoinKeyIndexService joinKeyIndexService;
 
     public int write(Source source, IngestionRun run, List<Map<String, Object>> records) {
+        return writeAll(source, run, records).size();
+    }
+
+    /**
+     * Persists the records that are new for the source and returns the stored events, after adding
+     * their join keys to the persistent index.
+     */
+    public List<RawEvent> writeAll(Source source, IngestionRun run, List<Map<String, Object>> records) {
         List<RawEvent> events = new ArrayList<>();
         Set<String> batchHashes = new HashSet<>();
         List<String> candidateHashes = new ArrayList<>();
@@ -43,7 +52,7 @@ public class RawEventService {
         }
 
         if (candidateHashes.isEmpty()) {
-            return 0;
+            return List.of();
         }
 
         Set<String> existingHashes = rawEventRepository.findExistingPayloadHashes(source, candidateHashes);
@@ -66,28 +75,28 @@ public class RawEventService {
         }
 
         if (events.isEmpty()) {
-            return 0;
+            return List.of();
         }
 
+        List<RawEvent> persisted;
         try {
-            rawEventRepository.saveAll(events);
-            return events.size();
+            persisted = rawEventRepository.saveAll(events);
         } catch (RuntimeException ex) {
             // Fall back to per-event persistence to honor dedupe constraint under concurrent ingestions.
-            int persisted = 0;
+            persisted = new ArrayList<>();
             for (RawEvent event : events) {
                 if (rawEventRepository.existsBySourceAndPayloadHash(source, event.getPayloadHash())) {
                     continue;
                 }
                 try {
-                    rawEventRepository.save(event);
-                    persisted++;
+                    persisted.add(rawEventRepository.save(event));
                 } catch (DataIntegrityViolationException ignored) {
                     // Another thread/process inserted the same payload hash meanwhile; skip.
                 }
             }
-            return persisted;
         }
+        joinKeyIndexService.index(source, persisted);
+        return persisted;
     }
 
     private String hash(Map<String, Object> record) {
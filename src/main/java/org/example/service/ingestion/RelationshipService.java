@@ -1,10 +1,10 @@
 package org.example.service.ingestion;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.example.models.entity.JoinKeyEntry;
 import org.example.models.entity.Relationship;
 import org.example.models.entity.Source;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
@@ -14,10 +14,31 @@ import java.util.*;
 @RequiredArgsConstructor
 public class RelationshipService {
 
-    private final ObjectMapper objectMapper;
+    private final JoinKeyExtractor joinKeyExtractor;
+    private final JoinKeyIndexService joinKeyIndexService;
+
+    @Value("${ingestion.relationships.min-selectivity:0.01}")
+    private double minSelectivity;
+
+    @Value("${ingestion.relationships.max-key-frequency:1000}")
+    private long maxKeyFrequency;
+
+    @Value("${ingestion.relationships.min-sample:100}")
+    private long minSample;
+
+    public JoinKeyStatistics newStatistics() {
+        return new JoinKeyStatistics(minSelectivity, maxKeyFrequency, minSample);
+    }
 
     public List<Relationship> derive(Source source, Map<String, Object> config, List<Map<String, Object>> records) {
-        return deriveAcrossSources(Map.of(source, records));
+        return derive(source, config, records, newStatistics());
+    }
+
+    public List<Relationship> derive(Source source,
+                                     Map<String, Object> config,
+                                     List<Map<String, Object>> records,
+                                     JoinKeyStatistics statistics) {
+        return deriveAcrossSources(Map.of(source, records), statistics);
     }
 
     /**
@@ -25,145 +46,165 @@ public class RelationshipService {
      * database and CSV records can generate edges in a single pass.
      */
     public List<Relationship> deriveAcrossSources(Map<Source, List<Map<String, Object>>> recordsBySource) {
-        List<Relationship> relationships = new ArrayList<>();
-        Map<String, List<RecordDescriptor>> index = new HashMap<>();
-        int globalIndex = 0;
+        return deriveAcrossSources(recordsBySource, newStatistics());
+    }
 
-        for (Map.Entry<Source, List<Map<String, Object>>> entry : recordsBySource.entrySet()) {
-            Source source = entry.getKey();
-            List<Map<String, Object>> records = entry.getValue() == null ? List.of() : entry.getValue();
-            for (int i = 0; i < records.size(); i++) {
-                Map<String, Object> record = records.get(i);
-                RecordDescriptor descriptor = buildDescriptor(source, record, globalIndex++);
-                for (Map.Entry<String, Object> field : record.entrySet()) {
-                    if (!isCandidate(field.getKey(), field.getValue())) {
-                        continue;
-                    }
-                    String canonical = canonicalValue(field.getValue());
-                    index.computeIfAbsent(field.getKey().toLowerCase(Locale.ROOT) + "::" + canonical, key -> new ArrayList<>())
-                            .add(descriptor);
-                }
-            }
-        }
+    /**
+     * Same as {@link #deriveAcrossSources(Map)}, collecting join-key statistics into {@code statistics}.
+     * Fields whose values repeat too much and individual keys shared by too many records are skipped.
+     */
+    public List<Relationship> deriveAcrossSources(Map<Source, List<Map<String, Object>>> recordsBySource,
+                                                  JoinKeyStatistics statistics) {
+        Map<String, List<RecordDescriptor>> index = indexRecords(recordsBySource, statistics);
 
+        List<Relationship> relationships = new ArrayList<>();
         Set<String> seen = new HashSet<>();
         for (Map.Entry<String, List<RecordDescriptor>> entry : index.entrySet()) {
-            if (entry.getValue().size() < 2) {
-                continue;
-            }
-            String field = entry.getKey().split("::", 2)[0];
-            String relationType = "shared_" + field;
+            String field = joinKeyExtractor.fieldOf(entry.getKey());
             List<RecordDescriptor> descriptors = entry.getValue();
-            for (int i = 0; i < descriptors.size(); i++) {
-                for (int j = i + 1; j < descriptors.size(); j++) {
-                    RecordDescriptor left = descriptors.get(i);
-                    RecordDescriptor right = descriptors.get(j);
-                    List<RecordDescriptor> ordered = Arrays.asList(left, right).stream()
-                            .sorted(Comparator.comparing(RecordDescriptor::identity)
-                                    .thenComparing(RecordDescriptor::recordType)
-                                    .thenComparingInt(RecordDescriptor::index))
-                            .toList();
-                    RecordDescriptor from = ordered.get(0);
-                    RecordDescriptor to = ordered.get(ordered.size() - 1);
-                    String key = relationType + "|" + from.identity() + "|" + to.identity();
-                    if (seen.contains(key)) {
-                        continue;
-                    }
-                    seen.add(key);
-                    Relationship relationship = new Relationship();
-                    relationship.setSource(from.source());
-                    relationship.setFromType(from.recordType());
-                    relationship.setFromId(from.identity());
-                    relationship.setToType(to.recordType());
-                    relationship.setToId(to.identity());
-                    relationship.setRelationType(relationType);
-                    relationship.setPayload(buildPayload(field, descriptors));
-                    relationship.setIngestedAt(Instant.now());
-                    relationships.add(relationship);
-                }
+            if (!statistics.isSelected(field) || !statistics.admitKey(field, descriptors.size())) {
+                continue;
             }
+            emitPairs(field, descriptors, descriptors.size(), seen, relationships);
         }
         return relationships;
     }
 
-    private Map<String, Object> buildPayload(String field, List<RecordDescriptor> descriptors) {
-        Map<String, Object> payload = new LinkedHashMap<>();
-        payload.put("field", field);
-        payload.put("records", descriptors.stream().map(RecordDescriptor::identity).distinct().toList());
-        return payload;
+    /**
+     * Derive relationships for records that are new in this run only. New records are paired with each
+     * other in memory and with previously ingested records through the persistent join-key index, so the
+     * cost follows the size of the delta instead of the size of the dataset.
+     */
+    public List<Relationship> deriveIncremental(Long datasetId, Map<Source, List<Map<String, Object>>> newRecordsBySource) {
+        return deriveIncremental(datasetId, newRecordsBySource, newStatistics());
     }
 
-    private RecordDescriptor buildDescriptor(Source source, Map<String, Object> record, int index) {
-        return new RecordDescriptor(resolveIdentity(record), resolveRecordType(record), index, source);
-    }
+    public List<Relationship> deriveIncremental(Long datasetId,
+                                                Map<Source, List<Map<String, Object>>> newRecordsBySource,
+                                                JoinKeyStatistics statistics) {
+        Map<String, List<RecordDescriptor>> index = indexRecords(newRecordsBySource, statistics);
+        // Rejected fields are decided from the run's own sample, so their keys are never looked up.
+        index.keySet().removeIf(key -> !statistics.isSelected(joinKeyExtractor.fieldOf(key)));
+        if (index.isEmpty()) {
+            return List.of();
+        }
 
-    private String resolveIdentity(Map<String, Object> record) {
-        for (String key : List.of("id", "uid", "uuid", "guid", "identifier", "record_id", "global_id")) {
-            Object value = record.get(key);
-            if (value != null && !value.toString().isBlank()) {
-                return value.toString();
-            }
+        // Keys already too frequent in this run, or in the index, are skipped without loading their entries.
+        index.entrySet().removeIf(entry -> !statistics.admitKey(joinKeyExtractor.fieldOf(entry.getKey()), entry.getValue().size()));
+        Map<String, Long> indexed = joinKeyIndexService.countUpTo(datasetId, index.keySet(), statistics.maxKeyFrequency() + 1);
+        index.entrySet().removeIf(entry -> entry.getValue().size() < indexed.getOrDefault(entry.getKey(), 0L)
+                && !statistics.admitKey(joinKeyExtractor.fieldOf(entry.getKey()), indexed.get(entry.getKey())));
+        if (index.isEmpty()) {
+            return List.of();
         }
-        Object meta = record.get("__meta__");
-        if (meta instanceof Map<?, ?> map) {
-            for (String key : List.of("record_uid", "uid", "id")) {
-                Object value = map.get(key);
-                if (value != null && !value.toString().isBlank()) {
-                    return value.toString();
+
+        Map<String, List<JoinKeyEntry>> persisted = joinKeyIndexService.lookup(datasetId, index.keySet());
+        int globalIndex = index.values().stream().mapToInt(List::size).sum();
+
+        List<Relationship> relationships = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, List<RecordDescriptor>> entry : index.entrySet()) {
+            String field = joinKeyExtractor.fieldOf(entry.getKey());
+            List<RecordDescriptor> descriptors = new ArrayList<>(entry.getValue());
+            int newCount = descriptors.size();
+            Set<String> current = new HashSet<>();
+            for (RecordDescriptor descriptor : descriptors) {
+                current.add(descriptor.recordKey());
+            }
+            for (JoinKeyEntry match : persisted.getOrDefault(entry.getKey(), List.of())) {
+                RecordDescriptor existing = new RecordDescriptor(match.getRecordIdentity(), match.getRecordType(),
+                        globalIndex++, match.getSource());
+                // The run's own records are already indexed by the time derivation runs.
+                if (current.add(existing.recordKey())) {
+                    descriptors.add(existing);
                 }
             }
+            statistics.observeExisting(field, entry.getKey(), descriptors.size() - newCount);
+            if (!statistics.admitKey(field, descriptors.size())) {
+                continue;
+            }
+            emitPairs(field, descriptors, newCount, seen, relationships);
         }
-        return canonicalValue(record);
+        return relationships;
     }
 
-    private String resolveRecordType(Map<String, Object> record) {
-        Object meta = record.get("__meta__");
-        if (meta instanceof Map<?, ?> map) {
-            for (String key : List.of("destination_table", "wrapper_name", "record_type")) {
-                Object value = map.get(key);
-                if (value != null) {
-                    return value.toString();
+    private Map<String, List<RecordDescriptor>> indexRecords(Map<Source, List<Map<String, Object>>> recordsBySource,
+                                                             JoinKeyStatistics statistics) {
+        Map<String, List<RecordDescriptor>> index = new LinkedHashMap<>();
+        int globalIndex = 0;
+
+        for (Map.Entry<Source, List<Map<String, Object>>> entry : recordsBySource.entrySet()) {
+            Source source = entry.getKey();
+            List<Map<String, Object>> records = entry.getValue() == null ? List.of() : entry.getValue();
+            for (Map<String, Object> record : records) {
+                RecordDescriptor descriptor = buildDescriptor(source, record, globalIndex++);
+                for (JoinKeyExtractor.JoinKey key : joinKeyExtractor.extract(record)) {
+                    statistics.observe(key.field(), key.key());
+                    index.computeIfAbsent(key.key(), ignored -> new ArrayList<>()).add(descriptor);
                 }
             }
         }
-        Object theme = record.get("__theme__");
-        if (theme != null) {
-            return theme.toString();
-        }
-        Object table = record.get("__table__");
-        if (table != null) {
-            return table.toString();
-        }
-        return "record";
+        return index;
     }
 
-    private boolean isCandidate(String field, Object value) {
-        if (value == null) {
-            return false;
-        }
-        if (value instanceof String text && text.isBlank()) {
-            return false;
-        }
-        String lowered = field.toLowerCase(Locale.ROOT);
-        if (List.of("id", "uid", "name", "code", "number").contains(lowered)) {
-            return true;
+    /**
+     * Pairs every descriptor in {@code [0, newCount)} with every later descriptor; descriptors past
+     * {@code newCount} are previously related records and are never paired with each other again.
+     */
+    void emitPairs(String field,
+                   List<RecordDescriptor> descriptors,
+                   int newCount,
+                   Set<String> seen,
+                   List<Relationship> relationships) {
+        if (descriptors.size() < 2) {
+            return;
         }
-        for (String suffix : List.of("_id", "_uid", "_name", "_code", "_number")) {
-            if (lowered.endsWith(suffix)) {
-                return true;
+        String relationType = "shared_" + field;
+        for (int i = 0; i < newCount; i++) {
+            for (int j = i + 1; j < descriptors.size(); j++) {
+                RecordDescriptor left = descriptors.get(i);
+                RecordDescriptor right = descriptors.get(j);
+                List<RecordDescriptor> ordered = Arrays.asList(left, right).stream()
+                        .sorted(Comparator.comparing(RecordDescriptor::identity)
+                                .thenComparing(RecordDescriptor::recordType)
+                                .thenComparingInt(RecordDescriptor::index))
+                        .toList();
+                RecordDescriptor from = ordered.get(0);
+                RecordDescriptor to = ordered.get(ordered.size() - 1);
+                String key = relationType + "|" + from.identity() + "|" + to.identity();
+                if (seen.contains(key)) {
+                    continue;
+                }
+                seen.add(key);
+                Relationship relationship = new Relationship();
+                relationship.setSource(from.source());
+                relationship.setFromType(from.recordType());
+                relationship.setFromId(from.identity());
+                relationship.setToType(to.recordType());
+                relationship.setToId(to.identity());
+                relationship.setRelationType(relationType);
+                relationship.setPayload(buildPayload(field, descriptors));
+                relationship.setIngestedAt(Instant.now());
+                relationships.add(relationship);
             }
         }
-        return false;
     }
 
-    private String canonicalValue(Object value) {
-        try {
-            return objectMapper.writeValueAsString(value);
-        } catch (JsonProcessingException e) {
-            return String.valueOf(value);
-        }
+    private Map<String, Object> buildPayload(String field, List<RecordDescriptor> descriptors) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("field", field);
+        payload.put("records", descriptors.stream().map(RecordDescriptor::identity).distinct().toList());
+        return payload;
     }
 
-    private record RecordDescriptor(String identity, String recordType, int index, Source source) {
+    private RecordDescriptor buildDescriptor(Source source, Map<String, Object> record, int index) {
+        return new RecordDescriptor(joinKeyExtractor.resolveIdentity(record), joinKeyExtractor.resolveRecordType(record),
+                index, source);
+    }
+
+    record RecordDescriptor(String identity, String recordType, int index, Source source) {
+        String recordKey() {
+            return identity + "|" + recordType + "|" + (source != null ? source.getId() : null);
+        }
     }
 }
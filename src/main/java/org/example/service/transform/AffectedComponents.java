@@ -0,0 +1,140 @@
+package org.example.service.transform;
+
+import lombok.RequiredArgsConstructor;
+import org.example.models.entity.Relationship;
+import org.example.repository.RelationshipRepository;
+import org.example.service.transform.GraphBuilder.NodeRef;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Finds the components an incremental transform rebuilds by walking the relationship graph outwards from
+ * the changed nodes, loading only the relationships of the nodes it reaches. The result has the same
+ * primaries as {@link GraphBuilder.Components#primariesAffectedBy} on the whole graph, and enough of the
+ * graph to build each of their {@link GraphBuilder.Components#componentOf components}.
+ */
+@Component
+@RequiredArgsConstructor
+public class AffectedComponents {
+
+    private static final int LOOKUP_BATCH_SIZE = 1_000;
+
+    private final RelationshipRepository relationshipRepository;
+
+    public Result find(Long datasetId, Collection<NodeRef> changed, Predicate<NodeRef> isPrimary) {
+        Map<NodeRef, List<Relationship>> edges = new HashMap<>();
+        Set<NodeRef> primaries = new LinkedHashSet<>();
+        List<NodeRef> changedOthers = new ArrayList<>();
+        for (NodeRef node : changed) {
+            if (isPrimary.test(node)) {
+                primaries.add(node);
+            } else {
+                changedOthers.add(node);
+            }
+        }
+        // Every primary bordering the cluster of a changed node is affected.
+        primaries.addAll(expand(datasetId, changedOthers, isPrimary, edges));
+
+        // The components of those primaries span the clusters they border, changed or not.
+        load(datasetId, primaries, edges);
+        List<NodeRef> bordering = new ArrayList<>();
+        for (NodeRef primary : primaries) {
+            for (Relationship relation : edges.get(primary)) {
+                NodeRef other = otherEnd(relation, primary);
+                if (other != null && !isPrimary.test(other)) {
+                    bordering.add(other);
+                }
+            }
+        }
+        expand(datasetId, bordering, isPrimary, edges);
+
+        Map<Long, Relationship> relations = new LinkedHashMap<>();
+        for (List<Relationship> nodeEdges : edges.values()) {
+            for (Relationship relation : nodeEdges) {
+                relations.putIfAbsent(relation.getId(), relation);
+            }
+        }
+        return new Result(primaries, new ArrayList<>(relations.values()));
+    }
+
+    /**
+     * Walks the clusters of {@code start} through non-primary nodes and returns the primaries they border.
+     * Nodes whose relationships are already loaded belong to a cluster walked before and are skipped.
+     */
+    private Set<NodeRef> expand(Long datasetId, Collection<NodeRef> start, Predicate<NodeRef> isPrimary,
+                                Map<NodeRef, List<Relationship>> edges) {
+        Set<NodeRef> boundary = new LinkedHashSet<>();
+        Set<NodeRef> frontier = new LinkedHashSet<>();
+        for (NodeRef node : start) {
+            if (!edges.containsKey(node)) {
+                frontier.add(node);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            load(datasetId, frontier, edges);
+            Set<NodeRef> next = new LinkedHashSet<>();
+            for (NodeRef node : frontier) {
+                for (Relationship relation : edges.get(node)) {
+                    NodeRef other = otherEnd(relation, node);
+                    if (other == null) {
+                        continue;
+                    }
+                    if (isPrimary.test(other)) {
+                        boundary.add(other);
+                    } else if (!edges.containsKey(other)) {
+                        next.add(other);
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return boundary;
+    }
+
+    private void load(Long datasetId, Collection<NodeRef> nodes, Map<NodeRef, List<Relationship>> edges) {
+        Set<NodeRef> pending = new HashSet<>();
+        for (NodeRef node : nodes) {
+            if (!edges.containsKey(node)) {
+                pending.add(node);
+                edges.put(node, new ArrayList<>());
+            }
+        }
+        List<String> ids = pending.stream().map(NodeRef::id).distinct().toList();
+        for (int start = 0; start < ids.size(); start += LOOKUP_BATCH_SIZE) {
+            List<String> batch = ids.subList(start, Math.min(start + LOOKUP_BATCH_SIZE, ids.size()));
+            for (Relationship relation : relationshipRepository.findByDatasetIdAndEndpointIn(datasetId, batch)) {
+                // Ids are matched as stored; the endpoints decide which of the requested nodes it touches.
+                for (NodeRef endpoint : new LinkedHashSet<>(GraphBuilder.endpoints(relation))) {
+                    if (pending.contains(endpoint)) {
+                        edges.get(endpoint).add(relation);
+                    }
+                }
+            }
+        }
+    }
+
+    private static NodeRef otherEnd(Relationship relation, NodeRef node) {
+        List<NodeRef> endpoints = GraphBuilder.endpoints(relation);
+        if (endpoints.isEmpty()) {
+            return null;
+        }
+        return endpoints.get(0).equals(node) ? endpoints.get(1) : endpoints.get(0);
+    }
+
+    /**
+     * @param primaries the primaries whose rows are rebuilt
+     * @param relations every relationship of those primaries and of the clusters they border
+     */
+    public record Result(Set<NodeRef> primaries, List<Relationship> relations) {
+    }
+}
@@ -0,0 +1,551 @@
+package org.example.service.transform;
+
+import org.example.models.entity.DatasetField;
+import org.example.models.entity.DatasetMapping;
+import org.example.models.enums.DataType;
+import org.example.models.enums.TransformType;
+import org.example.service.transform.expression.Expression;
+import org.example.service.transform.expression.ExpressionCompiler;
+import org.example.service.transform.expression.ExpressionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+/**
+ * Dataset field mappings compiled once per transform: mappings are grouped and priority-sorted per field
+ * and source, paths are compiled to {@link PathAccessor}s and transform functions pre-bound, so mapping a
+ * merged row only walks arrays. The lookup order (source mappings, cross-source mappings, name-based
+ * fallbacks) is the one the transform has always used.
+ * <p>
+ * Epoch values are only converted to ISO instants for fields declared {@link DataType#TIMESTAMP}, before
+ * the mapping's transform runs; every other value is passed through untouched.
+ * <p>
+ * A mapping's {@code transformSql} runs after its {@link TransformType} with the value bound to
+ * {@code $value}, and may compute a value for a mapping without a path. A field's {@code defaultExpr} fills
+ * the field when nothing else resolved it and is evaluated against the unified payload. Both are compiled
+ * by {@link ExpressionCompiler}; expressions saved before they were validated and that do not compile are
+ * logged and ignored.
+ */
+public final class FieldMappingPlan {
+
+    private static final Logger log = LoggerFactory.getLogger(FieldMappingPlan.class);
+
+    private static final Comparator<DatasetMapping> BY_PRIORITY =
+            Comparator.comparing(DatasetMapping::getPriority, Comparator.nullsLast(Integer::compareTo));
+
+    private final List<FieldPlan> fields;
+    private final boolean hasDefaults;
+
+    private FieldMappingPlan(List<FieldPlan> fields) {
+        this.fields = fields;
+        this.hasDefaults = fields.stream().anyMatch(field -> field.defaultValue() != null);
+    }
+
+    /**
+     * @param fields   dataset fields in output order
+     * @param mappings every mapping of the dataset
+     */
+    public static FieldMappingPlan compile(List<DatasetField> fields, List<DatasetMapping> mappings) {
+        Map<Long, List<DatasetMapping>> byField = new HashMap<>();
+        for (DatasetMapping mapping : mappings) {
+            byField.computeIfAbsent(mapping.getDatasetField().getId(), key -> new ArrayList<>()).add(mapping);
+        }
+
+        List<FieldPlan> plans = new ArrayList<>(fields.size());
+        for (DatasetField field : fields) {
+            List<DatasetMapping> fieldMappings = byField.getOrDefault(field.getId(), List.of());
+
+            Map<Long, List<DatasetMapping>> bySource = new LinkedHashMap<>();
+            for (DatasetMapping mapping : fieldMappings) {
+                bySource.computeIfAbsent(mapping.getSource().getId(), key -> new ArrayList<>()).add(mapping);
+            }
+            UnaryOperator<Object> convert = field.getDtype() == DataType.TIMESTAMP
+                    ? TimestampNormalizer::normalizeValue
+                    : UnaryOperator.identity();
+            Map<Long, Accessor[]> sourceAccessors = new HashMap<>();
+            bySource.forEach((sourceId, list) -> sourceAccessors.put(sourceId, accessors(list, convert)));
+
+            Set<String> flattenedTargets = new LinkedHashSet<>();
+            flattenedTargets.add(normalizeKey(field.getName()));
+            for (DatasetMapping mapping : fieldMappings) {
+                if (StringUtils.hasText(mapping.getSrcPath())) {
+                    flattenedTargets.add(normalizeKey(mapping.getSrcPath()));
+                }
+                if (StringUtils.hasText(mapping.getSrcJsonPath())) {
+                    flattenedTargets.add(normalizeKey(mapping.getSrcJsonPath()));
+                }
+            }
+
+            String name = field.getName();
+            plans.add(new FieldPlan(
+                    String.valueOf(field.getId()),
+                    name,
+                    StringUtils.hasText(name) ? name.trim().toLowerCase() : null,
+                    StringUtils.hasText(name) ? normalizeKey(name) : null,
+                    PathAccessor.compile(name),
+                    convert,
+                    sourceAccessors,
+                    accessors(fieldMappings, convert),
+                    flattenedTargets.toArray(String[]::new),
+                    expression(field.getDefaultExpr(), "default of field " + name)));
+        }
+        return new FieldMappingPlan(plans);
+    }
+
+    public Map<String, Object> apply(Map<Long, Map<String, Object>> payloadBySource, Map<String, Object> unifiedPayload) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Fallback fallback = null;
+
+        for (FieldPlan field : fields) {
+            Object value = null;
+            boolean resolved = false;
+
+            for (Map.Entry<Long, Map<String, Object>> entry : payloadBySource.entrySet()) {
+                Accessor[] accessors = field.bySource().get(entry.getKey());
+                if (accessors == null) {
+                    continue;
+                }
+                for (Accessor accessor : accessors) {
+                    value = accessor.read(entry.getValue());
+                    if (value != null || accessor.required()) {
+                        resolved = true;
+                        break;
+                    }
+                }
+                if (resolved) {
+                    break;
+                }
+            }
+
+            if (value == null) {
+                for (Accessor accessor : field.fallback()) {
+                    value = accessor.read(unifiedPayload);
+                    if (value != null || accessor.required()) {
+                        break;
+                    }
+                }
+            }
+
+            if (value == null) {
+                if (fallback == null) {
+                    fallback = new Fallback(unifiedPayload);
+                }
+                value = field.convert().apply(resolveByName(field, fallback,
+                        payloadBySource != null ? payloadBySource.values() : List.of()));
+            }
+
+            result.put(field.key(), value);
+        }
+
+        boolean allNull = result.values().stream().allMatch(Objects::isNull);
+        if (allNull && unifiedPayload != null) {
+            for (FieldPlan field : fields) {
+                if (result.get(field.key()) != null) {
+                    continue;
+                }
+                String key = findCaseInsensitiveKey(unifiedPayload, field.lowerName());
+                if (key != null) {
+                    result.put(field.key(), field.convert().apply(unifiedPayload.get(key)));
+                }
+            }
+        }
+
+        if (hasDefaults) {
+            for (FieldPlan field : fields) {
+                if (field.defaultValue() != null && result.get(field.key()) == null) {
+                    result.put(field.key(), field.convert().apply(field.defaultValue().evaluate(null, unifiedPayload)));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Maps a page of records that each come from a single source, column by column: every field's accessors
+     * run over the whole page before the next field, and rows are only assembled at the end. The result
+     * for each record equals {@link #apply(Map, Map)} of its payload under its source, without the two
+     * payload copies per record; only records that reach the name-based fallbacks get a copy.
+     *
+     * @param sourceIds source of each record, {@code null} for records without one
+     * @param payloads  payload of each record
+     */
+    public List<Map<String, Object>> applyColumns(List<Long> sourceIds, List<Map<String, Object>> payloads) {
+        int size = payloads.size();
+        Object[][] columns = new Object[fields.size()][];
+        // Null-free payload copies, as apply() receives them, for the records that reach the fallbacks.
+        Fallback[] fallbacks = new Fallback[size];
+
+        for (int f = 0; f < fields.size(); f++) {
+            FieldPlan field = fields.get(f);
+            Object[] column = new Object[size];
+            Long currentSource = null;
+            Accessor[] accessors = null;
+            for (int row = 0; row < size; row++) {
+                Long sourceId = sourceIds.get(row);
+                if (row == 0 || !Objects.equals(sourceId, currentSource)) {
+                    currentSource = sourceId;
+                    accessors = sourceId == null ? null : field.bySource().get(sourceId);
+                }
+                if (accessors != null) {
+                    column[row] = firstValue(accessors, payloads.get(row));
+                }
+            }
+            if (field.fallback().length > 0) {
+                for (int row = 0; row < size; row++) {
+                    if (column[row] == null) {
+                        column[row] = firstValue(field.fallback(), payloads.get(row));
+                    }
+                }
+            }
+            for (int row = 0; row < size; row++) {
+                if (column[row] != null) {
+                    continue;
+                }
+                Fallback fallback = fallback(fallbacks, payloads, row);
+                column[row] = field.convert().apply(resolveByName(field, fallback,
+                        sourceIds.get(row) != null ? List.of(fallback.payload()) : List.of()));
+            }
+            columns[f] = column;
+        }
+
+        for (int row = 0; row < size; row++) {
+            boolean allNull = true;
+            for (Object[] column : columns) {
+                if (column[row] != null) {
+                    allNull = false;
+                    break;
+                }
+            }
+            if (!allNull) {
+                continue;
+            }
+            Map<String, Object> copy = fallback(fallbacks, payloads, row).payload();
+            for (int f = 0; f < fields.size(); f++) {
+                String key = findCaseInsensitiveKey(copy, fields.get(f).lowerName());
+                if (key != null) {
+                    columns[f][row] = fields.get(f).convert().apply(copy.get(key));
+                }
+            }
+        }
+
+        if (hasDefaults) {
+            for (int f = 0; f < fields.size(); f++) {
+                FieldPlan field = fields.get(f);
+                if (field.defaultValue() == null) {
+                    continue;
+                }
+                Object[] column = columns[f];
+                for (int row = 0; row < size; row++) {
+                    if (column[row] == null) {
+                        column[row] = field.convert().apply(field.defaultValue().evaluate(null, fallback(fallbacks, payloads, row).payload()));
+                    }
+                }
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>(size);
+        int capacity = (int) (fields.size() / 0.75f) + 1;
+        for (int row = 0; row < size; row++) {
+            Map<String, Object> result = new LinkedHashMap<>(capacity);
+            for (int f = 0; f < fields.size(); f++) {
+                result.put(fields.get(f).key(), columns[f][row]);
+            }
+            rows.add(result);
+        }
+        return rows;
+    }
+
+    private static Object firstValue(Accessor[] accessors, Map<String, Object> payload) {
+        for (Accessor accessor : accessors) {
+            Object value = accessor.read(payload);
+            if (value != null || accessor.required()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static Fallback fallback(Fallback[] fallbacks, List<Map<String, Object>> payloads, int row) {
+        if (fallbacks[row] == null) {
+            Map<String, Object> payload = payloads.get(row);
+            Map<String, Object> copy = new LinkedHashMap<>();
+            if (payload != null) {
+                for (Map.Entry<String, Object> entry : payload.entrySet()) {
+                    if (entry.getKey() != null && entry.getValue() != null) {
+                        copy.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            fallbacks[row] = new Fallback(copy);
+        }
+        return fallbacks[row];
+    }
+
+    /**
+     * The name-based fallbacks of a field no mapping resolved: its name as key or path, case-insensitive
+     * and fuzzy key matches, then the flattened payload and the source payloads.
+     */
+    private static Object resolveByName(FieldPlan field, Fallback fallback, Collection<Map<String, Object>> sourcePayloads) {
+        Map<String, Object> unifiedPayload = fallback.payload();
+        Object value = null;
+        if (unifiedPayload != null && field.name() != null) {
+            if (unifiedPayload.containsKey(field.name())) {
+                value = unifiedPayload.get(field.name());
+            } else if (field.namePath() != null) {
+                value = field.namePath().read(unifiedPayload);
+            }
+        }
+
+        if (value == null && unifiedPayload != null) {
+            String caseInsensitiveKey = findCaseInsensitiveKey(unifiedPayload, field.lowerName());
+            if (caseInsensitiveKey != null) {
+                value = unifiedPayload.get(caseInsensitiveKey);
+            }
+        }
+
+        if (value == null) {
+            value = fuzzyLookup(unifiedPayload, field.normalizedName());
+        }
+
+        if (value == null && unifiedPayload != null) {
+            Map<String, Object> flattenedUnified = fallback.flattened();
+            for (String target : field.flattenedTargets()) {
+                if (flattenedUnified.containsKey(target)) {
+                    value = flattenedUnified.get(target);
+                    break;
+                }
+            }
+        }
+
+        if (value == null) {
+            for (Map<String, Object> payload : sourcePayloads) {
+                value = fuzzyLookup(payload, field.normalizedName());
+                if (value != null) {
+                    break;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Flattens nested maps and lists into normalized leaf keys; the first occurrence of a key wins.
+     */
+    public static Map<String, Object> flatten(Object payload) {
+        Map<String, Object> flat = new LinkedHashMap<>();
+        flattenRecursive(payload, flat);
+        return flat;
+    }
+
+    public static String normalizeKey(String key) {
+        if (!StringUtils.hasText(key)) {
+            return "";
+        }
+        return key.trim().toLowerCase().replaceAll("[^a-z0-9]", "");
+    }
+
+    private static void flattenRecursive(Object current, Map<String, Object> flat) {
+        if (current == null) {
+            return;
+        }
+        if (current instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getKey() == null) {
+                    continue;
+                }
+                String normalizedKey = normalizeKey(entry.getKey().toString());
+                Object value = entry.getValue();
+                if (value instanceof Map<?, ?> || value instanceof List<?>) {
+                    flattenRecursive(value, flat);
+                } else if (!flat.containsKey(normalizedKey)) {
+                    flat.put(normalizedKey, value);
+                }
+            }
+        } else if (current instanceof List<?> list) {
+            for (Object item : list) {
+                flattenRecursive(item, flat);
+            }
+        }
+    }
+
+    private static String findCaseInsensitiveKey(Map<String, Object> source, String lowerName) {
+        if (source == null || lowerName == null) {
+            return null;
+        }
+        for (String key : source.keySet()) {
+            if (key != null && key.trim().toLowerCase().equals(lowerName)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private static Object fuzzyLookup(Object payload, String normalizedTarget) {
+        if (payload == null || !StringUtils.hasText(normalizedTarget)) {
+            return null;
+        }
+        if (payload instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getKey() == null) {
+                    continue;
+                }
+                Object value = entry.getValue();
+                if (normalizeKey(entry.getKey().toString()).equals(normalizedTarget)) {
+                    return value;
+                }
+                if (value instanceof Map<?, ?> || value instanceof List<?>) {
+                    Object nestedResult = fuzzyLookup(value, normalizedTarget);
+                    if (nestedResult != null) {
+                        return nestedResult;
+                    }
+                }
+            }
+        } else if (payload instanceof List<?> list) {
+            for (Object item : list) {
+                Object nestedResult = fuzzyLookup(item, normalizedTarget);
+                if (nestedResult != null) {
+                    return nestedResult;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Accessor[] accessors(List<DatasetMapping> mappings, UnaryOperator<Object> convert) {
+        return mappings.stream()
+                .sorted(BY_PRIORITY)
+                .map(mapping -> {
+                    String path = StringUtils.hasText(mapping.getSrcPath()) ? mapping.getSrcPath() : mapping.getSrcJsonPath();
+                    TransformType transformType = Optional.ofNullable(mapping.getTransformType()).orElse(TransformType.NONE);
+                    return new Accessor(PathAccessor.compile(path),
+                            transformFunction(transformType, convert),
+                            expression(mapping.getTransformSql(), "transform of mapping " + mapping.getId()),
+                            Boolean.TRUE.equals(mapping.getRequired()));
+                })
+                .toArray(Accessor[]::new);
+    }
+
+    private static UnaryOperator<Object> transformFunction(TransformType transformType, UnaryOperator<Object> convert) {
+        UnaryOperator<Object> function = switch (transformType) {
+            case LOWERCASE -> value -> value.toString().toLowerCase();
+            case UPPERCASE -> value -> value.toString().toUpperCase();
+            case TRIM -> value -> value.toString().trim();
+            case INT -> value -> {
+                try {
+                    return Integer.parseInt(value.toString());
+                } catch (NumberFormatException ex) {
+                    return value;
+                }
+            };
+            case FLOAT -> value -> {
+                try {
+                    return Double.parseDouble(value.toString());
+                } catch (NumberFormatException ex) {
+                    return value;
+                }
+            };
+            case NONE -> UnaryOperator.identity();
+        };
+        return raw -> {
+            Object value = convert.apply(raw);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return function.apply(value);
+            } catch (Exception exception) {
+                log.warn("Failed to apply transform '{}' on value {}", transformType, value, exception);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Compiles {@code source}, or returns {@code null} if it is blank or invalid. Evaluation failures yield
+     * the input value, as failing {@link TransformType}s do; the first is logged as a warning and the rest,
+     * usually the same failure on every row, at debug level.
+     */
+    private static Expression expression(String source, String description) {
+        if (!StringUtils.hasText(source)) {
+            return null;
+        }
+        Expression expression;
+        try {
+            expression = ExpressionCompiler.compile(source);
+        } catch (ExpressionException exception) {
+            log.warn("Ignoring invalid {} '{}': {}", description, source, exception.getMessage());
+            return null;
+        }
+        AtomicBoolean warned = new AtomicBoolean();
+        return (value, payload) -> {
+            try {
+                return expression.evaluate(value, payload);
+            } catch (RuntimeException exception) {
+                if (warned.compareAndSet(false, true)) {
+                    log.warn("Failed to evaluate {} '{}' on value {}; further failures are logged at debug level",
+                            description, source, value, exception);
+                } else {
+                    log.debug("Failed to evaluate {} '{}' on value {}: {}", description, source, value, exception.toString());
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * The unified payload of one record as the name-based fallbacks see it, flattened on first use.
+     */
+    private static final class Fallback {
+        private final Map<String, Object> payload;
+        private Map<String, Object> flattened;
+
+        Fallback(Map<String, Object> payload) {
+            this.payload = payload;
+        }
+
+        Map<String, Object> payload() {
+            return payload;
+        }
+
+        Map<String, Object> flattened() {
+            if (flattened == null) {
+                flattened = flatten(payload);
+            }
+            return flattened;
+        }
+    }
+
+    private record FieldPlan(String key,
+                             String name,
+                             String lowerName,
+                             String normalizedName,
+                             PathAccessor namePath,
+                             UnaryOperator<Object> convert,
+                             Map<Long, Accessor[]> bySource,
+                             Accessor[] fallback,
+                             String[] flattenedTargets,
+                             Expression defaultValue) {
+    }
+
+    private record Accessor(PathAccessor path, UnaryOperator<Object> transform, Expression expression, boolean required) {
+        Object read(Map<String, Object> payload) {
+            Object value = path == null ? null : transform.apply(path.read(payload));
+            return expression == null ? value : expression.evaluate(value, payload);
+        }
+    }
+}
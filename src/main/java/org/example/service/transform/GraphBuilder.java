@@ -6,11 +6,16 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Predicate;
 
 public final class GraphBuilder {
 
@@ -42,6 +47,90 @@ public final class GraphBuilder {
         return new Graph(adjacency);
     }
 
+    /**
+     * Groups the graph's nodes into connected clusters in one union-find pass (union by rank, path
+     * halving). Edges that touch a node matching {@code isPrimary} are not unioned, so primaries act as
+     * boundaries exactly like the per-primary BFS that stops at other primary records.
+     */
+    public static Components components(Graph graph, Predicate<NodeRef> isPrimary) {
+        List<NodeRef> nodes = new ArrayList<>(graph.nodes());
+        Map<NodeRef, Integer> indexOf = new HashMap<>(nodes.size() * 2);
+        for (int i = 0; i < nodes.size(); i++) {
+            indexOf.put(nodes.get(i), i);
+        }
+
+        int[] parent = new int[nodes.size()];
+        byte[] rank = new byte[nodes.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+
+        for (int i = 0; i < nodes.size(); i++) {
+            NodeRef node = nodes.get(i);
+            if (isPrimary.test(node)) {
+                continue;
+            }
+            for (Edge edge : graph.neighbors(node)) {
+                if (isPrimary.test(edge.target())) {
+                    continue;
+                }
+                union(parent, rank, i, indexOf.get(edge.target()));
+            }
+        }
+
+        Map<Integer, Integer> clusterByRoot = new HashMap<>();
+        Map<NodeRef, Integer> clusterOf = new HashMap<>(nodes.size() * 2);
+        List<List<NodeRef>> clusters = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            NodeRef node = nodes.get(i);
+            if (isPrimary.test(node)) {
+                continue;
+            }
+            int cluster = clusterByRoot.computeIfAbsent(find(parent, i), root -> {
+                clusters.add(new ArrayList<>());
+                return clusters.size() - 1;
+            });
+            clusters.get(cluster).add(node);
+            clusterOf.put(node, cluster);
+        }
+        log.info("[GRAPH] {} nodes grouped into {} clusters", nodes.size(), clusters.size());
+        return new Components(graph, clusterOf, clusters);
+    }
+
+    private static int find(int[] parent, int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private static void union(int[] parent, byte[] rank, int left, int right) {
+        int leftRoot = find(parent, left);
+        int rightRoot = find(parent, right);
+        if (leftRoot == rightRoot) {
+            return;
+        }
+        if (rank[leftRoot] < rank[rightRoot]) {
+            parent[leftRoot] = rightRoot;
+        } else if (rank[leftRoot] > rank[rightRoot]) {
+            parent[rightRoot] = leftRoot;
+        } else {
+            parent[rightRoot] = leftRoot;
+            rank[leftRoot]++;
+        }
+    }
+
+    /**
+     * The nodes {@code relation} connects, normalized the way {@link #build(List)} does; empty when either
+     * end cannot be resolved.
+     */
+    public static List<NodeRef> endpoints(Relationship relation) {
+        NodeRef from = nodeFrom(relation.getFromType(), relation.getFromId());
+        NodeRef to = nodeFrom(relation.getToType(), relation.getToId());
+        return from == null || to == null ? List.of() : List.of(from, to);
+    }
+
     private static NodeRef nodeFrom(String type, String id) {
         if (!StringUtils.hasText(type) || !StringUtils.hasText(id)) {
             return null;
@@ -113,6 +202,64 @@ public final class GraphBuilder {
     public record Edge(NodeRef target, Relationship relation) {
     }
 
+    public record Components(Graph graph, Map<NodeRef, Integer> clusterOf, List<List<NodeRef>> clusters) {
+
+        /**
+         * Nodes reachable from {@code start} without passing through another primary: its own cluster when it
+         * is not a primary itself, otherwise every cluster it has an edge into. {@code start} comes first,
+         * followed by the clusters in the order of its edges and members in graph order.
+         */
+        public List<NodeRef> componentOf(NodeRef start) {
+            Set<NodeRef> members = new LinkedHashSet<>();
+            members.add(start);
+            Integer own = clusterOf.get(start);
+            if (own != null) {
+                members.addAll(clusters.get(own));
+                return new ArrayList<>(members);
+            }
+            Set<Integer> adjacent = new LinkedHashSet<>();
+            for (Edge edge : graph.neighbors(start)) {
+                Integer cluster = clusterOf.get(edge.target());
+                if (cluster != null) {
+                    adjacent.add(cluster);
+                }
+            }
+            for (Integer cluster : adjacent) {
+                members.addAll(clusters.get(cluster));
+            }
+            return new ArrayList<>(members);
+        }
+
+        /**
+         * Primaries whose {@link #componentOf(NodeRef) component} contains any of {@code changed}: a changed
+         * primary itself, and every primary adjacent to the cluster of a changed non-primary node.
+         */
+        public Set<NodeRef> primariesAffectedBy(Collection<NodeRef> changed, Predicate<NodeRef> isPrimary) {
+            Set<NodeRef> primaries = new LinkedHashSet<>();
+            Set<Integer> visited = new HashSet<>();
+            for (NodeRef node : changed) {
+                Integer cluster = clusterOf.get(node);
+                if (cluster == null) {
+                    if (isPrimary.test(node)) {
+                        primaries.add(node);
+                    }
+                    continue;
+                }
+                if (!visited.add(cluster)) {
+                    continue;
+                }
+                for (NodeRef member : clusters.get(cluster)) {
+                    for (Edge edge : graph.neighbors(member)) {
+                        if (isPrimary.test(edge.target())) {
+                            primaries.add(edge.target());
+                        }
+                    }
+                }
+            }
+            return primaries;
+        }
+    }
+
     public record Graph(Map<NodeRef, List<Edge>> adjacency) {
         public List<Edge> neighbors(NodeRef node) {
             return adjacency.getOrDefault(node, List.of());
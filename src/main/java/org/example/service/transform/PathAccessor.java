@@ -0,0 +1,176 @@
+package org.example.service.transform;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled mapping path such as {@code customer.addresses[0].city}. Expressions are split and parsed
+ * once and shared through a bounded cache, so reading a value only walks pre-parsed segments.
+ * <p>
+ * Besides the dot and {@code [index]} syntax, {@code *} (a whole segment) fans out over the values of a
+ * map or the elements of a list and {@code [*]} over the elements of a list. A path containing a
+ * wildcard reads into a list of the non-null matches, or {@code null} if nothing matched; paths without
+ * one allocate nothing while reading.
+ */
+public final class PathAccessor {
+
+    private static final int CACHE_SIZE = 4_096;
+
+    private static final int NO_INDEX = -1;
+    private static final int ANY_INDEX = -2;
+
+    private static final Map<String, PathAccessor> CACHE = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PathAccessor> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final String expression;
+    private final String[] keys;
+    private final int[] indexes;
+    private final boolean wildcard;
+
+    private PathAccessor(String expression, String[] keys, int[] indexes, boolean wildcard) {
+        this.expression = expression;
+        this.keys = keys;
+        this.indexes = indexes;
+        this.wildcard = wildcard;
+    }
+
+    /**
+     * Returns the cached accessor for {@code expression}, compiling it on first use; {@code null} for a
+     * blank expression.
+     */
+    public static PathAccessor compile(String expression) {
+        if (!StringUtils.hasText(expression)) {
+            return null;
+        }
+        synchronized (CACHE) {
+            return CACHE.computeIfAbsent(expression, PathAccessor::parse);
+        }
+    }
+
+    public String expression() {
+        return expression;
+    }
+
+    public boolean hasWildcard() {
+        return wildcard;
+    }
+
+    public Object read(Object root) {
+        if (root == null) {
+            return null;
+        }
+        if (wildcard) {
+            List<Object> matches = new ArrayList<>();
+            collect(root, 0, matches);
+            return matches.isEmpty() ? null : matches;
+        }
+        Object value = root;
+        for (int i = 0; i < keys.length; i++) {
+            if (!(value instanceof Map<?, ?> mapValue)) {
+                return null;
+            }
+            value = mapValue.get(keys[i]);
+            int index = indexes[i];
+            if (index >= 0 && value instanceof List<?> listValue) {
+                value = index < listValue.size() ? listValue.get(index) : null;
+            }
+            if (value == null) {
+                return null;
+            }
+        }
+        return value;
+    }
+
+    private void collect(Object value, int segment, List<Object> matches) {
+        if (value == null) {
+            return;
+        }
+        if (segment == keys.length) {
+            matches.add(value);
+            return;
+        }
+        String key = keys[segment];
+        if (key == null) {
+            if (value instanceof Map<?, ?> mapValue) {
+                for (Object child : mapValue.values()) {
+                    collectIndexed(child, segment, matches);
+                }
+            } else if (value instanceof List<?> listValue) {
+                for (Object child : listValue) {
+                    collectIndexed(child, segment, matches);
+                }
+            }
+            return;
+        }
+        if (value instanceof Map<?, ?> mapValue) {
+            collectIndexed(mapValue.get(key), segment, matches);
+        }
+    }
+
+    private void collectIndexed(Object value, int segment, List<Object> matches) {
+        int index = indexes[segment];
+        if (index == ANY_INDEX) {
+            if (value instanceof List<?> listValue) {
+                for (Object element : listValue) {
+                    collect(element, segment + 1, matches);
+                }
+            }
+            return;
+        }
+        if (index >= 0 && value instanceof List<?> listValue) {
+            value = index < listValue.size() ? listValue.get(index) : null;
+        }
+        collect(value, segment + 1, matches);
+    }
+
+    private static PathAccessor parse(String expression) {
+        String[] segments = expression.split("\\.");
+        String[] keys = new String[segments.length];
+        int[] indexes = new int[segments.length];
+        boolean wildcard = false;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            keys[i] = segment;
+            indexes[i] = NO_INDEX;
+            int start = segment.indexOf('[');
+            if (start >= 0) {
+                int end = segment.indexOf(']', start);
+                if (end > start) {
+                    keys[i] = segment.substring(0, start);
+                    String index = segment.substring(start + 1, end).trim();
+                    if ("*".equals(index)) {
+                        indexes[i] = ANY_INDEX;
+                        wildcard = true;
+                    } else {
+                        try {
+                            int parsed = Integer.parseInt(index);
+                            // Negative indexes never match an element.
+                            indexes[i] = parsed >= 0 ? parsed : Integer.MAX_VALUE;
+                        } catch (NumberFormatException ignored) {
+                            indexes[i] = NO_INDEX;
+                        }
+                    }
+                }
+            }
+            if ("*".equals(keys[i])) {
+                // A null key marks a segment that fans out over every child.
+                keys[i] = null;
+                wildcard = true;
+            }
+        }
+        return new PathAccessor(expression, keys, indexes, wildcard);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
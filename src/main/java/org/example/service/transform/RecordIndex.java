@@ -0,0 +1,219 @@
+package org.example.service.transform;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index over the records of one transform run. Every record gets a dense int ordinal, and
+ * id variants, record types and payload values each map to posting lists of ordinals, so resolving a
+ * record by id, by type or by a value contained anywhere in its payload is a hash lookup.
+ * <p>
+ * Values are only needed when a lookup by id fails, so they are indexed on the first
+ * {@link #findByValue(String)} rather than as records are added; records added later are indexed on the
+ * next one. Only the values registered through {@link #expectValues(Collection)} are kept, so the value
+ * index holds the few values lookups ask for rather than every value of every payload; looking up a value
+ * that was not expected registers it and indexes the records again.
+ * <p>
+ * Keys are stored as given; callers normalize them. Not thread-safe.
+ */
+public final class RecordIndex<T> {
+
+    private static final int VALUE_BATCH_SIZE = 1_000;
+
+    private final List<T> records = new ArrayList<>();
+    private final Map<T, Integer> ordinals = new HashMap<>();
+    private final Map<String, Postings> byId = new HashMap<>();
+    private final Map<String, Postings> byType = new HashMap<>();
+    private final Map<String, Postings> byValue = new HashMap<>();
+    private final Set<String> expectedValues = new HashSet<>();
+    private final ValueExtractor<T> valueExtractor;
+    private int valuesIndexed;
+
+    public RecordIndex(ValueExtractor<T> valueExtractor) {
+        this.valueExtractor = valueExtractor;
+    }
+
+    /**
+     * Registers {@code record} and returns its ordinal; a record that is already indexed keeps its ordinal.
+     */
+    public int add(T record) {
+        Integer existing = ordinals.get(record);
+        if (existing != null) {
+            return existing;
+        }
+        int ordinal = records.size();
+        records.add(record);
+        ordinals.put(record, ordinal);
+        return ordinal;
+    }
+
+    public boolean contains(T record) {
+        return ordinals.containsKey(record);
+    }
+
+    public void indexId(String id, int ordinal) {
+        post(byId, id, ordinal);
+    }
+
+    public void indexType(String type, int ordinal) {
+        post(byType, type, ordinal);
+    }
+
+    /**
+     * Records indexed under any of {@code ids}, in insertion order and without duplicates.
+     */
+    public List<T> findByIds(Collection<String> ids) {
+        if (ids.size() == 1) {
+            return resolve(byId.get(ids.iterator().next()));
+        }
+        int[] merged = new int[0];
+        int size = 0;
+        for (String id : ids) {
+            Postings postings = byId.get(id);
+            if (postings == null) {
+                continue;
+            }
+            int[] next = new int[size + postings.size];
+            size = union(merged, size, postings.ordinals, postings.size, next);
+            merged = next;
+        }
+        List<T> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(records.get(merged[i]));
+        }
+        return result;
+    }
+
+    public List<T> findByType(String type) {
+        return resolve(byType.get(type));
+    }
+
+    /**
+     * Registers values that {@link #findByValue(String)} will be asked for, before the first lookup.
+     */
+    public void expectValues(Collection<String> values) {
+        for (String value : values) {
+            if (StringUtils.hasText(value) && expectedValues.add(value)) {
+                valuesIndexed = 0;
+            }
+        }
+    }
+
+    public List<T> findByValue(String value) {
+        expectValues(List.of(value));
+        indexPendingValues();
+        return resolve(byValue.get(value));
+    }
+
+    public List<T> all() {
+        return List.copyOf(records);
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * Number of records per indexed type.
+     */
+    public Map<String, Long> typeCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        byType.forEach((type, postings) -> counts.put(type, (long) postings.size));
+        return counts;
+    }
+
+    private void indexPendingValues() {
+        while (valuesIndexed < records.size()) {
+            int end = Math.min(valuesIndexed + VALUE_BATCH_SIZE, records.size());
+            List<Collection<String>> values = valueExtractor.values(records.subList(valuesIndexed, end), expectedValues);
+            for (int ordinal = valuesIndexed; ordinal < end; ordinal++) {
+                for (String value : values.get(ordinal - valuesIndexed)) {
+                    post(byValue, value, ordinal);
+                }
+            }
+            valuesIndexed = end;
+        }
+    }
+
+    private List<T> resolve(Postings postings) {
+        if (postings == null) {
+            return List.of();
+        }
+        List<T> result = new ArrayList<>(postings.size);
+        for (int i = 0; i < postings.size; i++) {
+            result.add(records.get(postings.ordinals[i]));
+        }
+        return result;
+    }
+
+    private static void post(Map<String, Postings> index, String key, int ordinal) {
+        if (!StringUtils.hasText(key)) {
+            return;
+        }
+        index.computeIfAbsent(key, ignored -> new Postings()).add(ordinal);
+    }
+
+    private static int union(int[] left, int leftSize, int[] right, int rightSize, int[] out) {
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < leftSize || j < rightSize) {
+            int next;
+            if (j >= rightSize || (i < leftSize && left[i] < right[j])) {
+                next = left[i++];
+            } else if (i >= leftSize || right[j] < left[i]) {
+                next = right[j++];
+            } else {
+                next = left[i++];
+                j++;
+            }
+            out[size++] = next;
+        }
+        return size;
+    }
+
+    /**
+     * The values among {@code wanted} that a batch of records can be found by, one collection per record in
+     * the same order.
+     */
+    @FunctionalInterface
+    public interface ValueExtractor<T> {
+        List<Collection<String>> values(List<T> records, Set<String> wanted);
+    }
+
+    /**
+     * Sorted, duplicate-free ordinals. Records are mostly indexed in ordinal order, which makes the
+     * common insert an append.
+     */
+    private static final class Postings {
+        private int[] ordinals = new int[2];
+        private int size;
+
+        void add(int ordinal) {
+            int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (position >= 0) {
+                return;
+            }
+            int insertAt = -position - 1;
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            System.arraycopy(ordinals, insertAt, ordinals, insertAt + 1, size - insertAt);
+            ordinals[insertAt] = ordinal;
+            size++;
+        }
+    }
+}
@@ -9,6 +9,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Merges record and relation payloads into per-source and unified maps. Payloads are expected in
+ * canonical form ({@link UnifiedPayloadNormalizer}); they are not normalized again here.
+ */
 public final class RecordMerger {
 
     private static final Logger log = LoggerFactory.getLogger(RecordMerger.class);
@@ -23,9 +27,7 @@ public final class RecordMerger {
                              List<TransformService.RecordContext> relatedContexts) {
         if (!CollectionUtils.isEmpty(primaryContexts)) {
             for (TransformService.RecordContext context : primaryContexts) {
-                Map<String, Object> normalizedPayload = UnifiedPayloadNormalizer.normalizePayload(context.payload());
-                log.info("[MERGE DEBUG] merging primary context for type={} id={} payload={}",
-                        context.recordType(), context.recordId(), normalizedPayload);
+                log.debug("[MERGE DEBUG] merging primary context for type={} id={}", context.recordType(), context.recordId());
                 mergeContext(payloadBySource, unifiedPayload, context);
             }
         }
@@ -36,15 +38,13 @@ public final class RecordMerger {
                     continue;
                 }
                 log.info("[MERGE DEBUG] merging relation payload={}", relationPayload);
-                mergePayload(unifiedPayload, UnifiedPayloadNormalizer.normalizePayload(relationPayload));
+                mergePayload(unifiedPayload, relationPayload);
             }
         }
 
         if (!CollectionUtils.isEmpty(relatedContexts)) {
             for (TransformService.RecordContext context : relatedContexts) {
-                Map<String, Object> normalizedPayload = UnifiedPayloadNormalizer.normalizePayload(context.payload());
-                log.info("[MERGE DEBUG] merging related context for type={} id={} payload={}",
-                        context.recordType(), context.recordId(), normalizedPayload);
+                log.debug("[MERGE DEBUG] merging related context for type={} id={}", context.recordType(), context.recordId());
                 mergeContext(payloadBySource, unifiedPayload, context);
             }
         }
@@ -56,13 +56,13 @@ public final class RecordMerger {
         if (context == null) {
             return;
         }
-        Map<String, Object> normalizedPayload = UnifiedPayloadNormalizer.normalizePayload(context.payload());
+        Map<String, Object> payload = context.payload();
         if (context.source() != null) {
             Map<String, Object> merged = new LinkedHashMap<>(payloadBySource.getOrDefault(context.source().getId(), Map.of()));
-            mergePayload(merged, normalizedPayload);
+            mergePayload(merged, payload);
             payloadBySource.put(context.source().getId(), merged);
         }
-        mergePayload(unifiedPayload, normalizedPayload);
+        mergePayload(unifiedPayload, payload);
     }
 
     private static void mergePayload(Map<String, Object> target, Map<String, Object> source) {
@@ -78,16 +78,15 @@ public final class RecordMerger {
         if (target == null || key == null) {
             return;
         }
-        Object normalizedValue = TimestampNormalizer.normalizeValue(newValue);
-        if (normalizedValue == null) {
+        if (newValue == null) {
             return;
         }
         Object existing = target.get(key);
         if (existing != null) {
-            log.info("[MERGE DEBUG] safePut skip key={} existing={} newVal={}", key, existing, normalizedValue);
+            log.info("[MERGE DEBUG] safePut skip key={} existing={} newVal={}", key, existing, newValue);
             return;
         }
-        log.info("[MERGE DEBUG] safePut put key={} value={}", key, normalizedValue);
-        target.put(key, normalizedValue);
+        log.info("[MERGE DEBUG] safePut put key={} value={}", key, newValue);
+        target.put(key, newValue);
     }
 }
@@ -2,6 +2,10 @@ package org.example.service.transform;
 
 import java.time.Instant;
 
+/**
+ * Converts epoch-millisecond numbers and digit strings to ISO instants. Applied only to values of fields
+ * declared as timestamps, since large numeric ids look the same.
+ */
 public final class TimestampNormalizer {
 
     private static final long MILLIS_THRESHOLD = 100_000_000_000L; // ~1973 in ms
@@ -24,7 +28,7 @@ public final class TimestampNormalizer {
 
         if (value instanceof String str) {
             String trimmed = str.trim();
-            if (trimmed.matches("^-?\\d{10,}$")) {
+            if (isLongDigitString(trimmed)) {
                 try {
                     long millis = Long.parseLong(trimmed);
                     if (looksLikeEpochMillis(millis)) {
@@ -39,6 +43,23 @@ public final class TimestampNormalizer {
         return value;
     }
 
+    /**
+     * Same as matching {@code ^-?\d{10,}$}, without compiling a pattern per call.
+     */
+    private static boolean isLongDigitString(String value) {
+        int start = value.startsWith("-") ? 1 : 0;
+        if (value.length() - start < 10) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static boolean looksLikeEpochMillis(long value) {
         return Math.abs(value) >= MILLIS_THRESHOLD;
     }
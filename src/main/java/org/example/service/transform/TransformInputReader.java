@@ -0,0 +1,227 @@
+package org.example.service.transform;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Streams a dataset's raw events for the transform with a forward-only JDBC cursor and serves full
+ * payloads on demand through a bounded cache, so the transform only keeps compact per-record headers
+ * resident. Each stream runs in a read-only transaction, joining the caller's if there is one, since
+ * PostgreSQL ignores the fetch size in auto-commit mode.
+ * <p>
+ * Payloads are handed out as parsed: Jackson already builds mutable nested maps and lists.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransformInputReader {
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {
+    };
+
+    private static final String STREAM_SQL = """
+            SELECT raw_event_id, raw_event_uid, source_id, created_at,
+                   payload::text AS payload
+            FROM integration.raw_event
+            WHERE dataset_id = ?
+            ORDER BY raw_event_id
+            """;
+
+    private static final String STREAM_CHANGED_SQL = """
+            SELECT raw_event_id, raw_event_uid, source_id, created_at,
+                   payload::text AS payload
+            FROM integration.raw_event
+            WHERE dataset_id = ?
+              AND (created_at >= ?
+                   OR raw_event_id IN (SELECT j.raw_event_id FROM integration.join_key_index j
+                                       WHERE j.dataset_id = ? AND j.record_identity = ANY (?)))
+            ORDER BY raw_event_id
+            """;
+
+    private static final String LOAD_SQL = """
+            SELECT raw_event_id,
+                   payload::text AS payload
+            FROM integration.raw_event
+            WHERE raw_event_id = ANY (?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${transform.input.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${transform.input.payload-batch-size:500}")
+    private int payloadBatchSize;
+
+    @Value("${transform.input.payload-cache-size:10000}")
+    private int payloadCacheSize;
+
+    /**
+     * Hands every raw event of the dataset to {@code consumer} in id order. The row's payload is only
+     * valid for the duration of the callback; callers keep whatever header data they need.
+     *
+     * @return the number of rows streamed
+     */
+    public long stream(Long datasetId, Consumer<RawEventRow> consumer) {
+        return stream(STREAM_SQL, consumer, statement -> statement.setLong(1, datasetId));
+    }
+
+    /**
+     * Like {@link #stream(Long, Consumer)}, but only the events created at or after {@code since} and the
+     * events indexed in {@code integration.join_key_index} under one of {@code identities}. The bound is
+     * inclusive since the previous run may not have seen records created while it started.
+     */
+    public long streamChanged(Long datasetId, Instant since, Collection<String> identities, Consumer<RawEventRow> consumer) {
+        return stream(STREAM_CHANGED_SQL, consumer, statement -> {
+            statement.setLong(1, datasetId);
+            statement.setTimestamp(2, Timestamp.from(since));
+            statement.setLong(3, datasetId);
+            statement.setArray(4, statement.getConnection().createArrayOf("text", identities.toArray()));
+        });
+    }
+
+    private long stream(String sql, Consumer<RawEventRow> consumer, StatementBinder binder) {
+        long[] count = {0};
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            binder.bind(statement);
+            return statement;
+        }, (RowCallbackHandler) resultSet -> {
+            Timestamp createdAt = resultSet.getTimestamp("created_at");
+            long sourceId = resultSet.getLong("source_id");
+            Long nullableSourceId = resultSet.wasNull() ? null : sourceId;
+            consumer.accept(new RawEventRow(
+                    resultSet.getLong("raw_event_id"),
+                    resultSet.getString("raw_event_uid"),
+                    nullableSourceId,
+                    createdAt != null ? createdAt.toInstant() : null,
+                    parse(resultSet.getString("payload"))));
+            count[0]++;
+        }));
+        return count[0];
+    }
+
+    /**
+     * Identifies the state of the dataset's input: the newest raw event id, the number of raw events and the
+     * number of relationships. Raw events and relationships are only ever added or deleted, so an equal
+     * fingerprint means the same components in the same order.
+     */
+    public String fingerprint(Long datasetId) {
+        return jdbcTemplate.queryForObject("""
+                SELECT concat_ws(':',
+                        (SELECT coalesce(max(raw_event_id), 0) FROM integration.raw_event WHERE dataset_id = ?),
+                        (SELECT count(*) FROM integration.raw_event WHERE dataset_id = ?),
+                        (SELECT count(*) FROM integration.relationship r
+                         JOIN integration.source s ON s.source_id = r.source_id
+                         WHERE s.dataset_id = ?))
+                """, String.class, datasetId, datasetId, datasetId);
+    }
+
+    public PayloadStore openPayloadStore() {
+        return new PayloadStore(payloadCacheSize);
+    }
+
+    private Map<String, Object> parse(String json) {
+        if (json == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(json, PAYLOAD_TYPE);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Failed to parse raw event payload", exception);
+        }
+    }
+
+    /**
+     * Lazily loaded raw event payloads for one transform run, kept in an LRU of bounded size.
+     * Safe for concurrent use; the cache is locked only around lookups and inserts, never while querying.
+     */
+    public final class PayloadStore {
+
+        private final LinkedHashMap<Long, Map<String, Object>> cache;
+
+        private PayloadStore(int capacity) {
+            this.cache = new LinkedHashMap<>(Math.min(capacity, 1_024), 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Map<String, Object>> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        public Map<String, Object> get(Long rawEventId) {
+            if (rawEventId == null) {
+                return Map.of();
+            }
+            Map<String, Object> payload;
+            synchronized (cache) {
+                payload = cache.get(rawEventId);
+            }
+            if (payload == null) {
+                payload = load(List.of(rawEventId)).get(rawEventId);
+            }
+            return payload != null ? payload : Map.of();
+        }
+
+        /**
+         * Loads the payloads that are not cached yet in batches, ahead of a component being merged.
+         */
+        public void prefetch(Collection<Long> rawEventIds) {
+            List<Long> missing;
+            synchronized (cache) {
+                missing = rawEventIds.stream()
+                        .filter(Objects::nonNull)
+                        .distinct()
+                        .filter(id -> !cache.containsKey(id))
+                        .toList();
+            }
+            load(missing);
+        }
+
+        private Map<Long, Map<String, Object>> load(List<Long> rawEventIds) {
+            Map<Long, Map<String, Object>> batchPayloads = new HashMap<>();
+            for (int start = 0; start < rawEventIds.size(); start += payloadBatchSize) {
+                List<Long> batch = rawEventIds.subList(start, Math.min(start + payloadBatchSize, rawEventIds.size()));
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(LOAD_SQL);
+                    statement.setArray(1, connection.createArrayOf("bigint", batch.toArray()));
+                    return statement;
+                }, (RowCallbackHandler) resultSet -> batchPayloads.put(resultSet.getLong("raw_event_id"), parse(resultSet.getString("payload"))));
+            }
+            synchronized (cache) {
+                cache.putAll(batchPayloads);
+            }
+            return batchPayloads;
+        }
+    }
+
+    @FunctionalInterface
+    private interface StatementBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    public record RawEventRow(Long rawEventId, String rawEventUid, Long sourceId, Instant createdAt,
+                              Map<String, Object> payload) {
+    }
+}
@@ -0,0 +1,231 @@
+package org.example.service.transform;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.models.enums.WorkUnitStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Work units of distributed transforms in {@code integration.transform_work_unit}. Workers on any node
+ * lease the next pending unit with {@code FOR UPDATE SKIP LOCKED}, so concurrent workers never block on or
+ * receive the same unit, and keep the lease alive with heartbeats. A unit whose lease expires is leased
+ * again until it runs out of attempts.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TransformWorkQueue {
+
+    private static final RowMapper<WorkUnit> WORK_UNIT = (resultSet, rowNum) -> new WorkUnit(
+            resultSet.getLong("work_unit_id"),
+            resultSet.getLong("transform_run_id"),
+            resultSet.getInt("unit_index"),
+            resultSet.getInt("range_start"),
+            resultSet.getInt("range_end"),
+            resultSet.getInt("attempts"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Splits {@code componentCount} components into units of {@code unitSize}; a run without components
+     * still gets one empty unit so it completes through the same path.
+     */
+    public int enqueue(Long runId, int componentCount, int unitSize) {
+        int units = Math.max(1, (componentCount + unitSize - 1) / unitSize);
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO integration.transform_work_unit (transform_run_id, unit_index, range_start, range_end, unit_status)
+                VALUES (?, ?, ?, ?, ?)
+                """, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int index) throws SQLException {
+                statement.setLong(1, runId);
+                statement.setInt(2, index);
+                statement.setInt(3, Math.min(index * unitSize, componentCount));
+                statement.setInt(4, Math.min((index + 1) * unitSize, componentCount));
+                statement.setString(5, WorkUnitStatus.PENDING.name());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return units;
+            }
+        });
+        return units;
+    }
+
+    /**
+     * The run of the unit {@link #lease} would hand out next, without leasing it, so a worker can prepare
+     * the run's plan before its lease starts running.
+     */
+    public Optional<Long> nextRunId(int maxAttempts) {
+        return jdbcTemplate.queryForList("""
+                SELECT transform_run_id FROM integration.transform_work_unit
+                WHERE (unit_status = ? OR (unit_status = ? AND lease_expires_at < now()))
+                  AND attempts < ?
+                ORDER BY transform_run_id, unit_index
+                LIMIT 1
+                """, Long.class, WorkUnitStatus.PENDING.name(), WorkUnitStatus.LEASED.name(), maxAttempts)
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Leases the run's oldest pending unit, or one whose lease expired while attempts remain.
+     */
+    public Optional<WorkUnit> lease(Long runId, String owner, int leaseSeconds, int maxAttempts) {
+        List<WorkUnit> leased = jdbcTemplate.query("""
+                UPDATE integration.transform_work_unit
+                SET unit_status = ?, lease_owner = ?, lease_expires_at = now() + make_interval(secs => ?),
+                    attempts = attempts + 1, updated_at = now()
+                WHERE work_unit_id = (
+                    SELECT work_unit_id FROM integration.transform_work_unit
+                    WHERE transform_run_id = ?
+                      AND (unit_status = ? OR (unit_status = ? AND lease_expires_at < now()))
+                      AND attempts < ?
+                    ORDER BY unit_index
+                    LIMIT 1
+                    FOR UPDATE SKIP LOCKED)
+                RETURNING work_unit_id, transform_run_id, unit_index, range_start, range_end, attempts
+                """, WORK_UNIT,
+                WorkUnitStatus.LEASED.name(), owner, leaseSeconds, runId,
+                WorkUnitStatus.PENDING.name(), WorkUnitStatus.LEASED.name(), maxAttempts);
+        return leased.stream().findFirst();
+    }
+
+    /**
+     * Extends the lease in its own transaction so other nodes see it while the unit's rows are still being
+     * written; false once the unit was leased to someone else or cancelled.
+     */
+    public boolean heartbeat(WorkUnit unit, String owner, int leaseSeconds) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer updated = transaction.execute(status -> jdbcTemplate.update("""
+                UPDATE integration.transform_work_unit
+                SET lease_expires_at = now() + make_interval(secs => ?), updated_at = now()
+                WHERE work_unit_id = ? AND lease_owner = ? AND unit_status = ?
+                """, leaseSeconds, unit.id(), owner, WorkUnitStatus.LEASED.name()));
+        return updated != null && updated > 0;
+    }
+
+    /**
+     * Marks the unit done in the caller's transaction, the one that wrote its rows; false if the lease was
+     * lost, in which case the caller must roll back.
+     */
+    public boolean complete(WorkUnit unit, String owner, int rowsIn, int rowsOut) {
+        return jdbcTemplate.update("""
+                UPDATE integration.transform_work_unit
+                SET unit_status = ?, rows_in = ?, rows_out = ?, lease_expires_at = NULL, error_message = NULL,
+                    updated_at = now()
+                WHERE work_unit_id = ? AND lease_owner = ? AND unit_status = ?
+                """, WorkUnitStatus.DONE.name(), rowsIn, rowsOut, unit.id(), owner, WorkUnitStatus.LEASED.name()) > 0;
+    }
+
+    /**
+     * Gives a unit that failed back to the queue, or fails it for good once it used up its attempts.
+     */
+    public void release(WorkUnit unit, String owner, String errorMessage, int maxAttempts) {
+        jdbcTemplate.update("""
+                UPDATE integration.transform_work_unit
+                SET unit_status = CASE WHEN attempts < ? THEN ? ELSE ? END,
+                    lease_owner = NULL, lease_expires_at = NULL, error_message = ?, updated_at = now()
+                WHERE work_unit_id = ? AND lease_owner = ? AND unit_status = ?
+                """, maxAttempts, WorkUnitStatus.PENDING.name(), WorkUnitStatus.FAILED.name(), errorMessage,
+                unit.id(), owner, WorkUnitStatus.LEASED.name());
+    }
+
+    /**
+     * Fails units whose lease expired after their last attempt; their workers are presumed dead.
+     */
+    public int failExpired(int maxAttempts) {
+        int failed = jdbcTemplate.update("""
+                UPDATE integration.transform_work_unit
+                SET unit_status = ?, error_message = 'Lease expired after the last attempt', updated_at = now()
+                WHERE unit_status = ? AND lease_expires_at < now() AND attempts >= ?
+                """, WorkUnitStatus.FAILED.name(), WorkUnitStatus.LEASED.name(), maxAttempts);
+        if (failed > 0) {
+            log.warn("[work-queue] {} work units failed after their last lease expired", failed);
+        }
+        return failed;
+    }
+
+    /**
+     * Stops handing out the run's remaining units.
+     */
+    public int cancelRemaining(Long runId) {
+        return jdbcTemplate.update("""
+                UPDATE integration.transform_work_unit
+                SET unit_status = ?, lease_owner = NULL, lease_expires_at = NULL, updated_at = now()
+                WHERE transform_run_id = ? AND unit_status IN (?, ?)
+                """, WorkUnitStatus.CANCELLED.name(), runId, WorkUnitStatus.PENDING.name(), WorkUnitStatus.LEASED.name());
+    }
+
+    /**
+     * Runs that are still RUNNING and have work units.
+     */
+    public List<Long> activeRunIds() {
+        return jdbcTemplate.queryForList("""
+                SELECT r.transform_run_id FROM integration.transform_run r
+                WHERE r.run_status = 'RUNNING'
+                  AND EXISTS (SELECT 1 FROM integration.transform_work_unit u WHERE u.transform_run_id = r.transform_run_id)
+                ORDER BY r.transform_run_id
+                """, Long.class);
+    }
+
+    /**
+     * Locks the run row for the rest of the caller's transaction so only one node finishes a run; false if
+     * another node holds it or the run is no longer RUNNING.
+     */
+    public boolean lockRun(Long runId) {
+        return !jdbcTemplate.queryForList("""
+                SELECT transform_run_id FROM integration.transform_run
+                WHERE transform_run_id = ? AND run_status = 'RUNNING'
+                FOR UPDATE SKIP LOCKED
+                """, Long.class, runId).isEmpty();
+    }
+
+    public RunSummary summarize(Long runId) {
+        return jdbcTemplate.queryForObject("""
+                SELECT count(*) AS units,
+                       count(*) FILTER (WHERE unit_status = ?) AS done,
+                       count(*) FILTER (WHERE unit_status = ?) AS failed,
+                       coalesce(sum(range_end - range_start) FILTER (WHERE unit_status = ?), 0) AS components_done,
+                       coalesce(sum(rows_in) FILTER (WHERE unit_status = ?), 0) AS rows_in,
+                       coalesce(sum(rows_out) FILTER (WHERE unit_status = ?), 0) AS rows_out,
+                       max(error_message) FILTER (WHERE unit_status = ?) AS error_message
+                FROM integration.transform_work_unit
+                WHERE transform_run_id = ?
+                """, (resultSet, rowNum) -> new RunSummary(
+                        resultSet.getInt("units"),
+                        resultSet.getInt("done"),
+                        resultSet.getInt("failed"),
+                        resultSet.getInt("components_done"),
+                        resultSet.getInt("rows_in"),
+                        resultSet.getInt("rows_out"),
+                        resultSet.getString("error_message")),
+                WorkUnitStatus.DONE.name(), WorkUnitStatus.FAILED.name(), WorkUnitStatus.DONE.name(),
+                WorkUnitStatus.DONE.name(), WorkUnitStatus.DONE.name(), WorkUnitStatus.FAILED.name(), runId);
+    }
+
+    public record WorkUnit(Long id, Long runId, int unitIndex, int rangeStart, int rangeEnd, int attempts) {
+    }
+
+    public record RunSummary(int units, int done, int failed, int componentsDone, int rowsIn, int rowsOut,
+                             String errorMessage) {
+
+        public boolean complete() {
+            return units > 0 && done == units;
+        }
+    }
+}
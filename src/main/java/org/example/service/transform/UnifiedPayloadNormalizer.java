@@ -5,6 +5,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Copies a payload into mutable nested maps and lists with scalars left as they are, for payloads that do
+ * not come straight from Jackson. Timestamp conversion is planned per dataset field instead (see
+ * {@link FieldMappingPlan}).
+ */
 public final class UnifiedPayloadNormalizer {
 
     private UnifiedPayloadNormalizer() {
@@ -23,7 +28,7 @@ public final class UnifiedPayloadNormalizer {
             } else if (value instanceof List<?> listVal) {
                 normalized.put(entry.getKey(), normalizeList(listVal));
             } else {
-                normalized.put(entry.getKey(), TimestampNormalizer.normalizeValue(value));
+                normalized.put(entry.getKey(), value);
             }
         }
         return normalized;
@@ -37,7 +42,7 @@ public final class UnifiedPayloadNormalizer {
             } else if (item instanceof List<?> nestedList) {
                 normalized.add(normalizeList(nestedList));
             } else {
-                normalized.add(TimestampNormalizer.normalizeValue(item));
+                normalized.add(item);
             }
         }
         return normalized;
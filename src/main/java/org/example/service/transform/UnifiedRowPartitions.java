@@ -0,0 +1,248 @@
+package org.example.service.transform;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes full transforms by partition swap. {@code integration.unified_row} is list-partitioned by
+ * dataset: a full run loads a staging table, and {@link #publish(Stage)} replaces the dataset's partition
+ * with it in one short DDL transaction. Readers see the old rows until the swap commits and the new ones
+ * after it, never an empty dataset, and the old rows go away with a {@code DROP TABLE} instead of
+ * row-level deletes.
+ * <p>
+ * Every dataset gets its own partition before any of its rows are written (see {@link #ensurePartition}),
+ * so the default partition stays empty and carries a {@code CHECK (dataset_id IS NULL)}. With that check
+ * and the stage's own, neither creating nor attaching a partition has to scan anything, and the swap only
+ * holds its lock on {@code unified_row} for catalog changes.
+ * <p>
+ * Installations whose {@code unified_row} predates partitioning report {@link #isPartitioned()} as
+ * {@code false}; callers then fall back to deleting and re-inserting the dataset's rows.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UnifiedRowPartitions {
+
+    private static final String SCHEMA = "integration";
+    private static final String PARENT = SCHEMA + ".unified_row";
+    private static final String DEFAULT_PARTITION = SCHEMA + ".unified_row_default";
+    private static final String DEFAULT_CHECK = "unified_row_default_unused";
+
+    private static final Pattern INDEX_DEFINITION = Pattern.compile(
+            "^CREATE (UNIQUE )?INDEX \\S+ ON (?:ONLY )?" + Pattern.quote(PARENT) + " ");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Boolean partitioned;
+    private volatile boolean defaultChecked;
+
+    public boolean isPartitioned() {
+        Boolean cached = partitioned;
+        if (cached == null) {
+            cached = Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+                    SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?))
+                    """, Boolean.class, PARENT));
+            if (!cached) {
+                log.warn("[partitions] {} is not partitioned; full transforms delete and re-insert rows", PARENT);
+            }
+            partitioned = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Creates the dataset's partition if it has none yet; call it before writing rows of the dataset. Rows
+     * that an older version wrote to the default partition are moved into the new partition once, and the
+     * default partition is checked to stay empty as soon as it is.
+     */
+    @Transactional
+    public void ensurePartition(Long datasetId) {
+        if (!isPartitioned()) {
+            return;
+        }
+        String partition = partitionName(datasetId);
+        if (!exists(partition)) {
+            boolean legacyRows = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE dataset_id = ?)",
+                    Boolean.class, datasetId));
+            if (legacyRows) {
+                movePartition(datasetId, partition);
+            } else {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + PARENT
+                        + " FOR VALUES IN (" + datasetId + ")");
+                log.info("[partitions] Created {}", partition);
+            }
+        }
+        checkDefaultEmpty();
+    }
+
+    private void movePartition(Long datasetId, String partition) {
+        jdbcTemplate.execute("CREATE TABLE " + partition
+                + " (LIKE " + PARENT + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING STORAGE)");
+        jdbcTemplate.execute("ALTER TABLE " + partition + " ADD CONSTRAINT " + unqualified(partition)
+                + "_dataset CHECK (dataset_id = " + datasetId + ")");
+        int moved = jdbcTemplate.update("INSERT INTO " + partition + " SELECT * FROM " + DEFAULT_PARTITION
+                + " WHERE dataset_id = ?", datasetId);
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE dataset_id = ?", datasetId);
+        jdbcTemplate.execute("ALTER TABLE " + PARENT + " ATTACH PARTITION " + partition
+                + " FOR VALUES IN (" + datasetId + ")");
+        log.info("[partitions] Moved {} rows of dataset {} out of {} into {}", moved, datasetId, DEFAULT_PARTITION,
+                partition);
+    }
+
+    /**
+     * Adds the check that keeps the default partition empty once no dataset has rows there any more. Rows of
+     * a dataset without a partition then fail to insert instead of landing in the default partition.
+     */
+    private void checkDefaultEmpty() {
+        if (defaultChecked) {
+            return;
+        }
+        boolean present = Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM pg_constraint WHERE conrelid = to_regclass(?) AND conname = ?)
+                """, Boolean.class, DEFAULT_PARTITION, DEFAULT_CHECK));
+        if (!present) {
+            boolean empty = !Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + ")", Boolean.class));
+            if (!empty) {
+                return;
+            }
+            jdbcTemplate.execute("ALTER TABLE " + DEFAULT_PARTITION + " ADD CONSTRAINT " + DEFAULT_CHECK
+                    + " CHECK (dataset_id IS NULL)");
+            log.info("[partitions] {} is empty; constrained it to stay so", DEFAULT_PARTITION);
+        }
+        defaultChecked = true;
+    }
+
+    /**
+     * Creates an empty staging table shaped like {@code unified_row} and constrained to the dataset. Inside
+     * a transaction the table only exists on that connection, so rows must be written without per-chunk
+     * commits; outside one it is committed immediately and must be removed with {@link #dropStage(Stage)}
+     * if it is never published.
+     */
+    public Stage createStage(Long datasetId) {
+        String name = "unified_row_stage_" + datasetId + "_" + UUID.randomUUID().toString().substring(0, 8);
+        Stage stage = new Stage(datasetId, name);
+        jdbcTemplate.execute("CREATE TABLE " + stage.qualifiedName()
+                + " (LIKE " + PARENT + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING STORAGE)");
+        // Lets ATTACH PARTITION skip the scan that proves every row belongs to the dataset.
+        jdbcTemplate.execute("ALTER TABLE " + stage.qualifiedName() + " ADD CONSTRAINT " + name
+                + "_dataset CHECK (dataset_id = " + datasetId + ")");
+        log.info("[partitions] Created staging table {} for dataset {}", stage.qualifiedName(), datasetId);
+        return stage;
+    }
+
+    /**
+     * Swaps {@code stage} in as the dataset's partition. Exclusions of the published rows are carried over
+     * by component key, then indexes and constraints are built on the loaded stage so the swap itself only
+     * detaches, drops, renames and attaches. The detach locks {@code unified_row} until commit, but nothing
+     * after it reads or writes rows: the stage's check and the default partition's let the attach skip its
+     * validation scans.
+     */
+    @Transactional
+    public void publish(Stage stage) {
+        int carried = jdbcTemplate.update("UPDATE " + stage.qualifiedName() + " s SET is_excluded = true FROM " + PARENT
+                + " p WHERE p.dataset_id = ? AND p.is_excluded AND p.component_key = s.component_key", stage.datasetId());
+        if (carried > 0) {
+            log.info("[partitions] Carried {} exclusions into {}", carried, stage.qualifiedName());
+        }
+        prepare(stage);
+
+        String partition = partitionName(stage.datasetId());
+        if (exists(partition)) {
+            jdbcTemplate.execute("ALTER TABLE " + PARENT + " DETACH PARTITION " + partition);
+            jdbcTemplate.execute("DROP TABLE " + partition);
+        }
+        jdbcTemplate.execute("ALTER TABLE " + stage.qualifiedName() + " RENAME TO " + unqualified(partition));
+        jdbcTemplate.execute("ALTER TABLE " + PARENT + " ATTACH PARTITION " + partition
+                + " FOR VALUES IN (" + stage.datasetId() + ")");
+        log.info("[partitions] Published {} as {}", stage.qualifiedName(), partition);
+    }
+
+    /**
+     * Discards a stage that will not be published. Failures are logged rather than thrown so cleanup never
+     * hides the error that stopped the transform.
+     */
+    public void dropStage(Stage stage) {
+        try {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + stage.qualifiedName());
+            log.info("[partitions] Dropped staging table {}", stage.qualifiedName());
+        } catch (RuntimeException exception) {
+            log.warn("[partitions] Could not drop staging table {}: {}", stage.qualifiedName(), exception.getMessage());
+        }
+    }
+
+    /**
+     * Drops the dataset's partition, if it has one, so deleting a dataset does not cascade row by row.
+     */
+    @Transactional
+    public void drop(Long datasetId) {
+        if (!isPartitioned()) {
+            return;
+        }
+        String partition = partitionName(datasetId);
+        if (exists(partition)) {
+            jdbcTemplate.execute("ALTER TABLE " + PARENT + " DETACH PARTITION " + partition);
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            log.info("[partitions] Dropped {}", partition);
+        }
+    }
+
+    private void prepare(Stage stage) {
+        List<String> constraints = jdbcTemplate.queryForList("""
+                SELECT pg_get_constraintdef(oid) FROM pg_constraint
+                WHERE conrelid = to_regclass(?) AND contype IN ('p', 'u', 'f')
+                ORDER BY conname
+                """, String.class, PARENT);
+        for (int i = 0; i < constraints.size(); i++) {
+            jdbcTemplate.execute("ALTER TABLE " + stage.qualifiedName() + " ADD CONSTRAINT "
+                    + stage.name() + "_c" + i + " " + constraints.get(i));
+        }
+
+        // Plain indexes only; the ones backing primary key and unique constraints were created above.
+        List<String> indexes = jdbcTemplate.queryForList("""
+                SELECT pg_get_indexdef(i.indexrelid) FROM pg_index i
+                WHERE i.indrelid = to_regclass(?)
+                  AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conindid = i.indexrelid)
+                ORDER BY i.indexrelid
+                """, String.class, PARENT);
+        for (int i = 0; i < indexes.size(); i++) {
+            Matcher matcher = INDEX_DEFINITION.matcher(indexes.get(i));
+            if (!matcher.find()) {
+                log.warn("[partitions] Leaving index to ATTACH PARTITION: {}", indexes.get(i));
+                continue;
+            }
+            String unique = matcher.group(1) != null ? matcher.group(1) : "";
+            jdbcTemplate.execute("CREATE " + unique + "INDEX " + stage.name() + "_i" + i
+                    + " ON " + stage.qualifiedName() + " " + indexes.get(i).substring(matcher.end()));
+        }
+        jdbcTemplate.execute("ANALYZE " + stage.qualifiedName());
+    }
+
+    private boolean exists(String qualifiedName) {
+        return Boolean.TRUE.equals(
+                jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, qualifiedName));
+    }
+
+    private static String partitionName(Long datasetId) {
+        return SCHEMA + ".unified_row_p" + datasetId;
+    }
+
+    private static String unqualified(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.indexOf('.') + 1);
+    }
+
+    public record Stage(Long datasetId, String name) {
+        public String qualifiedName() {
+            return SCHEMA + "." + name;
+        }
+    }
+}
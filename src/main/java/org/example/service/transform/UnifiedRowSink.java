@@ -0,0 +1,340 @@
+package org.example.service.transform;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.models.entity.UnifiedRow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Buffers unified rows and writes them to {@code integration.unified_row}, or to a staging table of the
+ * same shape, with JDBC batch inserts instead of one entity save per row. Chunks join the caller's
+ * transaction unless per-chunk commits are enabled, in which case every chunk is committed on its own.
+ * <p>
+ * Every row carries a SHA-256 {@code content_hash} of its data. An upsert writer keys rows by
+ * {@code (dataset_id, component_key)}: a row whose hash is unchanged is left alone, a changed one is
+ * updated in place with its id and {@code is_excluded} flag kept. It records the keys it wrote in
+ * {@code integration.unified_row_written} under its own token, in the same transaction as the rows, so
+ * the components that are gone are found with an anti-join rather than in memory.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UnifiedRowSink {
+
+    private static final int DELETE_BATCH_SIZE = 1_000;
+
+    private static final String TABLE = "integration.unified_row";
+
+    private static final String WRITTEN_SQL = """
+            INSERT INTO integration.unified_row_written (writer_token, component_key)
+            VALUES (?, ?)
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final String NOT_WRITTEN = """
+            NOT EXISTS (SELECT 1 FROM integration.unified_row_written w
+                        WHERE w.writer_token = ? AND w.component_key = u.component_key)
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO %s
+                (unified_row_uid, dataset_id, source_id, record_key, component_key, content_hash, data, is_excluded,
+                 observed_at, ingested_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?::jsonb, ?, ?, ?)
+            """;
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO integration.unified_row AS target
+                (unified_row_uid, dataset_id, source_id, record_key, component_key, content_hash, data, is_excluded,
+                 observed_at, ingested_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?::jsonb, ?, ?, ?)
+            ON CONFLICT (dataset_id, component_key) WHERE component_key IS NOT NULL DO UPDATE
+            SET source_id = EXCLUDED.source_id,
+                record_key = EXCLUDED.record_key,
+                content_hash = EXCLUDED.content_hash,
+                data = EXCLUDED.data,
+                observed_at = EXCLUDED.observed_at,
+                ingested_at = EXCLUDED.ingested_at
+            WHERE target.content_hash IS DISTINCT FROM EXCLUDED.content_hash
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${transform.sink.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${transform.sink.commit-per-chunk:false}")
+    private boolean commitPerChunk;
+
+    public Writer open() {
+        return open(commitPerChunk);
+    }
+
+    public Writer open(boolean commitEachChunk) {
+        return open(TABLE, commitEachChunk);
+    }
+
+    /**
+     * @param table unified_row itself or a staging table created by {@link UnifiedRowPartitions}
+     */
+    public Writer open(String table, boolean commitEachChunk) {
+        return new Writer(INSERT_SQL.formatted(table), null, Math.max(1, chunkSize), chunkTransaction(commitEachChunk));
+    }
+
+    /**
+     * Upserts into {@code unified_row} by component key; the keys it writes are recorded so the caller
+     * can remove the components that are gone (see {@link #deleteStale} and {@link #deleteUnwritten}), and
+     * released with {@link Writer#releaseKeys()}.
+     */
+    public Writer openUpsert(boolean commitEachChunk) {
+        return new Writer(UPSERT_SQL, UUID.randomUUID().toString(), Math.max(1, chunkSize), chunkTransaction(commitEachChunk));
+    }
+
+    private TransactionTemplate chunkTransaction(boolean commitEachChunk) {
+        if (!commitEachChunk) {
+            return null;
+        }
+        TransactionTemplate chunkTransaction = new TransactionTemplate(transactionManager);
+        chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return chunkTransaction;
+    }
+
+    /**
+     * Removes a dataset's unified rows with a single statement rather than loading and deleting entities.
+     */
+    public int deleteByDataset(Long datasetId) {
+        return jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE dataset_id = ?", datasetId);
+    }
+
+    /**
+     * Removes the dataset's rows whose component the upsert {@code writer} did not write, and rows without a
+     * key, in one statement.
+     */
+    public int deleteStale(Long datasetId, Writer writer) {
+        return jdbcTemplate.update("DELETE FROM " + TABLE + " u WHERE u.dataset_id = ? AND (u.component_key IS NULL OR "
+                + NOT_WRITTEN + ")", datasetId, writer.token());
+    }
+
+    /**
+     * Removes the rows of the given components that the upsert {@code writer} did not write, in batches of
+     * keys.
+     */
+    public int deleteUnwritten(Long datasetId, Collection<String> componentKeys, Writer writer) {
+        List<String> keys = new ArrayList<>(componentKeys);
+        int deleted = 0;
+        for (int start = 0; start < keys.size(); start += DELETE_BATCH_SIZE) {
+            List<String> batch = keys.subList(start, Math.min(start + DELETE_BATCH_SIZE, keys.size()));
+            deleted += jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement("DELETE FROM " + TABLE
+                        + " u WHERE u.dataset_id = ? AND u.component_key = ANY (?) AND " + NOT_WRITTEN);
+                statement.setLong(1, datasetId);
+                statement.setArray(2, connection.createArrayOf("text", batch.toArray()));
+                statement.setString(3, writer.token());
+                return statement;
+            });
+        }
+        return deleted;
+    }
+
+    /**
+     * Whether the dataset has rows that cannot be replaced per component: rows without a component key or
+     * whose key does not start with {@code componentKeyPrefix}.
+     */
+    public boolean hasRowsOutside(Long datasetId, String componentKeyPrefix) {
+        Boolean exists = jdbcTemplate.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM integration.unified_row
+                               WHERE dataset_id = ? AND (component_key IS NULL OR component_key NOT LIKE ?))
+                """, Boolean.class, datasetId, componentKeyPrefix + "%");
+        return Boolean.TRUE.equals(exists);
+    }
+
+    public final class Writer {
+
+        private final String insertSql;
+        private final String token;
+        private final int chunkSize;
+        private final TransactionTemplate chunkTransaction;
+        private final List<PendingRow> buffer;
+        private long written;
+        private long changed;
+        private long chunks;
+        private long skipped;
+
+        private Writer(String insertSql, String token, int chunkSize, TransactionTemplate chunkTransaction) {
+            this.insertSql = insertSql;
+            this.token = token;
+            this.chunkSize = chunkSize;
+            this.chunkTransaction = chunkTransaction;
+            this.buffer = new ArrayList<>(chunkSize);
+        }
+
+        /**
+         * Queues a row; a full chunk is written immediately. Rows whose data cannot be serialized are
+         * skipped and counted.
+         */
+        public void add(UnifiedRow row) {
+            String data;
+            try {
+                data = objectMapper.writeValueAsString(row.getData());
+            } catch (JsonProcessingException exception) {
+                skipped++;
+                log.error("Skipping unified row {}: {}", row.getRecordKey(), exception.getMessage());
+                return;
+            }
+            buffer.add(new PendingRow(
+                    row.getUnifiedRowUid(),
+                    row.getDataset().getId(),
+                    row.getSource() != null ? row.getSource().getId() : null,
+                    row.getRecordKey(),
+                    row.getComponentKey(),
+                    contentHash(data),
+                    data,
+                    Boolean.TRUE.equals(row.getIsExcluded()),
+                    row.getObservedAt(),
+                    row.getIngestedAt() != null ? row.getIngestedAt() : Instant.now()));
+            if (buffer.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        public void flush() {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            List<PendingRow> chunk = List.copyOf(buffer);
+            buffer.clear();
+            int[] counts = chunkTransaction != null
+                    ? chunkTransaction.execute(status -> write(chunk))
+                    : write(chunk);
+            for (int count : counts) {
+                // Unchanged upserts affect no row; drivers that do not report counts return a negative value.
+                if (count != 0) {
+                    changed++;
+                }
+            }
+            written += chunk.size();
+            chunks++;
+            log.debug("[sink] Flushed chunk {} ({} rows, {} written)", chunks, chunk.size(), written);
+        }
+
+        public long written() {
+            return written;
+        }
+
+        /**
+         * Rows actually inserted or updated; an upsert of unchanged content is not counted.
+         */
+        public long changed() {
+            return changed;
+        }
+
+        /**
+         * Forgets the component keys an upsert writer recorded; call once the stale rows are removed or the
+         * run is abandoned. Does nothing for plain inserts.
+         */
+        public void releaseKeys() {
+            if (token != null) {
+                jdbcTemplate.update("DELETE FROM integration.unified_row_written WHERE writer_token = ?", token);
+            }
+        }
+
+        private String token() {
+            if (token == null) {
+                throw new IllegalStateException("Only upsert writers record the component keys they write");
+            }
+            return token;
+        }
+
+        private int[] write(List<PendingRow> chunk) {
+            int[] counts = insert(insertSql, chunk);
+            List<String> keys = token == null ? List.of()
+                    : chunk.stream().map(PendingRow::componentKey).filter(Objects::nonNull).toList();
+            if (!keys.isEmpty()) {
+                jdbcTemplate.batchUpdate(WRITTEN_SQL, keys, keys.size(), (statement, key) -> {
+                    statement.setString(1, token);
+                    statement.setString(2, key);
+                });
+            }
+            return counts;
+        }
+
+        public long chunks() {
+            return chunks;
+        }
+
+        public long skipped() {
+            return skipped;
+        }
+
+        public int pending() {
+            return buffer.size();
+        }
+    }
+
+    private int[] insert(String insertSql, List<PendingRow> chunk) {
+        return jdbcTemplate.batchUpdate(insertSql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int index) throws SQLException {
+                PendingRow row = chunk.get(index);
+                statement.setString(1, row.uid());
+                statement.setLong(2, row.datasetId());
+                if (row.sourceId() != null) {
+                    statement.setLong(3, row.sourceId());
+                } else {
+                    statement.setNull(3, Types.BIGINT);
+                }
+                statement.setString(4, row.recordKey());
+                statement.setString(5, row.componentKey());
+                statement.setString(6, row.contentHash());
+                statement.setString(7, row.data());
+                statement.setBoolean(8, row.excluded());
+                statement.setTimestamp(9, row.observedAt() != null ? Timestamp.from(row.observedAt()) : null);
+                statement.setTimestamp(10, Timestamp.from(row.ingestedAt()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return chunk.size();
+            }
+        });
+    }
+
+    private static String contentHash(String data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(data.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available", exception);
+        }
+    }
+
+    private record PendingRow(String uid, Long datasetId, Long sourceId, String recordKey, String componentKey,
+                              String contentHash, String data, boolean excluded, Instant observedAt,
+                              Instant ingestedAt) {
+    }
+}
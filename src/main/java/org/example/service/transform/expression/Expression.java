@@ -0,0 +1,19 @@
+package org.example.service.transform.expression;
+
+import java.util.Map;
+
+/**
+ * A mapping transform or field default compiled by {@link ExpressionCompiler}. Evaluating one walks a tree
+ * of pre-bound lambdas: parsing, function lookup, literal folding and regex and date pattern compilation
+ * all happen once, when the expression is compiled.
+ */
+@FunctionalInterface
+public interface Expression {
+
+    /**
+     * @param value   the value the mapping read from its path, referenced as {@code $value}; {@code null}
+     *                when evaluating a field default
+     * @param payload the record that path references in the expression read from
+     */
+    Object evaluate(Object value, Map<String, Object> payload);
+}
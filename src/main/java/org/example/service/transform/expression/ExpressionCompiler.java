@@ -0,0 +1,601 @@
+package org.example.service.transform.expression;
+
+import org.example.service.transform.PathAccessor;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the SQL-like expressions of {@code DatasetMapping.transformSql} and
+ * {@code DatasetField.defaultExpr} into {@link Expression} lambda trees. Parsing happens once per
+ * transform; sub-expressions over literals are folded while compiling.
+ * <p>
+ * The language has:
+ * <ul>
+ *     <li>literals: {@code 'text'} (with {@code ''} for a quote), numbers, {@code TRUE}, {@code FALSE},
+ *     {@code NULL};</li>
+ *     <li>{@code $value}, the value the mapping read from its path;</li>
+ *     <li>paths into the payload in {@link PathAccessor} syntax, such as {@code customer.addresses[0].city},
+ *     or double-quoted for keys that are not identifiers or clash with a keyword;</li>
+ *     <li>{@code ||}, {@code + - * / %}, {@code = != <> < <= > >=}, {@code IS [NOT] NULL},
+ *     {@code AND}, {@code OR}, {@code NOT};</li>
+ *     <li>{@code CAST(x AS type)} to {@code TEXT}, {@code INTEGER}, {@code NUMERIC}, {@code BOOLEAN},
+ *     {@code DATE} or {@code TIMESTAMP}, and {@code CASE [x] WHEN ... THEN ... [ELSE ...] END};</li>
+ *     <li>the functions in {@link ExpressionFunctions}: {@code concat}, {@code coalesce}, {@code nullif},
+ *     {@code upper}, {@code lower}, {@code trim}, {@code length}, {@code substring}, {@code replace},
+ *     {@code regexp_extract}, {@code regexp_replace}, {@code abs}, {@code floor}, {@code ceil},
+ *     {@code round}, {@code parse_date}, {@code parse_timestamp} and {@code format_date}.</li>
+ * </ul>
+ * Evaluation follows SQL: {@code null} operands and values that cannot be coerced yield {@code null}.
+ */
+public final class ExpressionCompiler {
+
+    private static final int MAX_DEPTH = 64;
+
+    private static final Set<String> KEYWORDS = Set.of(
+            "AND", "OR", "NOT", "IS", "NULL", "TRUE", "FALSE", "CAST", "AS", "CASE", "WHEN", "THEN", "ELSE", "END");
+
+    private final List<Token> tokens;
+    private int index;
+    private int depth;
+
+    private ExpressionCompiler(String source) {
+        this.tokens = tokenize(source);
+    }
+
+    /**
+     * Compiles {@code source}; {@code null} for a blank expression.
+     *
+     * @throws ExpressionException if the expression is not valid
+     */
+    public static Expression compile(String source) {
+        if (!StringUtils.hasText(source)) {
+            return null;
+        }
+        ExpressionCompiler compiler = new ExpressionCompiler(source);
+        Expression expression = compiler.or();
+        Token trailing = compiler.peek();
+        if (trailing.type() != TokenType.END) {
+            throw new ExpressionException("Unexpected '" + trailing.text() + "'", trailing.position());
+        }
+        return expression;
+    }
+
+    private Expression or() {
+        enter();
+        Expression left = and();
+        while (keyword("OR")) {
+            Token operator = previous();
+            Expression l = left;
+            Expression r = and();
+            left = fold(operator, (value, payload) -> {
+                Boolean a = Values.bool(l.evaluate(value, payload));
+                if (Boolean.TRUE.equals(a)) {
+                    return true;
+                }
+                Boolean b = Values.bool(r.evaluate(value, payload));
+                if (Boolean.TRUE.equals(b)) {
+                    return true;
+                }
+                return a == null || b == null ? null : false;
+            }, l, r);
+        }
+        depth--;
+        return left;
+    }
+
+    private Expression and() {
+        Expression left = not();
+        while (keyword("AND")) {
+            Token operator = previous();
+            Expression l = left;
+            Expression r = not();
+            left = fold(operator, (value, payload) -> {
+                Boolean a = Values.bool(l.evaluate(value, payload));
+                if (Boolean.FALSE.equals(a)) {
+                    return false;
+                }
+                Boolean b = Values.bool(r.evaluate(value, payload));
+                if (Boolean.FALSE.equals(b)) {
+                    return false;
+                }
+                return a == null || b == null ? null : true;
+            }, l, r);
+        }
+        return left;
+    }
+
+    private Expression not() {
+        if (keyword("NOT")) {
+            Token operator = previous();
+            enter();
+            Expression operand = not();
+            depth--;
+            return fold(operator, (value, payload) -> {
+                Boolean bool = Values.bool(operand.evaluate(value, payload));
+                return bool == null ? null : !bool;
+            }, operand);
+        }
+        return comparison();
+    }
+
+    private Expression comparison() {
+        Expression left = concatenation();
+        if (peek().isOperator("=", "!=", "<>", "<", "<=", ">", ">=")) {
+            Token operator = next();
+            Expression right = concatenation();
+            String symbol = operator.text();
+            return fold(operator, (value, payload) -> {
+                Integer comparison = Values.compare(left.evaluate(value, payload), right.evaluate(value, payload));
+                if (comparison == null) {
+                    return null;
+                }
+                return switch (symbol) {
+                    case "=" -> comparison == 0;
+                    case "!=", "<>" -> comparison != 0;
+                    case "<" -> comparison < 0;
+                    case "<=" -> comparison <= 0;
+                    case ">" -> comparison > 0;
+                    default -> comparison >= 0;
+                };
+            }, left, right);
+        }
+        if (keyword("IS")) {
+            Token operator = previous();
+            boolean negated = keyword("NOT");
+            expectKeyword("NULL");
+            return fold(operator, (value, payload) -> (left.evaluate(value, payload) == null) != negated, left);
+        }
+        return left;
+    }
+
+    private Expression concatenation() {
+        Expression left = additive();
+        while (operator("||")) {
+            Token operator = previous();
+            Expression l = left;
+            Expression r = additive();
+            left = fold(operator, (value, payload) -> {
+                String a = Values.text(l.evaluate(value, payload));
+                String b = Values.text(r.evaluate(value, payload));
+                return a == null || b == null ? null : a + b;
+            }, l, r);
+        }
+        return left;
+    }
+
+    private Expression additive() {
+        Expression left = multiplicative();
+        while (peek().isOperator("+", "-")) {
+            Token operator = next();
+            Expression l = left;
+            Expression r = multiplicative();
+            left = operator.text().equals("+")
+                    ? fold(operator, (value, payload) -> Values.add(l.evaluate(value, payload), r.evaluate(value, payload)), l, r)
+                    : fold(operator, (value, payload) -> Values.subtract(l.evaluate(value, payload), r.evaluate(value, payload)), l, r);
+        }
+        return left;
+    }
+
+    private Expression multiplicative() {
+        Expression left = unary();
+        while (peek().isOperator("*", "/", "%")) {
+            Token operator = next();
+            Expression l = left;
+            Expression r = unary();
+            left = switch (operator.text()) {
+                case "*" -> fold(operator, (value, payload) -> Values.multiply(l.evaluate(value, payload), r.evaluate(value, payload)), l, r);
+                case "/" -> fold(operator, (value, payload) -> Values.divide(l.evaluate(value, payload), r.evaluate(value, payload)), l, r);
+                default -> fold(operator, (value, payload) -> Values.modulo(l.evaluate(value, payload), r.evaluate(value, payload)), l, r);
+            };
+        }
+        return left;
+    }
+
+    private Expression unary() {
+        if (peek().isOperator("-", "+")) {
+            Token operator = next();
+            enter();
+            Expression operand = unary();
+            depth--;
+            return operator.text().equals("+")
+                    ? fold(operator, (value, payload) -> Values.number(operand.evaluate(value, payload)), operand)
+                    : fold(operator, (value, payload) -> Values.negate(operand.evaluate(value, payload)), operand);
+        }
+        return primary();
+    }
+
+    private Expression primary() {
+        Token token = next();
+        switch (token.type()) {
+            case NUMBER, STRING:
+                return new Constant(token.literal());
+            case VALUE:
+                return (value, payload) -> value;
+            case PATH:
+                return path(token);
+            case OPERATOR:
+                if (token.isOperator("(")) {
+                    Expression inner = or();
+                    expectOperator(")");
+                    return inner;
+                }
+                break;
+            case IDENTIFIER:
+                String upper = token.text().toUpperCase(Locale.ROOT);
+                switch (upper) {
+                    case "NULL":
+                        return new Constant(null);
+                    case "TRUE":
+                        return new Constant(Boolean.TRUE);
+                    case "FALSE":
+                        return new Constant(Boolean.FALSE);
+                    case "CAST":
+                        return cast(token);
+                    case "CASE":
+                        return caseWhen(token);
+                    default:
+                        if (KEYWORDS.contains(upper)) {
+                            break;
+                        }
+                        if (peek().isOperator("(")) {
+                            return call(token);
+                        }
+                        return path(token);
+                }
+                break;
+            default:
+                break;
+        }
+        throw new ExpressionException(token.type() == TokenType.END
+                ? "Unexpected end of expression"
+                : "Unexpected '" + token.text() + "'", token.position());
+    }
+
+    private Expression cast(Token cast) {
+        expectOperator("(");
+        Expression operand = or();
+        expectKeyword("AS");
+        Token typeName = next();
+        Values.CastType type = typeName.type() == TokenType.IDENTIFIER ? Values.CastType.of(typeName.text()) : null;
+        if (type == null) {
+            throw new ExpressionException("Unknown type '" + typeName.text() + "'", typeName.position());
+        }
+        expectOperator(")");
+        return fold(cast, (value, payload) -> Values.cast(operand.evaluate(value, payload), type), operand);
+    }
+
+    /**
+     * {@code CASE WHEN condition THEN result ... [ELSE result] END}, or with an operand
+     * {@code CASE x WHEN candidate THEN result ... END}, which compares {@code x} to each candidate.
+     */
+    private Expression caseWhen(Token caseToken) {
+        Expression operand = peek().isKeyword("WHEN") ? null : or();
+        List<Expression> conditions = new ArrayList<>();
+        List<Expression> results = new ArrayList<>();
+        while (keyword("WHEN")) {
+            conditions.add(or());
+            expectKeyword("THEN");
+            results.add(or());
+        }
+        if (conditions.isEmpty()) {
+            throw new ExpressionException("CASE needs at least one WHEN", peek().position());
+        }
+        Expression otherwise = keyword("ELSE") ? or() : new Constant(null);
+        expectKeyword("END");
+
+        Expression[] whens = conditions.toArray(Expression[]::new);
+        Expression[] thens = results.toArray(Expression[]::new);
+        Expression selected;
+        if (operand == null) {
+            selected = (value, payload) -> {
+                for (int i = 0; i < whens.length; i++) {
+                    if (Boolean.TRUE.equals(Values.bool(whens[i].evaluate(value, payload)))) {
+                        return thens[i].evaluate(value, payload);
+                    }
+                }
+                return otherwise.evaluate(value, payload);
+            };
+        } else {
+            selected = (value, payload) -> {
+                Object subject = operand.evaluate(value, payload);
+                for (int i = 0; i < whens.length; i++) {
+                    Integer comparison = Values.compare(subject, whens[i].evaluate(value, payload));
+                    if (comparison != null && comparison == 0) {
+                        return thens[i].evaluate(value, payload);
+                    }
+                }
+                return otherwise.evaluate(value, payload);
+            };
+        }
+        List<Expression> all = new ArrayList<>(conditions);
+        all.addAll(results);
+        all.add(otherwise);
+        if (operand != null) {
+            all.add(operand);
+        }
+        return fold(caseToken, selected, all.toArray(Expression[]::new));
+    }
+
+    private Expression call(Token name) {
+        ExpressionFunctions.Definition function = ExpressionFunctions.lookup(name.text());
+        if (function == null) {
+            throw new ExpressionException("Unknown function '" + name.text() + "'", name.position());
+        }
+        expectOperator("(");
+        List<Expression> args = new ArrayList<>();
+        if (!operator(")")) {
+            do {
+                args.add(or());
+            } while (operator(","));
+            expectOperator(")");
+        }
+        if (args.size() < function.minArgs() || args.size() > function.maxArgs()) {
+            String expected = function.minArgs() == function.maxArgs() ? String.valueOf(function.minArgs())
+                    : function.maxArgs() == Integer.MAX_VALUE ? "at least " + function.minArgs()
+                    : function.minArgs() + " to " + function.maxArgs();
+            throw new ExpressionException(function.name() + " takes " + expected
+                    + (expected.endsWith("1") ? " argument" : " arguments") + ", got " + args.size(), name.position());
+        }
+        Expression[] bound = args.toArray(Expression[]::new);
+        Expression call;
+        try {
+            call = function.binder().bind(bound);
+        } catch (IllegalArgumentException invalid) {
+            String reason = invalid.getMessage() == null ? "" : invalid.getMessage().lines().findFirst().orElse("");
+            throw new ExpressionException("Invalid argument to " + function.name() + ": " + reason, name.position());
+        }
+        return fold(name, call, bound);
+    }
+
+    private Expression path(Token token) {
+        PathAccessor accessor = PathAccessor.compile(token.text());
+        if (accessor == null) {
+            throw new ExpressionException("Empty path", token.position());
+        }
+        return (value, payload) -> payload == null ? null : accessor.read(payload);
+    }
+
+    /**
+     * Evaluates {@code expression} now if all its operands are literals.
+     */
+    private static Expression fold(Token token, Expression expression, Expression... operands) {
+        for (Expression operand : operands) {
+            if (!(operand instanceof Constant)) {
+                return expression;
+            }
+        }
+        try {
+            return new Constant(expression.evaluate(null, null));
+        } catch (RuntimeException exception) {
+            throw new ExpressionException("Cannot evaluate '" + token.text() + "': " + exception.getMessage(),
+                    token.position());
+        }
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw new ExpressionException("Expression is nested too deeply", peek().position());
+        }
+    }
+
+    private Token peek() {
+        return tokens.get(index);
+    }
+
+    private Token previous() {
+        return tokens.get(index - 1);
+    }
+
+    private Token next() {
+        Token token = tokens.get(index);
+        if (token.type() != TokenType.END) {
+            index++;
+        }
+        return token;
+    }
+
+    private boolean keyword(String keyword) {
+        if (peek().isKeyword(keyword)) {
+            index++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean operator(String operator) {
+        if (peek().isOperator(operator)) {
+            index++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!keyword(keyword)) {
+            throw expected(keyword);
+        }
+    }
+
+    private void expectOperator(String operator) {
+        if (!operator(operator)) {
+            throw expected("'" + operator + "'");
+        }
+    }
+
+    private ExpressionException expected(String what) {
+        Token token = peek();
+        return new ExpressionException("Expected " + what + " but found "
+                + (token.type() == TokenType.END ? "end of expression" : "'" + token.text() + "'"), token.position());
+    }
+
+    private static List<Token> tokenize(String source) {
+        List<Token> tokens = new ArrayList<>();
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(source.charAt(i + 1)))) {
+                i = scanNumber(source, i);
+                String text = source.substring(start, i);
+                tokens.add(new Token(TokenType.NUMBER, text, parseNumber(text, start), start));
+            } else if (c == '\'' || c == '"') {
+                StringBuilder builder = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new ExpressionException(c == '\'' ? "Unterminated string" : "Unterminated quoted path", start);
+                    }
+                    char current = source.charAt(i++);
+                    if (current == c) {
+                        if (i < length && source.charAt(i) == c) {
+                            builder.append(c);
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        builder.append(current);
+                    }
+                }
+                tokens.add(c == '\''
+                        ? new Token(TokenType.STRING, source.substring(start, i), builder.toString(), start)
+                        : new Token(TokenType.PATH, builder.toString(), null, start));
+            } else if (c == '$') {
+                i++;
+                while (i < length && isIdentifierPart(source.charAt(i))) {
+                    i++;
+                }
+                String name = source.substring(start, i);
+                if (!name.equalsIgnoreCase("$value")) {
+                    throw new ExpressionException("Unknown variable '" + name + "'", start);
+                }
+                tokens.add(new Token(TokenType.VALUE, name, null, start));
+            } else if (Character.isLetter(c) || c == '_') {
+                i = scanPath(source, i);
+                String text = source.substring(start, i);
+                boolean plain = text.chars().allMatch(ExpressionCompiler::isIdentifierPart);
+                tokens.add(new Token(plain ? TokenType.IDENTIFIER : TokenType.PATH, text, null, start));
+            } else {
+                String operator = i + 1 < length ? source.substring(i, i + 2) : "";
+                if (!Set.of("||", "<=", ">=", "<>", "!=").contains(operator)) {
+                    operator = String.valueOf(c);
+                    if ("(),+-*/%=<>".indexOf(c) < 0) {
+                        throw new ExpressionException("Unexpected character '" + c + "'", start);
+                    }
+                }
+                i += operator.length();
+                tokens.add(new Token(TokenType.OPERATOR, operator, null, start));
+            }
+        }
+        tokens.add(new Token(TokenType.END, "", null, length));
+        return tokens;
+    }
+
+    private static int scanNumber(String source, int i) {
+        int length = source.length();
+        while (i < length && Character.isDigit(source.charAt(i))) {
+            i++;
+        }
+        if (i < length && source.charAt(i) == '.') {
+            i++;
+            while (i < length && Character.isDigit(source.charAt(i))) {
+                i++;
+            }
+        }
+        if (i < length && (source.charAt(i) == 'e' || source.charAt(i) == 'E')) {
+            int exponent = i + 1;
+            if (exponent < length && (source.charAt(exponent) == '+' || source.charAt(exponent) == '-')) {
+                exponent++;
+            }
+            if (exponent < length && Character.isDigit(source.charAt(exponent))) {
+                i = exponent;
+                while (i < length && Character.isDigit(source.charAt(i))) {
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+    private static Object parseNumber(String text, int position) {
+        try {
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+                return Long.parseLong(text);
+            }
+            return Double.parseDouble(text);
+        } catch (NumberFormatException exception) {
+            throw new ExpressionException("Number out of range '" + text + "'", position);
+        }
+    }
+
+    /**
+     * Scans an identifier with any {@code .key}, {@code .*}, {@code [index]} and {@code [*]} segments.
+     */
+    private static int scanPath(String source, int i) {
+        int length = source.length();
+        while (i < length) {
+            char c = source.charAt(i);
+            if (isIdentifierPart(c)) {
+                i++;
+            } else if (c == '.' && i + 1 < length
+                    && (Character.isLetter(source.charAt(i + 1)) || source.charAt(i + 1) == '_' || source.charAt(i + 1) == '*')) {
+                i += source.charAt(i + 1) == '*' ? 2 : 1;
+            } else if (c == '[') {
+                int close = source.indexOf(']', i);
+                String inner = close < 0 ? "" : source.substring(i + 1, close);
+                if (!inner.equals("*") && (inner.isEmpty() || !inner.chars().allMatch(Character::isDigit))) {
+                    throw new ExpressionException("Invalid index in path", i);
+                }
+                i = close + 1;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isIdentifierPart(int c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private enum TokenType {
+        NUMBER, STRING, IDENTIFIER, PATH, VALUE, OPERATOR, END
+    }
+
+    private record Token(TokenType type, String text, Object literal, int position) {
+
+        boolean isKeyword(String keyword) {
+            return type == TokenType.IDENTIFIER && text.equalsIgnoreCase(keyword);
+        }
+
+        boolean isOperator(String... operators) {
+            if (type != TokenType.OPERATOR) {
+                return false;
+            }
+            for (String operator : operators) {
+                if (operator.equals(text)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A literal, or a sub-expression folded to one.
+     */
+    record Constant(Object value) implements Expression {
+        @Override
+        public Object evaluate(Object value, Map<String, Object> payload) {
+            return this.value;
+        }
+    }
+}
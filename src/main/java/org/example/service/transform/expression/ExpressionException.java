@@ -0,0 +1,18 @@
+package org.example.service.transform.expression;
+
+/**
+ * Thrown when an expression cannot be compiled; the message names the offending position.
+ */
+public class ExpressionException extends IllegalArgumentException {
+
+    private final int position;
+
+    public ExpressionException(String message, int position) {
+        super(message + " at position " + (position + 1));
+        this.position = position;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
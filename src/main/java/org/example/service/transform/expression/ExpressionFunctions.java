@@ -0,0 +1,303 @@
+package org.example.service.transform.expression;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Built-in functions of the expression language. Each function binds its compiled arguments into a lambda
+ * once; regex and date patterns given as literals are compiled at that point, so per-row evaluation never
+ * parses them. Every function is pure, which lets the compiler fold calls on literals.
+ */
+final class ExpressionFunctions {
+
+    private static final int VARIADIC = Integer.MAX_VALUE;
+
+    private static final Map<String, Definition> FUNCTIONS = new HashMap<>();
+
+    static {
+        register("concat", 1, VARIADIC, ExpressionFunctions::concat);
+        register("coalesce", 1, VARIADIC, ExpressionFunctions::coalesce);
+        register("nullif", 2, 2, args -> (value, payload) -> {
+            Object first = args[0].evaluate(value, payload);
+            Integer comparison = Values.compare(first, args[1].evaluate(value, payload));
+            return comparison != null && comparison == 0 ? null : first;
+        });
+
+        register("upper", 1, 1, args -> text(args[0], text -> text.toUpperCase(Locale.ROOT)));
+        register("lower", 1, 1, args -> text(args[0], text -> text.toLowerCase(Locale.ROOT)));
+        register("trim", 1, 1, args -> text(args[0], String::trim));
+        register("length", 1, 1, args -> text(args[0], text -> (long) text.codePointCount(0, text.length())));
+        register("substring", 2, 3, ExpressionFunctions::substring);
+        register("replace", 3, 3, args -> (value, payload) -> {
+            String text = Values.text(args[0].evaluate(value, payload));
+            String target = Values.text(args[1].evaluate(value, payload));
+            String replacement = Values.text(args[2].evaluate(value, payload));
+            return text == null || target == null || replacement == null ? null : text.replace(target, replacement);
+        });
+        register("regexp_extract", 2, 3, ExpressionFunctions::regexpExtract);
+        register("regexp_replace", 3, 3, ExpressionFunctions::regexpReplace);
+
+        register("abs", 1, 1, args -> number(args[0], number -> Values.isIntegral(number) && number.longValue() != Long.MIN_VALUE
+                ? (Object) Math.abs(number.longValue())
+                : (Object) Math.abs(number.doubleValue())));
+        register("floor", 1, 1, args -> number(args[0], number -> Values.isIntegral(number)
+                ? (Object) number.longValue()
+                : (Object) Math.floor(number.doubleValue())));
+        register("ceil", 1, 1, args -> number(args[0], number -> Values.isIntegral(number)
+                ? (Object) number.longValue()
+                : (Object) Math.ceil(number.doubleValue())));
+        register("round", 1, 2, ExpressionFunctions::round);
+
+        register("parse_date", 1, 2, args -> {
+            Argument<DateTimeFormatter> format = formatter(args, 1);
+            return (value, payload) -> {
+                LocalDate date = Values.localDate(temporal(args[0], format, value, payload));
+                return date == null ? null : date.toString();
+            };
+        });
+        register("parse_timestamp", 1, 2, args -> {
+            Argument<DateTimeFormatter> format = formatter(args, 1);
+            return (value, payload) -> {
+                Instant instant = Values.instant(temporal(args[0], format, value, payload));
+                return instant == null ? null : instant.toString();
+            };
+        });
+        register("format_date", 2, 2, args -> {
+            Argument<DateTimeFormatter> format = formatter(args, 1);
+            return (value, payload) -> {
+                TemporalAccessor temporal = Values.temporal(args[0].evaluate(value, payload), null);
+                DateTimeFormatter formatter = format.get(value, payload);
+                if (temporal == null || formatter == null) {
+                    return null;
+                }
+                Instant instant = Values.instant(temporal);
+                try {
+                    return temporal instanceof LocalDate date ? formatter.format(date)
+                            : formatter.format(instant.atZone(ZoneOffset.UTC));
+                } catch (RuntimeException unsupportedField) {
+                    return null;
+                }
+            };
+        });
+    }
+
+    private ExpressionFunctions() {
+    }
+
+    /**
+     * The function called {@code name}, matched case-insensitively; {@code null} if there is none.
+     */
+    static Definition lookup(String name) {
+        return FUNCTIONS.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    private static void register(String name, int minArgs, int maxArgs, Binder binder) {
+        FUNCTIONS.put(name, new Definition(name, minArgs, maxArgs, binder));
+    }
+
+    /**
+     * Concatenates the text of its arguments, skipping {@code null}s.
+     */
+    private static Expression concat(Expression[] args) {
+        return (value, payload) -> {
+            StringBuilder builder = new StringBuilder();
+            for (Expression arg : args) {
+                String text = Values.text(arg.evaluate(value, payload));
+                if (text != null) {
+                    builder.append(text);
+                }
+            }
+            return builder.toString();
+        };
+    }
+
+    /**
+     * The first non-null argument; later arguments are not evaluated.
+     */
+    private static Expression coalesce(Expression[] args) {
+        return (value, payload) -> {
+            for (Expression arg : args) {
+                Object result = arg.evaluate(value, payload);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * SQL {@code substring(text, start[, count])}: {@code start} is 1-based and the window is clipped to the
+     * text.
+     */
+    private static Expression substring(Expression[] args) {
+        return (value, payload) -> {
+            String text = Values.text(args[0].evaluate(value, payload));
+            Number start = Values.number(args[1].evaluate(value, payload));
+            Number count = args.length > 2 ? Values.number(args[2].evaluate(value, payload)) : null;
+            if (text == null || start == null || (args.length > 2 && (count == null || count.longValue() < 0))) {
+                return null;
+            }
+            long from = start.longValue();
+            long to = count == null ? Long.MAX_VALUE : from + count.longValue();
+            int begin = (int) Math.max(0, Math.min(text.length(), from - 1));
+            int end = (int) Math.max(begin, Math.min(text.length(), to - 1));
+            return text.substring(begin, end);
+        };
+    }
+
+    /**
+     * {@code regexp_extract(text, pattern[, group])}: the given group of the first match, by default the first
+     * group if the pattern has one and the whole match otherwise; {@code null} without a match.
+     */
+    private static Expression regexpExtract(Expression[] args) {
+        Argument<Pattern> pattern = new Argument<>(args[1], Pattern::compile);
+        return (value, payload) -> {
+            String text = Values.text(args[0].evaluate(value, payload));
+            Pattern compiled = pattern.get(value, payload);
+            if (text == null || compiled == null) {
+                return null;
+            }
+            Matcher matcher = compiled.matcher(text);
+            if (!matcher.find()) {
+                return null;
+            }
+            int group = matcher.groupCount() > 0 ? 1 : 0;
+            if (args.length > 2) {
+                Number requested = Values.number(args[2].evaluate(value, payload));
+                if (requested == null) {
+                    return null;
+                }
+                group = requested.intValue();
+            }
+            return group >= 0 && group <= matcher.groupCount() ? matcher.group(group) : null;
+        };
+    }
+
+    private static Expression regexpReplace(Expression[] args) {
+        Argument<Pattern> pattern = new Argument<>(args[1], Pattern::compile);
+        return (value, payload) -> {
+            String text = Values.text(args[0].evaluate(value, payload));
+            Pattern compiled = pattern.get(value, payload);
+            String replacement = Values.text(args[2].evaluate(value, payload));
+            if (text == null || compiled == null || replacement == null) {
+                return null;
+            }
+            try {
+                return compiled.matcher(text).replaceAll(replacement);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException invalidReplacement) {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * {@code round(number[, digits])}, rounding half up; integers stay integers.
+     */
+    private static Expression round(Expression[] args) {
+        return (value, payload) -> {
+            Number number = Values.number(args[0].evaluate(value, payload));
+            Number digits = args.length > 1 ? Values.number(args[1].evaluate(value, payload)) : 0L;
+            if (number == null || digits == null) {
+                return null;
+            }
+            if (Values.isIntegral(number) && digits.intValue() >= 0) {
+                return number.longValue();
+            }
+            double raw = number.doubleValue();
+            if (Double.isNaN(raw) || Double.isInfinite(raw)) {
+                return raw;
+            }
+            BigDecimal rounded = BigDecimal.valueOf(raw).setScale(digits.intValue(), RoundingMode.HALF_UP);
+            return digits.intValue() <= 0 ? (Object) rounded.longValue() : (Object) rounded.doubleValue();
+        };
+    }
+
+    private static Expression text(Expression arg, Function<String, Object> function) {
+        return (value, payload) -> {
+            String text = Values.text(arg.evaluate(value, payload));
+            return text == null ? null : function.apply(text);
+        };
+    }
+
+    private static Expression number(Expression arg, Function<Number, Object> function) {
+        return (value, payload) -> {
+            Number number = Values.number(arg.evaluate(value, payload));
+            return number == null ? null : function.apply(number);
+        };
+    }
+
+    private static Argument<DateTimeFormatter> formatter(Expression[] args, int index) {
+        return args.length > index
+                ? new Argument<>(args[index], pattern -> DateTimeFormatter.ofPattern(pattern, Locale.ROOT))
+                : null;
+    }
+
+    private static TemporalAccessor temporal(Expression arg, Argument<DateTimeFormatter> format,
+                                             Object value, Map<String, Object> payload) {
+        DateTimeFormatter formatter = null;
+        if (format != null) {
+            formatter = format.get(value, payload);
+            if (formatter == null) {
+                return null;
+            }
+        }
+        return Values.temporal(arg.evaluate(value, payload), formatter);
+    }
+
+    interface Binder {
+        /**
+         * Binds compiled arguments into the function's expression; throws {@link IllegalArgumentException}
+         * for a literal argument the function cannot use, such as an invalid pattern.
+         */
+        Expression bind(Expression[] args);
+    }
+
+    record Definition(String name, int minArgs, int maxArgs, Binder binder) {
+    }
+
+    /**
+     * An argument parsed into {@code T}: once at bind time if it is a literal, otherwise per evaluation, in
+     * which case a value that does not parse yields {@code null}.
+     */
+    private static final class Argument<T> {
+
+        private final Expression source;
+        private final Function<String, T> parser;
+        private final T constant;
+
+        Argument(Expression source, Function<String, T> parser) {
+            this.source = source;
+            this.parser = parser;
+            this.constant = source instanceof ExpressionCompiler.Constant literal && literal.value() != null
+                    ? parser.apply(Values.text(literal.value()))
+                    : null;
+        }
+
+        T get(Object value, Map<String, Object> payload) {
+            if (constant != null) {
+                return constant;
+            }
+            String text = Values.text(source.evaluate(value, payload));
+            if (text == null) {
+                return null;
+            }
+            try {
+                return parser.apply(text);
+            } catch (IllegalArgumentException invalid) {
+                return null;
+            }
+        }
+    }
+}
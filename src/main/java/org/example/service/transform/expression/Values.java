@@ -0,0 +1,341 @@
+package org.example.service.transform.expression;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+
+/**
+ * Coercions and operators shared by compiled expressions. Values are the ones JSON payloads hold (strings,
+ * numbers, booleans, maps and lists); integers are carried as {@link Long} and other numbers as
+ * {@link Double}. Operators follow SQL: a {@code null} operand yields {@code null}, and a value that cannot
+ * be coerced also yields {@code null} instead of failing the row.
+ */
+final class Values {
+
+    private static final long MILLIS_THRESHOLD = 100_000_000_000L; // ~1973 in ms, as TimestampNormalizer
+
+    /**
+     * ISO dates and date-times with {@code T} or a space between date and time and an optional offset or
+     * zone, such as {@code 2024-03-01}, {@code 2024-03-01 10:15:30} or {@code 2024-03-01T10:15:30+02:00}.
+     */
+    static final DateTimeFormatter ISO_DATE_TIME = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .optionalStart()
+            .appendPattern("[' ']['T']")
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .optionalStart()
+            .appendOffsetId()
+            .optionalEnd()
+            .optionalStart()
+            .appendLiteral('[')
+            .parseCaseSensitive()
+            .appendZoneRegionId()
+            .appendLiteral(']')
+            .optionalEnd()
+            .optionalEnd()
+            .toFormatter(Locale.ROOT);
+
+    private Values() {
+    }
+
+    static String text(Object value) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.stripTrailingZeros().toPlainString();
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * The value as a number; numeric strings are parsed, anything else is {@code null}.
+     */
+    static Number number(Object value) {
+        if (value instanceof Number number) {
+            return number;
+        }
+        if (!(value instanceof String string)) {
+            return null;
+        }
+        String trimmed = string.trim();
+        if (trimmed.isEmpty() || !Character.isDigit(trimmed.charAt(trimmed.length() - 1))) {
+            return null;
+        }
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException notIntegral) {
+            try {
+                return Double.parseDouble(trimmed);
+            } catch (NumberFormatException notNumeric) {
+                return null;
+            }
+        }
+    }
+
+    static Boolean bool(Object value) {
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        if (value instanceof Number number) {
+            return number.doubleValue() != 0;
+        }
+        if (value instanceof String string) {
+            return switch (string.trim().toLowerCase(Locale.ROOT)) {
+                case "true", "t", "yes", "y", "1" -> Boolean.TRUE;
+                case "false", "f", "no", "n", "0" -> Boolean.FALSE;
+                default -> null;
+            };
+        }
+        return null;
+    }
+
+    static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+
+    static Object add(Object left, Object right) {
+        Number a = number(left);
+        Number b = number(right);
+        if (a == null || b == null) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            try {
+                return Math.addExact(a.longValue(), b.longValue());
+            } catch (ArithmeticException overflow) {
+                // falls through to floating point
+            }
+        }
+        return a.doubleValue() + b.doubleValue();
+    }
+
+    static Object subtract(Object left, Object right) {
+        Number a = number(left);
+        Number b = number(right);
+        if (a == null || b == null) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            try {
+                return Math.subtractExact(a.longValue(), b.longValue());
+            } catch (ArithmeticException overflow) {
+                // falls through to floating point
+            }
+        }
+        return a.doubleValue() - b.doubleValue();
+    }
+
+    static Object multiply(Object left, Object right) {
+        Number a = number(left);
+        Number b = number(right);
+        if (a == null || b == null) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            try {
+                return Math.multiplyExact(a.longValue(), b.longValue());
+            } catch (ArithmeticException overflow) {
+                // falls through to floating point
+            }
+        }
+        return a.doubleValue() * b.doubleValue();
+    }
+
+    /**
+     * Division by zero yields {@code null}; integer operands that divide exactly stay integers.
+     */
+    static Object divide(Object left, Object right) {
+        Number a = number(left);
+        Number b = number(right);
+        if (a == null || b == null || b.doubleValue() == 0) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b) && a.longValue() % b.longValue() == 0
+                && (a.longValue() != Long.MIN_VALUE || b.longValue() != -1)) {
+            return a.longValue() / b.longValue();
+        }
+        return a.doubleValue() / b.doubleValue();
+    }
+
+    static Object modulo(Object left, Object right) {
+        Number a = number(left);
+        Number b = number(right);
+        if (a == null || b == null || b.doubleValue() == 0) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            return a.longValue() % b.longValue();
+        }
+        return a.doubleValue() % b.doubleValue();
+    }
+
+    static Object negate(Object operand) {
+        Number a = number(operand);
+        if (a == null) {
+            return null;
+        }
+        if (isIntegral(a) && a.longValue() != Long.MIN_VALUE) {
+            return -a.longValue();
+        }
+        return -a.doubleValue();
+    }
+
+    /**
+     * Compares numerically when either side is a number and both are numeric, otherwise as text;
+     * {@code null} if either side is {@code null}.
+     */
+    static Integer compare(Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        if (left instanceof Number || right instanceof Number) {
+            Number a = number(left);
+            Number b = number(right);
+            if (a != null && b != null) {
+                return isIntegral(a) && isIntegral(b)
+                        ? Long.compare(a.longValue(), b.longValue())
+                        : Double.compare(a.doubleValue(), b.doubleValue());
+            }
+        }
+        if (left instanceof Boolean a && right instanceof Boolean b) {
+            return Boolean.compare(a, b);
+        }
+        return text(left).compareTo(text(right));
+    }
+
+    /**
+     * Parses an ISO date or date-time, or with {@code formatter} a custom one; numbers and digit strings are
+     * epoch milliseconds, or epoch seconds below ~1973 in milliseconds. Values without an offset are UTC.
+     * {@code null} if the value does not parse.
+     */
+    static TemporalAccessor temporal(Object value, DateTimeFormatter formatter) {
+        if (value == null) {
+            return null;
+        }
+        if (formatter == null) {
+            Number epoch = value instanceof Number number ? number
+                    : value instanceof String string && isDigits(string.trim()) ? number(string) : null;
+            if (epoch != null) {
+                long amount = epoch.longValue();
+                Instant instant = Math.abs(amount) >= MILLIS_THRESHOLD
+                        ? Instant.ofEpochMilli(amount)
+                        : Instant.ofEpochSecond(amount);
+                return instant.atZone(ZoneOffset.UTC);
+            }
+        }
+        try {
+            return (formatter != null ? formatter : ISO_DATE_TIME).parseBest(text(value).trim(),
+                    ZonedDateTime::from, LocalDateTime::from, LocalDate::from);
+        } catch (DateTimeException unparseable) {
+            return null;
+        }
+    }
+
+    static Instant instant(TemporalAccessor temporal) {
+        if (temporal instanceof ZonedDateTime zoned) {
+            return zoned.toInstant();
+        }
+        if (temporal instanceof LocalDateTime local) {
+            return local.toInstant(ZoneOffset.UTC);
+        }
+        if (temporal instanceof LocalDate date) {
+            return date.atStartOfDay(ZoneOffset.UTC).toInstant();
+        }
+        return null;
+    }
+
+    static LocalDate localDate(TemporalAccessor temporal) {
+        if (temporal instanceof ZonedDateTime zoned) {
+            return zoned.toLocalDate();
+        }
+        if (temporal instanceof LocalDateTime local) {
+            return local.toLocalDate();
+        }
+        return temporal instanceof LocalDate date ? date : null;
+    }
+
+    static Object cast(Object value, CastType type) {
+        if (value == null) {
+            return null;
+        }
+        return switch (type) {
+            case TEXT -> text(value);
+            case INTEGER -> {
+                Number number = value instanceof Boolean bool ? (Number) (bool ? 1L : 0L) : number(value);
+                if (number == null) {
+                    yield null;
+                }
+                yield isIntegral(number) ? number.longValue() : Math.round(number.doubleValue());
+            }
+            case NUMERIC -> {
+                Number number = number(value);
+                if (number == null) {
+                    yield null;
+                }
+                yield isIntegral(number) ? (Object) number.longValue() : (Object) number.doubleValue();
+            }
+            case BOOLEAN -> bool(value);
+            case DATE -> {
+                LocalDate date = localDate(temporal(value, null));
+                yield date == null ? null : date.toString();
+            }
+            case TIMESTAMP -> {
+                Instant instant = instant(temporal(value, null));
+                yield instant == null ? null : instant.toString();
+            }
+        };
+    }
+
+    private static boolean isDigits(String value) {
+        int start = value.startsWith("-") ? 1 : 0;
+        if (value.length() == start) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Target types of {@code CAST(x AS type)}, each with the type names it accepts.
+     */
+    enum CastType {
+        TEXT("TEXT", "VARCHAR", "STRING", "CHAR"),
+        INTEGER("INTEGER", "INT", "BIGINT", "SMALLINT", "LONG"),
+        NUMERIC("NUMERIC", "DECIMAL", "DOUBLE", "FLOAT", "REAL", "NUMBER"),
+        BOOLEAN("BOOLEAN", "BOOL"),
+        DATE("DATE"),
+        TIMESTAMP("TIMESTAMP", "TIMESTAMPTZ", "DATETIME");
+
+        private final String[] names;
+
+        CastType(String... names) {
+            this.names = names;
+        }
+
+        static CastType of(String name) {
+            for (CastType type : values()) {
+                for (String candidate : type.names) {
+                    if (candidate.equalsIgnoreCase(name)) {
+                        return type;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
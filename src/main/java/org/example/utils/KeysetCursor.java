@@ -0,0 +1,93 @@
+package org.example.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque page token for keyset pagination: the sort key values of the last row of a page. A token is bound
+ * to a scope naming the listing and ordering it was issued for, so it cannot be replayed against another one.
+ */
+public record KeysetCursor(List<String> values) {
+
+    private static final int MAX_VALUES = 16;
+
+    public KeysetCursor {
+        values = List.copyOf(values);
+    }
+
+    public static KeysetCursor of(String... values) {
+        return new KeysetCursor(List.of(values));
+    }
+
+    public String value(int index) {
+        return values.get(index);
+    }
+
+    public String encode(String scope) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, scope);
+            out.writeByte(values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Decodes a token issued by {@link #encode(String)} for {@code scope}; throws
+     * {@link IllegalArgumentException} if it is malformed or belongs to another scope.
+     */
+    public static KeysetCursor decode(String token, String scope) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (!scope.equals(readString(in))) {
+                throw new IllegalArgumentException("Cursor does not belong to this query");
+            }
+            int count = in.readUnsignedByte();
+            if (count > MAX_VALUES) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(readString(in));
+            }
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new KeysetCursor(values);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -53,7 +53,7 @@ CREATE TYPE integration.source_status
 
 CREATE TYPE integration.run_status
     AS
-    ENUM('QUEUED', 'RUNNING', 'SUCCESS', 'FAILED');
+    ENUM('QUEUED', 'RUNNING', 'SUCCESS', 'FAILED', 'CANCELLED');
 
 CREATE TYPE integration.data_type
     AS
@@ -108,7 +108,8 @@ CREATE TABLE IF NOT EXISTS integration.ingestion_run (
     ended_at                       TIMESTAMP,
     rows_read                      INT DEFAULT 0,
     rows_stored                    INT DEFAULT 0,
-    error_message                  TEXT
+    error_message                  TEXT,
+    join_key_stats                 JSONB
     );
 
 CREATE TABLE IF NOT EXISTS integration.raw_event (
@@ -123,6 +124,9 @@ CREATE TABLE IF NOT EXISTS integration.raw_event (
     CONSTRAINT raw_event_dedupe UNIQUE NULLS NOT DISTINCT (source_id, payload_hash)
     );
 
+ALTER TABLE IF EXISTS integration.raw_event DROP COLUMN IF EXISTS canonical_payload;
+ALTER TABLE IF EXISTS integration.raw_event DROP COLUMN IF EXISTS normalizer_version;
+
 -- =====================================================================
 -- DATASETS (domain-agnostic global schema)
 -- =====================================================================
@@ -174,21 +178,63 @@ CREATE TABLE IF NOT EXISTS integration.transform_run (
     started_at       		TIMESTAMP NOT NULL DEFAULT now(),
     ended_at         		TIMESTAMP,
     run_status       		integration.run_status NOT NULL DEFAULT 'RUNNING',
+    transform_mode   		VARCHAR(20),
     rows_in          		INT DEFAULT 0,
     rows_out         		INT DEFAULT 0,
+    components_total 		INT,
+    components_done  		INT DEFAULT 0,
+    progress_at      		TIMESTAMP,
+    cancel_requested 		BOOLEAN NOT NULL DEFAULT false,
+    stage_table      		VARCHAR(63),
+    input_fingerprint		VARCHAR(100),
     error_message    		TEXT
     );
 
+-- Component ranges of a distributed transform, leased by the workers of every application node.
+CREATE TABLE IF NOT EXISTS integration.transform_work_unit (
+    work_unit_id             BIGSERIAL PRIMARY KEY,
+    transform_run_id         BIGINT NOT NULL REFERENCES integration.transform_run(transform_run_id) ON DELETE CASCADE,
+    unit_index               INT NOT NULL,
+    range_start              INT NOT NULL,
+    range_end                INT NOT NULL,
+    unit_status              VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    lease_owner              VARCHAR(255),
+    lease_expires_at         TIMESTAMP,
+    attempts                 INT NOT NULL DEFAULT 0,
+    rows_in                  INT DEFAULT 0,
+    rows_out                 INT DEFAULT 0,
+    error_message            TEXT,
+    updated_at               TIMESTAMP NOT NULL DEFAULT now(),
+    UNIQUE (transform_run_id, unit_index)
+    );
+
+-- List-partitioned by dataset: a full transform loads a staging table and swaps it in as the dataset's
+-- partition (see UnifiedRowPartitions). Every dataset gets its own partition before its rows are written; the
+-- default partition only holds rows written before that and is constrained to stay empty once they are moved.
 CREATE TABLE IF NOT EXISTS integration.unified_row (
-    unified_row_id           BIGSERIAL PRIMARY KEY,
-    unified_row_uid          VARCHAR(40) UNIQUE NOT NULL,
+    unified_row_id           BIGSERIAL,
+    unified_row_uid          VARCHAR(40) NOT NULL,
     dataset_id               BIGINT NOT NULL REFERENCES integration.dataset(dataset_id) ON DELETE CASCADE,
     source_id                BIGINT REFERENCES integration.source(source_id) ON DELETE SET NULL,
     record_key               TEXT,
+    component_key            TEXT,
+    content_hash             VARCHAR(64),
     data                     JSONB NOT NULL,
     is_excluded              BOOLEAN NOT NULL DEFAULT false,
     observed_at              TIMESTAMP,
-    ingested_at              TIMESTAMP NOT NULL DEFAULT now()
+    ingested_at              TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (dataset_id, unified_row_id),
+    UNIQUE (dataset_id, unified_row_uid)
+    ) PARTITION BY LIST (dataset_id);
+
+CREATE TABLE IF NOT EXISTS integration.unified_row_default PARTITION OF integration.unified_row DEFAULT;
+
+-- Component keys an upsert transform wrote, per writer, so rows of vanished components are removed with an
+-- anti-join (see UnifiedRowSink). Scratch data: rows live for one run.
+CREATE UNLOGGED TABLE IF NOT EXISTS integration.unified_row_written (
+    writer_token             VARCHAR(40) NOT NULL,
+    component_key            TEXT NOT NULL,
+    PRIMARY KEY (writer_token, component_key)
     );
 
 -- =====================================================================
@@ -232,21 +278,94 @@ CREATE TABLE IF NOT EXISTS integration.relationship (
     ingested_at               TIMESTAMP NOT NULL DEFAULT now()
     );
 
+-- Persistent join keys: (dataset, field::canonical value) -> record identity, used to relate new
+-- records to previously ingested ones without re-scanning the dataset.
+CREATE TABLE IF NOT EXISTS integration.join_key_index (
+    join_key_id               BIGSERIAL PRIMARY KEY,
+    dataset_id                BIGINT NOT NULL REFERENCES integration.dataset(dataset_id) ON DELETE CASCADE,
+    source_id                 BIGINT NOT NULL REFERENCES integration.source(source_id) ON DELETE CASCADE,
+    raw_event_id              BIGINT     REFERENCES integration.raw_event(raw_event_id) ON DELETE CASCADE,
+    field_name                VARCHAR(255) NOT NULL,
+    join_key                  TEXT NOT NULL,
+    record_identity           TEXT NOT NULL,
+    record_type               VARCHAR(255) NOT NULL,
+    created_at                TIMESTAMP NOT NULL DEFAULT now()
+    );
+
+-- How far the join-key backfill has examined each source's raw events for a dataset (see JoinKeyIndexService).
+CREATE TABLE IF NOT EXISTS integration.join_key_backfill (
+    dataset_id                BIGINT NOT NULL REFERENCES integration.dataset(dataset_id) ON DELETE CASCADE,
+    source_id                 BIGINT NOT NULL REFERENCES integration.source(source_id) ON DELETE CASCADE,
+    last_raw_event_id         BIGINT NOT NULL,
+    updated_at                TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (dataset_id, source_id)
+    );
+
+-- Deliveries of a dataset's unified rows (export) or of an ingestion run's records to a destination, in
+-- chunks. The checkpoint is advanced after every delivered chunk, so a failed delivery resumes after it;
+-- attempts fence out a worker whose delivery was taken over (see DestinationDeliveries).
+CREATE TABLE IF NOT EXISTS integration.destination_delivery (
+    delivery_id              BIGSERIAL PRIMARY KEY,
+    delivery_uid             VARCHAR(40) UNIQUE NOT NULL,
+    destination_id           BIGINT NOT NULL REFERENCES integration.source(source_id) ON DELETE CASCADE,
+    dataset_id               BIGINT     REFERENCES integration.dataset(dataset_id) ON DELETE CASCADE,
+    ingestion_run_id         BIGINT     REFERENCES integration.ingestion_run(ingestion_id) ON DELETE CASCADE,
+    transform_run_id         BIGINT,                                   -- unified rows of this run are delivered
+    delivery_status          VARCHAR(20) NOT NULL DEFAULT 'QUEUED',
+    rows_total               BIGINT,
+    rows_delivered           BIGINT NOT NULL DEFAULT 0,
+    chunks_delivered         INT NOT NULL DEFAULT 0,
+    checkpoint_row_id        BIGINT,                                   -- last delivered unified_row_id / raw_event_id
+    checkpoint_offset        BIGINT NOT NULL DEFAULT 0,                -- file length (rows for a DB) after the last chunk
+    attempts                 INT NOT NULL DEFAULT 0,
+    error_message            TEXT,
+    created_at               TIMESTAMP NOT NULL DEFAULT now(),
+    updated_at               TIMESTAMP NOT NULL DEFAULT now(),
+    ended_at                 TIMESTAMP
+    );
+
 -- =====================================================================
 -- INDEXES (performance)
 -- =====================================================================
 -- Common FKs and time filters
 CREATE INDEX IF NOT EXISTS ix_ingestion_run_source    ON integration.ingestion_run(source_id, started_at);
 CREATE INDEX IF NOT EXISTS ix_raw_event_source_time   ON integration.raw_event(source_id, created_at DESC);
-CREATE INDEX IF NOT EXISTS ix_unified_row_dataset_time ON integration.unified_row(dataset_id, ingested_at DESC);
+CREATE INDEX IF NOT EXISTS ix_raw_event_dataset_time  ON integration.raw_event(dataset_id, created_at DESC, raw_event_id DESC);
+CREATE INDEX IF NOT EXISTS ix_raw_event_run           ON integration.raw_event(ingestion_run_id, raw_event_id);
+CREATE INDEX IF NOT EXISTS ix_unified_row_dataset_time ON integration.unified_row(dataset_id, ingested_at DESC, unified_row_id DESC);
 CREATE INDEX IF NOT EXISTS ix_transform_run_dataset   ON integration.transform_run(dataset_id, started_at DESC);
+CREATE INDEX IF NOT EXISTS ix_transform_work_unit_lease ON integration.transform_work_unit(unit_status, lease_expires_at);
 CREATE INDEX IF NOT EXISTS ix_relationship_source_time ON integration.relationship(source_id, ingested_at DESC);
+CREATE INDEX IF NOT EXISTS ix_relationship_from_id    ON integration.relationship(from_id);
+CREATE INDEX IF NOT EXISTS ix_relationship_to_id      ON integration.relationship(to_id);
+CREATE INDEX IF NOT EXISTS ix_join_key_lookup         ON integration.join_key_index(dataset_id, join_key);
+CREATE INDEX IF NOT EXISTS ix_join_key_raw_event      ON integration.join_key_index(raw_event_id);
+CREATE INDEX IF NOT EXISTS ix_join_key_identity       ON integration.join_key_index(dataset_id, record_identity);
+CREATE INDEX IF NOT EXISTS ix_raw_event_source_id     ON integration.raw_event(source_id, raw_event_id);
+CREATE INDEX IF NOT EXISTS ix_destination_delivery_dataset ON integration.destination_delivery(dataset_id, destination_id, delivery_id DESC);
+-- Deliveries the sweep may resume; finished ones are the bulk of the table and stay out of it.
+CREATE INDEX IF NOT EXISTS ix_destination_delivery_pending ON integration.destination_delivery(updated_at)
+    WHERE delivery_status <> 'DELIVERED';
+-- At most one queued or running delivery of a dataset's unified rows per destination; older duplicates left by
+-- concurrent requests are failed first so the index can be built.
+UPDATE integration.destination_delivery d
+SET delivery_status = 'FAILED', error_message = 'Superseded by a newer delivery', ended_at = now(), updated_at = now()
+WHERE d.ingestion_run_id IS NULL AND d.delivery_status IN ('QUEUED', 'RUNNING')
+  AND EXISTS (SELECT 1 FROM integration.destination_delivery newer
+              WHERE newer.dataset_id = d.dataset_id AND newer.destination_id = d.destination_id
+                AND newer.ingestion_run_id IS NULL AND newer.delivery_status IN ('QUEUED', 'RUNNING')
+                AND newer.delivery_id > d.delivery_id);
+CREATE UNIQUE INDEX IF NOT EXISTS uq_destination_delivery_active ON integration.destination_delivery(dataset_id, destination_id)
+    WHERE ingestion_run_id IS NULL AND delivery_status IN ('QUEUED', 'RUNNING');
 
 CREATE INDEX IF NOT EXISTS gin_raw_event_payload ON integration.raw_event USING GIN (payload);
 CREATE INDEX IF NOT EXISTS gin_unified_row_data  ON integration.unified_row USING GIN (data);
 
 -- Helpful uniqueness and integrity
 CREATE UNIQUE INDEX IF NOT EXISTS uq_dataset_field_name ON integration.dataset_field(dataset_id, name);
+-- Stable identity of a unified row: transforms upsert by it.
+CREATE UNIQUE INDEX IF NOT EXISTS uq_unified_row_component ON integration.unified_row(dataset_id, component_key)
+    WHERE component_key IS NOT NULL;
 
 --     TRUNCATE TABLE integration.dataset CASCADE ;
 --     TRUNCATE TABLE integration.ingestion_run CASCADE;
@@ -258,6 +377,7 @@ CREATE UNIQUE INDEX IF NOT EXISTS uq_dataset_field_name ON integration.dataset_f
 --     TRUNCATE TABLE integration.metadata CASCADE;
 --     TRUNCATE TABLE integration.connection CASCADE;
 --     TRUNCATE TABLE integration.relationship CASCADE;
+--     TRUNCATE TABLE integration.join_key_index CASCADE;
 --     TRUNCATE Table integration.source CASCADE ;
 --
 -- DROP TABLE integration.dataset CASCADE ;
@@ -0,0 +1,91 @@
+package org.example.service.explore;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExploreFilterTest {
+
+    @Test
+    void twoCharacterOperatorsWinOverTheirPrefixes() {
+        assertEquals(new ExploreFilter.Condition("age", ExploreFilter.Operator.GREATER_OR_EQUAL, "18"),
+                ExploreFilter.Condition.parse("age>=18"));
+        assertEquals(new ExploreFilter.Condition("age", ExploreFilter.Operator.LESS_OR_EQUAL, "18"),
+                ExploreFilter.Condition.parse("age<=18"));
+        assertEquals(new ExploreFilter.Condition("age", ExploreFilter.Operator.GREATER, "18"),
+                ExploreFilter.Condition.parse("age>18"));
+        assertEquals(new ExploreFilter.Condition("status", ExploreFilter.Operator.EXACT, "open"),
+                ExploreFilter.Condition.parse("status==open"));
+        assertEquals(new ExploreFilter.Condition("status", ExploreFilter.Operator.EQUAL, "open"),
+                ExploreFilter.Condition.parse("status=open"));
+        assertEquals(new ExploreFilter.Condition("status", ExploreFilter.Operator.NOT_EQUAL, "open"),
+                ExploreFilter.Condition.parse("status!=open"));
+    }
+
+    @Test
+    void conditionSplitsAtTheFirstOperator() {
+        assertEquals(new ExploreFilter.Condition("note", ExploreFilter.Operator.EQUAL, "a=b"),
+                ExploreFilter.Condition.parse("note=a=b"));
+        assertEquals(new ExploreFilter.Condition("note", ExploreFilter.Operator.CONTAINS, "x>=y"),
+                ExploreFilter.Condition.parse("note~x>=y"));
+    }
+
+    @Test
+    void filtersWithoutFieldOrOperatorAreIgnored() {
+        assertNull(ExploreFilter.Condition.parse("=open"));
+        assertNull(ExploreFilter.Condition.parse("status"));
+        assertNull(ExploreFilter.Condition.parse(" "));
+        assertEquals(ExploreFilter.NONE, ExploreFilter.parse(List.of("status", "=open")));
+        assertEquals("", ExploreFilter.NONE.sql());
+    }
+
+    @Test
+    void exactMatchesJsonScalarsByType() {
+        for (String scalar : List.of("42", "-1.5", "2e10", "true", "false", "null")) {
+            ExploreFilter filter = ExploreFilter.parse(List.of("f==" + scalar));
+            assertTrue(filter.sql().contains("CAST(? AS jsonb)"), scalar);
+            assertEquals(List.of("f", scalar), List.of(filter.args()));
+        }
+    }
+
+    @Test
+    void exactMatchesAnythingElseAsString() {
+        for (String text : List.of("007", "1.", "True", "abc", "1 ")) {
+            ExploreFilter filter = ExploreFilter.parse(List.of("f==" + text));
+            assertTrue(filter.sql().contains("CAST(? AS text))"), text);
+            assertEquals(List.of("f", text), List.of(filter.args()));
+        }
+        assertEquals(List.of("f", "42"), List.of(ExploreFilter.parse(List.of("f==\"42\"")).args()));
+    }
+
+    @Test
+    void rangeComparesNumbersNumericallyAndTextOtherwise() {
+        ExploreFilter numeric = ExploreFilter.parse(List.of("age>=18"));
+        assertTrue(numeric.sql().contains("AS numeric) END >= ?"), numeric.sql());
+        assertEquals(List.of("age", "age", new BigDecimal("18")), List.of(numeric.args()));
+
+        ExploreFilter text = ExploreFilter.parse(List.of("day<\"2024-03-01\""));
+        assertEquals(" AND r.data ->> CAST(? AS text) < ?", text.sql());
+        assertEquals(List.of("day", "2024-03-01"), List.of(text.args()));
+    }
+
+    @Test
+    void containsEscapesLikeWildcards() {
+        ExploreFilter filter = ExploreFilter.parse(List.of("name~50%_off\\now"));
+        assertEquals(" AND r.data ->> CAST(? AS text) ILIKE ?", filter.sql());
+        assertEquals(List.of("name", "%50\\%\\_off\\\\now%"), List.of(filter.args()));
+    }
+
+    @Test
+    void conditionsAreAnded() {
+        ExploreFilter filter = ExploreFilter.parse(List.of("a=1", "b!=2"));
+        assertEquals(" AND r.data ?? CAST(? AS text) AND lower(r.data ->> CAST(? AS text)) = lower(?)"
+                + " AND lower(r.data ->> CAST(? AS text)) IS DISTINCT FROM lower(?)", filter.sql());
+        assertEquals(List.of("a", "a", "1", "b", "2"), List.of(filter.args()));
+    }
+}
@@ -0,0 +1,180 @@
+package org.example.service.transform.expression;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpressionCompilerTest {
+
+    @Test
+    void blankExpressionCompilesToNull() {
+        assertNull(ExpressionCompiler.compile(null));
+        assertNull(ExpressionCompiler.compile("  "));
+    }
+
+    @Test
+    void multiplicativeOperatorsBindTighterThanAdditive() {
+        assertEquals(7L, evaluate("1 + 2 * 3"));
+        assertEquals(9L, evaluate("(1 + 2) * 3"));
+        assertEquals(2L, evaluate("2 * 3 % 4"));
+        assertEquals(-6L, evaluate("-2 * 3"));
+        assertEquals(7L, evaluate("$value + 2 * 3", 1L));
+    }
+
+    @Test
+    void binaryOperatorsAssociateLeft() {
+        assertEquals(3L, evaluate("10 - 4 - 3"));
+        assertEquals(2L, evaluate("12 / 3 / 2"));
+    }
+
+    @Test
+    void concatenationBindsLooserThanArithmetic() {
+        assertEquals("a3", evaluate("'a' || 1 + 2"));
+        assertEquals(true, evaluate("'a' || 'b' = 'ab'"));
+    }
+
+    @Test
+    void comparisonBindsTighterThanLogic() {
+        assertEquals(true, evaluate("1 + 2 = 3"));
+        assertEquals(true, evaluate("NOT 1 = 2"));
+        assertEquals(true, evaluate("TRUE OR FALSE AND FALSE"));
+        assertEquals(false, evaluate("(TRUE OR FALSE) AND FALSE"));
+        assertEquals(true, evaluate("NOT FALSE AND TRUE"));
+    }
+
+    @Test
+    void divisionKeepsIntegersWhenExact() {
+        assertEquals(2L, evaluate("6 / 3"));
+        assertEquals(3.5, evaluate("7 / 2"));
+    }
+
+    @Test
+    void nullOperandsYieldNull() {
+        assertNull(evaluate("NULL + 1"));
+        assertNull(evaluate("$value * 2", null));
+        assertNull(evaluate("'a' || NULL"));
+        assertNull(evaluate("NULL = NULL"));
+        assertNull(evaluate("$value > 1", null));
+        assertNull(evaluate("NOT NULL"));
+    }
+
+    @Test
+    void valuesThatCannotBeCoercedYieldNull() {
+        assertNull(evaluate("'abc' + 1"));
+        assertNull(evaluate("1 / 0"));
+        assertNull(evaluate("$value % 0", 5L));
+    }
+
+    @Test
+    void logicFollowsThreeValuedSemantics() {
+        assertEquals(true, evaluate("NULL OR TRUE"));
+        assertNull(evaluate("NULL OR FALSE"));
+        assertEquals(false, evaluate("NULL AND FALSE"));
+        assertNull(evaluate("NULL AND TRUE"));
+    }
+
+    @Test
+    void isNullTestsForNull() {
+        assertEquals(true, evaluate("NULL IS NULL"));
+        assertEquals(true, evaluate("1 IS NOT NULL"));
+        assertEquals(true, evaluate("$value IS NULL", null));
+        assertEquals(false, evaluate("$value IS NULL", "x"));
+        assertEquals(true, evaluate("missing.path IS NULL", "x"));
+    }
+
+    @Test
+    void nullHandlingFunctions() {
+        assertEquals("ab", evaluate("concat('a', NULL, 'b')"));
+        assertEquals("x", evaluate("coalesce(NULL, $value, 'x')", null));
+        assertEquals("v", evaluate("coalesce(NULL, $value, 'x')", "v"));
+        assertNull(evaluate("nullif($value, 1)", 1L));
+        assertEquals(2L, evaluate("nullif($value, 1)", 2L));
+    }
+
+    @Test
+    void pathsReadThePayload() {
+        Map<String, Object> payload = Map.of("customer", Map.of("name", "Ada", "age", 36L));
+        assertEquals("ADA", ExpressionCompiler.compile("upper(customer.name)").evaluate(null, payload));
+        assertEquals(true, ExpressionCompiler.compile("customer.age >= 18").evaluate(null, payload));
+    }
+
+    @Test
+    void literalSubExpressionsAreFolded() {
+        Expression folded = ExpressionCompiler.compile("upper('a' || 'b') || 1 + 2");
+        assertEquals("AB3", assertInstanceOf(ExpressionCompiler.Constant.class, folded).value());
+        assertInstanceOf(ExpressionCompiler.Constant.class, ExpressionCompiler.compile("1 / 0"));
+        assertFalse(ExpressionCompiler.compile("$value + 1") instanceof ExpressionCompiler.Constant);
+    }
+
+    @Test
+    void literalThatCannotBeEvaluatedFailsCompilation() {
+        ExpressionException exception = assertThrows(ExpressionException.class,
+                () -> ExpressionCompiler.compile("1 + round(0.5, 2000000000)"));
+        assertTrue(exception.getMessage().startsWith("Cannot evaluate 'round'"), exception.getMessage());
+        assertEquals(4, exception.getPosition());
+        assertTrue(exception.getMessage().endsWith("at position 5"), exception.getMessage());
+    }
+
+    @Test
+    void syntaxErrorsNameTheirPosition() {
+        assertEquals(4, assertThrows(ExpressionException.class, () -> ExpressionCompiler.compile("1 + ")).getPosition());
+        assertEquals(2, assertThrows(ExpressionException.class, () -> ExpressionCompiler.compile("1 2")).getPosition());
+        assertEquals(0, assertThrows(ExpressionException.class, () -> ExpressionCompiler.compile("nope(1)")).getPosition());
+        assertEquals(0, assertThrows(ExpressionException.class, () -> ExpressionCompiler.compile("upper()")).getPosition());
+        assertEquals(10, assertThrows(ExpressionException.class,
+                () -> ExpressionCompiler.compile("CAST(1 AS blob)")).getPosition());
+    }
+
+    @Test
+    void searchedCaseTakesTheFirstTrueBranch() {
+        String source = "CASE WHEN $value > 10 THEN 'big' WHEN $value > 5 THEN 'medium' ELSE 'small' END";
+        assertEquals("big", evaluate(source, 12L));
+        assertEquals("medium", evaluate(source, 7L));
+        assertEquals("small", evaluate(source, 1L));
+        assertEquals("small", evaluate(source, null));
+    }
+
+    @Test
+    void caseWithoutElseYieldsNull() {
+        assertNull(evaluate("CASE WHEN $value = 1 THEN 'one' END", 2L));
+    }
+
+    @Test
+    void simpleCaseComparesTheOperand() {
+        String source = "CASE $value WHEN 1 THEN 'one' WHEN '2' THEN 'two' ELSE 'other' END";
+        assertEquals("one", evaluate(source, 1L));
+        assertEquals("two", evaluate(source, "2"));
+        assertEquals("two", evaluate(source, 2L));
+        assertEquals("other", evaluate(source, 3L));
+        assertEquals("other", evaluate(source, null));
+    }
+
+    @Test
+    void caseOverLiteralsIsFolded() {
+        Expression folded = ExpressionCompiler.compile("CASE WHEN 1 = 1 THEN 'x' ELSE 'y' END");
+        assertEquals("x", assertInstanceOf(ExpressionCompiler.Constant.class, folded).value());
+    }
+
+    @Test
+    void caseNeedsAWhen() {
+        ExpressionException exception = assertThrows(ExpressionException.class,
+                () -> ExpressionCompiler.compile("CASE $value END"));
+        assertTrue(exception.getMessage().startsWith("CASE needs at least one WHEN"), exception.getMessage());
+        assertEquals(12, exception.getPosition());
+    }
+
+    private static Object evaluate(String source) {
+        return evaluate(source, null);
+    }
+
+    private static Object evaluate(String source, Object value) {
+        return ExpressionCompiler.compile(source).evaluate(value, Map.of());
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.service.transform.expression;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpressionFunctionsTest {
+
+    @Test
+    void regexpExtractDefaultsToTheFirstGroup() {
+        assertEquals("123", evaluate("regexp_extract($value, '[0-9]+')", "order-123"));
+        assertEquals("order", evaluate("regexp_extract($value, '([a-z]+)-([0-9]+)')", "order-123"));
+        assertEquals("123", evaluate("regexp_extract($value, '([a-z]+)-([0-9]+)', 2)", "order-123"));
+        assertEquals("order-123", evaluate("regexp_extract($value, '([a-z]+)-([0-9]+)', 0)", "order-123"));
+    }
+
+    @Test
+    void regexpExtractWithoutMatchOrGroupYieldsNull() {
+        assertNull(evaluate("regexp_extract($value, '[0-9]+')", "none"));
+        assertNull(evaluate("regexp_extract($value, '([0-9]+)', 5)", "order-123"));
+        assertNull(evaluate("regexp_extract($value, '[0-9]+')", null));
+    }
+
+    @Test
+    void regexpReplaceReplacesEveryMatch() {
+        assertEquals("a b c", evaluate("regexp_replace($value, '\\s+', ' ')", "a   b\tc"));
+        assertEquals("123-order", evaluate("regexp_replace($value, '([a-z]+)-([0-9]+)', '$2-$1')", "order-123"));
+        assertNull(evaluate("regexp_replace($value, '[a-z]+', '$9')", "order"));
+    }
+
+    @Test
+    void invalidLiteralPatternFailsCompilation() {
+        ExpressionException exception = assertThrows(ExpressionException.class,
+                () -> ExpressionCompiler.compile("trim(regexp_extract($value, '['))"));
+        assertTrue(exception.getMessage().startsWith("Invalid argument to regexp_extract"), exception.getMessage());
+        assertEquals(5, exception.getPosition());
+        assertThrows(ExpressionException.class, () -> ExpressionCompiler.compile("regexp_replace($value, '(', '')"));
+    }
+
+    @Test
+    void patternFromTheDataIsCompiledPerRow() {
+        Expression expression = ExpressionCompiler.compile("regexp_extract('abc', $value)");
+        assertEquals("b", expression.evaluate("b", Map.of()));
+        assertEquals("c", expression.evaluate("c$", Map.of()));
+        assertNull(expression.evaluate("[", Map.of()));
+        assertNull(expression.evaluate(null, Map.of()));
+    }
+
+    @Test
+    void parseDateReadsIsoAndGivenFormats() {
+        assertEquals("2024-03-01", evaluate("parse_date($value)", "2024-03-01T10:15:30+02:00"));
+        assertEquals("2024-03-01", evaluate("parse_date($value)", "2024-03-01"));
+        assertEquals("2024-03-01", evaluate("parse_date($value, 'dd/MM/yyyy')", "01/03/2024"));
+        assertNull(evaluate("parse_date($value, 'dd/MM/yyyy')", "2024-03-01"));
+        assertNull(evaluate("parse_date($value)", "not a date"));
+    }
+
+    @Test
+    void parseTimestampNormalizesToUtc() {
+        assertEquals("2024-03-01T10:15:30Z", evaluate("parse_timestamp($value)", "2024-03-01 10:15:30"));
+        assertEquals("2024-03-01T08:15:30Z", evaluate("parse_timestamp($value)", "2024-03-01T10:15:30+02:00"));
+        assertEquals("2024-03-01T10:15:30Z",
+                evaluate("parse_timestamp($value, 'dd.MM.yyyy HH:mm:ss')", "01.03.2024 10:15:30"));
+    }
+
+    @Test
+    void epochNumbersAreSecondsOrMillisecondsByMagnitude() {
+        assertEquals("2024-03-01T10:15:30Z", evaluate("parse_timestamp($value)", 1709288130L));
+        assertEquals("2024-03-01T10:15:30Z", evaluate("parse_timestamp($value)", 1709288130000L));
+        assertEquals("2024-03-01", evaluate("parse_date($value)", 1709288130L));
+    }
+
+    @Test
+    void formatDateWritesDatesAndTimestamps() {
+        assertEquals("2024/03/01 10:15", evaluate("format_date($value, 'yyyy/MM/dd HH:mm')", "2024-03-01T10:15:30Z"));
+        assertEquals("01.03.2024", evaluate("format_date($value, 'dd.MM.yyyy')", "2024-03-01"));
+        assertNull(evaluate("format_date($value, 'HH:mm')", "2024-03-01"));
+        assertNull(evaluate("format_date($value, 'yyyy')", "soon"));
+    }
+
+    @Test
+    void invalidLiteralDatePatternFailsCompilation() {
+        ExpressionException exception = assertThrows(ExpressionException.class,
+                () -> ExpressionCompiler.compile("parse_date($value, 'yyyy-{')"));
+        assertTrue(exception.getMessage().startsWith("Invalid argument to parse_date"), exception.getMessage());
+        assertEquals(0, exception.getPosition());
+        assertThrows(ExpressionException.class, () -> ExpressionCompiler.compile("format_date($value, 'yyyy}')"));
+    }
+
+    @Test
+    void datePatternFromTheDataIsParsedPerRow() {
+        Expression expression = ExpressionCompiler.compile("parse_date('01/03/2024', $value)");
+        assertEquals("2024-03-01", expression.evaluate("dd/MM/yyyy", Map.of()));
+        assertNull(expression.evaluate("yyyy-{", Map.of()));
+        assertNull(expression.evaluate(null, Map.of()));
+    }
+
+    private static Object evaluate(String source, Object value) {
+        return ExpressionCompiler.compile(source).evaluate(value, Map.of());
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeysetCursorTest {
+
+    @Test
+    void tokenRoundTripsWithinItsScope() {
+        KeysetCursor cursor = KeysetCursor.of("2024-03-01T10:15:30Z", "42", "", "\u00fcn\u00efcode");
+        assertEquals(cursor, KeysetCursor.decode(cursor.encode("rows:7"), "rows:7"));
+        assertEquals(List.of(), KeysetCursor.decode(KeysetCursor.of().encode("rows:7"), "rows:7").values());
+    }
+
+    @Test
+    void tokenOfAnotherScopeIsRejected() {
+        String token = KeysetCursor.of("42").encode("rows:7");
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> KeysetCursor.decode(token, "rows:8"));
+        assertEquals("Cursor does not belong to this query", exception.getMessage());
+    }
+
+    @Test
+    void malformedTokensAreRejected() {
+        String token = KeysetCursor.of("2024-03-01", "42").encode("rows:7");
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+
+        assertInvalid("not base64!");
+        assertInvalid("");
+        assertInvalid(token.substring(0, token.length() - 2));
+        assertInvalid(token + "AA");
+
+        byte[] longerValue = bytes.clone();
+        int firstValueLength = 4 + "rows:7".length() + 1 + 3;
+        longerValue[firstValueLength] = 0x7f;
+        assertInvalid(encode(longerValue));
+
+        byte[] tooManyValues = bytes.clone();
+        tooManyValues[4 + "rows:7".length()] = 17;
+        assertInvalid(encode(tooManyValues));
+
+        byte[] negativeLength = bytes.clone();
+        negativeLength[4 + "rows:7".length() + 1] = (byte) 0xff;
+        assertInvalid(encode(negativeLength));
+    }
+
+    private static void assertInvalid(String token) {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> KeysetCursor.decode(token, "rows:7"));
+        assertEquals("Invalid cursor", exception.getMessage());
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}